@@ -17,10 +17,16 @@ package com.ibatis.common.beans;
 
 import com.ibatis.sqlmap.engine.accessplan.AccessPlan;
 import com.ibatis.sqlmap.engine.accessplan.AccessPlanFactory;
+import com.ibatis.sqlmap.engine.accessplan.BytecodeAccessPlan;
 import junit.framework.TestCase;
+import testdomain.LineItem;
 import testdomain.Order;
 
+import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
 
 public class PropertyAccessPlanTest extends TestCase {
 
@@ -49,6 +55,108 @@ public class PropertyAccessPlanTest extends TestCase {
 
   }
 
+  public void testGeneratedAccessPlan() {
+    String[] names = { "id", "orderId", "itemCode", "quantity", "price" };
+    Object[] lineValues = { new Integer(1), new Integer(10), "ESM-34", new Integer(3), new BigDecimal("45.43") };
+
+    AccessPlanFactory.setBytecodeEnhancementEnabled(true);
+    try {
+      AccessPlan plan = AccessPlanFactory.getAccessPlan(LineItem.class, names);
+      assertTrue(plan instanceof BytecodeAccessPlan);
+      assertTrue(((BytecodeAccessPlan) plan).newInstance() instanceof LineItem);
+
+      LineItem item = new LineItem();
+      plan.setProperties(item, lineValues);
+      assertEquals(1, item.getId());
+      assertEquals(10, item.getOrderId());
+      assertEquals("ESM-34", item.getItemCode());
+      assertEquals(3, item.getQuantity());
+      assertEquals(new BigDecimal("45.43"), item.getPrice());
+      assertTrue(Arrays.equals(lineValues, plan.getProperties(item)));
+
+      // a value that needs widening goes through reflection
+      plan.setProperties(item, new Object[] { new Short((short) 2), new Integer(10), "ESM-34", new Integer(3), null });
+      assertEquals(2, item.getId());
+      assertNull(item.getPrice());
+
+      try {
+        plan.setProperties(item, new Object[] { null, new Integer(10), "ESM-34", new Integer(3), null });
+        fail("Expected an exception setting null on a primitive property.");
+      } catch (RuntimeException e) {
+        assertTrue(e.getMessage().indexOf("setId") > -1);
+      }
+    } finally {
+      AccessPlanFactory.setBytecodeEnhancementEnabled(false);
+    }
+  }
+
+  public void testGeneratedAccessPlanDoesNotCallSettersAgain() {
+    AccessPlanFactory.setBytecodeEnhancementEnabled(true);
+    try {
+      AccessPlan plan = AccessPlanFactory.getAccessPlan(CountingBean.class, new String[] { "count", "name" });
+      assertTrue(plan instanceof BytecodeAccessPlan);
+
+      CountingBean bean = new CountingBean();
+      try {
+        plan.setProperties(bean, new Object[] { new Integer(1), "fail" });
+        fail("Expected the exception of the setter.");
+      } catch (RuntimeException e) {
+        assertTrue(e.getMessage(), e.getMessage().indexOf("setName") > -1);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+      assertEquals(1, bean.getCount());
+      assertEquals(1, bean.getCalls());
+
+      // a row the generated class cannot take is set reflectively, once
+      bean = new CountingBean();
+      try {
+        plan.setProperties(bean, new Object[] { null, "a" });
+        fail("Expected an exception setting null on a primitive property.");
+      } catch (RuntimeException e) {
+        assertTrue(e.getMessage(), e.getMessage().indexOf("setCount") > -1);
+      }
+      assertEquals(0, bean.getCalls());
+      plan.setProperties(bean, new Object[] { new Short((short) 2), "a" });
+      assertEquals(2, bean.getCount());
+      assertEquals("a", bean.getName());
+      assertEquals(2, bean.getCalls());
+    } finally {
+      AccessPlanFactory.setBytecodeEnhancementEnabled(false);
+    }
+  }
+
+  public void testGeneratedAccessorsDoNotKeepTheirClassLoaderReachable() throws Exception {
+    AccessPlanFactory.setBytecodeEnhancementEnabled(true);
+    ClassInfo.setCacheEnabled(false);
+    try {
+      WeakReference loader = planBeanOfDiscardedLoader();
+      for (int i = 0; i < 20 && loader.get() != null; i++) {
+        System.gc();
+        Thread.sleep(50);
+      }
+      assertNull("The bean class loader is still reachable.", loader.get());
+    } finally {
+      ClassInfo.setCacheEnabled(true);
+      AccessPlanFactory.setBytecodeEnhancementEnabled(false);
+    }
+  }
+
+  /**
+   * Builds a generated plan for a bean class of a loader of its own, like a web application would, and drops both.
+   */
+  private static WeakReference planBeanOfDiscardedLoader() throws Exception {
+    URL location = CountingBean.class.getProtectionDomain().getCodeSource().getLocation();
+    ClassLoader loader = new URLClassLoader(new URL[] { location }, null);
+    Class beanClass = loader.loadClass(CountingBean.class.getName());
+    assertNotSame(CountingBean.class, beanClass);
+    AccessPlan plan = AccessPlanFactory.getAccessPlan(beanClass, new String[] { "count", "name" });
+    assertTrue(plan instanceof BytecodeAccessPlan);
+    Object bean = beanClass.newInstance();
+    plan.setProperties(bean, new Object[] { new Integer(3), "a" });
+    assertEquals(new Integer(3), plan.getProperties(bean)[0]);
+    return new WeakReference(loader);
+  }
+
   private void assertOrder(Order order) {
     assertEquals(values[0], new Integer(order.getId()));
     assertEquals(values[1], new Integer(order.getId()));
@@ -63,4 +171,37 @@ public class PropertyAccessPlanTest extends TestCase {
     assertEquals(values[10], order.getFavouriteLineItem().getPrice());
   }
 
+  public static class CountingBean {
+
+    private int count;
+    private String name;
+    private int calls;
+
+    public int getCount() {
+      return count;
+    }
+
+    public void setCount(int count) {
+      calls++;
+      this.count = count;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      calls++;
+      if ("fail".equals(name)) {
+        throw new IllegalStateException("Cannot set the name " + name);
+      }
+      this.name = name;
+    }
+
+    public int getCalls() {
+      return calls;
+    }
+
+  }
+
 }
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.common.beans;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import testdomain.Account;
+import testdomain.LineItem;
+import testdomain.Order;
+
+public class PropertyPathTest extends TestCase {
+
+  public void testCompiledPathsAreCached() {
+    assertSame(PropertyPath.compile("account.firstName"), PropertyPath.compile("account.firstName"));
+  }
+
+  public void testPathsPastTheFirstThousandAreCached() {
+    for (int i = 0; i < 2000; i++) {
+      PropertyPath.compile("account.property" + i);
+    }
+    assertSame(PropertyPath.compile("account.property1999"), PropertyPath.compile("account.property1999"));
+  }
+
+  public void testIndexedPathsAreNotCached() {
+    String path = "lineItemsList[1].itemCode";
+    assertNotSame(PropertyPath.compile(path), PropertyPath.compile(path));
+  }
+
+  public void testPathAppliedToClassesInTurn() {
+    Order order = newOrder();
+    LineItem item = new LineItem();
+    item.setId(3);
+    PropertyPath path = PropertyPath.compile("id");
+    for (int i = 0; i < 3; i++) {
+      path.setValue(order, new Integer(i));
+      assertEquals(new Integer(i), path.getValue(order));
+      assertEquals(new Integer(3), path.getValue(item));
+    }
+  }
+
+  public void testGetNestedAndIndexedValues() {
+    Order order = newOrder();
+
+    assertEquals("Clinton", PropertyPath.compile("account.firstName").getValue(order));
+    assertEquals("ESM-48", PropertyPath.compile("lineItemsList[1].itemCode").getValue(order));
+    assertEquals("ESM-34", PropertyPath.compile("lineItemArray[0].itemCode").getValue(order));
+    assertEquals(new Integer(7), PropertyPath.compile("account.ids[1]").getValue(order));
+    assertNull(PropertyPath.compile("favouriteLineItem.itemCode").getValue(order));
+
+    // the same path applied to a different class resolves its accessors again
+    Map map = new HashMap();
+    map.put("account", order.getAccount());
+    assertEquals("Clinton", PropertyPath.compile("account.firstName").getValue(map));
+    assertEquals(order.getAccount(), PropertyPath.compile("account").getValue(map));
+  }
+
+  public void testGetFromListRoot() {
+    Order order = newOrder();
+    assertEquals(order.getLineItemsList().get(0), PropertyPath.compile("[0]").getValue(order.getLineItemsList()));
+  }
+
+  public void testSetInstantiatesIntermediateBeans() {
+    Order order = new Order();
+    PropertyPath.compile("account.firstName").setValue(order, "Clinton");
+    assertEquals("Clinton", order.getAccount().getFirstName());
+
+    order = new Order();
+    PropertyPath.compile("account.firstName").setValue(order, null);
+    assertNull(order.getAccount());
+
+    Map map = new HashMap();
+    PropertyPath.compile("id").setValue(map, new Integer(1));
+    assertEquals(new Integer(1), map.get("id"));
+  }
+
+  public void testErrorsMatchProbe() {
+    Order order = newOrder();
+    try {
+      PropertyPath.compile("account.nickName").getValue(order);
+      fail("Expected missing property to fail.");
+    } catch (ProbeException e) {
+      assertTrue(e.getMessage().indexOf("nickName") > -1);
+    }
+    try {
+      PropertyPath.compile("account.firstName[0]").getValue(order);
+      fail("Expected indexing a String to fail.");
+    } catch (ProbeException e) {
+      assertTrue(e.getMessage().indexOf("not a List or Array") > -1);
+    }
+    try {
+      PropertyPath.compile("account.id").setValue(order, null);
+      fail("Expected null primitive to fail.");
+    } catch (ProbeException e) {
+      assertTrue(e.getMessage().indexOf("'id' to value 'null'") > -1);
+    }
+  }
+
+  private Order newOrder() {
+    Account account = new Account();
+    account.setFirstName("Clinton");
+    account.setIds(new int[] { 5, 7 });
+
+    LineItem first = new LineItem();
+    first.setItemCode("ESM-34");
+    LineItem second = new LineItem();
+    second.setItemCode("ESM-48");
+    List items = new ArrayList();
+    items.add(first);
+    items.add(second);
+
+    Order order = new Order();
+    order.setAccount(account);
+    order.setLineItemsList(items);
+    order.setLineItemArray(new LineItem[] { first, second });
+    return order;
+  }
+
+}
@@ -17,6 +17,7 @@ package com.ibatis.sqlmap;
 
 import com.ibatis.sqlmap.engine.execution.BatchException;
 import com.ibatis.sqlmap.engine.execution.BatchResult;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
 import testdomain.Account;
 
 import java.sql.BatchUpdateException;
@@ -390,4 +391,77 @@ public class BatchTest extends BaseSqlMapTest {
       }
     }
   }
+
+  public void testExecutebatchDetailedGroupedBySql() throws SQLException {
+    ((SqlMapClientImpl) sqlMap).getDelegate().setBatchGroupingEnabled(true);
+    try {
+      sqlMap.startTransaction();
+      sqlMap.startBatch();
+
+      // interleave inserts and updates, as a parent/child load would
+      for (int i = 10; i < 15; i++) {
+        Account account = new Account();
+        account.setId(i);
+        account.setFirstName("fred");
+        account.setLastName("flintstone");
+        account.setEmailAddress("fred.flintstone@gmail.com");
+        sqlMap.insert("insertAccountViaInlineParameters", account);
+
+        account.setFirstName("barney");
+        account.setLastName("rubble");
+        sqlMap.update("updateAccountViaInlineParameters", account);
+      }
+
+      List results = sqlMap.executeBatchDetailed();
+      sqlMap.commitTransaction();
+
+      assertEquals(2, results.size());
+
+      BatchResult br = (BatchResult) results.get(0);
+      assertEquals("insertAccountViaInlineParameters", br.getStatementId());
+      assertEquals(5, br.getUpdateCounts().length);
+
+      br = (BatchResult) results.get(1);
+      assertEquals("updateAccountViaInlineParameters", br.getStatementId());
+      assertEquals(5, br.getUpdateCounts().length);
+    } catch (BatchException e) {
+      fail(e.getMessage());
+    } finally {
+      sqlMap.endTransaction();
+    }
+
+    Account account = (Account) sqlMap.queryForObject("getAccountViaColumnName", new Integer(12));
+    assertEquals("barney", account.getFirstName());
+  }
+
+  public void testExecutebatchDetailedWithAutoFlush() throws SQLException {
+    ((SqlMapClientImpl) sqlMap).getDelegate().setMaxBatchRows(2);
+    try {
+      sqlMap.startTransaction();
+      sqlMap.startBatch();
+
+      for (int i = 10; i < 15; i++) {
+        Account account = new Account();
+        account.setId(i);
+        account.setFirstName("fred");
+        account.setLastName("flintstone");
+        account.setEmailAddress("fred.flintstone@gmail.com");
+        sqlMap.insert("insertAccountViaInlineParameters", account);
+      }
+
+      // the first four rows have been sent already
+      assertNotNull(sqlMap.queryForObject("getAccountViaColumnName", new Integer(13)));
+
+      List results = sqlMap.executeBatchDetailed();
+      sqlMap.commitTransaction();
+
+      assertEquals(1, results.size());
+      BatchResult br = (BatchResult) results.get(0);
+      assertEquals(5, br.getUpdateCounts().length);
+    } catch (BatchException e) {
+      fail(e.getMessage());
+    } finally {
+      sqlMap.endTransaction();
+    }
+  }
 }
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import testdomain.Account;
+
+/**
+ * Inserts rows whose keys are generated by the database and read back with Statement.getGeneratedKeys(). HSQLDB 1.8
+ * does not return generated keys, so this runs on Derby.
+ */
+public class GeneratedKeysTest extends BaseSqlMapTest {
+
+  @Override
+  protected void setUp() throws Exception {
+    initSqlMap("com/ibatis/sqlmap/maps/DerbySqlMapConfig.xml", null);
+    initScript("scripts/derby-generated-keys-init.sql");
+  }
+
+  public void testShouldSetGeneratedKeyOnParameter() throws Exception {
+    Account first = newAccount("Clinton");
+    sqlMap.insert("insertGeneratedKeyAccount", first);
+    Account second = newAccount("Jim");
+    sqlMap.insert("insertGeneratedKeyAccount", second);
+
+    assertEquals(100, first.getId());
+    assertEquals(101, second.getId());
+    assertEquals("Jim", sqlMap.queryForObject("getGeneratedKeyAccountName", new Integer(second.getId())));
+  }
+
+  public void testShouldInsertWithoutKeyProperty() throws Exception {
+    Account account = newAccount("Clinton");
+    sqlMap.insert("insertGeneratedKeyAccountWithoutKeyProperty", account);
+
+    assertEquals(0, account.getId());
+    assertEquals(new Integer(1), sqlMap.queryForObject("countGeneratedKeyAccounts"));
+  }
+
+  private static Account newAccount(String firstName) {
+    Account account = new Account();
+    account.setFirstName(firstName);
+    return account;
+  }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import com.ibatis.sqlmap.engine.execution.BatchResult;
+import testdomain.Account;
+
+import java.util.List;
+
+/**
+ * Runs batched inserts that are rewritten into multi-row statements. HSQLDB 1.8 does not accept several rows in one
+ * VALUES clause, so this runs on Derby.
+ */
+public class MultiRowInsertTest extends BaseSqlMapTest {
+
+  @Override
+  protected void setUp() throws Exception {
+    initSqlMap("com/ibatis/sqlmap/maps/DerbySqlMapConfig.xml", null);
+    initScript("scripts/account-init.sql");
+  }
+
+  public void testMultiRowBatchWithRemainder() throws Exception {
+    sqlMap.startTransaction();
+    try {
+      sqlMap.startBatch();
+      for (int id = 10; id < 15; id++) {
+        sqlMap.insert("insertAccountsMultiRow", newAccount(id));
+      }
+      List results = sqlMap.executeBatchDetailed();
+      sqlMap.commitTransaction();
+
+      assertEquals(1, results.size());
+      // two full statements of two rows, then the remaining row
+      int[] updateCounts = ((BatchResult) results.get(0)).getUpdateCounts();
+      assertEquals(3, updateCounts.length);
+      assertEquals(2, updateCounts[0]);
+      assertEquals(2, updateCounts[1]);
+      assertEquals(1, updateCounts[2]);
+    } finally {
+      sqlMap.endTransaction();
+    }
+
+    List accounts = sqlMap.queryForList("getAllAccountsViaResultMap", null);
+    assertEquals(10, accounts.size());
+    for (int id = 10; id < 15; id++) {
+      Account account = (Account) accounts.get(id - 5);
+      assertEquals(id, account.getId());
+      assertEquals("First " + id, account.getFirstName());
+      assertEquals("Last " + id, account.getLastName());
+      assertEquals("account" + id + "@ibatis.com", account.getEmailAddress());
+    }
+  }
+
+  private static Account newAccount(int id) {
+    Account account = new Account();
+    account.setId(id);
+    account.setFirstName("First " + id);
+    account.setLastName("Last " + id);
+    account.setEmailAddress("account" + id + "@ibatis.com");
+    account.setBannerOption(true);
+    account.setCartOption(false);
+    return account;
+  }
+
+}
@@ -16,10 +16,16 @@
 package com.ibatis.sqlmap;
 
 import com.ibatis.common.jdbc.exception.NestedSQLException;
+import com.ibatis.sqlmap.engine.execution.StatementStatistics;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.mapping.result.loader.NestedSelectBatch;
 import testdomain.Account;
+import testdomain.LineItem;
 import testdomain.Order;
 
+import java.lang.reflect.Proxy;
 import java.sql.SQLException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -39,6 +45,12 @@ public class ResultMapTest extends BaseSqlMapTest {
   protected void tearDown() throws Exception {
   }
 
+  private long countExecutions(String id) {
+    Map statistics = ((SqlMapClientImpl) sqlMap).getDelegate().getStatementStatistics();
+    StatementStatistics statementStatistics = (StatementStatistics) statistics.get(id);
+    return statementStatistics == null ? 0 : statementStatistics.getExecutions();
+  }
+
   // RESULT MAP FEATURE TESTS
 
   public void testColumnsByName() throws SQLException {
@@ -105,6 +117,68 @@ public class ResultMapTest extends BaseSqlMapTest {
     }
   }
 
+  public void testBatchedNestedSelects() throws SQLException {
+    ((SqlMapClientImpl) sqlMap).getDelegate().setAdaptiveFetchSizeEnabled(true);
+    List list = sqlMap.queryForList("getAllOrdersWithBatchedAccountsAndLineItems", null);
+
+    assertEquals(10, list.size());
+    Order order = (Order) list.get(0);
+    assertOrder1(order);
+    assertAccount1(order.getAccount());
+    for (int i = 0; i < list.size(); i++) {
+      order = (Order) list.get(i);
+      assertNotNull(order.getAccount());
+      assertEquals(2, order.getLineItems().size());
+    }
+    // orders 1 and 10 belong to the same account, which was loaded once for both
+    assertSame(order.getAccount(), ((Order) list.get(0)).getAccount());
+    // one IN-list query for the 5 accounts and one for the line items of the 10 orders, none per row
+    assertEquals(1, countExecutions("getAccountViaColumnName-InList10"));
+    assertEquals(1, countExecutions("getLineItemsForOrder-InList10"));
+    assertEquals(0, countExecutions("getAccountViaColumnName"));
+    assertEquals(0, countExecutions("getLineItemsForOrder"));
+  }
+
+  public void testBatchedNestedSelectsAreChunked() throws SQLException {
+    ((SqlMapClientImpl) sqlMap).getDelegate().setAdaptiveFetchSizeEnabled(true);
+    List list = sqlMap.queryForList("getManyKeysWithBatchedAccounts", null);
+
+    assertEquals(625, list.size());
+    // 625 distinct keys are more than one IN-list holds, so they are sent in two
+    assertTrue(625 > NestedSelectBatch.MAX_KEYS);
+    assertEquals(2, countExecutions("getAccountViaColumnName-InList" + NestedSelectBatch.MAX_KEYS));
+    for (int i = 0; i < list.size(); i++) {
+      Map row = (Map) list.get(i);
+      int key = ((Integer) row.get("key")).intValue();
+      Account account = (Account) row.get("account");
+      if (key <= 5) {
+        assertEquals(key, account.getId());
+      } else {
+        assertNull(account);
+      }
+    }
+  }
+
+  public void testLazyBatchedNestedSelects() throws SQLException {
+    ((SqlMapClientImpl) sqlMap).getDelegate().setAdaptiveFetchSizeEnabled(true);
+    List list = sqlMap.queryForList("getAllOrdersWithBatchedAccountsAndLineItems", null);
+
+    // lazy loading is on, the line items of all orders are loaded when the first order's are touched
+    for (int i = 0; i < list.size(); i++) {
+      assertTrue(Proxy.isProxyClass(((Order) list.get(i)).getLineItems().getClass()));
+    }
+    assertEquals(0, countExecutions("getLineItemsForOrder-InList10"));
+    for (int i = list.size() - 1; i >= 0; i--) {
+      Order order = (Order) list.get(i);
+      assertEquals(2, order.getLineItems().size());
+      for (Iterator iter = order.getLineItems().iterator(); iter.hasNext();) {
+        assertEquals(order.getId(), ((LineItem) iter.next()).getOrderId());
+      }
+    }
+    assertEquals(1, countExecutions("getLineItemsForOrder-InList10"));
+    assertEquals(0, countExecutions("getLineItemsForOrder"));
+  }
+
   public void testArrayMapping() throws SQLException {
     Order order = (Order) sqlMap.queryForObject("getOrderWithLineItemArray", new Integer(1));
 
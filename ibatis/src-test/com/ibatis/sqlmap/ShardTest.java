@@ -0,0 +1,210 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import com.ibatis.common.jdbc.ScriptRunner;
+import com.ibatis.common.jdbc.SimpleDataSource;
+import com.ibatis.common.resources.Resources;
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.engine.impl.ExtendedSqlMapClient;
+import com.ibatis.sqlmap.engine.transaction.ShardSet;
+import com.ibatis.sqlmap.engine.transaction.TransactionConfig;
+import com.ibatis.sqlmap.engine.transaction.jdbc.JdbcTransactionConfig;
+import testdomain.Account;
+
+import javax.sql.DataSource;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public class ShardTest extends BaseSqlMapTest {
+
+  private DataSource[] shards;
+
+  @Override
+  protected void setUp() throws Exception {
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", null);
+    initScript("scripts/account-init.sql");
+
+    // even account ids live on shard 0, odd ones on shard 1
+    shards = new DataSource[] { newShard("shard0", 1), newShard("shard1", 0) };
+    TransactionConfig[] configs = new TransactionConfig[shards.length];
+    for (int i = 0; i < shards.length; i++) {
+      JdbcTransactionConfig config = new JdbcTransactionConfig();
+      config.setDataSource(shards[i]);
+      configs[i] = config;
+    }
+    ((ExtendedSqlMapClient) sqlMap).getDelegate().getTxManager().setShards(new ShardSet(configs));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    ((ExtendedSqlMapClient) sqlMap).getDelegate().getTxManager().setShards(null);
+  }
+
+  public void testShardSelection() {
+    ShardSet shardSet = new ShardSet(new TransactionConfig[] { new JdbcTransactionConfig(),
+        new JdbcTransactionConfig(), new JdbcTransactionConfig() });
+    assertEquals(0, shardSet.getShard(new Integer(3)));
+    assertEquals(1, shardSet.getShard(new Long(4)));
+    assertEquals(2, shardSet.getShard(new Integer(-1)));
+    assertEquals(shardSet.getShard("key"), shardSet.getShard(new String("key")));
+  }
+
+  public void testSingleShardQuery() throws Exception {
+    Account account = (Account) sqlMap.queryForObject("getShardedAccount", new Integer(3));
+    assertEquals("Elizabeth", account.getFirstName());
+    account = (Account) sqlMap.queryForObject("getShardedAccount", new Integer(4));
+    assertEquals("Bob", account.getFirstName());
+  }
+
+  public void testSingleShardInsert() throws Exception {
+    sqlMap.insert("insertShardedAccount", newAccount6());
+    assertEquals(3, countAccounts(shards[0]));
+    assertEquals(3, countAccounts(shards[1]));
+    assertAccount6((Account) sqlMap.queryForObject("getShardedAccount", new Integer(6)));
+  }
+
+  public void testInsertWithoutShardKeyFails() throws Exception {
+    Map param = new HashMap();
+    try {
+      sqlMap.insert("insertShardedAccount", param);
+      fail("Expected a SqlMapException.");
+    } catch (SqlMapException e) {
+      // expected
+    }
+  }
+
+  public void testScatterQueryConcatenatesShards() throws Exception {
+    List list = sqlMap.queryForList("getShardedAccounts", null);
+    assertEquals(5, list.size());
+    // shard 0 then shard 1
+    assertEquals(2, ((Account) list.get(0)).getId());
+    assertEquals(4, ((Account) list.get(1)).getId());
+    assertEquals(1, ((Account) list.get(2)).getId());
+  }
+
+  public void testScatterQueryMergesOnOrderProperty() throws Exception {
+    List list = sqlMap.queryForList("getShardedAccountsByLastName", new HashMap());
+    assertEquals(5, list.size());
+    for (int i = 0; i < list.size(); i++) {
+      assertEquals(5 - i, ((Account) list.get(i)).getId());
+    }
+
+    list = sqlMap.queryForList("getShardedAccountsByLastName", new HashMap(), 1, 3);
+    assertEquals(3, list.size());
+    assertEquals(4, ((Account) list.get(0)).getId());
+    assertEquals(3, ((Account) list.get(1)).getId());
+    assertEquals(2, ((Account) list.get(2)).getId());
+  }
+
+  public void testScatterQueryForObject() throws Exception {
+    Map param = new HashMap();
+    param.put("lastName", "Jackson");
+    Account account = (Account) sqlMap.queryForObject("getShardedAccountsByLastName", param);
+    assertEquals(4, account.getId());
+  }
+
+  public void testScatterUpdate() throws Exception {
+    Map param = new HashMap();
+    param.put("lastName", "Sharded");
+    assertEquals(5, sqlMap.update("updateShardedAccountLastNames", param));
+
+    param.put("id", new Integer(5));
+    param.put("lastName", "Five");
+    assertEquals(1, sqlMap.update("updateShardedAccountLastNames", param));
+    assertEquals("Five", ((Account) sqlMap.queryForObject("getShardedAccount", new Integer(5))).getLastName());
+    assertEquals("Sharded", ((Account) sqlMap.queryForObject("getShardedAccount", new Integer(1))).getLastName());
+  }
+
+  public void testBatchIsSplitPerShard() throws Exception {
+    try {
+      sqlMap.startTransaction();
+      sqlMap.startBatch();
+      for (int i = 6; i <= 9; i++) {
+        Account account = newAccount6();
+        account.setId(i);
+        sqlMap.insert("insertShardedAccount", account);
+      }
+      assertEquals(4, sqlMap.executeBatch());
+      sqlMap.commitTransaction();
+    } finally {
+      sqlMap.endTransaction();
+    }
+    assertEquals(4, countAccounts(shards[0]));
+    assertEquals(5, countAccounts(shards[1]));
+  }
+
+  public void testRollbackEndsShardTransactions() throws Exception {
+    try {
+      sqlMap.startTransaction();
+      sqlMap.insert("insertShardedAccount", newAccount6());
+    } finally {
+      sqlMap.endTransaction();
+    }
+    assertEquals(2, countAccounts(shards[0]));
+    assertNull(sqlMap.queryForObject("getShardedAccount", new Integer(6)));
+  }
+
+  private DataSource newShard(String name, int removedRemainder) throws Exception {
+    Properties props = Resources.getResourceAsProperties("com/ibatis/sqlmap/maps/SqlMapConfig.properties");
+    Properties dsProps = new Properties();
+    dsProps.setProperty("JDBC.Driver", props.getProperty("driver"));
+    dsProps.setProperty("JDBC.ConnectionURL", "jdbc:hsqldb:mem:" + name);
+    dsProps.setProperty("JDBC.Username", props.getProperty("username"));
+    dsProps.setProperty("JDBC.Password", props.getProperty("password"));
+    dsProps.setProperty("JDBC.DefaultAutoCommit", "true");
+    SimpleDataSource shard = new SimpleDataSource(dsProps);
+
+    Connection conn = shard.getConnection();
+    try {
+      Reader reader = Resources.getResourceAsReader("scripts/account-init.sql");
+      ScriptRunner runner = new ScriptRunner(conn, false, false);
+      runner.setLogWriter(null);
+      runner.setErrorLogWriter(null);
+      runner.runScript(reader);
+      reader.close();
+      Statement statement = conn.createStatement();
+      statement.executeUpdate("delete from ACCOUNT where MOD(ACC_ID, 2) = " + removedRemainder);
+      statement.close();
+      conn.commit();
+    } finally {
+      conn.close();
+    }
+    return shard;
+  }
+
+  private int countAccounts(DataSource shard) throws Exception {
+    Connection conn = shard.getConnection();
+    try {
+      Statement statement = conn.createStatement();
+      ResultSet rs = statement.executeQuery("select count(*) from ACCOUNT");
+      rs.next();
+      int count = rs.getInt(1);
+      rs.close();
+      statement.close();
+      return count;
+    } finally {
+      conn.close();
+    }
+  }
+
+}
@@ -16,9 +16,15 @@
 package com.ibatis.sqlmap;
 
 import com.ibatis.common.util.PaginatedList;
+import com.ibatis.sqlmap.client.ColumnarResult;
+import com.ibatis.sqlmap.client.Cursor;
+import com.ibatis.sqlmap.client.SqlMapFutures;
 import com.ibatis.sqlmap.client.SqlMapSession;
 import com.ibatis.sqlmap.client.event.RowHandler;
+import com.ibatis.sqlmap.engine.accessplan.AccessPlanFactory;
 import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.mapping.statement.SpillableList;
 import testdomain.Account;
 import testdomain.LineItem;
 import testdomain.Order;
@@ -32,6 +38,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 
 public class StatementTest extends BaseSqlMapTest {
 
@@ -56,6 +65,40 @@ public class StatementTest extends BaseSqlMapTest {
     assertAccount1(account);
   }
 
+  public void testQueriesWithBytecodeEnhancement() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("enhancementEnabled", "true");
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", props);
+    try {
+      // a flat result map and an automatic one, both mapped by generated row mappers
+      List list = sqlMap.queryForList("getAllLineItemProps", new Integer(1));
+      assertEquals(2, list.size());
+      LineItem item = (LineItem) list.get(0);
+      assertEquals(1, item.getOrderId());
+      assertNotNull(item.getItemCode());
+
+      list = sqlMap.queryForList("getLineItemsForOrder", new Integer(1));
+      assertEquals(2, list.size());
+      item = (LineItem) list.get(0);
+      assertEquals(1, item.getOrderId());
+      assertNotNull(item.getPrice());
+
+      // a result object passed in is mapped, and returned
+      Map param = new HashMap();
+      param.put("orderId", new Integer(1));
+      param.put("lineId", new Integer(item.getId()));
+      LineItem supplied = new LineItem();
+      assertSame(supplied, sqlMap.queryForObject("getSpecificLineItem", param, supplied));
+      assertEquals(item.getId(), supplied.getId());
+      assertEquals(item.getItemCode(), supplied.getItemCode());
+
+      Account account = (Account) sqlMap.queryForObject("getAccountViaColumnName", new Integer(1));
+      assertAccount1(account);
+    } finally {
+      AccessPlanFactory.setBytecodeEnhancementEnabled(false);
+    }
+  }
+
   public void testUserConnection() throws SQLException {
     DataSource ds = sqlMap.getDataSource();
     Connection conn = ds.getConnection();
@@ -523,6 +566,141 @@ public class StatementTest extends BaseSqlMapTest {
 
   }
 
+  public void testExpiredDeadline() throws SQLException {
+    sqlMap.setDeadline(System.currentTimeMillis() - 1);
+    try {
+      sqlMap.queryForObject("getAccountViaColumnName", new Integer(1));
+      fail("Expected the expired deadline to fail the call");
+    } catch (SQLException e) {
+      assertEquals("57014", e.getSQLState());
+    } finally {
+      sqlMap.setDeadline(0);
+    }
+    assertEquals(0, sqlMap.getDeadline());
+
+    sqlMap.setDeadline(System.currentTimeMillis() + 60000);
+    try {
+      assertAccount1((Account) sqlMap.queryForObject("getAccountViaColumnName", new Integer(1)));
+    } finally {
+      sqlMap.setDeadline(0);
+    }
+  }
+
+  public void testQueryMulti() throws SQLException {
+    List results = sqlMap.queryMulti(new String[] { "getAccountViaColumnName", "getAllAccountsViaResultMap",
+        "getNoAccountsViaResultMap" }, new Object[] { new Integer(1), null, null });
+    assertEquals(3, results.size());
+
+    List accounts = (List) results.get(0);
+    assertEquals(1, accounts.size());
+    assertAccount1((Account) accounts.get(0));
+
+    accounts = (List) results.get(1);
+    assertEquals(5, accounts.size());
+    assertEquals(5, ((Account) accounts.get(4)).getId());
+
+    assertEquals(0, ((List) results.get(2)).size());
+  }
+
+  public void testCoalescedQuery() throws Exception {
+    final Object[] results = new Object[4];
+    Thread[] threads = new Thread[results.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            results[index] = sqlMap.queryForObject("getAccountCoalesced", new Integer(1));
+          } catch (SQLException e) {
+            results[index] = e;
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (int i = 0; i < threads.length; i++) {
+      threads[i].join();
+      assertAccount1((Account) results[i]);
+      for (int j = 0; j < i; j++) {
+        assertNotSame(results[j], results[i]);
+      }
+    }
+  }
+
+  public void testCoalescedQuerySeesOwnWrites() throws SQLException {
+    try {
+      sqlMap.startTransaction();
+      sqlMap.insert("insertAccountViaInlineParameters", newAccount6());
+      assertEquals("Jennifer", ((Account) sqlMap.queryForObject("getAccountCoalesced", new Integer(6))).getFirstName());
+    } finally {
+      sqlMap.endTransaction();
+    }
+    assertNull(sqlMap.queryForObject("getAccountCoalesced", new Integer(6)));
+  }
+
+  public void testSpillableQueryForList() throws SQLException {
+    ((SqlMapClientImpl) sqlMap).getDelegate().setSpillThreshold(2);
+    try {
+      List list = sqlMap.queryForList("getAllAccountsSpillable", null);
+      assertTrue(list instanceof SpillableList);
+      assertEquals(3, ((SpillableList) list).getSpilledRowCount());
+      assertEquals(5, list.size());
+      assertAccount1((Account) list.get(0));
+      assertEquals(3, ((Account) list.get(2)).getId());
+      assertEquals("no_email@provided.com", ((Account) list.get(2)).getEmailAddress());
+      assertEquals(5, ((Account) list.get(4)).getId());
+    } finally {
+      ((SqlMapClientImpl) sqlMap).getDelegate().setSpillThreshold(SqlMapExecutorDelegate.DEFAULT_SPILL_THRESHOLD);
+    }
+  }
+
+  public void testExecuteQueryForKeysetPaginatedList() throws SQLException {
+    PaginatedList list = sqlMap.queryForKeysetPaginatedList("getAllAccountsByKeyset", null, 2);
+
+    assertTrue(list.isFirstPage());
+    assertFalse(list.isPreviousPageAvailable());
+    assertTrue(list.isNextPageAvailable());
+    assertEquals(2, list.size());
+    assertAccount1((Account) list.get(0));
+    assertEquals(2, ((Account) list.get(1)).getId());
+
+    assertTrue(list.nextPage());
+    assertTrue(list.isMiddlePage());
+    assertEquals(2, list.size());
+    assertEquals(3, ((Account) list.get(0)).getId());
+    assertEquals(4, ((Account) list.get(1)).getId());
+
+    assertTrue(list.nextPage());
+    assertTrue(list.isLastPage());
+    assertFalse(list.isNextPageAvailable());
+    assertEquals(1, list.size());
+    assertEquals(5, ((Account) list.get(0)).getId());
+    assertFalse(list.nextPage());
+
+    assertTrue(list.previousPage());
+    assertEquals(1, list.getPageIndex());
+    assertEquals(3, ((Account) list.get(0)).getId());
+
+    list.gotoPage(0);
+    assertEquals(1, ((Account) list.get(0)).getId());
+
+    // past the end stops on the last page
+    list.gotoPage(5);
+    assertEquals(2, list.getPageIndex());
+    assertEquals(5, ((Account) list.get(0)).getId());
+  }
+
+  public void testExecuteQueryForKeysetPage() throws SQLException {
+    List list = sqlMap.queryForKeysetPage("getAllAccountsByKeyset", null, new Integer(2), 2);
+    assertEquals(2, list.size());
+    assertEquals(3, ((Account) list.get(0)).getId());
+    assertEquals(4, ((Account) list.get(1)).getId());
+
+    list = sqlMap.queryForKeysetPage("getAllAccountsByKeyset", null, new Integer(5), 2);
+    assertEquals(0, list.size());
+  }
+
   public void testExecuteQueryForListWithResultMapWithDynamicElement() throws SQLException {
 
     List list = sqlMap.queryForList("getAllAccountsViaResultMapWithDynamicElement", "LIKE");
@@ -640,6 +818,132 @@ public class StatementTest extends BaseSqlMapTest {
      */
   }
 
+  // CURSOR TESTS
+
+  public void testExecuteQueryForCursor() throws SQLException {
+    Cursor cursor = sqlMap.queryForCursor("getAllAccountsViaResultMap", null);
+    List list = new ArrayList();
+    try {
+      while (cursor.hasNext()) {
+        list.add(cursor.next());
+      }
+      assertTrue(cursor.isClosed());
+    } finally {
+      cursor.close();
+    }
+    assertEquals(5, cursor.getRowCount());
+    assertEquals(5, list.size());
+    assertAccount1((Account) list.get(0));
+    assertEquals(1, ((Account) list.get(0)).getId());
+    assertEquals(5, ((Account) list.get(4)).getId());
+  }
+
+  public void testExecuteQueryForCursorClosedEarly() throws SQLException {
+    Cursor cursor = sqlMap.queryForCursor("getAllAccountsViaResultMap", null, 2);
+    try {
+      assertTrue(cursor.hasNext());
+      assertAccount1((Account) cursor.next());
+    } finally {
+      cursor.close();
+    }
+    assertTrue(cursor.isClosed());
+    assertFalse(cursor.hasNext());
+    assertEquals(1, cursor.getRowCount());
+
+    // the session must be usable again once the cursor is closed
+    List list = sqlMap.queryForList("getAllAccountsViaResultMap", null);
+    assertEquals(5, list.size());
+  }
+
+  // COLUMNAR TESTS
+
+  public void testExecuteQueryForColumns() throws SQLException {
+    ColumnarResult result = sqlMap.queryForColumns("getAllAccountsViaResultMap", null);
+    assertEquals(5, result.getRowCount());
+
+    int id = result.findColumn("id");
+    assertEquals(int.class, result.getColumnType(id));
+    int[] ids = result.getIntColumn(id);
+    assertEquals(5, ids.length);
+    assertEquals(1, ids[0]);
+    assertEquals(5, ids[4]);
+
+    int email = result.findColumn("emailAddress");
+    Object[] emails = result.getObjectColumn(email);
+    assertEquals("clinton.begin@ibatis.com", emails[0]);
+    assertEquals("no_email@provided.com", emails[2]);
+    assertFalse(result.isNull(email, 2));
+  }
+
+  public void testExecuteQueryForColumnsViaResultClass() throws SQLException {
+    ColumnarResult result = sqlMap.queryForColumns("getAllAccountsViaResultClass", null);
+    assertEquals(5, result.getRowCount());
+    assertEquals(new Integer(1), result.getValue(result.findColumn("id"), 0));
+
+    int email = result.findColumn("emailAddress");
+    assertTrue(result.isNull(email, 2));
+    assertNull(result.getValue(email, 2));
+  }
+
+  // ASYNCHRONOUS TESTS
+
+  public void testExecuteQueriesAsync() throws SQLException {
+    List futures = new ArrayList();
+    futures.add(sqlMap.queryForListAsync("getAllAccountsViaResultMap", null));
+    futures.add(sqlMap.queryForObjectAsync("getAccountViaColumnName", new Integer(1)));
+    List results = SqlMapFutures.getAll(futures);
+
+    assertEquals(5, ((List) results.get(0)).size());
+    assertAccount1((Account) results.get(1));
+  }
+
+  public void testExecuteUpdateAsync() throws SQLException {
+    Account account = (Account) sqlMap.queryForObject("getAccountViaColumnName", new Integer(1));
+    account.setEmailAddress("new.clinton@ibatis.com");
+    assertEquals(new Integer(1), SqlMapFutures.get(sqlMap.updateAsync("updateAccountViaInlineParameters", account)));
+
+    account = (Account) sqlMap.queryForObject("getAccountViaColumnName", new Integer(1));
+    assertEquals("new.clinton@ibatis.com", account.getEmailAddress());
+  }
+
+  public void testAsyncErrorIsThrownBySqlMapFutures() {
+    try {
+      SqlMapFutures.get(sqlMap.queryForObjectAsync("getAllAccountsViaResultMap", null));
+      fail("Expected SQLException, more than one result.");
+    } catch (SQLException e) {
+      // expected
+    }
+  }
+
+  public void testAsyncStatementIsRejectedWhenQueueIsFull() throws Exception {
+    SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) sqlMap).getDelegate();
+    delegate.setAsyncPoolSize(1);
+    delegate.setAsyncQueueSize(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Runnable blocker = new Runnable() {
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          // exit
+        }
+      }
+    };
+    try {
+      // one statement runs and one waits
+      delegate.getAsyncExecutor().execute(blocker);
+      delegate.getAsyncExecutor().execute(blocker);
+      try {
+        sqlMap.queryForListAsync("getAllAccountsViaResultMap", null);
+        fail("Expected RejectedExecutionException, the queue is full.");
+      } catch (RejectedExecutionException e) {
+        // expected
+      }
+    } finally {
+      release.countDown();
+    }
+  }
+
   // MAP TESTS
 
   public void testExecuteQueryForMap() throws SQLException {
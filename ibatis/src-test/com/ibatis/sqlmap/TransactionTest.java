@@ -15,9 +15,21 @@
  */
 package com.ibatis.sqlmap;
 
+import com.ibatis.common.jdbc.ScriptRunner;
+import com.ibatis.common.jdbc.SimpleDataSource;
+import com.ibatis.common.resources.Resources;
+import com.ibatis.sqlmap.engine.impl.ExtendedSqlMapClient;
+import com.ibatis.sqlmap.engine.transaction.ReplicaSet;
+import com.ibatis.sqlmap.engine.transaction.TransactionConfig;
+import com.ibatis.sqlmap.engine.transaction.TransactionManager;
+import com.ibatis.sqlmap.engine.transaction.jdbc.JdbcTransactionConfig;
 import testdomain.Account;
 
+import java.io.Reader;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
 
 public class TransactionTest extends BaseSqlMapTest {
 
@@ -160,4 +172,98 @@ public class TransactionTest extends BaseSqlMapTest {
     assertAccount1(account);
   }
 
+  // READ REPLICA TESTS
+
+  public void testReadsGoToReplicaOutsideTransactions() throws Exception {
+    TransactionManager txManager = ((ExtendedSqlMapClient) sqlMap).getDelegate().getTxManager();
+    ReplicaSet replicas = newReplicas();
+    txManager.setReplicas(replicas);
+    try {
+      Account account = (Account) sqlMap.queryForObject("getAccountNullableEmail", new Integer(1));
+      assertEquals("Replica", account.getFirstName());
+      assertEquals(0, replicas.getOutstanding(0));
+
+      account = (Account) sqlMap.queryForObject("getAccountNullableEmailFromPrimary", new Integer(1));
+      assertEquals("Clinton", account.getFirstName());
+
+      try {
+        sqlMap.startTransaction();
+        account = (Account) sqlMap.queryForObject("getAccountNullableEmail", new Integer(1));
+        assertEquals("Clinton", account.getFirstName());
+        sqlMap.commitTransaction();
+      } finally {
+        sqlMap.endTransaction();
+      }
+    } finally {
+      txManager.setReplicas(null);
+    }
+  }
+
+  public void testReadsStayOnPrimaryAfterWrite() throws Exception {
+    TransactionManager txManager = ((ExtendedSqlMapClient) sqlMap).getDelegate().getTxManager();
+    ReplicaSet replicas = newReplicas();
+    replicas.setReadYourWritesMillis(60000);
+    txManager.setReplicas(replicas);
+    try {
+      sqlMap.update("insertAccountViaParameterMap", newAccount6());
+
+      Account account = (Account) sqlMap.queryForObject("getAccountNullableEmail", new Integer(6));
+      assertAccount6(account);
+
+      replicas.setReadYourWritesMillis(0);
+      account = (Account) sqlMap.queryForObject("getAccountNullableEmail", new Integer(6));
+      assertNull(account);
+    } finally {
+      txManager.setReplicas(null);
+    }
+  }
+
+  public void testReplicaSelection() {
+    ReplicaSet roundRobin = new ReplicaSet(new TransactionConfig[] { new JdbcTransactionConfig(),
+        new JdbcTransactionConfig() }, ReplicaSet.ROUND_ROBIN);
+    assertEquals(0, roundRobin.acquire());
+    assertEquals(1, roundRobin.acquire());
+    assertEquals(0, roundRobin.acquire());
+
+    ReplicaSet leastOutstanding = new ReplicaSet(new TransactionConfig[] { new JdbcTransactionConfig(),
+        new JdbcTransactionConfig() }, ReplicaSet.LEAST_OUTSTANDING);
+    assertEquals(0, leastOutstanding.acquire());
+    assertEquals(1, leastOutstanding.acquire());
+    assertEquals(0, leastOutstanding.acquire());
+    leastOutstanding.release(1);
+    assertEquals(1, leastOutstanding.acquire());
+    assertEquals(1, leastOutstanding.acquire());
+  }
+
+  private ReplicaSet newReplicas() throws Exception {
+    Properties props = Resources.getResourceAsProperties("com/ibatis/sqlmap/maps/SqlMapConfig.properties");
+    Properties dsProps = new Properties();
+    dsProps.setProperty("JDBC.Driver", props.getProperty("driver"));
+    dsProps.setProperty("JDBC.ConnectionURL", "jdbc:hsqldb:mem:replica");
+    dsProps.setProperty("JDBC.Username", props.getProperty("username"));
+    dsProps.setProperty("JDBC.Password", props.getProperty("password"));
+    dsProps.setProperty("JDBC.DefaultAutoCommit", "true");
+    SimpleDataSource replica = new SimpleDataSource(dsProps);
+
+    Connection conn = replica.getConnection();
+    try {
+      Reader reader = Resources.getResourceAsReader("scripts/account-init.sql");
+      ScriptRunner runner = new ScriptRunner(conn, false, false);
+      runner.setLogWriter(null);
+      runner.setErrorLogWriter(null);
+      runner.runScript(reader);
+      reader.close();
+      Statement statement = conn.createStatement();
+      statement.executeUpdate("update ACCOUNT set ACC_FIRST_NAME = 'Replica' where ACC_ID = 1");
+      statement.close();
+      conn.commit();
+    } finally {
+      conn.close();
+    }
+
+    JdbcTransactionConfig config = new JdbcTransactionConfig();
+    config.setDataSource(replica);
+    return new ReplicaSet(new TransactionConfig[] { config }, ReplicaSet.ROUND_ROBIN);
+  }
+
 }
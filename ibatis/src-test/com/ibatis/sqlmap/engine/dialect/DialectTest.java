@@ -0,0 +1,81 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.dialect;
+
+import com.ibatis.sqlmap.engine.execution.SqlExecutor;
+
+import junit.framework.TestCase;
+
+public class DialectTest extends TestCase {
+
+  private static final int NO_MAX = SqlExecutor.NO_MAXIMUM_RESULTS;
+
+  public void testLimitOffset() {
+    Dialect dialect = new LimitOffsetDialect();
+    assertEquals("select * from foo LIMIT ? OFFSET ?", dialect.getLimitSql("select * from foo ", 10, 5));
+    assertIntsEqual(new int[] { 5, 10 }, dialect.getLimitParameters(10, 5));
+    assertEquals("select * from foo LIMIT ?", dialect.getLimitSql("select * from foo", 0, 5));
+    assertIntsEqual(new int[] { 5 }, dialect.getLimitParameters(0, 5));
+    assertEquals("select * from foo LIMIT ? OFFSET ?", dialect.getLimitSql("select * from foo", 10, NO_MAX));
+    assertIntsEqual(new int[] { Integer.MAX_VALUE, 10 }, dialect.getLimitParameters(10, NO_MAX));
+    assertNull(dialect.getLimitSql("select * from foo", 0, NO_MAX));
+  }
+
+  public void testOffsetFetch() {
+    Dialect dialect = new OffsetFetchDialect();
+    assertEquals("select * from foo OFFSET ? ROWS FETCH NEXT ? ROWS ONLY", dialect.getLimitSql("select * from foo",
+        10, 5));
+    assertIntsEqual(new int[] { 10, 5 }, dialect.getLimitParameters(10, 5));
+    assertEquals("select * from foo OFFSET ? ROWS", dialect.getLimitSql("select * from foo", 10, NO_MAX));
+    assertIntsEqual(new int[] { 10 }, dialect.getLimitParameters(10, NO_MAX));
+
+    dialect = new SqlServerDialect();
+    assertNull(dialect.getLimitSql("select * from foo", 10, 5));
+    assertEquals("select * from foo order by id OFFSET ? ROWS FETCH NEXT ? ROWS ONLY", dialect.getLimitSql(
+        "select * from foo order by id", 10, 5));
+  }
+
+  public void testOracle() {
+    Dialect dialect = new OracleDialect();
+    assertEquals("select * from ( select row_.*, rownum rownum_ from ( select * from foo ) row_"
+        + " where rownum <= ? ) where rownum_ > ?", dialect.getLimitSql("select * from foo", 10, 5));
+    assertIntsEqual(new int[] { 15, 10 }, dialect.getLimitParameters(10, 5));
+    assertEquals("select * from ( select * from foo ) where rownum <= ?", dialect.getLimitSql("select * from foo", 0,
+        5));
+    assertIntsEqual(new int[] { 5 }, dialect.getLimitParameters(0, 5));
+    // ROWNUM_ is only added to skip rows
+    assertEquals(1, dialect.getAddedColumnCount(10, 5));
+    assertEquals(0, dialect.getAddedColumnCount(0, 5));
+    assertEquals(0, new LimitOffsetDialect().getAddedColumnCount(10, 5));
+  }
+
+  public void testRejectUnsafeStatements() {
+    Dialect dialect = new LimitOffsetDialect();
+    assertNull(dialect.getLimitSql("select * from foo limit 10", 0, 5));
+    assertNull(dialect.getLimitSql("select * from foo for update", 0, 5));
+    assertNull(dialect.getLimitSql("select * from foo;", 0, 5));
+    assertNull(dialect.getLimitSql("{call foo(?)}", 0, 5));
+    assertNull(new OracleDialect().getLimitSql("select * from foo where\nrownum < 3", 0, 5));
+  }
+
+  private static void assertIntsEqual(int[] expected, int[] actual) {
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], actual[i]);
+    }
+  }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.execution;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.Future;
+
+import com.ibatis.sqlmap.engine.transaction.Transaction;
+
+import junit.framework.TestCase;
+
+public class DeadlineTimerTest extends TestCase {
+
+  public void testQueryTimeout() {
+    assertEquals(0, DeadlineTimer.getQueryTimeout(null, DeadlineTimer.NO_DEADLINE));
+    assertEquals(30, DeadlineTimer.getQueryTimeout(new Integer(30), DeadlineTimer.NO_DEADLINE));
+    long deadline = System.currentTimeMillis() + 4500;
+    assertEquals(5, DeadlineTimer.getQueryTimeout(null, deadline));
+    assertEquals(5, DeadlineTimer.getQueryTimeout(new Integer(30), deadline));
+    assertEquals(2, DeadlineTimer.getQueryTimeout(new Integer(2), deadline));
+    // an expired deadline still leaves the database one second
+    assertEquals(1, DeadlineTimer.getQueryTimeout(null, System.currentTimeMillis() - 1000));
+  }
+
+  public void testCheck() throws SQLException {
+    DeadlineTimer.check(DeadlineTimer.NO_DEADLINE);
+    DeadlineTimer.check(System.currentTimeMillis() + 60000);
+    try {
+      DeadlineTimer.check(System.currentTimeMillis() - 1);
+      fail("Expected an expired deadline");
+    } catch (SQLTimeoutException e) {
+      assertEquals(DeadlineTimer.DEADLINE_EXPIRED_SQL_STATE, e.getSQLState());
+    }
+  }
+
+  public void testTranslate() {
+    SQLException e = new SQLException("cancelled");
+    assertSame(e, DeadlineTimer.translate(e, DeadlineTimer.NO_DEADLINE));
+    SQLException translated = DeadlineTimer.translate(e, System.currentTimeMillis() - 1);
+    assertTrue(translated instanceof SQLTimeoutException);
+    assertSame(e, translated.getCause());
+  }
+
+  public void testCancelledCancellationsArePurged() throws Exception {
+    DeadlineTimer timer = new DeadlineTimer(20);
+    long deadline = System.currentTimeMillis() + 60000;
+    for (int i = 0; i < 100; i++) {
+      Future cancel = timer.cancelAt(null, deadline);
+      cancel.cancel(false);
+    }
+    long end = System.currentTimeMillis() + 2000;
+    while (timer.getQueueSize() > 1 && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    // only the periodic purge is left
+    assertEquals(1, timer.getQueueSize());
+  }
+
+  public void testConnectionObtainedAfterDeadline() throws Exception {
+    final long deadline = System.currentTimeMillis() + 100;
+    Transaction slowPool = new StubTransaction() {
+      public Connection getConnection() throws SQLException {
+        try {
+          Thread.sleep(deadline - System.currentTimeMillis() + 50);
+        } catch (InterruptedException e) {
+          throw new SQLException(e.toString());
+        }
+        return null;
+      }
+    };
+    try {
+      DeadlineTimer.getConnection(slowPool, deadline);
+      fail("Expected an expired deadline");
+    } catch (SQLTimeoutException e) {
+      assertEquals(DeadlineTimer.DEADLINE_EXPIRED_SQL_STATE, e.getSQLState());
+    }
+  }
+
+  public void testPoolFailureAfterDeadline() throws Exception {
+    final SQLException poolTimeout = new SQLException("No connection available");
+    Transaction exhaustedPool = new StubTransaction() {
+      public Connection getConnection() throws SQLException {
+        throw poolTimeout;
+      }
+    };
+    try {
+      DeadlineTimer.getConnection(exhaustedPool, System.currentTimeMillis() - 1);
+      fail("Expected an expired deadline");
+    } catch (SQLTimeoutException e) {
+      assertSame(poolTimeout, e.getCause());
+    }
+    try {
+      DeadlineTimer.getConnection(exhaustedPool, DeadlineTimer.NO_DEADLINE);
+      fail("Expected the pool failure");
+    } catch (SQLException e) {
+      assertSame(poolTimeout, e);
+    }
+  }
+
+  private abstract static class StubTransaction implements Transaction {
+
+    public void commit() {
+    }
+
+    public void rollback() {
+    }
+
+    public void close() {
+    }
+
+  }
+
+}
@@ -0,0 +1,368 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.execution;
+
+import java.io.Reader;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ibatis.common.resources.Resources;
+import com.ibatis.sqlmap.client.SqlMapClient;
+import com.ibatis.sqlmap.client.Cursor;
+import com.ibatis.sqlmap.client.SqlMapClientBuilder;
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.client.SqlMapSession;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.mapping.statement.SpillableList;
+
+import junit.framework.TestCase;
+import testdomain.Account;
+
+/**
+ * Runs statements on a StubConnection to check what the executor sends to the driver.
+ */
+public class DefaultSqlExecutorTest extends TestCase {
+
+  private StubConnection stub;
+  private SqlMapClient sqlMap;
+
+  @Override
+  protected void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("com/ibatis/sqlmap/maps/StubSqlMapConfig.xml");
+    sqlMap = SqlMapClientBuilder.buildSqlMapClient(reader);
+    reader.close();
+    stub = new StubConnection();
+  }
+
+  public void testBatchRunsRowByRowWithoutDriverSupport() throws Exception {
+    stub.setMetaData("supportsBatchUpdates", Boolean.FALSE);
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      session.startBatch();
+      for (int i = 1; i <= 3; i++) {
+        session.insert("insertAccountName", newAccount(i));
+      }
+      // each row is executed as it is added
+      assertEquals(3, stub.getExecutions().size());
+      assertEquals(new Integer(3), stub.getExecution(2).getParameter(0, 1));
+
+      List results = session.executeBatchDetailed();
+      assertEquals(1, results.size());
+      int[] updateCounts = ((BatchResult) results.get(0)).getUpdateCounts();
+      assertEquals(3, updateCounts.length);
+      assertEquals(3, stub.getExecutions().size());
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testAutomaticFlushesReportAllUpdateCounts() throws Exception {
+    ((SqlMapClientImpl) sqlMap).getDelegate().setMaxBatchRows(2);
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      session.startBatch();
+      for (int i = 1; i <= 5; i++) {
+        session.insert("insertAccountName", newAccount(i));
+      }
+      assertEquals(2, stub.getExecutions().size());
+
+      List results = session.executeBatchDetailed();
+      assertEquals(3, stub.getExecutions().size());
+      assertEquals(1, stub.getExecution(2).getRows().size());
+      assertEquals(1, results.size());
+      assertEquals(5, ((BatchResult) results.get(0)).getUpdateCounts().length);
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testMultiRowInsertStaysWithinTheParameterLimit() throws Exception {
+    stub.setMetaData("getDatabaseProductName", "Microsoft SQL Server");
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      session.startBatch();
+      for (int i = 1; i <= 1051; i++) {
+        session.insert("insertAccountNameMultiRow", newAccount(i));
+      }
+      session.executeBatch();
+
+      // 2100 bind parameters hold 1050 rows of 2 columns, the last row goes in a statement of its own
+      assertEquals(2, stub.getExecutions().size());
+      StubConnection.Execution full = stub.getExecution(0);
+      assertEquals(new Integer(1050), full.getParameter(0, 2099));
+      assertNull(full.getParameter(0, 2101));
+      assertEquals("insert into ACCOUNT (ACC_ID, ACC_FIRST_NAME) values (?, ?)", stub.getExecution(1).getSql());
+      assertEquals(new Integer(1051), stub.getExecution(1).getParameter(0, 1));
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testGeneratedKeysNeedDriverSupport() throws SQLException {
+    stub.setMetaData("supportsGetGeneratedKeys", Boolean.FALSE);
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      session.insert("insertAccountWithGeneratedKey", newAccount(0));
+      fail("Expected the insert to fail on a driver without generated keys.");
+    } catch (SQLException e) {
+      assertTrue(e.getMessage().indexOf("getGeneratedKeys") > -1);
+      assertEquals(0, stub.getExecutions().size());
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testGeneratedKeysOfBatchedInserts() throws Exception {
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      Account[] accounts = new Account[3];
+      session.startBatch();
+      for (int i = 0; i < accounts.length; i++) {
+        accounts[i] = newAccount(0);
+        session.insert("insertAccountWithGeneratedKey", accounts[i]);
+      }
+      session.executeBatch();
+
+      assertEquals(1, stub.getExecutions().size());
+      assertEquals(3, stub.getExecution(0).getRows().size());
+      for (int i = 0; i < accounts.length; i++) {
+        assertEquals(i + 1, accounts[i].getId());
+      }
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testGeneratedKeysOfAutomaticFlushes() throws Exception {
+    ((SqlMapClientImpl) sqlMap).getDelegate().setMaxBatchRows(2);
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      Account[] accounts = new Account[3];
+      session.startBatch();
+      for (int i = 0; i < accounts.length; i++) {
+        accounts[i] = newAccount(0);
+        session.insert("insertAccountWithGeneratedKey", accounts[i]);
+      }
+      // the rows of the first flush have their keys before the batch is executed
+      assertEquals(1, accounts[0].getId());
+      assertEquals(2, accounts[1].getId());
+      assertEquals(0, accounts[2].getId());
+      session.executeBatch();
+
+      assertEquals(2, stub.getExecutions().size());
+      assertEquals(3, accounts[2].getId());
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testGeneratedKeyWithoutKeyProperty() throws Exception {
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      Account account = newAccount(0);
+      session.insert("insertAccountWithoutKeyProperty", account);
+
+      assertEquals(1, stub.getExecutions().size());
+      assertEquals(0, account.getId());
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testKeysetPageWithoutDialectLimitsRows() throws Exception {
+    stub.addResult("select * from ( select ACC_ID as id, ACC_FIRST_NAME as firstName from ACCOUNT ) keyset_"
+        + " where keyset_.id > ? order by keyset_.id", new String[] { "ID", "FIRSTNAME" }, new Object[][] {
+            { new Integer(3), "Elizabeth" }, { new Integer(4), "Bob" }, { new Integer(5), "Amanda" } });
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      List page = session.queryForKeysetPage("getAccountNamesByKeyset", null, new Integer(2), 2);
+
+      assertEquals(2, page.size());
+      assertEquals(4, ((Account) page.get(1)).getId());
+      // the driver stops after the page instead of reading the rest of the table
+      assertEquals(2, stub.getExecution(0).getMaxRows());
+      assertEquals(new Integer(2), stub.getExecution(0).getParameter(0, 1));
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testOraclePagesOfMapsHaveTheSameColumns() throws Exception {
+    ((SqlMapClientImpl) sqlMap).getDelegate().setAutoDialect(true);
+    stub.setMetaData("getDatabaseProductName", "Oracle");
+    stub.addResult("select * from ( select row_.*, rownum rownum_ from ( select ACC_ID, ACC_FIRST_NAME from ACCOUNT )"
+        + " row_ where rownum <= ? ) where rownum_ > ?", new String[] { "ACC_ID", "ACC_FIRST_NAME", "ROWNUM_" },
+        new Object[][] { { new Integer(3), "Elizabeth", new Integer(3) } });
+    stub.addResult("select * from ( select ACC_ID, ACC_FIRST_NAME from ACCOUNT ) where rownum <= ?", new String[] {
+        "ACC_ID", "ACC_FIRST_NAME" }, new Object[][] { { new Integer(1), "Clinton" }, { new Integer(2), "Jim" } });
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      // the second page first, so that its columns would be the ones remembered by the implicit result map
+      List second = session.queryForList("getAccountMaps", null, 2, 2);
+      List first = session.queryForList("getAccountMaps", null, 0, 2);
+
+      assertEquals(1, second.size());
+      assertEquals(2, ((Map) second.get(0)).size());
+      assertFalse(((Map) second.get(0)).containsKey("ROWNUM_"));
+      assertEquals(2, first.size());
+      assertEquals(2, ((Map) first.get(1)).size());
+      assertEquals("Jim", ((Map) first.get(1)).get("ACC_FIRST_NAME"));
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testSpillableQueryForList() throws Exception {
+    ((SqlMapClientImpl) sqlMap).getDelegate().setSpillThreshold(1);
+    stub.addResult("select ACC_FIRST_NAME from ACCOUNT", new String[] { "ACC_FIRST_NAME" }, new Object[][] {
+        { "Clinton" }, { "Jim" }, { "Elizabeth" } });
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      List names = session.queryForList("getAccountNamesSpillable", null);
+      assertTrue(names instanceof SpillableList);
+      assertEquals(2, ((SpillableList) names).getSpilledRowCount());
+      assertEquals("Elizabeth", names.get(2));
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testQueryMultiSendsOneStatement() throws Exception {
+    stub.setMetaData("getDatabaseProductName", "PostgreSQL");
+    stub.setMetaData("supportsMultipleResultSets", Boolean.TRUE);
+    stub.addResult("select ACC_FIRST_NAME from ACCOUNT where ACC_ID = ?", new String[] { "ACC_FIRST_NAME" },
+        new Object[][] { { "Clinton" } });
+    stub.addResult("select ACC_FIRST_NAME from ACCOUNT where ACC_ID between ? and ?",
+        new String[] { "ACC_FIRST_NAME" }, new Object[][] { { "Jim" }, { "Elizabeth" } });
+    Map range = new HashMap();
+    range.put("low", new Integer(2));
+    range.put("high", new Integer(3));
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      List results = session.queryMulti(new String[] { "getAccountNameById", "getAccountNamesBetween" },
+          new Object[] { new Integer(1), range });
+
+      assertEquals(1, stub.getExecutions().size());
+      StubConnection.Execution execution = stub.getExecution(0);
+      assertEquals("select ACC_FIRST_NAME from ACCOUNT where ACC_ID = ?;\n"
+          + "select ACC_FIRST_NAME from ACCOUNT where ACC_ID between ? and ?", execution.getSql());
+      // the parameters of the second statement follow those of the first
+      assertEquals(new Integer(1), execution.getParameter(0, 1));
+      assertEquals(new Integer(2), execution.getParameter(0, 2));
+      assertEquals(new Integer(3), execution.getParameter(0, 3));
+
+      assertEquals(2, results.size());
+      assertEquals(1, ((List) results.get(0)).size());
+      assertEquals("Clinton", ((List) results.get(0)).get(0));
+      assertEquals(2, ((List) results.get(1)).size());
+      assertEquals("Elizabeth", ((List) results.get(1)).get(1));
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testQueryMultiIsNotPipelinedByForcedMultipleResultSetSupport() throws Exception {
+    ((SqlMapClientImpl) sqlMap).getDelegate().setForceMultipleResultSetSupport(true);
+    stub.setMetaData("supportsMultipleResultSets", Boolean.TRUE);
+    stub.addResult("select ACC_FIRST_NAME from ACCOUNT where ACC_ID = ?", new String[] { "ACC_FIRST_NAME" },
+        new Object[][] { { "Clinton" } });
+    stub.addResult("select ACC_FIRST_NAME from ACCOUNT where ACC_ID between ? and ?",
+        new String[] { "ACC_FIRST_NAME" }, new Object[][] { { "Jim" }, { "Elizabeth" } });
+    Map range = new HashMap();
+    range.put("low", new Integer(2));
+    range.put("high", new Integer(3));
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      List results = session.queryMulti(new String[] { "getAccountNameById", "getAccountNamesBetween" },
+          new Object[] { new Integer(1), range });
+
+      // the driver does not accept several statements in one execution
+      assertEquals(2, stub.getExecutions().size());
+      assertEquals("select ACC_FIRST_NAME from ACCOUNT where ACC_ID = ?", stub.getExecution(0).getSql());
+      assertEquals("Clinton", ((List) results.get(0)).get(0));
+      assertEquals("Elizabeth", ((List) results.get(1)).get(1));
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testDeadlineCancelsRunningCursorQuery() throws Exception {
+    stub.setBlockUntilCancelled(true);
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      session.setDeadline(System.currentTimeMillis() + 200);
+      session.queryForCursor("getAccountNameById", new Integer(1));
+      fail("Expected the query to be cancelled at the deadline.");
+    } catch (SQLException e) {
+      assertEquals(DeadlineTimer.DEADLINE_EXPIRED_SQL_STATE, e.getSQLState());
+      assertTrue(stub.getExecution(0).isCancelled());
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testDeadlineStopsCursorBetweenRows() throws Exception {
+    stub.addResult("select ACC_FIRST_NAME from ACCOUNT where ACC_ID between ? and ?",
+        new String[] { "ACC_FIRST_NAME" }, new Object[][] { { "Jim" }, { "Elizabeth" } });
+    Map range = new HashMap();
+    range.put("low", new Integer(2));
+    range.put("high", new Integer(3));
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      session.setDeadline(System.currentTimeMillis() + 200);
+      Cursor cursor = session.queryForCursor("getAccountNamesBetween", range);
+      assertEquals("Jim", cursor.next());
+      Thread.sleep(300);
+      try {
+        cursor.hasNext();
+        fail("Expected the cursor to stop at the deadline.");
+      } catch (SqlMapException e) {
+        assertTrue(e.getCause() instanceof SQLTimeoutException);
+      }
+      assertTrue(cursor.isClosed());
+    } finally {
+      session.close();
+    }
+  }
+
+  public void testDeadlineCancelsRunningBatch() throws Exception {
+    SqlMapSession session = sqlMap.openSession(stub.getConnection());
+    try {
+      session.startBatch();
+      session.insert("insertAccountName", newAccount(1));
+      stub.setBlockUntilCancelled(true);
+      session.setDeadline(System.currentTimeMillis() + 200);
+      session.executeBatch();
+      fail("Expected the batch to be cancelled at the deadline.");
+    } catch (SQLException e) {
+      assertEquals(DeadlineTimer.DEADLINE_EXPIRED_SQL_STATE, e.getSQLState());
+      assertTrue(stub.getExecution(0).isCancelled());
+    } finally {
+      session.close();
+    }
+  }
+
+  private static Account newAccount(int id) {
+    Account account = new Account();
+    account.setId(id);
+    account.setFirstName("Name " + id);
+    return account;
+  }
+
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.execution;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import javax.sql.DataSource;
+
+import com.ibatis.sqlmap.engine.dialect.LimitOffsetDialect;
+import com.ibatis.sqlmap.engine.dialect.OracleDialect;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.transaction.IsolationLevel;
+import com.ibatis.sqlmap.engine.transaction.jdbc.JdbcTransaction;
+import com.ibatis.sqlmap.engine.transaction.user.UserProvidedTransaction;
+
+import junit.framework.TestCase;
+
+public class DriverProfileTest extends TestCase {
+
+  public void testOracle() {
+    StubConnection stub = new StubConnection();
+    stub.setMetaData("getDatabaseProductName", "Oracle");
+    stub.setMetaData("getDriverName", "Oracle JDBC driver");
+    stub.setMetaData("supportsGetGeneratedKeys", Boolean.FALSE);
+    DriverProfile profile = DriverProfile.probe(stub.getConnection());
+
+    assertEquals(1000, profile.getMaxInListSize());
+    assertEquals(65535, profile.getMaxParameters());
+    assertTrue(profile.getDialect() instanceof OracleDialect);
+    assertTrue(profile.isBatchUpdatesSupported());
+    assertFalse(profile.isGetGeneratedKeysSupported());
+    assertFalse(profile.isMultipleStatementsSupported());
+  }
+
+  public void testMySqlPipelinesOnlyWithAllowMultiQueries() {
+    StubConnection stub = new StubConnection();
+    stub.setMetaData("getDatabaseProductName", "MySQL");
+    stub.setMetaData("supportsMultipleResultSets", Boolean.TRUE);
+    assertFalse(DriverProfile.probe(stub.getConnection()).isMultipleStatementsSupported());
+
+    stub.setMetaData("getURL", "jdbc:mysql://localhost/test?allowMultiQueries=true");
+    DriverProfile profile = DriverProfile.probe(stub.getConnection());
+    assertTrue(profile.isMultipleStatementsSupported());
+    assertTrue(profile.isMultipleResultSetsSupported());
+    assertTrue(profile.getDialect() instanceof LimitOffsetDialect);
+    assertEquals(DriverProfile.NO_MAX_IN_LIST_SIZE, profile.getMaxInListSize());
+    assertEquals(65535, profile.getMaxParameters());
+  }
+
+  public void testNullBindingOfKnownDrivers() {
+    StubConnection stub = new StubConnection();
+    stub.setMetaData("getDatabaseProductName", "DB2/LINUXX8664");
+    DriverProfile profile = DriverProfile.probe(stub.getConnection());
+    assertEquals(Types.VARCHAR, profile.getSqlTypeToUseForNullValue());
+    assertFalse(profile.isUseSetObjectForNullValue());
+
+    stub.setMetaData("getDatabaseProductName", "Informix Dynamic Server");
+    assertTrue(DriverProfile.probe(stub.getConnection()).isUseSetObjectForNullValue());
+  }
+
+  public void testMetaDataFailuresLeaveSafeDefaults() {
+    StubConnection stub = new StubConnection();
+    stub.setMetaData("supportsBatchUpdates", new SQLException("not available"));
+    // JDBC 2 drivers do not implement the method
+    stub.setMetaData("supportsGetGeneratedKeys", new AbstractMethodError());
+    DriverProfile profile = DriverProfile.probe(stub.getConnection());
+    assertTrue(profile.isBatchUpdatesSupported());
+    assertFalse(profile.isGetGeneratedKeysSupported());
+    assertEquals("Stub", profile.getDatabaseProductName());
+
+    stub.setMetaData("getDatabaseProductName", new SQLException("closed"));
+    profile = DriverProfile.probe(stub.getConnection());
+    assertTrue(profile.isBatchUpdatesSupported());
+    assertFalse(profile.isMultipleResultSetsSupported());
+    assertNull(profile.getDialect());
+    assertEquals(Types.NULL, profile.getSqlTypeToUseForNullValue());
+  }
+
+  public void testProfilesAreKeptPerDataSource() throws Exception {
+    StubConnection primary = new StubConnection();
+    primary.setMetaData("getDatabaseProductName", "Oracle");
+    StubConnection replica = new StubConnection();
+    replica.setMetaData("getDatabaseProductName", "PostgreSQL");
+    StubConnection user = new StubConnection();
+    user.setMetaData("getDatabaseProductName", "Microsoft SQL Server");
+    DataSource primaryDataSource = newDataSource();
+    DataSource replicaDataSource = newDataSource();
+    SqlMapExecutorDelegate delegate = new SqlMapExecutorDelegate();
+
+    DriverProfile primaryProfile = delegate.getDriverProfile(new JdbcTransaction(primaryDataSource,
+        IsolationLevel.UNSET_ISOLATION_LEVEL), primary.getConnection());
+    DriverProfile replicaProfile = delegate.getDriverProfile(new JdbcTransaction(replicaDataSource,
+        IsolationLevel.UNSET_ISOLATION_LEVEL), replica.getConnection());
+    DriverProfile userProfile = delegate.getDriverProfile(new UserProvidedTransaction(user.getConnection()),
+        user.getConnection());
+
+    assertEquals(1000, primaryProfile.getMaxInListSize());
+    assertTrue(replicaProfile.getDialect() instanceof LimitOffsetDialect);
+    assertEquals(2000, userProfile.getMaxInListSize());
+    // later connections of a DataSource reuse its profile
+    assertSame(replicaProfile, delegate.getDriverProfile(new JdbcTransaction(replicaDataSource,
+        IsolationLevel.UNSET_ISOLATION_LEVEL), new StubConnection().getConnection()));
+  }
+
+  private static DataSource newDataSource() {
+    return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class[] { DataSource.class },
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("hashCode".equals(method.getName())) {
+              return new Integer(System.identityHashCode(proxy));
+            } else if ("equals".equals(method.getName())) {
+              return Boolean.valueOf(proxy == args[0]);
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+}
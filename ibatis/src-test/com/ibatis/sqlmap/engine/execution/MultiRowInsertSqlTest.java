@@ -0,0 +1,45 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.execution;
+
+import junit.framework.TestCase;
+
+public class MultiRowInsertSqlTest extends TestCase {
+
+  public void testRewriteInsert() {
+    MultiRowInsertSql sql = MultiRowInsertSql.parse("insert into foo (a, b) values (?, ?)", 2);
+    assertNotNull(sql);
+    assertEquals("insert into foo (a, b) values (?, ?)", sql.getSql(1));
+    assertEquals("insert into foo (a, b) values (?, ?), (?, ?), (?, ?)", sql.getSql(3));
+
+    sql = MultiRowInsertSql.parse("INSERT INTO foo (a, b, c) VALUES (?, 'x, (y)', lower(?))  ", 2);
+    assertNotNull(sql);
+    assertEquals("INSERT INTO foo (a, b, c) VALUES (?, 'x, (y)', lower(?)), (?, 'x, (y)', lower(?))  ", sql.getSql(2));
+  }
+
+  public void testRejectUnsafeInserts() {
+    assertNull(MultiRowInsertSql.parse("update foo set a = ?", 1));
+    assertNull(MultiRowInsertSql.parse("insert into foo (a) select ? from bar", 1));
+    assertNull(MultiRowInsertSql.parse("insert into foo (a) values (?) on duplicate key update a = ?", 2));
+    assertNull(MultiRowInsertSql.parse("insert into foo (a) values (?) returning id", 1));
+    assertNull(MultiRowInsertSql.parse("insert into foo (a) values (?), (?)", 2));
+    assertNull(MultiRowInsertSql.parse("insert into foo (a) values (?) -- comment", 1));
+    assertNull(MultiRowInsertSql.parse("insert into foo (a) values ('?')", 1));
+    assertNull(MultiRowInsertSql.parse("insert into foo (a) values (?)", 2));
+    assertNull(MultiRowInsertSql.parse("insert into foo (a) values (1)", 0));
+  }
+
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.execution;
+
+import junit.framework.TestCase;
+
+public class StatementStatisticsTest extends TestCase {
+
+  public void testFetchSizeFollowsRowCounts() {
+    StatementStatistics statistics = new StatementStatistics("test", 1024 * 1024);
+    assertEquals(0, statistics.getFetchSize());
+
+    statistics.recordExecution(1);
+    assertEquals(StatementStatistics.MIN_FETCH_SIZE, statistics.getFetchSize());
+
+    statistics.recordExecution(999);
+    assertEquals(2, statistics.getExecutions());
+    assertEquals(1000, statistics.getTotalRows());
+    assertEquals(999, statistics.getMaxRows());
+    assertEquals(500.0, statistics.getAverageRows(), 0.0);
+    assertEquals(1000, statistics.getFetchSize());
+  }
+
+  public void testFetchSizeIsBoundedByMaximum() {
+    StatementStatistics statistics = new StatementStatistics("test", Long.MAX_VALUE);
+    statistics.recordExecution(1000000);
+    assertEquals(StatementStatistics.MAX_FETCH_SIZE, statistics.getFetchSize());
+  }
+
+}
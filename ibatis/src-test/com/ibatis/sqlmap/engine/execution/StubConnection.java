@@ -0,0 +1,422 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.execution;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JDBC connection made of proxies that records the statements run on it, for tests of the executor that need to see
+ * what is sent to the driver. Queries answer with the rows registered for their SQL, up to the row limit of the
+ * statement, updates count one row per set of parameters and generated keys are numbered from 1.
+ */
+public class StubConnection {
+
+  private Connection connection;
+  private Map metaData = new HashMap();
+  private Map results = new HashMap();
+  private List executions = Collections.synchronizedList(new ArrayList());
+  private int nextKey = 1;
+  private volatile boolean blockUntilCancelled;
+
+  public StubConnection() {
+    metaData.put("getDatabaseProductName", "Stub");
+    metaData.put("getDriverName", "Stub");
+    metaData.put("getURL", "jdbc:stub");
+    metaData.put("supportsBatchUpdates", Boolean.TRUE);
+    metaData.put("supportsGetGeneratedKeys", Boolean.TRUE);
+    metaData.put("supportsMultipleResultSets", Boolean.FALSE);
+    connection = (Connection) proxy(Connection.class, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if ("getMetaData".equals(name)) {
+          return proxy(DatabaseMetaData.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+              Object answer = metaData.get(method.getName());
+              if (answer instanceof Throwable) {
+                throw (Throwable) answer;
+              } else if (answer != null) {
+                return answer;
+              }
+              return defaultValue(method.getReturnType());
+            }
+          });
+        } else if ("prepareStatement".equals(name) || "prepareCall".equals(name)) {
+          boolean keys = args.length == 2 && args[1] instanceof Integer
+              && ((Integer) args[1]).intValue() == Statement.RETURN_GENERATED_KEYS;
+          return newStatement((String) args[0], keys, "prepareCall".equals(name));
+        } else if ("getAutoCommit".equals(name)) {
+          return Boolean.TRUE;
+        }
+        return standardMethod(proxy, method, args);
+      }
+    });
+  }
+
+  public Connection getConnection() {
+    return connection;
+  }
+
+  /**
+   * Sets the answer of a DatabaseMetaData method, such as supportsBatchUpdates. A Throwable is thrown by the method.
+   */
+  public void setMetaData(String method, Object answer) {
+    metaData.put(method, answer);
+  }
+
+  /**
+   * Registers the rows returned by a query. The SQL is compared with surrounding white space removed.
+   */
+  public void addResult(String sql, String[] columns, Object[][] rows) {
+    results.put(sql.trim(), new Object[] { columns, rows });
+  }
+
+  /**
+   * Makes every execution wait until the statement is cancelled, then fail as a cancelled statement does.
+   */
+  public void setBlockUntilCancelled(boolean blockUntilCancelled) {
+    this.blockUntilCancelled = blockUntilCancelled;
+  }
+
+  /**
+   * The executions sent to the driver, in order. An execution of a batch counts once.
+   */
+  public List getExecutions() {
+    return executions;
+  }
+
+  public Execution getExecution(int index) {
+    return (Execution) executions.get(index);
+  }
+
+  /**
+   * The number of executions whose SQL contains a fragment.
+   */
+  public int countExecutions(String fragment) {
+    int count = 0;
+    synchronized (executions) {
+      for (Iterator iter = executions.iterator(); iter.hasNext();) {
+        if (((Execution) iter.next()).getSql().indexOf(fragment) > -1) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * The SQL of one execution and the parameters of each row it sent.
+   */
+  public static class Execution {
+    private String sql;
+    private List rows;
+    private int maxRows;
+    private boolean cancelled;
+
+    private Execution(String sql, List rows, int maxRows) {
+      this.sql = sql;
+      this.rows = rows;
+      this.maxRows = maxRows;
+    }
+
+    public String getSql() {
+      return sql;
+    }
+
+    public List getRows() {
+      return rows;
+    }
+
+    public Object getParameter(int row, int index) {
+      return ((Map) rows.get(row)).get(new Integer(index));
+    }
+
+    /**
+     * The row limit of the statement when it was executed, 0 for none.
+     */
+    public int getMaxRows() {
+      return maxRows;
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+  }
+
+  private Object newStatement(final String sql, final boolean returnKeys, boolean callable) {
+    return proxy(callable ? CallableStatement.class : PreparedStatement.class, new InvocationHandler() {
+      private Map parameters = new HashMap();
+      private List batch = new ArrayList();
+      private List pendingResults = new ArrayList();
+      private ResultSet currentResult;
+      private int updateCount = -1;
+      private int maxRows;
+      private List keys = new ArrayList();
+      private Object cancelLock = new Object();
+      private boolean cancelled;
+
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+          parameters.put(args[0], name.equals("setNull") ? null : args[1]);
+          return null;
+        } else if ("setMaxRows".equals(name)) {
+          maxRows = ((Integer) args[0]).intValue();
+          return null;
+        } else if ("getMaxRows".equals(name)) {
+          return new Integer(maxRows);
+        } else if ("clearParameters".equals(name)) {
+          parameters.clear();
+          return null;
+        } else if ("addBatch".equals(name)) {
+          batch.add(new HashMap(parameters));
+          return null;
+        } else if ("executeBatch".equals(name)) {
+          List rows = new ArrayList(batch);
+          batch.clear();
+          run(proxy, rows);
+          int[] counts = new int[rows.size()];
+          for (int i = 0; i < counts.length; i++) {
+            counts[i] = 1;
+          }
+          return counts;
+        } else if ("execute".equals(name) || "executeQuery".equals(name) || "executeUpdate".equals(name)) {
+          List rows = new ArrayList();
+          rows.add(new HashMap(parameters));
+          run(proxy, rows);
+          if ("executeQuery".equals(name)) {
+            return nextResult(proxy) ? currentResult : null;
+          } else if ("executeUpdate".equals(name)) {
+            return new Integer(1);
+          } else if (nextResult(proxy)) {
+            return Boolean.TRUE;
+          }
+          updateCount = 1;
+          return Boolean.FALSE;
+        } else if ("getResultSet".equals(name)) {
+          return currentResult;
+        } else if ("getMoreResults".equals(name)) {
+          updateCount = -1;
+          return Boolean.valueOf(nextResult(proxy));
+        } else if ("getUpdateCount".equals(name)) {
+          return new Integer(currentResult == null ? updateCount : -1);
+        } else if ("getGeneratedKeys".equals(name)) {
+          Object[][] rows = new Object[keys.size()][];
+          for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[] { keys.get(i) };
+          }
+          return newResultSet(proxy, new String[] { "ID" }, rows);
+        } else if ("cancel".equals(name)) {
+          synchronized (cancelLock) {
+            cancelled = true;
+            cancelLock.notifyAll();
+          }
+          return null;
+        } else if ("getConnection".equals(name)) {
+          return connection;
+        }
+        return standardMethod(proxy, method, args);
+      }
+
+      private void run(Object statement, List rows) throws SQLException {
+        Execution execution = new Execution(sql, rows, maxRows);
+        executions.add(execution);
+        if (blockUntilCancelled) {
+          synchronized (cancelLock) {
+            long giveUp = System.currentTimeMillis() + 10000;
+            while (!cancelled && System.currentTimeMillis() < giveUp) {
+              try {
+                cancelLock.wait(100);
+              } catch (InterruptedException e) {
+                break;
+              }
+            }
+          }
+          execution.cancelled = cancelled;
+          throw new SQLException("The statement was cancelled.", "HY008");
+        }
+        keys.clear();
+        if (returnKeys) {
+          synchronized (StubConnection.this) {
+            for (int i = 0; i < rows.size(); i++) {
+              keys.add(new Integer(nextKey++));
+            }
+          }
+        }
+        // several statements separated by semicolons return their results in turn
+        pendingResults.clear();
+        String[] parts = sql.split(";\n");
+        for (int i = 0; i < parts.length; i++) {
+          pendingResults.add(results.get(parts[i].trim()));
+        }
+        currentResult = null;
+      }
+
+      private boolean nextResult(Object statement) {
+        currentResult = null;
+        if (!pendingResults.isEmpty()) {
+          Object[] result = (Object[]) pendingResults.remove(0);
+          if (result != null) {
+            Object[][] rows = (Object[][]) result[1];
+            if (maxRows > 0 && rows.length > maxRows) {
+              Object[][] limited = new Object[maxRows][];
+              System.arraycopy(rows, 0, limited, 0, maxRows);
+              rows = limited;
+            }
+            currentResult = newResultSet(statement, (String[]) result[0], rows);
+          }
+        }
+        return currentResult != null;
+      }
+    });
+  }
+
+  private static ResultSet newResultSet(final Object statement, final String[] columns, final Object[][] rows) {
+    final ResultSetMetaData metaData = (ResultSetMetaData) proxy(ResultSetMetaData.class, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("getColumnCount".equals(name)) {
+          return new Integer(columns.length);
+        }
+        int column = ((Integer) args[0]).intValue() - 1;
+        if ("getColumnType".equals(name)) {
+          Object value = rows.length == 0 ? null : rows[0][column];
+          return new Integer(value instanceof Number ? Types.INTEGER : Types.VARCHAR);
+        } else if ("getColumnLabel".equals(name) || "getColumnName".equals(name)) {
+          return columns[column];
+        }
+        return defaultValue(method.getReturnType());
+      }
+    });
+    return (ResultSet) proxy(ResultSet.class, new InvocationHandler() {
+      private int row = -1;
+      private Object last;
+
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if ("next".equals(name)) {
+          row++;
+          return Boolean.valueOf(row < rows.length);
+        } else if ("getMetaData".equals(name)) {
+          return metaData;
+        } else if ("wasNull".equals(name)) {
+          return Boolean.valueOf(last == null);
+        } else if ("findColumn".equals(name)) {
+          return new Integer(indexOf((String) args[0]));
+        } else if ("getStatement".equals(name)) {
+          return statement;
+        } else if ("getType".equals(name)) {
+          return new Integer(ResultSet.TYPE_FORWARD_ONLY);
+        } else if (name.startsWith("get") && args != null && args.length >= 1) {
+          int index = args[0] instanceof Integer ? ((Integer) args[0]).intValue() : indexOf((String) args[0]);
+          last = rows[row][index - 1];
+          return convert(last, method.getReturnType());
+        }
+        return standardMethod(proxy, method, args);
+      }
+
+      private int indexOf(String column) throws SQLException {
+        for (int i = 0; i < columns.length; i++) {
+          if (columns[i].equalsIgnoreCase(column)) {
+            return i + 1;
+          }
+        }
+        throw new SQLException("Column not found: " + column);
+      }
+    });
+  }
+
+  private static Object convert(Object value, Class type) {
+    if (value == null) {
+      return defaultValue(type);
+    } else if (value instanceof Number) {
+      Number number = (Number) value;
+      if (type == Integer.TYPE) {
+        return new Integer(number.intValue());
+      } else if (type == Long.TYPE) {
+        return new Long(number.longValue());
+      } else if (type == Short.TYPE) {
+        return new Short(number.shortValue());
+      } else if (type == Byte.TYPE) {
+        return new Byte(number.byteValue());
+      } else if (type == Double.TYPE) {
+        return new Double(number.doubleValue());
+      } else if (type == Float.TYPE) {
+        return new Float(number.floatValue());
+      } else if (type == BigDecimal.class) {
+        return new BigDecimal(number.toString());
+      } else if (type == String.class) {
+        return number.toString();
+      }
+    } else if (type == Boolean.TYPE) {
+      return Boolean.valueOf(String.valueOf(value));
+    }
+    return value;
+  }
+
+  private static Object standardMethod(Object proxy, Method method, Object[] args) {
+    String name = method.getName();
+    if ("hashCode".equals(name)) {
+      return new Integer(System.identityHashCode(proxy));
+    } else if ("equals".equals(name)) {
+      return Boolean.valueOf(proxy == args[0]);
+    } else if ("toString".equals(name)) {
+      return "Stub" + method.getDeclaringClass().getSimpleName();
+    }
+    return defaultValue(method.getReturnType());
+  }
+
+  private static Object defaultValue(Class type) {
+    if (type == Boolean.TYPE) {
+      return Boolean.FALSE;
+    } else if (type == Integer.TYPE) {
+      return new Integer(0);
+    } else if (type == Long.TYPE) {
+      return new Long(0);
+    } else if (type == Short.TYPE) {
+      return new Short((short) 0);
+    } else if (type == Byte.TYPE) {
+      return new Byte((byte) 0);
+    } else if (type == Double.TYPE) {
+      return new Double(0);
+    } else if (type == Float.TYPE) {
+      return new Float(0);
+    }
+    return null;
+  }
+
+  private static Object proxy(Class type, InvocationHandler handler) {
+    return Proxy.newProxyInstance(StubConnection.class.getClassLoader(), new Class[] { type }, handler);
+  }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.parameter;
+
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.scope.SessionScope;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+import com.ibatis.sqlmap.engine.type.IntegerTypeHandler;
+import com.ibatis.sqlmap.engine.type.TypeHandler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ParameterMapTest extends TestCase {
+
+  public void testPrimitiveParametersAreBoundWithTheirSetter() throws Exception {
+    CountingIntTypeHandler typeHandler = new CountingIntTypeHandler();
+    List calls = new ArrayList();
+    setParameters(newParameterMap(typeHandler), calls, new Object[] { new Integer(5) });
+    assertEquals(1, typeHandler.setIntCalls);
+    assertEquals(0, typeHandler.setParameterCalls);
+    assertEquals("[setInt(1, 5)]", calls.toString());
+  }
+
+  public void testInheritedPrimitiveSetterIsNotUsed() throws Exception {
+    TypeHandler typeHandler = new IntegerTypeHandler() {
+      public void setParameter(PreparedStatement ps, int i, Object parameter, String jdbcType) throws SQLException {
+        ps.setInt(i, ((Integer) parameter).intValue() + 100);
+      }
+    };
+    List calls = new ArrayList();
+    setParameters(newParameterMap(typeHandler), calls, new Object[] { new Integer(5) });
+    assertEquals("[setInt(1, 105)]", calls.toString());
+  }
+
+  public void testNullPrimitiveParameterIsBoundAsNull() throws Exception {
+    CountingIntTypeHandler typeHandler = new CountingIntTypeHandler();
+    ParameterMap parameterMap = newParameterMap(typeHandler);
+    parameterMap.getParameterMappings()[0].setJdbcTypeName("INTEGER");
+    List calls = new ArrayList();
+    setParameters(parameterMap, calls, new Object[] { null });
+    assertEquals(0, typeHandler.setIntCalls);
+    assertEquals("[setNull(1, " + Types.INTEGER + ")]", calls.toString());
+  }
+
+  private ParameterMap newParameterMap(TypeHandler typeHandler) {
+    ParameterMap parameterMap = new ParameterMap(new SqlMapExecutorDelegate());
+    parameterMap.setId("test");
+    ParameterMapping mapping = new ParameterMapping();
+    mapping.setPropertyName("value");
+    mapping.setTypeHandler(typeHandler);
+    List mappings = new ArrayList();
+    mappings.add(mapping);
+    parameterMap.setParameterMappingList(mappings);
+    return parameterMap;
+  }
+
+  private void setParameters(ParameterMap parameterMap, List calls, Object[] parameters) throws SQLException {
+    parameterMap.setParameters(new StatementScope(new SessionScope()), newPreparedStatement(calls), parameters);
+  }
+
+  /**
+   * A prepared statement recording the setters called on it
+   */
+  private static PreparedStatement newPreparedStatement(final List calls) {
+    return (PreparedStatement) Proxy.newProxyInstance(ParameterMapTest.class.getClassLoader(),
+        new Class[] { PreparedStatement.class }, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            calls.add(method.getName() + "(" + args[0] + ", " + args[1] + ")");
+            return null;
+          }
+        });
+  }
+
+  /**
+   * The standard int handler, counting the values bound through each of its setters
+   */
+  public static class CountingIntTypeHandler extends IntegerTypeHandler {
+
+    private int setParameterCalls;
+    private int setIntCalls;
+
+    public void setParameter(PreparedStatement ps, int i, Object parameter, String jdbcType) throws SQLException {
+      setParameterCalls++;
+      super.setParameter(ps, i, parameter, jdbcType);
+    }
+
+    public void setInt(PreparedStatement ps, int i, int value) throws SQLException {
+      setIntCalls++;
+      super.setInt(ps, i, value);
+    }
+
+  }
+
+}
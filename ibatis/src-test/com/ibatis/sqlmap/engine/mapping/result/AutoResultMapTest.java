@@ -0,0 +1,159 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.result;
+
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.scope.SessionScope;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+
+import junit.framework.TestCase;
+
+public class AutoResultMapTest extends TestCase {
+
+  private static final int ROWS = 2000;
+
+  public void testStatementWithoutRemappingKeepsItsFirstPlan() throws Exception {
+    AutoResultMap resultMap = newAutoResultMap(false);
+    assertNull(resultMap.getResultMappings());
+
+    Map row = (Map) mapRow(resultMap, newResultSet(new String[] { "ID", "NAME" }, new Object[] { "1", "a" }));
+    assertEquals("1", row.get("ID"));
+    assertEquals("a", row.get("NAME"));
+    assertEquals(2, resultMap.getResultMappings().length);
+
+    row = (Map) mapRow(resultMap, newResultSet(new String[] { "ID", "NAME" }, new Object[] { "2", "b" }));
+    assertEquals("2", row.get("ID"));
+    assertEquals(2, resultMap.getResultMappings().length);
+  }
+
+  public void testRemappedStatementHasNoMappingsOfItsOwn() throws Exception {
+    AutoResultMap resultMap = newAutoResultMap(true);
+    mapRow(resultMap, newResultSet(new String[] { "ID", "NAME" }, new Object[] { "1", "a" }));
+    assertNull(resultMap.getResultMappings());
+  }
+
+  public void testRemappedResultSetsOfDifferentShapesAreMappedConcurrently() throws Exception {
+    final AutoResultMap resultMap = newAutoResultMap(true);
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    final List failures = Collections.synchronizedList(new ArrayList());
+    Thread narrow = new Thread() {
+      @Override
+      public void run() {
+        mapRows(resultMap, barrier, new String[] { "ID" }, failures);
+      }
+    };
+    Thread wide = new Thread() {
+      @Override
+      public void run() {
+        mapRows(resultMap, barrier, new String[] { "CODE", "NAME", "EMAIL" }, failures);
+      }
+    };
+    narrow.start();
+    wide.start();
+    narrow.join();
+    wide.join();
+    assertEquals(Collections.EMPTY_LIST, failures);
+  }
+
+  private static void mapRows(AutoResultMap resultMap, CyclicBarrier barrier, String[] columns, List failures) {
+    try {
+      for (int i = 0; i < ROWS; i++) {
+        Object[] values = new Object[columns.length];
+        for (int j = 0; j < columns.length; j++) {
+          values[j] = columns[j] + i;
+        }
+        ResultSet rs = newResultSet(columns, values);
+        StatementScope statementScope = new StatementScope(new SessionScope());
+        statementScope.setResultSet(rs);
+        // resolve the plan, then let the other thread resolve its own before this one maps the row
+        ResultMap plan = resultMap.resolveSubMap(statementScope, rs);
+        if (i % 100 == 0) {
+          barrier.await();
+        }
+        Map row = (Map) plan.setResultObjectValues(statementScope, null, resultMap.getResults(statementScope, rs));
+        Map expected = new HashMap();
+        for (int j = 0; j < columns.length; j++) {
+          expected.put(columns[j], values[j]);
+        }
+        if (!expected.equals(row)) {
+          failures.add("expected " + expected + " but was " + row);
+        }
+      }
+    } catch (Exception e) {
+      failures.add(e.toString());
+      barrier.reset();
+    }
+  }
+
+  private static AutoResultMap newAutoResultMap(boolean allowRemapping) {
+    AutoResultMap resultMap = new AutoResultMap(new SqlMapExecutorDelegate(), allowRemapping);
+    resultMap.setId("auto");
+    resultMap.setResultClass(HashMap.class);
+    return resultMap;
+  }
+
+  private static Object mapRow(ResultMap resultMap, ResultSet rs) throws Exception {
+    StatementScope statementScope = new StatementScope(new SessionScope());
+    statementScope.setResultSet(rs);
+    return resultMap.mapRow(statementScope, rs, null);
+  }
+
+  /**
+   * A result set positioned on a single row
+   */
+  private static ResultSet newResultSet(final String[] columns, final Object[] row) {
+    final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(AutoResultMapTest.class
+        .getClassLoader(), new Class[] { ResultSetMetaData.class }, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if ("getColumnCount".equals(method.getName())) {
+          return new Integer(columns.length);
+        }
+        return columns[((Integer) args[0]).intValue() - 1];
+      }
+    });
+    return (ResultSet) Proxy.newProxyInstance(AutoResultMapTest.class.getClassLoader(), new Class[] { ResultSet.class },
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("getMetaData".equals(name)) {
+              return metaData;
+            } else if ("wasNull".equals(name)) {
+              return Boolean.FALSE;
+            } else if ("hashCode".equals(name)) {
+              return new Integer(System.identityHashCode(proxy));
+            } else if ("equals".equals(name)) {
+              return Boolean.valueOf(proxy == args[0]);
+            } else if ("getObject".equals(name) && args[0] instanceof Integer) {
+              return row[((Integer) args[0]).intValue() - 1];
+            }
+            throw new UnsupportedOperationException(name);
+          }
+        });
+  }
+
+}
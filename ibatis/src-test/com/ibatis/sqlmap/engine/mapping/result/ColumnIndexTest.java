@@ -0,0 +1,139 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.result;
+
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.scope.SessionScope;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+import com.ibatis.sqlmap.engine.type.IntegerTypeHandler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ColumnIndexTest extends TestCase {
+
+  private ResultMap resultMap;
+
+  @Override
+  protected void setUp() throws Exception {
+    resultMap = new ResultMap(new SqlMapExecutorDelegate());
+    resultMap.setId("columns");
+    resultMap.setResultClass(HashMap.class);
+    List mappings = new ArrayList();
+    mappings.add(newMapping("id", "ACC_ID"));
+    mappings.add(newMapping("name", "ACC_NAME"));
+    resultMap.setResultMappingList(mappings);
+  }
+
+  public void testColumnsAreFoundByLabel() throws Exception {
+    assertIndexes(1, 2, newResultSet(new String[] { "ACC_ID", "ACC_NAME" }, null));
+    assertIndexes(1, 2, newResultSet(new String[] { "acc_id", "acc_name" }, null));
+  }
+
+  public void testReorderedColumnsGetTheirOwnIndexes() throws Exception {
+    assertIndexes(1, 2, newResultSet(new String[] { "ACC_ID", "ACC_NAME" }, null));
+    assertIndexes(2, 1, newResultSet(new String[] { "ACC_NAME", "ACC_ID" }, null));
+    assertIndexes(2, 3, newResultSet(new String[] { "OTHER", "ACC_ID", "ACC_NAME" }, null));
+  }
+
+  public void testLabelIsPreferredToColumnName() throws Exception {
+    // ACC_ID is the name of the first column and the label of the second
+    assertIndexes(2, 0, newResultSet(new String[] { "ID", "ACC_ID" }, new String[] { "ACC_ID", "OTHER" }));
+  }
+
+  public void testColumnNameIsUsedWhenNoLabelMatches() throws Exception {
+    assertIndexes(1, 2, newResultSet(new String[] { "A", "B" }, new String[] { "ACC_ID", "ACC_NAME" }));
+  }
+
+  public void testColumnNamesAreNotSharedBetweenResultSetsWithTheSameLabels() throws Exception {
+    assertIndexes(1, 2, newResultSet(new String[] { "A", "B" }, new String[] { "ACC_ID", "ACC_NAME" }));
+    assertIndexes(2, 1, newResultSet(new String[] { "A", "B" }, new String[] { "ACC_NAME", "ACC_ID" }));
+  }
+
+  public void testDuplicateLabelsResolveToTheFirstColumn() throws Exception {
+    assertIndexes(1, 3, newResultSet(new String[] { "ACC_ID", "ACC_ID", "ACC_NAME" }, null));
+  }
+
+  public void testUnknownColumnIsLeftToTheDriver() throws Exception {
+    assertIndexes(1, 0, newResultSet(new String[] { "ACC_ID", "OTHER" }, null));
+  }
+
+  private void assertIndexes(int id, int name, ResultSet rs) {
+    // each result set is read in a statement of its own
+    StatementScope statementScope = new StatementScope(new SessionScope());
+    int[] indexes = resultMap.getColumnIndexes(statementScope, rs, resultMap.getResultMappings());
+    assertEquals(2, indexes.length);
+    assertEquals(id, indexes[0]);
+    assertEquals(name, indexes[1]);
+  }
+
+  private static ResultMapping newMapping(String property, String column) {
+    ResultMapping mapping = new ResultMapping();
+    mapping.setPropertyName(property);
+    mapping.setColumnName(column);
+    mapping.setTypeHandler(new IntegerTypeHandler());
+    return mapping;
+  }
+
+  /**
+   * A result set that only answers its metadata
+   *
+   * @param labels
+   *          the column labels
+   * @param names
+   *          the column names, or null if they are the labels
+   */
+  private static ResultSet newResultSet(final String[] labels, String[] names) {
+    final String[] columnNames = names == null ? labels : names;
+    final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(ColumnIndexTest.class
+        .getClassLoader(), new Class[] { ResultSetMetaData.class }, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("getColumnCount".equals(name)) {
+          return new Integer(labels.length);
+        } else if ("getColumnLabel".equals(name)) {
+          return labels[((Integer) args[0]).intValue() - 1];
+        } else if ("getColumnName".equals(name)) {
+          return columnNames[((Integer) args[0]).intValue() - 1];
+        }
+        throw new UnsupportedOperationException(name);
+      }
+    });
+    return (ResultSet) Proxy.newProxyInstance(ColumnIndexTest.class.getClassLoader(), new Class[] { ResultSet.class },
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("getMetaData".equals(name)) {
+              return metaData;
+            } else if ("hashCode".equals(name)) {
+              return new Integer(System.identityHashCode(proxy));
+            } else if ("equals".equals(name)) {
+              return Boolean.valueOf(proxy == args[0]);
+            }
+            throw new UnsupportedOperationException(name);
+          }
+        });
+  }
+
+}
@@ -0,0 +1,332 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.result;
+
+import com.ibatis.sqlmap.engine.accessplan.AccessPlanFactory;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.scope.SessionScope;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+import com.ibatis.sqlmap.engine.type.BaseTypeHandler;
+import com.ibatis.sqlmap.engine.type.BooleanTypeHandler;
+import com.ibatis.sqlmap.engine.type.DateTypeHandler;
+import com.ibatis.sqlmap.engine.type.IntegerTypeHandler;
+import com.ibatis.sqlmap.engine.type.PrimitiveTypeHandler;
+import com.ibatis.sqlmap.engine.type.StringTypeHandler;
+import com.ibatis.sqlmap.engine.type.TypeHandler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import testdomain.Account;
+
+public class RowMapperTest extends TestCase {
+
+  private static final String[] COLUMNS = { "ACC_ID", "ACC_FIRST_NAME", "ACC_EMAIL", "ACC_BANNER_OPTION",
+      "ACC_DATE_ADDED" };
+
+  private SqlMapExecutorDelegate delegate;
+
+  @Override
+  protected void setUp() throws Exception {
+    delegate = new SqlMapExecutorDelegate();
+    AccessPlanFactory.setBytecodeEnhancementEnabled(true);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    AccessPlanFactory.setBytecodeEnhancementEnabled(false);
+  }
+
+  public void testGeneratedMapperSetsEachProperty() throws Exception {
+    ResultMap resultMap = newAccountMap("id");
+    resultMap.compileRowMapper();
+    assertNotNull(resultMap.getRowMapper());
+
+    Timestamp added = new Timestamp(1000L);
+    Account account = (Account) mapRow(resultMap, new Object[] { new Integer(1), "Clinton", "clinton@domain.com",
+        Boolean.TRUE, added });
+    assertEquals(1, account.getId());
+    assertEquals("Clinton", account.getFirstName());
+    assertEquals("clinton@domain.com", account.getEmailAddress());
+    assertTrue(account.isBannerOption());
+    assertEquals(added.getTime(), account.getDateAdded().getTime());
+  }
+
+  public void testNullColumnsGetTheNullValue() throws Exception {
+    ResultMap resultMap = newAccountMap("id");
+    resultMap.compileRowMapper();
+
+    Account account = (Account) mapRow(resultMap, new Object[] { new Integer(2), null, null, null, null });
+    assertEquals(2, account.getId());
+    assertNull(account.getFirstName());
+    assertEquals("no_email@provided.com", account.getEmailAddress());
+    assertFalse(account.isBannerOption());
+    assertNull(account.getDateAdded());
+    assertNotNull(resultMap.getRowMapper());
+  }
+
+  public void testFailedRowIsReportedByTheInterpretedPath() throws Exception {
+    ResultMap resultMap = newAccountMap("id");
+    resultMap.compileRowMapper();
+
+    try {
+      mapRow(resultMap, new Object[] { null, "Clinton", null, null, null });
+      fail("Expected a null id to fail.");
+    } catch (RuntimeException e) {
+      assertTrue(e.getMessage().indexOf("setId") > -1);
+    }
+    assertNotNull(resultMap.getRowMapper());
+  }
+
+  public void testSuppliedResultObjectIsMappedByTheInterpretedPath() throws Exception {
+    ResultMap resultMap = newAccountMap("id");
+    resultMap.compileRowMapper();
+    assertNotNull(resultMap.getRowMapper());
+
+    Account supplied = new Account();
+    supplied.setLastName("Begin");
+    ResultSet rs = newResultSet(new Object[] { new Integer(1), "Clinton", null, null, null });
+    StatementScope statementScope = new StatementScope(new SessionScope());
+    statementScope.setResultSet(rs);
+    assertSame(supplied, resultMap.mapRow(statementScope, rs, supplied));
+    assertEquals(1, supplied.getId());
+    assertEquals("Clinton", supplied.getFirstName());
+    assertEquals("Begin", supplied.getLastName());
+  }
+
+  public void testCustomPrimitiveTypeHandlerIsUsed() throws Exception {
+    ResultMap resultMap = newAccountMap("id", new DoublingIntTypeHandler());
+    resultMap.compileRowMapper();
+    assertNotNull(resultMap.getRowMapper());
+
+    Account account = (Account) mapRow(resultMap, new Object[] { new Integer(21), "Clinton", null, null, null });
+    assertEquals(42, account.getId());
+  }
+
+  public void testInheritedPrimitiveAccessorIsNotUsed() throws Exception {
+    ResultMap resultMap = newAccountMap("id", new IntegerTypeHandler() {
+      public Object getResult(ResultSet rs, int columnIndex) throws SQLException {
+        return new Integer(rs.getInt(columnIndex) + 100);
+      }
+    });
+    resultMap.compileRowMapper();
+    assertNull(resultMap.getRowMapper());
+
+    Account account = (Account) mapRow(resultMap, new Object[] { new Integer(1), "Clinton", null, null, null });
+    assertEquals(101, account.getId());
+  }
+
+  public void testInterpretedPathReadsPrimitivesWithTheirGetter() throws Exception {
+    AccessPlanFactory.setBytecodeEnhancementEnabled(false);
+    CountingIntTypeHandler typeHandler = new CountingIntTypeHandler();
+    ResultMap resultMap = newAccountMap("id", typeHandler);
+    resultMap.compileRowMapper();
+    assertNull(resultMap.getRowMapper());
+
+    Account account = (Account) mapRow(resultMap, new Object[] { new Integer(7), "Clinton", null, null, null });
+    assertEquals(7, account.getId());
+    assertEquals(1, typeHandler.getIntCalls);
+  }
+
+  public void testBytecodeAccessPlanIsGivenTheValueOfThePrimitiveGetter() throws Exception {
+    CountingIntTypeHandler typeHandler = new CountingIntTypeHandler();
+    ResultMap resultMap = newAccountMap("id", typeHandler);
+
+    // a supplied object is mapped by the interpreted path, through the generated access plan
+    Account supplied = new Account();
+    ResultSet rs = newResultSet(new Object[] { new Integer(8), "Clinton", null, null, null });
+    StatementScope statementScope = new StatementScope(new SessionScope());
+    statementScope.setResultSet(rs);
+    assertSame(supplied, resultMap.mapRow(statementScope, rs, supplied));
+    assertEquals(8, supplied.getId());
+    assertEquals(1, typeHandler.getIntCalls);
+  }
+
+  public void testNullPrimitiveColumnIsReportedByTheInterpretedPath() throws Exception {
+    AccessPlanFactory.setBytecodeEnhancementEnabled(false);
+    CountingIntTypeHandler typeHandler = new CountingIntTypeHandler();
+    ResultMap resultMap = newAccountMap("id", typeHandler);
+
+    try {
+      mapRow(resultMap, new Object[] { null, "Clinton", null, null, null });
+      fail("Expected a null id to fail.");
+    } catch (RuntimeException e) {
+      assertTrue(e.getMessage().indexOf("id") > -1);
+    }
+    assertEquals(1, typeHandler.getIntCalls);
+  }
+
+  public void testNestedPropertiesAreNotGenerated() throws Exception {
+    ResultMap resultMap = newAccountMap("account.id");
+    resultMap.compileRowMapper();
+    assertNull(resultMap.getRowMapper());
+  }
+
+  public void testNothingIsGeneratedWithoutEnhancement() throws Exception {
+    AccessPlanFactory.setBytecodeEnhancementEnabled(false);
+    ResultMap resultMap = newAccountMap("id");
+    resultMap.compileRowMapper();
+    assertNull(resultMap.getRowMapper());
+  }
+
+  private ResultMap newAccountMap(String idProperty) {
+    return newAccountMap(idProperty, new IntegerTypeHandler());
+  }
+
+  private ResultMap newAccountMap(String idProperty, TypeHandler idTypeHandler) {
+    ResultMap resultMap = new ResultMap(delegate);
+    resultMap.setId("account");
+    resultMap.setResultClass(Account.class);
+    List mappings = new ArrayList();
+    mappings.add(newMapping(idProperty, COLUMNS[0], idTypeHandler, null));
+    mappings.add(newMapping("firstName", COLUMNS[1], new StringTypeHandler(), null));
+    mappings.add(newMapping("emailAddress", COLUMNS[2], new StringTypeHandler(), "no_email@provided.com"));
+    mappings.add(newMapping("bannerOption", COLUMNS[3], new BooleanTypeHandler(), "false"));
+    mappings.add(newMapping("dateAdded", COLUMNS[4], new DateTypeHandler(), null));
+    resultMap.setResultMappingList(mappings);
+    return resultMap;
+  }
+
+  private ResultMapping newMapping(String property, String column, TypeHandler typeHandler, String nullValue) {
+    ResultMapping mapping = new ResultMapping();
+    mapping.setPropertyName(property);
+    mapping.setColumnName(column);
+    mapping.setTypeHandler(typeHandler);
+    mapping.setNullValue(nullValue);
+    return mapping;
+  }
+
+  private Object mapRow(ResultMap resultMap, Object[] row) throws Exception {
+    ResultSet rs = newResultSet(row);
+    StatementScope statementScope = new StatementScope(new SessionScope());
+    statementScope.setResultSet(rs);
+    return resultMap.mapRow(statementScope, rs, null);
+  }
+
+  /**
+   * A result set positioned on a single row, answering the getters the standard type handlers use
+   */
+  private static ResultSet newResultSet(final Object[] row) {
+    final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(RowMapperTest.class
+        .getClassLoader(), new Class[] { ResultSetMetaData.class }, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if ("getColumnCount".equals(method.getName())) {
+          return new Integer(COLUMNS.length);
+        }
+        return COLUMNS[((Integer) args[0]).intValue() - 1];
+      }
+    });
+    return (ResultSet) Proxy.newProxyInstance(RowMapperTest.class.getClassLoader(), new Class[] { ResultSet.class },
+        new InvocationHandler() {
+          private Object last;
+
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("getMetaData".equals(name)) {
+              return metaData;
+            } else if ("wasNull".equals(name)) {
+              return Boolean.valueOf(last == null);
+            } else if ("hashCode".equals(name)) {
+              return new Integer(System.identityHashCode(proxy));
+            } else if ("equals".equals(name)) {
+              return Boolean.valueOf(proxy == args[0]);
+            }
+            int index = args[0] instanceof Integer ? ((Integer) args[0]).intValue() : indexOf((String) args[0]);
+            last = row[index - 1];
+            if (last == null && method.getReturnType().isPrimitive()) {
+              return method.getReturnType() == Boolean.TYPE ? (Object) Boolean.FALSE : (Object) new Integer(0);
+            }
+            return last;
+          }
+        });
+  }
+
+  /**
+   * An int handler outside the standard set, doubling each value it reads
+   */
+  public static class DoublingIntTypeHandler extends BaseTypeHandler implements PrimitiveTypeHandler {
+
+    public void setParameter(PreparedStatement ps, int i, Object parameter, String jdbcType) throws SQLException {
+      ps.setInt(i, ((Integer) parameter).intValue() / 2);
+    }
+
+    public Object getResult(ResultSet rs, String columnName) throws SQLException {
+      int i = rs.getInt(columnName);
+      return rs.wasNull() ? null : new Integer(i * 2);
+    }
+
+    public Object getResult(ResultSet rs, int columnIndex) throws SQLException {
+      int i = rs.getInt(columnIndex);
+      return rs.wasNull() ? null : new Integer(i * 2);
+    }
+
+    public Object getResult(CallableStatement cs, int columnIndex) throws SQLException {
+      int i = cs.getInt(columnIndex);
+      return cs.wasNull() ? null : new Integer(i * 2);
+    }
+
+    public Object valueOf(String s) {
+      return Integer.valueOf(s);
+    }
+
+    public Class getPrimitiveType() {
+      return int.class;
+    }
+
+    public int getInt(ResultSet rs, int columnIndex) throws SQLException {
+      return rs.getInt(columnIndex) * 2;
+    }
+
+  }
+
+  /**
+   * The standard int handler, counting the reads through its primitive getter
+   */
+  public static class CountingIntTypeHandler extends IntegerTypeHandler {
+
+    private int getIntCalls;
+
+    public Object getResult(ResultSet rs, int columnIndex) throws SQLException {
+      return super.getResult(rs, columnIndex);
+    }
+
+    public int getInt(ResultSet rs, int columnIndex) throws SQLException {
+      getIntCalls++;
+      return super.getInt(rs, columnIndex);
+    }
+
+  }
+
+  private static int indexOf(String column) {
+    for (int i = 0; i < COLUMNS.length; i++) {
+      if (COLUMNS[i].equalsIgnoreCase(column)) {
+        return i + 1;
+      }
+    }
+    throw new IllegalArgumentException(column);
+  }
+
+}
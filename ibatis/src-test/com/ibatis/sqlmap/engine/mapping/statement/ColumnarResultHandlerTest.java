@@ -0,0 +1,265 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.statement;
+
+import com.ibatis.sqlmap.client.ColumnarResult;
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.mapping.result.AutoResultMap;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMapping;
+import com.ibatis.sqlmap.engine.scope.SessionScope;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+import com.ibatis.sqlmap.engine.type.DoubleTypeHandler;
+import com.ibatis.sqlmap.engine.type.IntegerTypeHandler;
+import com.ibatis.sqlmap.engine.type.LongTypeHandler;
+import com.ibatis.sqlmap.engine.type.StringTypeHandler;
+import com.ibatis.sqlmap.engine.type.TypeHandler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ColumnarResultHandlerTest extends TestCase {
+
+  private static final String[] COLUMNS = { "TS", "PRICE", "VOLUME", "SYMBOL" };
+  private static final int[] TYPES = { Types.BIGINT, Types.DOUBLE, Types.NUMERIC, Types.VARCHAR };
+
+  private SqlMapExecutorDelegate delegate;
+
+  @Override
+  protected void setUp() throws Exception {
+    delegate = new SqlMapExecutorDelegate();
+  }
+
+  public void testResultMapColumnsAreTypedByTheirHandlers() throws Exception {
+    Object[][] rows = newRows(200);
+    ColumnarResult result = read(newTickMap(null), rows);
+
+    assertEquals(200, result.getRowCount());
+    assertEquals(4, result.getColumnCount());
+    assertEquals(long.class, result.getColumnType(0));
+    assertEquals(double.class, result.getColumnType(1));
+    assertEquals(int.class, result.getColumnType(2));
+    assertEquals(Object.class, result.getColumnType(3));
+
+    long[] times = result.getLongColumn(result.findColumn("time"));
+    double[] prices = result.getDoubleColumn(result.findColumn("PRICE"));
+    int[] volumes = result.getIntColumn(2);
+    assertEquals(200, times.length);
+    assertEquals(199000L, times[199]);
+    assertEquals(99.5, prices[199], 0.0);
+    assertEquals(199, volumes[199]);
+    assertEquals("IBM", result.getObjectColumn(3)[199]);
+  }
+
+  public void testNullsAreRecordedPerColumn() throws Exception {
+    Object[][] rows = newRows(130);
+    rows[3][1] = null;
+    rows[129][1] = null;
+    rows[70][2] = null;
+    ColumnarResult result = read(newTickMap(null), rows);
+
+    assertTrue(result.isNull(1, 3));
+    assertTrue(result.isNull(1, 129));
+    assertFalse(result.isNull(1, 4));
+    assertFalse(result.isNull(1, 67));
+    assertEquals(0.0, result.getDoubleColumn(1)[3], 0.0);
+    assertNull(result.getValue(1, 3));
+    assertEquals(new Double(2.0), result.getValue(1, 4));
+    assertTrue(result.isNull(2, 70));
+    assertFalse(result.isNull(0, 3));
+  }
+
+  public void testNullValueReplacesNulls() throws Exception {
+    Object[][] rows = newRows(2);
+    rows[1][2] = null;
+    ColumnarResult result = read(newTickMap("-1"), rows);
+
+    assertFalse(result.isNull(2, 1));
+    assertEquals(-1, result.getIntColumn(2)[1]);
+  }
+
+  public void testColumnsOfTheWrongTypeAreRejected() throws Exception {
+    ColumnarResult result = read(newTickMap(null), newRows(1));
+    try {
+      result.getIntColumn(0);
+      fail("Expected a long column not to be read as int values.");
+    } catch (SqlMapException e) {
+      assertTrue(e.getMessage().indexOf("long") > -1);
+    }
+  }
+
+  public void testResultClassColumnsFollowTheMetaData() throws Exception {
+    Object[][] rows = newRows(3);
+    for (int i = 0; i < rows.length; i++) {
+      rows[i][2] = new BigDecimal(i);
+    }
+    ColumnarResult result = read(new AutoResultMap(delegate, false), rows);
+
+    assertEquals(3, result.getRowCount());
+    assertEquals("TS", result.getColumnName(0));
+    assertEquals(long.class, result.getColumnType(0));
+    assertEquals(double.class, result.getColumnType(1));
+    // NUMERIC(10, 2) does not fit an integral type
+    assertEquals(Object.class, result.getColumnType(2));
+    assertEquals(new BigDecimal(2), result.getObjectColumn(2)[2]);
+    assertEquals(2000L, result.getLongColumn(0)[2]);
+  }
+
+  public void testEmptyResultHasTypedColumns() throws Exception {
+    ColumnarResult result = read(newTickMap(null), new Object[0][]);
+    assertEquals(0, result.getRowCount());
+    assertEquals(4, result.getColumnCount());
+    assertEquals(long.class, result.getColumnType(0));
+    assertEquals(0, result.getLongColumn(result.findColumn("time")).length);
+    assertEquals(0, result.getDoubleColumn(result.findColumn("PRICE")).length);
+    assertEquals(0, result.getIntColumn(2).length);
+    assertEquals(0, result.getObjectColumn(3).length);
+  }
+
+  public void testEmptyResultClassColumnsFollowTheMetaData() throws Exception {
+    ColumnarResult result = read(new AutoResultMap(delegate, false), new Object[0][]);
+    assertEquals(0, result.getRowCount());
+    assertEquals(4, result.getColumnCount());
+    assertEquals(0, result.findColumn("TS"));
+    assertEquals(0, result.getLongColumn(0).length);
+  }
+
+  public void testNoResultSetHasNoColumns() throws Exception {
+    ColumnarResult result = new ColumnarResultHandler().getResult();
+    assertEquals(0, result.getRowCount());
+    assertEquals(0, result.getColumnCount());
+  }
+
+  private ResultMap newTickMap(String volumeNullValue) {
+    ResultMap resultMap = new ResultMap(delegate);
+    resultMap.setId("tick");
+    List mappings = new ArrayList();
+    mappings.add(newMapping("time", COLUMNS[0], new LongTypeHandler(), null));
+    mappings.add(newMapping(null, COLUMNS[1], new DoubleTypeHandler(), null));
+    mappings.add(newMapping("volume", COLUMNS[2], new IntegerTypeHandler(), volumeNullValue));
+    mappings.add(newMapping("symbol", COLUMNS[3], new StringTypeHandler(), null));
+    resultMap.setResultMappingList(mappings);
+    return resultMap;
+  }
+
+  private ResultMapping newMapping(String property, String column, TypeHandler typeHandler, String nullValue) {
+    ResultMapping mapping = new ResultMapping();
+    mapping.setPropertyName(property);
+    mapping.setColumnName(column);
+    mapping.setTypeHandler(typeHandler);
+    mapping.setNullValue(nullValue);
+    return mapping;
+  }
+
+  private static Object[][] newRows(int count) {
+    Object[][] rows = new Object[count][];
+    for (int i = 0; i < count; i++) {
+      rows[i] = new Object[] { new Long(i * 1000L), new Double(i / 2.0), new Integer(i), "IBM" };
+    }
+    return rows;
+  }
+
+  private ColumnarResult read(ResultMap resultMap, Object[][] rows) throws Exception {
+    StatementScope statementScope = new StatementScope(new SessionScope());
+    statementScope.setResultMap(resultMap);
+    ColumnarResultHandler handler = new ColumnarResultHandler();
+    int[] row = new int[1];
+    ResultSet rs = newResultSet(rows, row);
+    handler.handleResultSet(statementScope, rs);
+    for (row[0] = 0; row[0] < rows.length; row[0]++) {
+      handler.handleResultObject(statementScope, rs);
+    }
+    return handler.getResult();
+  }
+
+  /**
+   * A result set over the given rows, positioned on the row held by the row array
+   */
+  private static ResultSet newResultSet(final Object[][] rows, final int[] row) {
+    final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(
+        ColumnarResultHandlerTest.class.getClassLoader(), new Class[] { ResultSetMetaData.class },
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("getColumnCount".equals(name)) {
+              return new Integer(COLUMNS.length);
+            }
+            int column = ((Integer) args[0]).intValue() - 1;
+            if ("getColumnType".equals(name)) {
+              return new Integer(TYPES[column]);
+            } else if ("getPrecision".equals(name)) {
+              return new Integer(10);
+            } else if ("getScale".equals(name)) {
+              return new Integer(2);
+            }
+            return COLUMNS[column];
+          }
+        });
+    return (ResultSet) Proxy.newProxyInstance(ColumnarResultHandlerTest.class.getClassLoader(),
+        new Class[] { ResultSet.class }, new InvocationHandler() {
+          private Object last;
+
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("getMetaData".equals(name)) {
+              return metaData;
+            } else if ("wasNull".equals(name)) {
+              return Boolean.valueOf(last == null);
+            } else if ("hashCode".equals(name)) {
+              return new Integer(System.identityHashCode(proxy));
+            } else if ("equals".equals(name)) {
+              return Boolean.valueOf(proxy == args[0]);
+            } else if ("findColumn".equals(name)) {
+              return new Integer(indexOf((String) args[0]));
+            }
+            int index = args[0] instanceof Integer ? ((Integer) args[0]).intValue() : indexOf((String) args[0]);
+            last = rows[row[0]][index - 1];
+            Class type = method.getReturnType();
+            if (last == null && type.isPrimitive()) {
+              return type == Long.TYPE ? (Object) new Long(0) : type == Double.TYPE ? (Object) new Double(0)
+                  : (Object) new Integer(0);
+            } else if (last instanceof Number && type == Long.TYPE) {
+              return new Long(((Number) last).longValue());
+            } else if (last instanceof Number && type == Double.TYPE) {
+              return new Double(((Number) last).doubleValue());
+            } else if (last instanceof Number && type == Integer.TYPE) {
+              return new Integer(((Number) last).intValue());
+            }
+            return last;
+          }
+        });
+  }
+
+  private static int indexOf(String column) {
+    for (int i = 0; i < COLUMNS.length; i++) {
+      if (COLUMNS[i].equalsIgnoreCase(column)) {
+        return i + 1;
+      }
+    }
+    throw new IllegalArgumentException(column);
+  }
+
+}
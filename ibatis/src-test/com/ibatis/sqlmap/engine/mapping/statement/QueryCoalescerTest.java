@@ -0,0 +1,199 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.statement;
+
+import com.ibatis.sqlmap.engine.cache.CacheKey;
+import com.ibatis.sqlmap.engine.execution.DeadlineTimer;
+
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class QueryCoalescerTest extends TestCase {
+
+  private QueryCoalescer coalescer;
+  private AtomicInteger executions;
+  private CountDownLatch started;
+  private CountDownLatch release;
+  private boolean copyFails;
+
+  @Override
+  protected void setUp() throws Exception {
+    coalescer = new QueryCoalescer();
+    executions = new AtomicInteger();
+    started = new CountDownLatch(1);
+    release = new CountDownLatch(1);
+  }
+
+  public void testFollowersGetCopiesOfTheLeaderResult() throws Exception {
+    Caller[] callers = runConcurrently(false, false);
+    assertEquals(1, executions.get());
+    for (int i = 0; i < callers.length; i++) {
+      assertEquals(list(), callers[i].result);
+      for (int j = 0; j < i; j++) {
+        assertNotSame(callers[j].result, callers[i].result);
+      }
+    }
+    assertEquals(0, coalescer.getInFlightCount());
+  }
+
+  public void testReadOnlyResultsAreShared() throws Exception {
+    Caller[] callers = runConcurrently(true, false);
+    assertEquals(1, executions.get());
+    for (int i = 1; i < callers.length; i++) {
+      assertSame(callers[0].result, callers[i].result);
+    }
+  }
+
+  public void testFollowersRunTheirOwnQueryWhenTheLeaderFails() throws Exception {
+    Caller[] callers = runConcurrently(false, true);
+    assertEquals(callers.length, executions.get());
+    assertNotNull(callers[0].failure);
+    for (int i = 1; i < callers.length; i++) {
+      assertEquals(list(), callers[i].result);
+    }
+  }
+
+  public void testFollowersRunTheirOwnQueryWhenTheCopyFails() throws Exception {
+    copyFails = true;
+    Caller[] callers = runConcurrently(false, false);
+    assertEquals(callers.length, executions.get());
+    for (int i = 0; i < callers.length; i++) {
+      assertNull(callers[i].failure);
+      assertEquals(2, ((List) callers[i].result).size());
+    }
+    assertEquals(0, coalescer.getInFlightCount());
+  }
+
+  public void testDifferentKeysAreNotCoalesced() throws Exception {
+    coalescer.execute(key("a"), false, DeadlineTimer.NO_DEADLINE, new CountingQuery(false));
+    coalescer.execute(key("b"), false, DeadlineTimer.NO_DEADLINE, new CountingQuery(false));
+    assertEquals(2, executions.get());
+  }
+
+  private Caller[] runConcurrently(boolean readOnly, boolean leaderFails) throws Exception {
+    Caller[] callers = new Caller[4];
+    callers[0] = new Caller(readOnly, new BlockingQuery(leaderFails));
+    callers[0].start();
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    for (int i = 1; i < callers.length; i++) {
+      callers[i] = new Caller(readOnly, new CountingQuery(false));
+      callers[i].start();
+    }
+    // the followers have joined once they are waiting
+    while (countWaiting(callers) < callers.length - 1) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+    for (int i = 0; i < callers.length; i++) {
+      callers[i].join(5000);
+    }
+    return callers;
+  }
+
+  private int countWaiting(Caller[] callers) {
+    int waiting = 0;
+    for (int i = 1; i < callers.length; i++) {
+      if (callers[i].getState() == Thread.State.WAITING) {
+        waiting++;
+      }
+    }
+    return waiting;
+  }
+
+  private static CacheKey key(String value) {
+    CacheKey key = new CacheKey();
+    key.update(value);
+    return key;
+  }
+
+  private List list() {
+    List list = new ArrayList();
+    list.add("row");
+    if (copyFails) {
+      list.add(new FailingCopy());
+    }
+    return list;
+  }
+
+  private static class FailingCopy implements Serializable {
+    private void writeObject(ObjectOutputStream out) {
+      throw new IllegalStateException("cannot be copied");
+    }
+  }
+
+  private class Caller extends Thread {
+    private boolean readOnly;
+    private QueryCoalescer.Query query;
+    private Object result;
+    private Exception failure;
+
+    public Caller(boolean readOnly, QueryCoalescer.Query query) {
+      this.readOnly = readOnly;
+      this.query = query;
+    }
+
+    @Override
+    public void run() {
+      try {
+        result = coalescer.execute(key("query"), readOnly, DeadlineTimer.NO_DEADLINE, query);
+      } catch (Exception e) {
+        failure = e;
+      }
+    }
+  }
+
+  private class CountingQuery implements QueryCoalescer.Query {
+    private boolean fail;
+
+    public CountingQuery(boolean fail) {
+      this.fail = fail;
+    }
+
+    public Object run() throws SQLException {
+      executions.incrementAndGet();
+      if (fail) {
+        throw new SQLException("failed");
+      }
+      return list();
+    }
+  }
+
+  private class BlockingQuery extends CountingQuery {
+    public BlockingQuery(boolean fail) {
+      super(fail);
+    }
+
+    @Override
+    public Object run() throws SQLException {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new SQLException("interrupted");
+      }
+      return super.run();
+    }
+  }
+
+}
@@ -0,0 +1,338 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.statement;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import testdomain.Account;
+
+public class SpillableListTest extends TestCase {
+
+  public void testRowsBeyondTheThresholdAreSpilled() {
+    SpillableList list = new SpillableList(2);
+    for (int i = 1; i <= 5; i++) {
+      list.add(newAccount(i));
+    }
+    assertEquals(5, list.size());
+    assertEquals(3, list.getSpilledRowCount());
+
+    Account first = (Account) list.get(0);
+    assertSame(first, list.get(0));
+    Account fourth = (Account) list.get(3);
+    assertNotSame(fourth, list.get(3));
+    assertEquals(4, fourth.getId());
+    assertEquals("First4", fourth.getFirstName());
+    assertNull(fourth.getEmailAddress());
+    assertTrue(fourth.isBannerOption());
+    assertEquals(new Timestamp(4000L), fourth.getDateAdded());
+  }
+
+  public void testValuesSurviveTheRoundTrip() {
+    Map row = new HashMap();
+    row.put("name", "Clinton");
+    row.put("count", new Integer(-5));
+    row.put("big", new Long(Long.MIN_VALUE));
+    row.put("price", new BigDecimal("-12.345"));
+    row.put("ratio", new Double(0.25));
+    row.put("small", new Float(1.5f));
+    row.put("flag", Boolean.FALSE);
+    row.put("bytes", new byte[] { 1, 2, 3 });
+    row.put("nested", new ArrayList(Arrays.asList(new Object[] { "a", null, new Short((short) 7) })));
+    Timestamp timestamp = new Timestamp(1234L);
+    timestamp.setNanos(5678);
+    row.put("time", timestamp);
+
+    SpillableList list = new SpillableList(0);
+    list.add(row);
+    list.add("plain");
+    assertEquals(2, list.getSpilledRowCount());
+
+    Map copy = (Map) list.get(0);
+    assertEquals(HashMap.class, copy.getClass());
+    assertEquals("Clinton", copy.get("name"));
+    assertEquals(new Integer(-5), copy.get("count"));
+    assertEquals(new Long(Long.MIN_VALUE), copy.get("big"));
+    assertEquals(new BigDecimal("-12.345"), copy.get("price"));
+    assertEquals(new Double(0.25), copy.get("ratio"));
+    assertEquals(new Float(1.5f), copy.get("small"));
+    assertEquals(Boolean.FALSE, copy.get("flag"));
+    assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, (byte[]) copy.get("bytes")));
+    assertEquals(Arrays.asList(new Object[] { "a", null, new Short((short) 7) }), copy.get("nested"));
+    assertEquals(timestamp, copy.get("time"));
+    assertEquals("plain", list.get(1));
+  }
+
+  public void testRowsThatCannotBeEncodedStayOnTheHeap() {
+    SpillableList list = new SpillableList(0);
+    Object row = new Object();
+    list.add(row);
+    list.add("spilled");
+    assertEquals(1, list.getSpilledRowCount());
+    assertSame(row, list.get(0));
+    assertEquals("spilled", list.get(1));
+  }
+
+  public void testListOperations() {
+    SpillableList list = new SpillableList(1);
+    list.addAll(Arrays.asList(new Object[] { "c", "a", "d", "b" }));
+    Collections.sort(list);
+    assertEquals(Arrays.asList(new Object[] { "a", "b", "c", "d" }), list);
+
+    list.set(2, "x");
+    assertEquals("x", list.get(2));
+    assertEquals("a", list.remove(0));
+    list.add(0, "first");
+    assertEquals(Arrays.asList(new Object[] { "first", "b", "x", "d" }), list);
+    assertTrue(list.contains("d"));
+
+    list.clear();
+    assertEquals(0, list.size());
+    assertEquals(0, list.getSpilledRowCount());
+    list.add("again");
+    assertEquals("again", list.get(0));
+  }
+
+  public void testManyAndLargeRows() {
+    SpillableList list = new SpillableList(10);
+    for (int i = 0; i < 20000; i++) {
+      list.add("row " + i);
+      if (i % 5000 == 0) {
+        // reads in between writes map the file again as it grows
+        assertEquals("row " + i, list.get(i));
+      }
+    }
+    byte[] large = new byte[200 * 1024];
+    large[large.length - 1] = 42;
+    list.add(large);
+    list.add("after");
+
+    assertEquals(20002, list.size());
+    assertEquals("row 9", list.get(9));
+    assertEquals("row 10", list.get(10));
+    assertEquals("row 19999", list.get(19999));
+    assertEquals(42, ((byte[]) list.get(20000))[large.length - 1]);
+    assertEquals("after", list.get(20001));
+  }
+
+  public void testBufferedRowsAreKeptWhenTheWriteFails() {
+    // nothing reaches the file: the first write stops halfway and the next one fails
+    SpillableList list = new FailingSpillableList(0);
+    for (int i = 0; i < 10; i++) {
+      list.add("row " + i);
+    }
+    assertEquals(10, list.getSpilledRowCount());
+
+    assertEquals("row 3", list.get(3));
+    assertEquals(0, list.getSpilledRowCount());
+    list.add("after");
+    assertEquals(0, list.getSpilledRowCount());
+    for (int i = 0; i < 10; i++) {
+      assertEquals("row " + i, list.get(i));
+    }
+    assertEquals("after", list.get(10));
+  }
+
+  public void testWrittenRowsAreReadAfterTheWriteFails() {
+    // the first buffer is written, the second one fails while rows are added
+    SpillableList list = new FailingSpillableList(1);
+    int rows = 5000;
+    for (int i = 0; i < rows; i++) {
+      list.add("row " + i + " of a result that spills to disk");
+    }
+    int spilled = list.getSpilledRowCount();
+    assertTrue(spilled > 0);
+    assertTrue(spilled < rows);
+    for (int i = 0; i < rows; i++) {
+      assertEquals("row " + i + " of a result that spills to disk", list.get(i));
+    }
+    assertEquals(spilled, list.getSpilledRowCount());
+  }
+
+  public void testSerializedAsArrayList() throws Exception {
+    SpillableList list = new SpillableList(1);
+    list.add(newAccount(1));
+    list.add(newAccount(2));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(list);
+    out.close();
+    Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    assertEquals(ArrayList.class, copy.getClass());
+    assertEquals(2, ((Account) ((List) copy).get(1)).getId());
+  }
+
+  private static Account newAccount(int id) {
+    Account account = new Account();
+    account.setId(id);
+    account.setFirstName("First" + id);
+    account.setLastName("Last" + id);
+    account.setBannerOption(id % 2 == 0);
+    account.setDateAdded(new Timestamp(id * 1000L));
+    return account;
+  }
+
+  /**
+   * A list whose temporary file fills up after a number of writes
+   */
+  private static class FailingSpillableList extends SpillableList {
+
+    private final int writes;
+
+    FailingSpillableList(int writes) {
+      super(0);
+      this.writes = writes;
+    }
+
+    @Override
+    FileChannel openChannel() throws IOException {
+      return new FailingChannel(super.openChannel(), writes);
+    }
+
+  }
+
+  /**
+   * A channel that completes a number of writes, writes half of the next one and fails the following ones
+   */
+  private static class FailingChannel extends FileChannel {
+
+    private final FileChannel channel;
+    private int writes;
+
+    FailingChannel(FileChannel channel, int writes) {
+      this.channel = channel;
+      this.writes = writes;
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+      if (writes < 0) {
+        throw new IOException("No space left on device");
+      }
+      if (writes-- > 0) {
+        return channel.write(src, position);
+      }
+      ByteBuffer half = src.duplicate();
+      half.limit(src.position() + src.remaining() / 2);
+      int written = channel.write(half, position);
+      src.position(src.position() + written);
+      return written;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+      return channel.read(dst, position);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+      return channel.map(mode, position, size);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      return channel.read(dst);
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+      return channel.read(dsts, offset, length);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long position() throws IOException {
+      return channel.position();
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+      channel.position(newPosition);
+      return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+      return channel.size();
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+      channel.truncate(size);
+      return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+      channel.force(metaData);
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+      channel.close();
+    }
+
+  }
+
+}
@@ -0,0 +1,13 @@
+-- DERBY DATABASE
+
+-- Dropping Tables
+
+DROP TABLE GENERATED_KEY_ACCOUNT;
+
+-- Creating Tables
+
+CREATE TABLE GENERATED_KEY_ACCOUNT (
+    ACC_ID             INTEGER NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 100),
+    ACC_FIRST_NAME     VARCHAR(255) NOT NULL,
+    PRIMARY KEY (ACC_ID)
+);
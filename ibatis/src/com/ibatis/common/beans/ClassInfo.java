@@ -542,6 +542,10 @@ public class ClassInfo {
     ClassInfo.cacheEnabled = cacheEnabled;
   }
 
+  static boolean isCacheEnabled() {
+    return cacheEnabled;
+  }
+
   /**
    * Examines a Throwable object and gets it's root cause
    *
@@ -15,8 +15,6 @@
  */
 package com.ibatis.common.beans;
 
-import com.ibatis.sqlmap.engine.mapping.result.ResultObjectFactoryUtil;
-
 import java.util.Map;
 import java.util.StringTokenizer;
 
@@ -181,21 +179,7 @@ public class ComplexBeanProbe extends BaseProbe {
      * @return The property value (as an Object)
      */
     public Object getObject(Object object, String name) {
-        if (name.indexOf('.') > -1) {
-            StringTokenizer parser = new StringTokenizer(name, ".");
-            Object value = object;
-            while (parser.hasMoreTokens()) {
-                value = getProperty(value, parser.nextToken());
-
-                if (value == null) {
-                    break;
-                }
-
-            }
-            return value;
-        } else {
-            return getProperty(object, name);
-        }
+        return PropertyPath.compile(name).getBeanValue(object);
     }
 
     /**
@@ -206,35 +190,7 @@ public class ComplexBeanProbe extends BaseProbe {
      * @param value  The new value to set
      */
     public void setObject(Object object, String name, Object value) {
-        if (name.indexOf('.') > -1) {
-            StringTokenizer parser = new StringTokenizer(name, ".");
-            String property = parser.nextToken();
-            Object child = object;
-            while (parser.hasMoreTokens()) {
-                Class type = getPropertyTypeForSetter(child, property);
-                Object parent = child;
-                child = getProperty(parent, property);
-                if (child == null) {
-                    if (value == null) {
-                        return; // don't instantiate child path if value is null
-                    } else {
-                        try {
-                            child = ResultObjectFactoryUtil.createObjectThroughFactory(type);
-                            setObject(parent, property, child);
-                        } catch (Exception e) {
-                            throw new ProbeException(
-                                    "Cannot set value of property '" + name + "' because '" + property
-                                            + "' is null and cannot be instantiated on instance of " + type.getName() + ". Cause:"
-                                            + e.toString(), e);
-                        }
-                    }
-                }
-                property = parser.nextToken();
-            }
-            setProperty(child, property, value);
-        } else {
-            setProperty(object, name, value);
-        }
+        PropertyPath.compile(name).setBeanValue(object, value);
     }
 
     /**
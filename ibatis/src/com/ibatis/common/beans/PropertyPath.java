@@ -0,0 +1,325 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.common.beans;
+
+import com.ibatis.sqlmap.engine.mapping.result.ResultObjectFactoryUtil;
+
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A property expression such as <code>order.lineItems[0].price</code> that has been parsed once into a chain of
+ * steps. Each step remembers the getter and setter it resolved for each class it was applied to, so evaluating the
+ * same path against objects of the same classes does no tokenizing and no ClassInfo lookups.
+ * <p>
+ * Paths are cached by their text, except indexed paths, which iterate tags build for every index; the per-class
+ * resolution lives in the steps. Values are read and written with the
+ * same rules and error messages as {@link GenericProbe}.
+ * <p>
+ * Examples:
+ * <p>
+ * Object value = PropertyPath.compile("order.customer.name").getValue(object);
+ * <p>
+ * PropertyPath.compile("order.customer.name").setValue(object, value);
+ */
+public final class PropertyPath {
+
+  private static final Map PATHS = new ConcurrentHashMap();
+
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+  private static final ComplexBeanProbe BEAN_PROBE = new ComplexBeanProbe();
+  private static final Probe GENERIC_PROBE = ProbeFactory.getProbe();
+
+  private final String path;
+  private final Step[] steps;
+
+  private PropertyPath(String path) {
+    this.path = path;
+    if (path.indexOf('.') > -1) {
+      StringTokenizer parser = new StringTokenizer(path, ".");
+      steps = new Step[parser.countTokens()];
+      for (int i = 0; i < steps.length; i++) {
+        steps[i] = new Step(parser.nextToken());
+      }
+    } else {
+      steps = new Step[] { new Step(path) };
+    }
+  }
+
+  /**
+   * Gets the compiled form of a property path, parsing it on first use
+   *
+   * @param path
+   *          - the property path
+   * @return The compiled path
+   */
+  public static PropertyPath compile(String path) {
+    PropertyPath compiled = (PropertyPath) PATHS.get(path);
+    if (compiled == null) {
+      compiled = new PropertyPath(path);
+      // paths built from iterate indexes are unbounded, so only the paths of the mappings are kept
+      if (path.indexOf('[') == -1) {
+        PATHS.put(path, compiled);
+      }
+    }
+    return compiled;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * Gets the value at the end of this path from a bean, Map, List, array or DOM document
+   *
+   * @param object
+   *          - the object to start from
+   * @return The value, or null if an intermediate property is null
+   * @see GenericProbe#getObject(Object, String)
+   */
+  public Object getValue(Object object) {
+    if (object instanceof org.w3c.dom.Document || object instanceof List
+        || (object != null && object.getClass().isArray())) {
+      return GENERIC_PROBE.getObject(object, path);
+    }
+    return getBeanValue(object);
+  }
+
+  /**
+   * Sets the value at the end of this path, instantiating null intermediate beans on the way
+   *
+   * @param object
+   *          - the object to start from
+   * @param value
+   *          - the new value
+   * @see GenericProbe#setObject(Object, String, Object)
+   */
+  public void setValue(Object object, Object value) {
+    if (object instanceof org.w3c.dom.Document) {
+      GENERIC_PROBE.setObject(object, path, value);
+    } else {
+      setBeanValue(object, value);
+    }
+  }
+
+  Object getBeanValue(Object object) {
+    Object value = object;
+    for (int i = 0; i < steps.length; i++) {
+      value = steps[i].get(value);
+      if (value == null) {
+        break;
+      }
+    }
+    return value;
+  }
+
+  void setBeanValue(Object object, Object value) {
+    if (steps.length == 0) {
+      throw new ProbeException("Could not set property '" + path + "' because it names no property.");
+    }
+    Object child = object;
+    int last = steps.length - 1;
+    for (int i = 0; i < last; i++) {
+      Step step = steps[i];
+      Class type = step.getSetterType(child);
+      Object parent = child;
+      child = step.get(parent);
+      if (child == null) {
+        if (value == null) {
+          return; // don't instantiate child path if value is null
+        }
+        try {
+          child = ResultObjectFactoryUtil.createObjectThroughFactory(type);
+          step.set(parent, child);
+        } catch (Exception e) {
+          throw new ProbeException("Cannot set value of property '" + path + "' because '" + step.token
+              + "' is null and cannot be instantiated on instance of " + type.getName() + ". Cause:" + e.toString(), e);
+        }
+      }
+    }
+    steps[last].set(child, value);
+  }
+
+  @Override
+  public String toString() {
+    return path;
+  }
+
+  /**
+   * One dot-separated part of a path, optionally indexed, e.g. <code>lineItems[0]</code>
+   */
+  private static final class Step {
+
+    private final String token;
+    private final String name;
+    private final boolean indexed;
+    private final int index;
+
+    // the accessors of this step by the class they were resolved for
+    private final Map bindings = new ConcurrentHashMap();
+
+    Step(String token) {
+      this.token = token;
+      int bracket = token.indexOf('[');
+      if (bracket > -1) {
+        String propertyName = null;
+        int parsedIndex = -1;
+        try {
+          propertyName = token.substring(0, bracket);
+          parsedIndex = Integer.parseInt(token.substring(bracket + 1, token.indexOf(']')));
+        } catch (RuntimeException e) {
+          // malformed index: left to the probe so it fails with its usual message when evaluated
+        }
+        this.name = propertyName;
+        this.index = parsedIndex;
+        this.indexed = true;
+      } else {
+        this.name = token;
+        this.index = -1;
+        this.indexed = false;
+      }
+    }
+
+    Object get(Object object) {
+      if (object == null || (indexed && index < 0)) {
+        return BEAN_PROBE.getProperty(object, token);
+      }
+      if (!indexed) {
+        return read(object);
+      }
+      try {
+        Object list = name.length() == 0 ? object : read(object);
+        if (list instanceof List) {
+          return ((List) list).get(index);
+        } else if (list != null && list.getClass().isArray()) {
+          return Array.get(list, index);
+        } else {
+          throw new ProbeException("The '" + name + "' property of the " + object.getClass().getName()
+              + " class is not a List or Array.");
+        }
+      } catch (ProbeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new ProbeException("Error getting ordinal list from JavaBean. Cause " + e, e);
+      }
+    }
+
+    void set(Object object, Object value) {
+      if (object == null || indexed) {
+        BEAN_PROBE.setProperty(object, token, value);
+      } else if (object instanceof Map) {
+        ((Map) object).put(name, value);
+      } else {
+        try {
+          Invoker setter = bind(object.getClass()).getSetter();
+          try {
+            setter.invoke(object, new Object[] { value });
+          } catch (Throwable t) {
+            throw ClassInfo.unwrapThrowable(t);
+          }
+        } catch (ProbeException e) {
+          throw e;
+        } catch (Throwable t) {
+          throw new ProbeException("Could not set property '" + name + "' to value '" + value + "' for "
+              + object.getClass().getName() + ".  Cause: " + t.toString(), t);
+        }
+      }
+    }
+
+    Class getSetterType(Object object) {
+      if (object instanceof Map) {
+        Object value = ((Map) object).get(token);
+        return value == null ? Object.class : value.getClass();
+      } else if (indexed) {
+        return ClassInfo.getInstance(object.getClass()).getSetterType(token);
+      } else {
+        return bind(object.getClass()).getSetterType();
+      }
+    }
+
+    private Object read(Object object) {
+      if (object instanceof Map) {
+        return ((Map) object).get(name);
+      }
+      try {
+        Invoker getter = bind(object.getClass()).getGetter();
+        try {
+          return getter.invoke(object, NO_ARGUMENTS);
+        } catch (Throwable t) {
+          throw ClassInfo.unwrapThrowable(t);
+        }
+      } catch (ProbeException e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new ProbeException("Could not get property '" + name + "' from " + object.getClass().getName()
+            + ".  Cause: " + t.toString(), t);
+      }
+    }
+
+    private Binding bind(Class type) {
+      Binding current = (Binding) bindings.get(type);
+      if (current == null) {
+        current = new Binding(type, name);
+        if (ClassInfo.isCacheEnabled()) {
+          bindings.put(type, current);
+        }
+      }
+      return current;
+    }
+  }
+
+  /**
+   * The accessors of one property on one class
+   */
+  private static final class Binding {
+
+    private final ClassInfo classInfo;
+    private final String name;
+    private final Invoker getter;
+    private final Invoker setter;
+    private final Class setterType;
+
+    Binding(Class type, String name) {
+      this.classInfo = ClassInfo.getInstance(type);
+      this.name = name;
+      this.getter = classInfo.hasReadableProperty(name) ? classInfo.getGetInvoker(name) : null;
+      if (classInfo.hasWritableProperty(name)) {
+        this.setter = classInfo.getSetInvoker(name);
+        this.setterType = classInfo.getSetterType(name);
+      } else {
+        this.setter = null;
+        this.setterType = null;
+      }
+    }
+
+    Invoker getGetter() {
+      // missing accessors are looked up again so ClassInfo reports them
+      return getter != null ? getter : classInfo.getGetInvoker(name);
+    }
+
+    Invoker getSetter() {
+      return setter != null ? setter : classInfo.getSetInvoker(name);
+    }
+
+    Class getSetterType() {
+      return setterType != null ? setterType : classInfo.getSetterType(name);
+    }
+  }
+
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.client;
+
+/**
+ * The rows of a mapped SELECT statement held column by column.
+ * <p>
+ * Each column is one array with a value per row. Columns of int, long and double values (including short, byte and
+ * float values, widened) are primitive arrays, any other column is an Object[]. SQL NULLs are recorded in a bitmap per
+ * column and read as 0 in a primitive array; use isNull() to tell them apart. When the statement has an explicit result
+ * map, there is one column per result mapping, named after its property and typed by its type handler. Otherwise the
+ * columns and their types are those of the ResultSetMetaData.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * ColumnarResult result = sqlMap.queryForColumns(&quot;getPriceHistory&quot;, symbol);
+ * long[] times = result.getLongColumn(result.findColumn(&quot;timestamp&quot;));
+ * double[] prices = result.getDoubleColumn(result.findColumn(&quot;price&quot;));
+ * for (int row = 0; row &lt; result.getRowCount(); row++) {
+ *   ...
+ * }
+ * </pre>
+ * <p>
+ * The arrays are returned as they are held, without copying, and must not be modified. Columns are numbered from 0.
+ *
+ * @see SqlMapExecutor#queryForColumns(String, Object)
+ */
+public interface ColumnarResult {
+
+  /**
+   * Returns the number of rows.
+   *
+   * @return the number of rows
+   */
+  int getRowCount();
+
+  /**
+   * Returns the number of columns.
+   *
+   * @return the number of columns
+   */
+  int getColumnCount();
+
+  /**
+   * Returns the name of a column: the property of its result mapping, or the label of the column in the result set.
+   *
+   * @param column
+   *          the column, from 0
+   * @return the name of the column
+   */
+  String getColumnName(int column);
+
+  /**
+   * Finds a column by name, ignoring case.
+   *
+   * @param name
+   *          the name of the column
+   * @return the column, from 0
+   * @throws SqlMapException
+   *           if there is no column with that name
+   */
+  int findColumn(String name);
+
+  /**
+   * Returns the type of the array holding a column: int.class, long.class, double.class or Object.class.
+   *
+   * @param column
+   *          the column, from 0
+   * @return the element type of the column
+   */
+  Class getColumnType(int column);
+
+  /**
+   * Returns the values of a column of type int.
+   *
+   * @param column
+   *          the column, from 0
+   * @return the values, one per row
+   * @throws SqlMapException
+   *           if the column does not hold int values
+   */
+  int[] getIntColumn(int column);
+
+  /**
+   * Returns the values of a column of type long.
+   *
+   * @param column
+   *          the column, from 0
+   * @return the values, one per row
+   * @throws SqlMapException
+   *           if the column does not hold long values
+   */
+  long[] getLongColumn(int column);
+
+  /**
+   * Returns the values of a column of type double.
+   *
+   * @param column
+   *          the column, from 0
+   * @return the values, one per row
+   * @throws SqlMapException
+   *           if the column does not hold double values
+   */
+  double[] getDoubleColumn(int column);
+
+  /**
+   * Returns the values of a column of type Object.
+   *
+   * @param column
+   *          the column, from 0
+   * @return the values, one per row
+   * @throws SqlMapException
+   *           if the column holds primitive values
+   */
+  Object[] getObjectColumn(int column);
+
+  /**
+   * Tells if a value was SQL NULL.
+   *
+   * @param column
+   *          the column, from 0
+   * @param row
+   *          the row, from 0
+   * @return true if the value was NULL
+   */
+  boolean isNull(int column, int row);
+
+  /**
+   * Returns a value of any column, boxing primitive values.
+   *
+   * @param column
+   *          the column, from 0
+   * @param row
+   *          the row, from 0
+   * @return the value, or null if it was NULL
+   */
+  Object getValue(int column, int row);
+
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.client;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+
+/**
+ * A forward only iterator over the results of a mapped SELECT statement.
+ * <p>
+ * Unlike queryForList(), a Cursor does not load the whole result into memory. Each call to next() reads one row from
+ * the open ResultSet and applies the result map to it. The connection and statement are held until the cursor is
+ * closed, so a Cursor must always be closed, preferably in a finally block. A cursor closes itself once the last row
+ * has been read.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * Cursor cursor = sqlMap.queryForCursor(&quot;findAllEmployees&quot;, null);
+ * try {
+ *   while (cursor.hasNext()) {
+ *     Employee employee = (Employee) cursor.next();
+ *     ...
+ *   }
+ * } finally {
+ *   cursor.close();
+ * }
+ * </pre>
+ * <p>
+ * A Cursor is not thread safe and should be iterated and closed on the thread that opened it. Errors that occur while
+ * reading rows are thrown as SqlMapException, as the Iterator methods cannot throw SQLException.
+ *
+ * @see SqlMapExecutor#queryForCursor(String, Object)
+ */
+public interface Cursor extends Iterator {
+
+  /**
+   * Closes the underlying ResultSet and statement and, if the cursor started its own transaction, ends it. Calling
+   * close() more than once has no effect.
+   *
+   * @throws SQLException
+   *           If the resources could not be released.
+   */
+  void close() throws SQLException;
+
+  /**
+   * Tells if the cursor has been closed, either explicitly or because all rows have been read.
+   *
+   * @return true if the cursor is closed
+   */
+  boolean isClosed();
+
+  /**
+   * Returns the number of result objects returned by next() so far.
+   *
+   * @return the number of rows read
+   */
+  int getRowCount();
+
+}
@@ -16,6 +16,7 @@
 package com.ibatis.sqlmap.client;
 
 import java.sql.Connection;
+import java.util.concurrent.Future;
 
 /**
  * A thread safe client for working with your SQL Maps (Start Here). This interface inherits transaction control and
@@ -171,6 +172,50 @@ public interface SqlMapClient extends SqlMapExecutor, SqlMapTransactionManager {
      */
     public void flushDataCache(String cacheId);
 
+    /**
+     * Executes a mapped SQL SELECT statement that returns data to populate a single object instance, on a thread of
+     * the asynchronous query pool.
+     * <p>
+     * The statement runs in a session of its own, with its own connection and an automatic transaction. It is never
+     * part of a transaction started on the calling thread. Errors are reported by Future.get(); SqlMapFutures.get()
+     * unwraps them back into SQLException.
+     *
+     * @param id              The name of the statement to execute.
+     * @param parameterObject The parameter object (e.g. JavaBean, Map, XML etc.).
+     * @return A Future for the single result object populated with the result set data, or null if no result was
+     *         found
+     * @throws java.util.concurrent.RejectedExecutionException if the asynchronous query pool and its queue are full
+     * @see SqlMapFutures
+     */
+    public Future queryForObjectAsync(String id, Object parameterObject);
+
+    /**
+     * Executes a mapped SQL SELECT statement that returns data to populate a number of result objects, on a thread of
+     * the asynchronous query pool.
+     * <p>
+     * The statement runs in a session of its own, with its own connection and an automatic transaction. It is never
+     * part of a transaction started on the calling thread.
+     *
+     * @param id              The name of the statement to execute.
+     * @param parameterObject The parameter object (e.g. JavaBean, Map, XML etc.).
+     * @return A Future for the List of result objects.
+     * @throws java.util.concurrent.RejectedExecutionException if the asynchronous query pool and its queue are full
+     * @see SqlMapFutures
+     */
+    public Future queryForListAsync(String id, Object parameterObject);
+
+    /**
+     * Executes a mapped SQL UPDATE statement on a thread of the asynchronous query pool. The statement runs and is
+     * committed in a session of its own, with its own connection.
+     *
+     * @param id              The name of the statement to execute.
+     * @param parameterObject The parameter object (e.g. JavaBean, Map, XML etc.).
+     * @return A Future for the number of rows effected, as an Integer.
+     * @throws java.util.concurrent.RejectedExecutionException if the asynchronous query pool and its queue are full
+     * @see SqlMapFutures
+     */
+    public Future updateAsync(String id, Object parameterObject);
+
     /**
      * Returns a generated implementation of a cusom mapper class as specified by the method parameter. The generated
      * implementation will run mapped statements by matching the method name to the statement name. The mapped statement
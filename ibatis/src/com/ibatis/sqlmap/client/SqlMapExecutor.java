@@ -280,6 +280,67 @@ public interface SqlMapExecutor {
    */
   void queryWithRowHandler(String id, RowHandler rowHandler) throws SQLException;
 
+  /**
+   * Executes a mapped SQL SELECT statement and returns a Cursor that maps the result objects one at a time as they are
+   * read from the open ResultSet.
+   * <p>
+   * This is an alternative to queryWithRowHandler() for large sets of records when the caller wants to pull the
+   * results instead of having them pushed to a RowHandler. The connection is held until the cursor is closed.
+   * <p>
+   * The parameter object is generally used to supply the input data for the WHERE clause parameter(s) of the SELECT
+   * statement.
+   *
+   * @param id
+   *          The name of the statement to execute.
+   * @param parameterObject
+   *          The parameter object (e.g. JavaBean, Map, XML etc.).
+   * @return An open Cursor over the result objects. It must be closed by the caller.
+   * @throws java.sql.SQLException
+   *           If an error occurs.
+   */
+  Cursor queryForCursor(String id, Object parameterObject) throws SQLException;
+
+  /**
+   * Executes a mapped SQL SELECT statement and returns a Cursor that maps the result objects one at a time as they are
+   * read from the open ResultSet.
+   * <p>
+   * The fetch size is passed to the driver as a hint for the number of rows to transfer per round trip and overrides
+   * the fetchSize of the mapped statement.
+   *
+   * @param id
+   *          The name of the statement to execute.
+   * @param parameterObject
+   *          The parameter object (e.g. JavaBean, Map, XML etc.).
+   * @param fetchSize
+   *          The JDBC fetch size to use for the query.
+   * @return An open Cursor over the result objects. It must be closed by the caller.
+   * @throws java.sql.SQLException
+   *           If an error occurs.
+   */
+  Cursor queryForCursor(String id, Object parameterObject, int fetchSize) throws SQLException;
+
+  /**
+   * Executes a mapped SQL SELECT statement and returns its rows column by column, in an int[], long[] or double[] per
+   * numeric column and an Object[] per other column, instead of one result object per row.
+   * <p>
+   * This suits large results that are scanned a column at a time, such as time series. The columns are those of the
+   * result map of the statement, typed by their type handlers, or those of the result set if the statement has a
+   * result class. Result maps with nested selects, nested result maps, groupBy or a discriminator cannot be read as
+   * columns. The results are not cached.
+   * <p>
+   * The parameter object is generally used to supply the input data for the WHERE clause parameter(s) of the SELECT
+   * statement.
+   *
+   * @param id
+   *          The name of the statement to execute.
+   * @param parameterObject
+   *          The parameter object (e.g. JavaBean, Map, XML etc.).
+   * @return The rows, column by column.
+   * @throws java.sql.SQLException
+   *           If an error occurs.
+   */
+  ColumnarResult queryForColumns(String id, Object parameterObject) throws SQLException;
+
   /**
    * Executes a mapped SQL SELECT statement that returns data to populate a number of result objects a page at a time.
    * <p>
@@ -315,6 +376,90 @@ public interface SqlMapExecutor {
    */
   PaginatedList queryForPaginatedList(String id, int pageSize) throws SQLException;
 
+  /**
+   * Sets the time by which the statements of the current call must complete, typically derived from the time budget
+   * of the request being served. The deadline covers getting a connection, executing each statement and mapping its
+   * results. A statement still running when the deadline expires is cancelled, and the call fails with a SQLException
+   * with SQL state 57014.
+   * <p>
+   * For a SqlMapClient the deadline applies to the statements run by the current thread, and stays set until it is
+   * cleared with setDeadline(0), which should be done in a finally block.
+   *
+   * @param deadline
+   *          The deadline as a System.currentTimeMillis() value, or 0 for no deadline.
+   */
+  void setDeadline(long deadline);
+
+  /**
+   * Returns the deadline set by setDeadline().
+   *
+   * @return The deadline as a System.currentTimeMillis() value, or 0 if there is none.
+   */
+  long getDeadline();
+
+  /**
+   * Executes several mapped SQL SELECT statements and returns the result objects of each.
+   * <p>
+   * When the driver accepts several statements in one execution (SQL Server, PostgreSQL, Sybase, and MySQL with
+   * allowMultiQueries=true), the statements are sent to the database together in one round trip and each result set
+   * is mapped with the result map of its statement. The forceMultipleResultSetSupport setting does not enable this, as
+   * it only concerns procedures that return several result sets.
+   * Statements with a cache model, stored procedures and statements with several result maps are always executed
+   * on their own, as are all statements for other drivers.
+   *
+   * @param ids
+   *          The names of the statements to execute.
+   * @param parameterObjects
+   *          The parameter object of each statement, or null if none of them needs one.
+   * @return A List holding the List of result objects of each statement, in the order of the ids.
+   * @throws java.sql.SQLException
+   *           If an error occurs.
+   */
+  List queryMulti(String[] ids, Object[] parameterObjects) throws SQLException;
+
+  /**
+   * Executes a mapped SQL SELECT statement that declares a keysetColumn and returns one page of result objects, in the
+   * order of that column, that follow the given key.
+   * <p>
+   * Unlike queryForList(id, parameterObject, skip, max), the rows before the page are not read by the database, so the
+   * cost of a page does not grow with its position. The page is limited with the LIMIT clause of the dialect, or, when
+   * no dialect is configured, with Statement.setMaxRows().
+   *
+   * @param id
+   *          The name of the statement to execute.
+   * @param parameterObject
+   *          The parameter object (e.g. JavaBean, Map, XML etc.).
+   * @param lastKey
+   *          The keyset column value of the last row of the previous page, or null for the first page.
+   * @param pageSize
+   *          The maximum number of result objects to return.
+   * @return A List of result objects.
+   * @throws java.sql.SQLException
+   *           If an error occurs.
+   */
+  List queryForKeysetPage(String id, Object parameterObject, Object lastKey, int pageSize) throws SQLException;
+
+  /**
+   * Executes a mapped SQL SELECT statement that declares a keysetColumn and returns data to populate a number of
+   * result objects a page at a time.
+   * <p>
+   * Each page is read with queryForKeysetPage() starting after the key of the last row of the previous page, which the
+   * list remembers. Moving to the next or previous page therefore takes the same time on every page. Going to a page
+   * that has not been visited yet reads the pages before it once. When the list is not created inside a transaction,
+   * the next page is read ahead in the background while the current one is used.
+   *
+   * @param id
+   *          The name of the statement to execute.
+   * @param parameterObject
+   *          The parameter object (e.g. JavaBean, Map, XML etc.).
+   * @param pageSize
+   *          The maximum number of result objects each page can hold.
+   * @return A PaginatedList of result objects.
+   * @throws java.sql.SQLException
+   *           If an error occurs.
+   */
+  PaginatedList queryForKeysetPaginatedList(String id, Object parameterObject, int pageSize) throws SQLException;
+
   /**
    * Executes a mapped SQL SELECT statement that returns data to populate a number of result objects that will be keyed
    * into a Map.
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.client;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.ibatis.common.jdbc.exception.NestedSQLException;
+
+/**
+ * Helpers to wait for the results of the asynchronous methods of SqlMapClient.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * Future accounts = sqlMap.queryForListAsync(&quot;getAccounts&quot;, customerId);
+ * Future orders = sqlMap.queryForListAsync(&quot;getOrders&quot;, customerId);
+ * List results = SqlMapFutures.getAll(Arrays.asList(new Future[] { accounts, orders }));
+ * </pre>
+ */
+public class SqlMapFutures {
+
+  private SqlMapFutures() {
+  }
+
+  /**
+   * Waits for the result of an asynchronous statement.
+   *
+   * @param future
+   *          - a Future returned by one of the asynchronous methods of SqlMapClient
+   * @return - the result of the statement
+   * @throws SQLException
+   *           - if the statement failed, or the wait was interrupted
+   */
+  public static Object get(Future future) throws SQLException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new NestedSQLException("Error executing asynchronous statement.  Cause: " + cause, cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new NestedSQLException("Interrupted while waiting for an asynchronous statement.", e);
+    }
+  }
+
+  /**
+   * Waits for the results of several asynchronous statements, which run concurrently. The first failure is thrown,
+   * after the other statements have been waited for.
+   *
+   * @param futures
+   *          - a List of Futures returned by the asynchronous methods of SqlMapClient
+   * @return - a List with the result of each statement, in the order of the futures
+   * @throws SQLException
+   *           - if a statement failed, or the wait was interrupted
+   */
+  public static List getAll(List futures) throws SQLException {
+    List results = new ArrayList(futures.size());
+    SQLException sqlException = null;
+    RuntimeException runtimeException = null;
+    for (int i = 0, n = futures.size(); i < n; i++) {
+      try {
+        results.add(get((Future) futures.get(i)));
+      } catch (SQLException e) {
+        if (sqlException == null && runtimeException == null) {
+          sqlException = e;
+        }
+        results.add(null);
+      } catch (RuntimeException e) {
+        if (sqlException == null && runtimeException == null) {
+          runtimeException = e;
+        }
+        results.add(null);
+      }
+    }
+    if (sqlException != null) {
+      throw sqlException;
+    }
+    if (runtimeException != null) {
+      throw runtimeException;
+    }
+    return results;
+  }
+
+}
@@ -15,7 +15,12 @@
  */
 package com.ibatis.sqlmap.engine.accessplan;
 
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * Factory to get an accesss plan appropriate for an object
@@ -24,6 +29,12 @@ public class AccessPlanFactory {
 
   private static boolean bytecodeEnhancementEnabled = false;
 
+  // generated accessors by bean class, then by property names. An accessor is defined in a child loader of the loader
+  // of its bean class, so both the classes and the accessors are held weakly: the accessors stay alive through the
+  // plans that use them, and the cache never keeps a bean class or its loader reachable.
+  private static final Map ACCESSORS = new WeakHashMap();
+  private static final Object NO_ACCESSOR = new Object();
+
   private AccessPlanFactory() {
   }
 
@@ -58,7 +69,12 @@ public class AccessPlanFactory {
       // Possibly causes bug 945746 --but the bug is unconfirmed (can't be reproduced)
       if (bytecodeEnhancementEnabled) {
         try {
-          plan = new EnhancedPropertyAccessPlan(clazz, propertyNames);
+          BytecodeAccessPlan.Accessor accessor = getAccessor(clazz, propertyNames);
+          if (accessor != null) {
+            plan = new BytecodeAccessPlan(clazz, propertyNames, accessor);
+          } else {
+            plan = new EnhancedPropertyAccessPlan(clazz, propertyNames);
+          }
         } catch (Throwable t) {
           try {
             plan = new PropertyAccessPlan(clazz, propertyNames);
@@ -77,6 +93,39 @@ public class AccessPlanFactory {
     return plan;
   }
 
+  private static BytecodeAccessPlan.Accessor getAccessor(Class clazz, String[] propertyNames) {
+    List key = Arrays.asList((Object[]) propertyNames.clone());
+    synchronized (ACCESSORS) {
+      Map accessors = (Map) ACCESSORS.get(clazz);
+      Object cached = accessors == null ? null : accessors.get(key);
+      if (cached == NO_ACCESSOR) {
+        return null;
+      } else if (cached != null) {
+        BytecodeAccessPlan.Accessor accessor = (BytecodeAccessPlan.Accessor) ((WeakReference) cached).get();
+        if (accessor != null) {
+          return accessor;
+        }
+      }
+    }
+    BytecodeAccessPlan.Accessor accessor;
+    try {
+      accessor = AccessPlanGenerator.generate(clazz, propertyNames);
+    } catch (RuntimeException e) {
+      accessor = null;
+    } catch (LinkageError e) {
+      accessor = null;
+    }
+    synchronized (ACCESSORS) {
+      Map accessors = (Map) ACCESSORS.get(clazz);
+      if (accessors == null) {
+        accessors = new HashMap();
+        ACCESSORS.put(clazz, accessors);
+      }
+      accessors.put(key, accessor == null ? NO_ACCESSOR : new WeakReference(accessor));
+    }
+    return accessor;
+  }
+
   /**
    * Tells whether or not bytecode enhancement (CGLIB, etc) is enabled
    *
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.accessplan;
+
+import com.ibatis.common.beans.ClassInfo;
+import com.ibatis.common.beans.Invoker;
+import com.ibatis.common.beans.MethodInvoker;
+
+import com.ibatis.sqlmap.engine.accessplan.ClassFileWriter.Code;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Writes the class file of a {@link BytecodeAccessPlan.Accessor} for a bean class and a list of properties. The
+ * generated class calls the getters, the setters and the no argument constructor directly, unboxing and boxing the
+ * values of primitive properties, so that no reflection is involved once it is loaded.
+ * <p>
+ * Only public classes with public accessor methods are supported; anything else makes {@link #generate} return null so
+ * that the caller falls back to reflection.
+ */
+class AccessPlanGenerator {
+
+  private static final String ACCESSOR = "com/ibatis/sqlmap/engine/accessplan/BytecodeAccessPlan$Accessor";
+  private static final String GENERATED_PREFIX = "com.ibatis.sqlmap.engine.accessplan.generated.AccessPlan";
+
+  private static int generatedCount;
+
+  // opcodes
+  private static final int ACONST_NULL = 0x01;
+  private static final int ALOAD_0 = 0x2a;
+  private static final int ALOAD_1 = 0x2b;
+  private static final int ALOAD_2 = 0x2c;
+  private static final int ALOAD_3 = 0x2d;
+  private static final int AALOAD = 0x32;
+  private static final int ASTORE_2 = 0x4d;
+  private static final int ASTORE_3 = 0x4e;
+  private static final int AASTORE = 0x53;
+  private static final int DUP = 0x59;
+  private static final int ARETURN = 0xb0;
+  private static final int RETURN = 0xb1;
+  private static final int INVOKEVIRTUAL = 0xb6;
+  private static final int INVOKESPECIAL = 0xb7;
+  private static final int INVOKESTATIC = 0xb8;
+  private static final int NEW = 0xbb;
+  private static final int ANEWARRAY = 0xbd;
+  private static final int CHECKCAST = 0xc0;
+
+  private ClassFileWriter writer = new ClassFileWriter();
+
+  private AccessPlanGenerator() {
+  }
+
+  /**
+   * Generates and loads an accessor.
+   *
+   * @param clazz
+   *          the bean class
+   * @param propertyNames
+   *          the properties, in the order of the values
+   *
+   * @return the accessor, or null if the class or one of its properties cannot be accessed directly
+   */
+  static BytecodeAccessPlan.Accessor generate(Class clazz, String[] propertyNames) {
+    if (!isAccessible(clazz) || clazz.isInterface() || propertyNames.length > Short.MAX_VALUE) {
+      return null;
+    }
+    ClassInfo info = ClassInfo.getInstance(clazz);
+    Method[] getters = new Method[propertyNames.length];
+    Method[] setters = new Method[propertyNames.length];
+    for (int i = 0; i < propertyNames.length; i++) {
+      getters[i] = getMethod(info.getGetInvoker(propertyNames[i]));
+      setters[i] = getMethod(info.getSetInvoker(propertyNames[i]));
+      if (getters[i] == null || setters[i] == null) {
+        return null;
+      }
+    }
+    Constructor constructor = null;
+    if (!Modifier.isAbstract(clazz.getModifiers())) {
+      try {
+        constructor = clazz.getConstructor(new Class[0]);
+      } catch (NoSuchMethodException e) {
+        // instances are left to the ResultObjectFactoryUtil
+      }
+    }
+
+    String name;
+    synchronized (AccessPlanGenerator.class) {
+      name = GENERATED_PREFIX + (++generatedCount);
+    }
+    byte[] classFile = new AccessPlanGenerator().writeClass(name.replace('.', '/'), clazz, getters, setters,
+        constructor != null);
+    Class accessorClass = ClassFileWriter.defineClass(name, classFile, clazz.getClassLoader(),
+        new Class[] { BytecodeAccessPlan.Accessor.class });
+    try {
+      return (BytecodeAccessPlan.Accessor) accessorClass.newInstance();
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static Method getMethod(Invoker invoker) {
+    if (!(invoker instanceof MethodInvoker)) {
+      return null;
+    }
+    Method method = ((MethodInvoker) invoker).getMethod();
+    if (!Modifier.isPublic(method.getModifiers()) || !isAccessible(method.getDeclaringClass())) {
+      return null;
+    }
+    Class[] types = method.getParameterTypes();
+    for (int i = 0; i < types.length; i++) {
+      if (!isAccessible(types[i])) {
+        return null;
+      }
+    }
+    return isAccessible(method.getReturnType()) ? method : null;
+  }
+
+  private static boolean isAccessible(Class type) {
+    while (type.isArray()) {
+      type = type.getComponentType();
+    }
+    return type.isPrimitive() || Modifier.isPublic(type.getModifiers());
+  }
+
+  private byte[] writeClass(String name, Class clazz, Method[] getters, Method[] setters, boolean instantiable) {
+    String bean = ClassFileWriter.internalName(clazz);
+
+    // <init>: super()
+    Code code = new Code();
+    code.op(ALOAD_0);
+    code.op(INVOKESPECIAL, writer.methodRef(ACCESSOR, "<init>", "()V"));
+    code.op(RETURN);
+    writer.addMethod("<init>", "()V", 1, 1, code);
+
+    // setProperties: bean.setX((X) values[i]) for each property
+    code = new Code();
+    code.op(ALOAD_1);
+    code.op(CHECKCAST, writer.classRef(bean));
+    code.op(ASTORE_3);
+    for (int i = 0; i < setters.length; i++) {
+      Class type = setters[i].getParameterTypes()[0];
+      code.op(ALOAD_3);
+      code.op(ALOAD_2);
+      code.pushInt(i);
+      code.op(AALOAD);
+      if (type.isPrimitive()) {
+        String wrapper = ClassFileWriter.internalName(ClassFileWriter.getWrapperType(type));
+        code.op(CHECKCAST, writer.classRef(wrapper));
+        code.op(INVOKEVIRTUAL,
+            writer.methodRef(wrapper, type.getName() + "Value", "()" + ClassFileWriter.descriptor(type)));
+      } else if (type != Object.class) {
+        code.op(CHECKCAST, writer.classRef(ClassFileWriter.internalName(type)));
+      }
+      String setter = ClassFileWriter.methodDescriptor(setters[i]);
+      code.op(INVOKEVIRTUAL, writer.methodRef(bean, setters[i].getName(), setter));
+      code.popResult(setters[i].getReturnType());
+    }
+    code.op(RETURN);
+    writer.addMethod("setProperties", "(Ljava/lang/Object;[Ljava/lang/Object;)V", 5, 4, code);
+
+    // getProperties: values[i] = bean.getX() for each property
+    code = new Code();
+    code.op(ALOAD_1);
+    code.op(CHECKCAST, writer.classRef(bean));
+    code.op(ASTORE_2);
+    code.pushInt(getters.length);
+    code.op(ANEWARRAY, writer.classRef("java/lang/Object"));
+    code.op(ASTORE_3);
+    for (int i = 0; i < getters.length; i++) {
+      Class type = getters[i].getReturnType();
+      code.op(ALOAD_3);
+      code.pushInt(i);
+      code.op(ALOAD_2);
+      String getter = ClassFileWriter.methodDescriptor(getters[i]);
+      code.op(INVOKEVIRTUAL, writer.methodRef(bean, getters[i].getName(), getter));
+      if (type.isPrimitive()) {
+        String wrapper = ClassFileWriter.internalName(ClassFileWriter.getWrapperType(type));
+        code.op(INVOKESTATIC,
+            writer.methodRef(wrapper, "valueOf", "(" + ClassFileWriter.descriptor(type) + ")L" + wrapper + ";"));
+      }
+      code.op(AASTORE);
+    }
+    code.op(ALOAD_3);
+    code.op(ARETURN);
+    writer.addMethod("getProperties", "(Ljava/lang/Object;)[Ljava/lang/Object;", 6, 4, code);
+
+    // newInstance: new Bean(), or null
+    code = new Code();
+    if (instantiable) {
+      code.op(NEW, writer.classRef(bean));
+      code.op(DUP);
+      code.op(INVOKESPECIAL, writer.methodRef(bean, "<init>", "()V"));
+    } else {
+      code.op(ACONST_NULL);
+    }
+    code.op(ARETURN);
+    writer.addMethod("newInstance", "()Ljava/lang/Object;", 2, 1, code);
+
+    return writer.toByteArray(name, ACCESSOR);
+  }
+
+}
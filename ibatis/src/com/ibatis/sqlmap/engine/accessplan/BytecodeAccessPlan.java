@@ -0,0 +1,134 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.accessplan;
+
+/**
+ * Property access plan that uses a class generated for the bean and its properties, which calls the accessor methods
+ * directly instead of through reflection. A row with a value that the generated class cannot take as it is (a null or
+ * a differently boxed number for a primitive property) is handed to the reflective plan before any property is set,
+ * so that it is widened or reported. An exception thrown by an accessor is reported without calling the accessors
+ * again.
+ */
+public class BytecodeAccessPlan extends BaseAccessPlan {
+
+  private volatile Accessor accessor;
+  private PropertyAccessPlan reflectivePlan;
+  // the types the generated setters cast their values to, primitives as their wrappers
+  private Class[] setterTypes;
+  private boolean[] primitives;
+
+  BytecodeAccessPlan(Class clazz, String[] propertyNames, Accessor accessor) {
+    super(clazz, propertyNames);
+    this.accessor = accessor;
+    this.reflectivePlan = new PropertyAccessPlan(clazz, propertyNames);
+    this.setterTypes = new Class[propertyNames.length];
+    this.primitives = new boolean[propertyNames.length];
+    for (int i = 0; i < propertyNames.length; i++) {
+      Class type = info.getSetterType(propertyNames[i]);
+      primitives[i] = type.isPrimitive();
+      setterTypes[i] = primitives[i] ? ClassFileWriter.getWrapperType(type) : type;
+    }
+  }
+
+  public void setProperties(Object object, Object[] values) {
+    Accessor current = accessor;
+    if (current != null && clazz.isInstance(object) && isAssignable(values)) {
+      try {
+        current.setProperties(object, values);
+        return;
+      } catch (RuntimeException e) {
+        throw new RuntimeException(getMessage("setting", current, e, object), e);
+      } catch (LinkageError e) {
+        accessor = null;
+      }
+    }
+    reflectivePlan.setProperties(object, values);
+  }
+
+  public Object[] getProperties(Object object) {
+    Accessor current = accessor;
+    if (current != null && clazz.isInstance(object)) {
+      try {
+        return current.getProperties(object);
+      } catch (RuntimeException e) {
+        throw new RuntimeException(getMessage("getting", current, e, object), e);
+      } catch (LinkageError e) {
+        accessor = null;
+      }
+    }
+    return reflectivePlan.getProperties(object);
+  }
+
+  private boolean isAssignable(Object[] values) {
+    for (int i = 0; i < setterTypes.length; i++) {
+      Object value = values[i];
+      if (value == null ? primitives[i] : !setterTypes[i].isInstance(value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Names the accessor that threw, which is the method called by the generated class.
+   */
+  private static String getMessage(String activity, Accessor accessor, Throwable t, Object object) {
+    String generated = accessor.getClass().getName();
+    StackTraceElement[] trace = t.getStackTrace();
+    for (int i = 1; i < trace.length; i++) {
+      if (generated.equals(trace[i].getClassName())) {
+        return "Error " + activity + " property '" + trace[i - 1].getMethodName() + "' of '" + object
+            + "'.  Cause: " + t;
+      }
+    }
+    return "Error " + activity + " properties of '" + object + "'.  Cause: " + t;
+  }
+
+  /**
+   * Creates an instance of the bean with its no argument constructor
+   *
+   * @return the new instance, or null if the bean class has no public no argument constructor
+   */
+  public Object newInstance() {
+    Accessor current = accessor;
+    if (current != null) {
+      try {
+        return current.newInstance();
+      } catch (LinkageError e) {
+        accessor = null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Base class of the generated accessors
+   */
+  public abstract static class Accessor implements AccessPlan {
+
+    protected Accessor() {
+    }
+
+    /**
+     * Creates an instance of the bean
+     *
+     * @return the new instance, or null if the bean class has no public no argument constructor
+     */
+    public abstract Object newInstance();
+
+  }
+
+}
@@ -0,0 +1,375 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.accessplan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles the class files of the classes iBATIS generates at runtime: the constant pool, the methods and their code.
+ * Class files are written in version 49 (Java 5), whose verifier infers the types itself, so the code needs no stack
+ * map frames.
+ */
+public class ClassFileWriter {
+
+  private static final Map WRAPPERS = new HashMap();
+
+  static {
+    WRAPPERS.put(Boolean.TYPE, Boolean.class);
+    WRAPPERS.put(Byte.TYPE, Byte.class);
+    WRAPPERS.put(Character.TYPE, Character.class);
+    WRAPPERS.put(Short.TYPE, Short.class);
+    WRAPPERS.put(Integer.TYPE, Integer.class);
+    WRAPPERS.put(Long.TYPE, Long.class);
+    WRAPPERS.put(Float.TYPE, Float.class);
+    WRAPPERS.put(Double.TYPE, Double.class);
+  }
+
+  private List pool = new ArrayList();
+  private Map poolIndexes = new HashMap();
+  private List methods = new ArrayList();
+
+  public int utf8(String value) {
+    String key = "U" + value;
+    Integer index = (Integer) poolIndexes.get(key);
+    if (index == null) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      try {
+        out.writeByte(1);
+        out.writeUTF(value);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Cannot write constant '" + value + "'.  Cause: " + e);
+      }
+      index = addToPool(key, bytes.toByteArray());
+    }
+    return index.intValue();
+  }
+
+  public int classRef(String internalName) {
+    String key = "C" + internalName;
+    Integer index = (Integer) poolIndexes.get(key);
+    if (index == null) {
+      int name = utf8(internalName);
+      index = addToPool(key, new byte[] { 7, (byte) (name >> 8), (byte) name });
+    }
+    return index.intValue();
+  }
+
+  public int fieldRef(String owner, String name, String descriptor) {
+    return memberRef(9, owner, name, descriptor);
+  }
+
+  public int methodRef(String owner, String name, String descriptor) {
+    return memberRef(10, owner, name, descriptor);
+  }
+
+  public int interfaceMethodRef(String owner, String name, String descriptor) {
+    return memberRef(11, owner, name, descriptor);
+  }
+
+  private int memberRef(int tag, String owner, String name, String descriptor) {
+    String key = tag + owner + "." + name + descriptor;
+    Integer index = (Integer) poolIndexes.get(key);
+    if (index == null) {
+      int ownerIndex = classRef(owner);
+      String nameAndTypeKey = "N" + name + descriptor;
+      Integer nameAndType = (Integer) poolIndexes.get(nameAndTypeKey);
+      if (nameAndType == null) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        nameAndType = addToPool(nameAndTypeKey, new byte[] { 12, (byte) (nameIndex >> 8), (byte) nameIndex,
+            (byte) (descriptorIndex >> 8), (byte) descriptorIndex });
+      }
+      int nat = nameAndType.intValue();
+      index = addToPool(key, new byte[] { (byte) tag, (byte) (ownerIndex >> 8), (byte) ownerIndex, (byte) (nat >> 8),
+          (byte) nat });
+    }
+    return index.intValue();
+  }
+
+  private Integer addToPool(String key, byte[] entry) {
+    pool.add(entry);
+    Integer index = new Integer(pool.size());
+    poolIndexes.put(key, index);
+    return index;
+  }
+
+  /**
+   * Adds a public method.
+   *
+   * @param name
+   *          the method name
+   * @param descriptor
+   *          the method descriptor
+   * @param maxStack
+   *          the deepest operand stack the code uses
+   * @param maxLocals
+   *          the number of local variable slots, including this and the arguments
+   * @param code
+   *          the method body
+   */
+  public void addMethod(String name, String descriptor, int maxStack, int maxLocals, Code code) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeShort(0x0001);
+      out.writeShort(utf8(name));
+      out.writeShort(utf8(descriptor));
+      out.writeShort(1);
+      out.writeShort(utf8("Code"));
+      out.writeInt(12 + code.length);
+      out.writeShort(maxStack);
+      out.writeShort(maxLocals);
+      out.writeInt(code.length);
+      out.write(code.bytes, 0, code.length);
+      out.writeShort(0);
+      out.writeShort(0);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot write method " + name + ".  Cause: " + e);
+    }
+    methods.add(bytes.toByteArray());
+  }
+
+  /**
+   * Writes the class file of a public final class.
+   *
+   * @param name
+   *          the internal name of the class
+   * @param superName
+   *          the internal name of its super class
+   *
+   * @return the class file
+   */
+  public byte[] toByteArray(String name, String superName) {
+    int thisClass = classRef(name);
+    int superClass = classRef(superName);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);
+      out.writeShort(49);
+      out.writeShort(pool.size() + 1);
+      for (int i = 0; i < pool.size(); i++) {
+        out.write((byte[]) pool.get(i));
+      }
+      // public final super
+      out.writeShort(0x0001 | 0x0010 | 0x0020);
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(0);
+      out.writeShort(0);
+      out.writeShort(methods.size());
+      for (int i = 0; i < methods.size(); i++) {
+        out.write((byte[]) methods.get(i));
+      }
+      out.writeShort(0);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot write class " + name + ".  Cause: " + e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Loads a generated class next to the classes it works on.
+   *
+   * @param name
+   *          the binary name of the class
+   * @param classFile
+   *          the class file
+   * @param parent
+   *          the loader of the classes the generated code works on
+   * @param visibleClasses
+   *          iBATIS classes the generated code refers to, which are resolved from iBATIS' own loader in case the parent
+   *          cannot see them
+   *
+   * @return the loaded class
+   */
+  public static Class defineClass(String name, byte[] classFile, ClassLoader parent, Class[] visibleClasses) {
+    return new GeneratedClassLoader(parent, visibleClasses).define(name, classFile);
+  }
+
+  public static Class getWrapperType(Class primitiveType) {
+    return (Class) WRAPPERS.get(primitiveType);
+  }
+
+  public static String internalName(Class type) {
+    if (type.isArray()) {
+      return descriptor(type);
+    }
+    return type.getName().replace('.', '/');
+  }
+
+  public static String methodDescriptor(Method method) {
+    StringBuilder descriptor = new StringBuilder("(");
+    Class[] types = method.getParameterTypes();
+    for (int i = 0; i < types.length; i++) {
+      descriptor.append(descriptor(types[i]));
+    }
+    return descriptor.append(')').append(descriptor(method.getReturnType())).toString();
+  }
+
+  public static String descriptor(Class type) {
+    if (type.isArray()) {
+      return "[" + descriptor(type.getComponentType());
+    } else if (type == Void.TYPE) {
+      return "V";
+    } else if (type == Boolean.TYPE) {
+      return "Z";
+    } else if (type == Byte.TYPE) {
+      return "B";
+    } else if (type == Character.TYPE) {
+      return "C";
+    } else if (type == Short.TYPE) {
+      return "S";
+    } else if (type == Integer.TYPE) {
+      return "I";
+    } else if (type == Long.TYPE) {
+      return "J";
+    } else if (type == Float.TYPE) {
+      return "F";
+    } else if (type == Double.TYPE) {
+      return "D";
+    } else {
+      return "L" + type.getName().replace('.', '/') + ";";
+    }
+  }
+
+  /**
+   * The bytecode of one method
+   */
+  public static class Code {
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int POP = 0x57;
+    private static final int POP2 = 0x58;
+
+    private byte[] bytes = new byte[64];
+    private int length;
+
+    public void op(int opcode) {
+      u1(opcode);
+    }
+
+    public void op(int opcode, int operand) {
+      u1(opcode);
+      u2(operand);
+    }
+
+    public void u1(int value) {
+      if (length == bytes.length) {
+        byte[] larger = new byte[bytes.length * 2];
+        System.arraycopy(bytes, 0, larger, 0, length);
+        bytes = larger;
+      }
+      bytes[length++] = (byte) value;
+    }
+
+    public void u2(int value) {
+      u1(value >> 8);
+      u1(value);
+    }
+
+    public int length() {
+      return length;
+    }
+
+    public void pushInt(int value) {
+      if (value <= 5) {
+        op(ICONST_0 + value);
+      } else if (value <= Byte.MAX_VALUE) {
+        op(BIPUSH);
+        u1(value);
+      } else {
+        op(SIPUSH, value);
+      }
+    }
+
+    /**
+     * Pops the value a method of the given return type left on the stack
+     *
+     * @param type
+     *          the return type
+     */
+    public void popResult(Class type) {
+      if (type == Long.TYPE || type == Double.TYPE) {
+        op(POP2);
+      } else if (type != Void.TYPE) {
+        op(POP);
+      }
+    }
+
+    /**
+     * Writes a forward jump whose target is set later with {@link #jumpHere(int)}
+     *
+     * @param opcode
+     *          the jump instruction
+     *
+     * @return the position of the jump
+     */
+    public int jump(int opcode) {
+      int position = length;
+      op(opcode, 0);
+      return position;
+    }
+
+    /**
+     * Makes a jump written earlier continue at the current position
+     *
+     * @param jump
+     *          the position returned by {@link #jump(int)}
+     */
+    public void jumpHere(int jump) {
+      int offset = length - jump;
+      bytes[jump + 1] = (byte) (offset >> 8);
+      bytes[jump + 2] = (byte) offset;
+    }
+  }
+
+  private static class GeneratedClassLoader extends ClassLoader {
+
+    private Class[] visibleClasses;
+
+    private GeneratedClassLoader(ClassLoader parent, Class[] visibleClasses) {
+      super(parent);
+      this.visibleClasses = visibleClasses;
+    }
+
+    private Class define(String name, byte[] classFile) {
+      return defineClass(name, classFile, 0, classFile.length);
+    }
+
+    @Override
+    protected synchronized Class loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      for (int i = 0; i < visibleClasses.length; i++) {
+        if (name.equals(visibleClasses[i].getName())) {
+          return visibleClasses[i];
+        }
+      }
+      return super.loadClass(name, resolve);
+    }
+  }
+
+}
@@ -15,30 +15,33 @@
  */
 package com.ibatis.sqlmap.engine.accessplan;
 
-import com.ibatis.common.beans.Probe;
-import com.ibatis.common.beans.ProbeFactory;
+import com.ibatis.common.beans.PropertyPath;
 
 /**
  * Access plan for working with beans
  */
 public class ComplexAccessPlan extends BaseAccessPlan {
 
-  private static final Probe PROBE = ProbeFactory.getProbe();
+  private PropertyPath[] propertyPaths;
 
   ComplexAccessPlan(Class clazz, String[] propertyNames) {
     super(clazz, propertyNames);
+    propertyPaths = new PropertyPath[propertyNames.length];
+    for (int i = 0; i < propertyNames.length; i++) {
+      propertyPaths[i] = PropertyPath.compile(propertyNames[i]);
+    }
   }
 
   public void setProperties(Object object, Object[] values) {
     for (int i = 0; i < propertyNames.length; i++) {
-      PROBE.setObject(object, propertyNames[i], values[i]);
+      propertyPaths[i].setValue(object, values[i]);
     }
   }
 
   public Object[] getProperties(Object object) {
     Object[] values = new Object[propertyNames.length];
     for (int i = 0; i < propertyNames.length; i++) {
-      values[i] = PROBE.getObject(object, propertyNames[i]);
+      values[i] = propertyPaths[i].getValue(object);
     }
     return values;
   }
@@ -24,7 +24,9 @@ import com.ibatis.sqlmap.engine.datasource.*;
 import com.ibatis.sqlmap.engine.mapping.result.*;
 import org.w3c.dom.Node;
 
+import javax.sql.DataSource;
 import java.io.*;
+import java.util.List;
 import java.util.Properties;
 
 public class SqlMapConfigParser {
@@ -137,6 +139,44 @@ public class SqlMapConfigParser {
         boolean forceMultipleResultSetSupport = "true".equals(forceMultipleResultSetSupportAttr);
         config.setForceMultipleResultSetSupport(forceMultipleResultSetSupport);
 
+        String batchGroupingEnabledAttr = attributes.getProperty("batchGroupingEnabled");
+        boolean batchGroupingEnabled = "true".equals(batchGroupingEnabledAttr);
+        config.setBatchGroupingEnabled(batchGroupingEnabled);
+
+        String maxBatchRowsAttr = attributes.getProperty("maxBatchRows");
+        Integer maxBatchRows = maxBatchRowsAttr == null ? null : Integer.valueOf(maxBatchRowsAttr);
+        config.setMaxBatchRows(maxBatchRows);
+
+        String maxBatchBytesAttr = attributes.getProperty("maxBatchBytes");
+        Long maxBatchBytes = maxBatchBytesAttr == null ? null : Long.valueOf(maxBatchBytesAttr);
+        config.setMaxBatchBytes(maxBatchBytes);
+
+        String spillThresholdAttr = attributes.getProperty("spillThreshold");
+        Integer spillThreshold = spillThresholdAttr == null ? null : Integer.valueOf(spillThresholdAttr);
+        config.setSpillThreshold(spillThreshold);
+
+        String asyncPoolSizeAttr = attributes.getProperty("asyncPoolSize");
+        Integer asyncPoolSize = asyncPoolSizeAttr == null ? null : Integer.valueOf(asyncPoolSizeAttr);
+        config.setAsyncPoolSize(asyncPoolSize);
+
+        String asyncQueueSizeAttr = attributes.getProperty("asyncQueueSize");
+        Integer asyncQueueSize = asyncQueueSizeAttr == null ? null : Integer.valueOf(asyncQueueSizeAttr);
+        config.setAsyncQueueSize(asyncQueueSize);
+
+        config.setDialect(attributes.getProperty("dialect"));
+
+        String defaultFetchSizeAttr = attributes.getProperty("defaultFetchSize");
+        Integer defaultFetchSize = defaultFetchSizeAttr == null ? null : Integer.valueOf(defaultFetchSizeAttr);
+        config.setDefaultFetchSize(defaultFetchSize);
+
+        String adaptiveFetchSizeEnabledAttr = attributes.getProperty("adaptiveFetchSizeEnabled");
+        boolean adaptiveFetchSizeEnabled = "true".equals(adaptiveFetchSizeEnabledAttr);
+        config.setAdaptiveFetchSizeEnabled(adaptiveFetchSizeEnabled);
+
+        String fetchSizeMemoryBudgetAttr = attributes.getProperty("fetchSizeMemoryBudget");
+        Long fetchSizeMemoryBudget = fetchSizeMemoryBudgetAttr == null ? null : Long.valueOf(fetchSizeMemoryBudgetAttr);
+        config.setFetchSizeMemoryBudget(fetchSizeMemoryBudget);
+
         String defaultTimeoutAttr = attributes.getProperty("defaultStatementTimeout");
         Integer defaultTimeout = defaultTimeoutAttr == null ? null : Integer.valueOf(defaultTimeoutAttr);
         config.setDefaultStatementTimeout(defaultTimeout);
@@ -189,6 +229,8 @@ public class SqlMapConfigParser {
         Properties attributes = NodeletUtils.parseAttributes(node, state.getGlobalProps());
         String type = attributes.getProperty("type");
         boolean commitRequired = "true".equals(attributes.getProperty("commitRequired"));
+        String replicaSelection = attributes.getProperty("replicaSelection");
+        String readYourWritesMillis = attributes.getProperty("readYourWritesMillis");
 
         state.getConfig().getErrorContext().setActivity("configuring the transaction manager");
         type = state.getConfig().getTypeHandlerFactory().resolveAlias(type);
@@ -201,8 +243,22 @@ public class SqlMapConfigParser {
           config.setProperties(state.getTxProps());
           config.setForceCommit(commitRequired);
           config.setDataSource(state.getDataSource());
-          state.getConfig().getErrorContext().setMoreInfo(null);
           txManager = new TransactionManager(config);
+          if (!state.getReplicaDataSources().isEmpty()) {
+            state.getConfig().getErrorContext().setMoreInfo("Check the replica data sources and replica settings.");
+            TransactionConfig[] replicaConfigs = newTransactionConfigs(type, state.getReplicaDataSources(),
+                commitRequired);
+            ReplicaSet replicas = new ReplicaSet(replicaConfigs, replicaSelection);
+            if (readYourWritesMillis != null) {
+              replicas.setReadYourWritesMillis(Long.parseLong(readYourWritesMillis));
+            }
+            txManager.setReplicas(replicas);
+          }
+          if (!state.getShardDataSources().isEmpty()) {
+            state.getConfig().getErrorContext().setMoreInfo("Check the shard data sources.");
+            txManager.setShards(new ShardSet(newTransactionConfigs(type, state.getShardDataSources(), commitRequired)));
+          }
+          state.getConfig().getErrorContext().setMoreInfo(null);
         } catch (Exception e) {
           if (e instanceof SqlMapException) {
             throw (SqlMapException) e;
@@ -231,26 +287,77 @@ public class SqlMapConfigParser {
         String type = attributes.getProperty("type");
         Properties props = state.getDsProps();
 
-        type = state.getConfig().getTypeHandlerFactory().resolveAlias(type);
-        try {
-          state.getConfig().getErrorContext().setMoreInfo("Check the data source type or class.");
-          DataSourceFactory dsFactory = (DataSourceFactory) Resources.instantiate(type);
-          state.getConfig().getErrorContext().setMoreInfo("Check the data source properties or configuration.");
-          dsFactory.initialize(props);
-          state.setDataSource(dsFactory.getDataSource());
-          state.getConfig().getErrorContext().setMoreInfo(null);
-        } catch (Exception e) {
-          if (e instanceof SqlMapException) {
-            throw (SqlMapException) e;
-          } else {
-            throw new SqlMapException(
-                "Error initializing DataSource.  Could not instantiate DataSourceFactory.  Cause: " + e, e);
-          }
-        }
+        state.setDataSource(newDataSource(type, props));
+      }
+    });
+    addDataSourceListNodelets("replicaDataSource", state.getReplicaDsProps(), state.getReplicaDataSources(),
+        "configuring a replica data source");
+    addDataSourceListNodelets("shardDataSource", state.getShardDsProps(), state.getShardDataSources(),
+        "configuring a shard data source");
+  }
+
+  private void addDataSourceListNodelets(String element, final Properties dsProps, final List dataSources,
+      final String activity) {
+    parser.addNodelet("/sqlMapConfig/transactionManager/" + element, new Nodelet() {
+      public void process(Node node) throws Exception {
+        dsProps.clear();
+      }
+    });
+    parser.addNodelet("/sqlMapConfig/transactionManager/" + element + "/property", new Nodelet() {
+      public void process(Node node) throws Exception {
+        Properties attributes = NodeletUtils.parseAttributes(node, state.getGlobalProps());
+        String name = attributes.getProperty("name");
+        String value = NodeletUtils.parsePropertyTokens(attributes.getProperty("value"), state.getGlobalProps());
+        dsProps.setProperty(name, value);
+      }
+    });
+    parser.addNodelet("/sqlMapConfig/transactionManager/" + element + "/end()", new Nodelet() {
+      public void process(Node node) throws Exception {
+        state.getConfig().getErrorContext().setActivity(activity);
+
+        Properties attributes = NodeletUtils.parseAttributes(node, state.getGlobalProps());
+
+        String type = attributes.getProperty("type");
+        Properties props = new Properties();
+        props.putAll(dsProps);
+
+        dataSources.add(newDataSource(type, props));
       }
     });
   }
 
+  private TransactionConfig[] newTransactionConfigs(String type, List dataSources, boolean commitRequired)
+      throws Exception {
+    TransactionConfig[] configs = new TransactionConfig[dataSources.size()];
+    for (int i = 0; i < configs.length; i++) {
+      configs[i] = (TransactionConfig) Resources.instantiate(type);
+      configs[i].setDataSource((DataSource) dataSources.get(i));
+      configs[i].setProperties(state.getTxProps());
+      configs[i].setForceCommit(commitRequired);
+    }
+    return configs;
+  }
+
+  private DataSource newDataSource(String type, Properties props) {
+    type = state.getConfig().getTypeHandlerFactory().resolveAlias(type);
+    try {
+      state.getConfig().getErrorContext().setMoreInfo("Check the data source type or class.");
+      DataSourceFactory dsFactory = (DataSourceFactory) Resources.instantiate(type);
+      state.getConfig().getErrorContext().setMoreInfo("Check the data source properties or configuration.");
+      dsFactory.initialize(props);
+      DataSource dataSource = dsFactory.getDataSource();
+      state.getConfig().getErrorContext().setMoreInfo(null);
+      return dataSource;
+    } catch (Exception e) {
+      if (e instanceof SqlMapException) {
+        throw (SqlMapException) e;
+      } else {
+        throw new SqlMapException(
+            "Error initializing DataSource.  Could not instantiate DataSourceFactory.  Cause: " + e, e);
+      }
+    }
+  }
+
   protected void addSqlMapNodelets() {
     parser.addNodelet("/sqlMapConfig/sqlMap", new Nodelet() {
       public void process(Node node) throws Exception {
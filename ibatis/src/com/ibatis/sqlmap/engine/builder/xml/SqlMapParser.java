@@ -268,6 +268,9 @@ public class SqlMapParser {
         String resultMapName = childAttributes.getProperty("resultMap");
         String callback = childAttributes.getProperty("typeHandler");
         String notNullColumn = childAttributes.getProperty("notNullColumn");
+        boolean batch = "true".equals(childAttributes.getProperty("batch"));
+        String batchStatementName = childAttributes.getProperty("batchSelect");
+        String batchKey = childAttributes.getProperty("batchKey");
 
         state.getConfig().getErrorContext().setMoreInfo("Check the result mapping property type or name.");
         Class javaClass = null;
@@ -307,6 +310,7 @@ public class SqlMapParser {
 
         state.getResultConfig().addResultMapping(propertyName, columnName, columnIndex, javaClass, jdbcType, nullValue,
             notNullColumn, statementName, resultMapName, typeHandlerImpl);
+        state.getResultConfig().setBatch(batch, batchStatementName, batchKey);
       }
     });
 
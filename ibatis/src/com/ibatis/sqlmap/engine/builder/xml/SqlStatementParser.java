@@ -48,6 +48,15 @@ public class SqlStatementParser {
     String fetchSize = attributes.getProperty("fetchSize");
     String allowRemapping = attributes.getProperty("remapResults");
     String timeout = attributes.getProperty("timeout");
+    String multiRowBatchSize = attributes.getProperty("multiRowBatchSize");
+    String useGeneratedKeys = attributes.getProperty("useGeneratedKeys");
+    String keyProperty = attributes.getProperty("keyProperty");
+    String keysetColumn = attributes.getProperty("keysetColumn");
+    String readReplica = attributes.getProperty("readReplica");
+    String shardKey = attributes.getProperty("shardKey");
+    String shardOrderBy = attributes.getProperty("shardOrderBy");
+    String coalesce = attributes.getProperty("coalesce");
+    String spillable = attributes.getProperty("spillable");
 
     if (state.isUseStatementNamespaces()) {
       id = state.applyNamespace(id);
@@ -90,7 +99,15 @@ public class SqlStatementParser {
         resultClass, additionalResultClasses, resultSetType, fetchSizeInt, allowRemappingBool, timeoutInt,
         cacheModelName, xmlResultName);
 
+    statementConf.setKeysetColumn(keysetColumn);
+    statementConf.setReadReplica(readReplica == null ? null : Boolean.valueOf(readReplica));
+    statementConf.setShardKey(shardKey, shardOrderBy);
+    statementConf.setCoalesce("true".equals(coalesce));
+    statementConf.setSpillable("true".equals(spillable));
+    statementConf.setMultiRowBatchSize(multiRowBatchSize == null ? null : new Integer(multiRowBatchSize));
+
     findAndParseSelectKey(node, statementConf);
+    statementConf.setGeneratedKeys("true".equals(useGeneratedKeys), keyProperty);
   }
 
   private Class resolveClass(String resultClassName) {
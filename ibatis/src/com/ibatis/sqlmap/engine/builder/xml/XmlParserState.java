@@ -28,6 +28,8 @@ public class XmlParserState {
   private Properties globalProps = new Properties();
   private Properties txProps = new Properties();
   private Properties dsProps = new Properties();
+  private Properties replicaDsProps = new Properties();
+  private Properties shardDsProps = new Properties();
   private Properties cacheProps = new Properties();
   private boolean useStatementNamespaces = false;
   private Map sqlIncludes = new HashMap();
@@ -38,6 +40,8 @@ public class XmlParserState {
 
   private String namespace;
   private DataSource dataSource;
+  private List replicaDataSources = new ArrayList();
+  private List shardDataSources = new ArrayList();
 
   public SqlMapConfiguration getConfig() {
     return config;
@@ -59,6 +63,14 @@ public class XmlParserState {
     return dsProps;
   }
 
+  public Properties getReplicaDsProps() {
+    return replicaDsProps;
+  }
+
+  public Properties getShardDsProps() {
+    return shardDsProps;
+  }
+
   public Properties getCacheProps() {
     return cacheProps;
   }
@@ -171,4 +183,12 @@ public class XmlParserState {
   public void setDataSource(DataSource dataSource) {
     this.dataSource = dataSource;
   }
+
+  public List getReplicaDataSources() {
+    return replicaDataSources;
+  }
+
+  public List getShardDataSources() {
+    return shardDataSources;
+  }
 }
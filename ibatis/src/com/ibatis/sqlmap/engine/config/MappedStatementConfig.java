@@ -130,6 +130,98 @@ public class MappedStatementConfig {
     delegate.addMappedStatement(mappedStatement);
   }
 
+  public void setMultiRowBatchSize(Integer multiRowBatchSize) {
+    if (multiRowBatchSize != null) {
+      errorContext.setActivity("setting the multi-row batch size");
+      if (!(rootStatement instanceof InsertStatement)) {
+        throw new SqlMapException("The multiRowBatchSize attribute is only supported by insert statements.");
+      }
+      if (multiRowBatchSize.intValue() < 1) {
+        throw new SqlMapException("Specified multiRowBatchSize must be greater than zero.");
+      }
+      ((InsertStatement) rootStatement).setMultiRowBatchSize(multiRowBatchSize.intValue());
+    }
+  }
+
+  public void setKeysetColumn(String keysetColumn) {
+    if (keysetColumn != null) {
+      errorContext.setActivity("setting the keyset column");
+      StatementType type = rootStatement.getStatementType();
+      if (type != StatementType.SELECT && type != StatementType.UNKNOWN) {
+        throw new SqlMapException("The keysetColumn attribute is only supported by select statements.");
+      }
+      rootStatement.setKeysetColumn(keysetColumn);
+    }
+  }
+
+  public void setReadReplica(Boolean readReplica) {
+    if (readReplica != null) {
+      errorContext.setActivity("setting the read replica routing");
+      StatementType type = rootStatement.getStatementType();
+      if (type != StatementType.SELECT && type != StatementType.UNKNOWN) {
+        throw new SqlMapException("The readReplica attribute is only supported by select statements.");
+      }
+      rootStatement.setReadReplica(readReplica);
+    }
+  }
+
+  public void setCoalesce(boolean coalesce) {
+    if (coalesce) {
+      errorContext.setActivity("setting query coalescing");
+      StatementType type = rootStatement.getStatementType();
+      if (type != StatementType.SELECT && type != StatementType.UNKNOWN) {
+        throw new SqlMapException("The coalesce attribute is only supported by select statements.");
+      }
+      // the callers of a read only cache already share its results
+      boolean readOnly = false;
+      if (mappedStatement instanceof CachingStatement) {
+        CacheModel cacheModel = ((CachingStatement) mappedStatement).getCacheModel();
+        readOnly = cacheModel.isReadOnly() && !cacheModel.isSerialize();
+      }
+      rootStatement.setCoalesce(true, readOnly);
+    }
+  }
+
+  public void setSpillable(boolean spillable) {
+    if (spillable) {
+      errorContext.setActivity("setting spillable results");
+      StatementType type = rootStatement.getStatementType();
+      if (type != StatementType.SELECT && type != StatementType.UNKNOWN) {
+        throw new SqlMapException("The spillable attribute is only supported by select statements.");
+      }
+      rootStatement.setSpillable(true);
+    }
+  }
+
+  public void setShardKey(String shardKey, String shardOrderBy) {
+    if (shardKey != null || shardOrderBy != null) {
+      errorContext.setActivity("setting the shard key");
+      if (shardKey == null) {
+        throw new SqlMapException("The shardOrderBy attribute requires a shardKey.");
+      }
+      if (rootStatement.getStatementType() == StatementType.PROCEDURE) {
+        throw new SqlMapException("The shardKey attribute is not supported by procedures.");
+      }
+      rootStatement.setShardKey(shardKey);
+      rootStatement.setShardOrderBy(shardOrderBy);
+    }
+  }
+
+  public void setGeneratedKeys(boolean useGeneratedKeys, String keyProperty) {
+    if (useGeneratedKeys || keyProperty != null) {
+      errorContext.setActivity("setting generated keys");
+      if (!(rootStatement instanceof InsertStatement)) {
+        throw new SqlMapException("The useGeneratedKeys attribute is only supported by insert statements.");
+      }
+      InsertStatement insertStatement = (InsertStatement) rootStatement;
+      if (useGeneratedKeys && insertStatement.getSelectKeyStatement() != null) {
+        throw new SqlMapException("An insert statement cannot use both generated keys and a select key.");
+      }
+      insertStatement.setUseGeneratedKeys(useGeneratedKeys);
+      insertStatement.setKeyProperty(keyProperty);
+    }
+  }
+
   public void setSelectKeyStatement(SqlSource processor, String resultClassName, String keyPropName,
       boolean runAfterSQL, String type) {
     if (rootStatement instanceof InsertStatement) {
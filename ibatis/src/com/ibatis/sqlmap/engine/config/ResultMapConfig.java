@@ -15,6 +15,7 @@
  */
 package com.ibatis.sqlmap.engine.config;
 
+import com.ibatis.sqlmap.client.SqlMapException;
 import com.ibatis.sqlmap.client.extensions.*;
 import com.ibatis.sqlmap.engine.impl.*;
 import com.ibatis.sqlmap.engine.mapping.result.*;
@@ -159,4 +160,19 @@ public class ResultMapConfig {
     resultMap.setResultMappingList(resultMappingList);
   }
 
+  public void setBatch(boolean batch, String batchStatementName, String batchKey) {
+    if (!batch && batchStatementName == null) {
+      return;
+    }
+    ResultMapping mapping = (ResultMapping) resultMappingList.get(resultMappingList.size() - 1);
+    errorContext.setObjectId(mapping.getPropertyName() + " mapping of the " + resultMap.getId() + " result map");
+    errorContext.setActivity("configuring batch loading");
+    if (mapping.getStatementName() == null) {
+      throw new SqlMapException("Batch loading can only be enabled on a result mapping with a nested select.");
+    }
+    mapping.setBatch(true);
+    mapping.setBatchStatementName(batchStatementName);
+    mapping.setBatchKey(batchKey);
+  }
+
 }
@@ -25,6 +25,7 @@ import com.ibatis.sqlmap.engine.cache.fifo.*;
 import com.ibatis.sqlmap.engine.cache.lru.*;
 import com.ibatis.sqlmap.engine.cache.memory.*;
 import com.ibatis.sqlmap.engine.datasource.*;
+import com.ibatis.sqlmap.engine.dialect.*;
 import com.ibatis.sqlmap.engine.impl.*;
 import com.ibatis.sqlmap.engine.mapping.result.*;
 import com.ibatis.sqlmap.engine.mapping.statement.*;
@@ -108,6 +109,101 @@ public class SqlMapConfiguration {
     client.getDelegate().setForceMultipleResultSetSupport(forceMultipleResultSetSupport);
   }
 
+  public void setBatchGroupingEnabled(boolean batchGroupingEnabled) {
+    client.getDelegate().setBatchGroupingEnabled(batchGroupingEnabled);
+  }
+
+  public void setAsyncPoolSize(Integer asyncPoolSize) {
+    errorContext.setActivity("setting asynchronous pool size");
+    if (asyncPoolSize != null) {
+      if (asyncPoolSize.intValue() < 1) {
+        throw new SqlMapException("Specified asyncPoolSize must be greater than zero");
+      }
+      client.getDelegate().setAsyncPoolSize(asyncPoolSize.intValue());
+    }
+  }
+
+  public void setAsyncQueueSize(Integer asyncQueueSize) {
+    errorContext.setActivity("setting asynchronous queue size");
+    if (asyncQueueSize != null) {
+      if (asyncQueueSize.intValue() < 1) {
+        throw new SqlMapException("Specified asyncQueueSize must be greater than zero");
+      }
+      client.getDelegate().setAsyncQueueSize(asyncQueueSize.intValue());
+    }
+  }
+
+  public void setMaxBatchRows(Integer maxBatchRows) {
+    errorContext.setActivity("setting maximum batch rows");
+    if (maxBatchRows != null) {
+      if (maxBatchRows.intValue() < 0) {
+        throw new SqlMapException("Specified maxBatchRows must not be negative");
+      }
+      client.getDelegate().setMaxBatchRows(maxBatchRows.intValue());
+    }
+  }
+
+  public void setMaxBatchBytes(Long maxBatchBytes) {
+    errorContext.setActivity("setting maximum batch bytes");
+    if (maxBatchBytes != null) {
+      if (maxBatchBytes.longValue() < 0) {
+        throw new SqlMapException("Specified maxBatchBytes must not be negative");
+      }
+      client.getDelegate().setMaxBatchBytes(maxBatchBytes.longValue());
+    }
+  }
+
+  public void setSpillThreshold(Integer spillThreshold) {
+    errorContext.setActivity("setting spill threshold");
+    if (spillThreshold != null) {
+      if (spillThreshold.intValue() < 0) {
+        throw new SqlMapException("Specified spillThreshold must not be negative");
+      }
+      client.getDelegate().setSpillThreshold(spillThreshold.intValue());
+    }
+  }
+
+  public void setDefaultFetchSize(Integer defaultFetchSize) {
+    errorContext.setActivity("setting default fetch size");
+    if (defaultFetchSize != null) {
+      if (defaultFetchSize.intValue() < 0) {
+        throw new SqlMapException("Specified defaultFetchSize must not be negative");
+      }
+      client.getDelegate().setDefaultFetchSize(defaultFetchSize.intValue());
+    }
+  }
+
+  public void setAdaptiveFetchSizeEnabled(boolean adaptiveFetchSizeEnabled) {
+    errorContext.setActivity("setting adaptive fetch size enabled/disabled");
+    client.getDelegate().setAdaptiveFetchSizeEnabled(adaptiveFetchSizeEnabled);
+  }
+
+  public void setFetchSizeMemoryBudget(Long fetchSizeMemoryBudget) {
+    errorContext.setActivity("setting fetch size memory budget");
+    if (fetchSizeMemoryBudget != null) {
+      if (fetchSizeMemoryBudget.longValue() < 1) {
+        throw new SqlMapException("Specified fetchSizeMemoryBudget must be greater than zero");
+      }
+      client.getDelegate().setFetchSizeMemoryBudget(fetchSizeMemoryBudget.longValue());
+    }
+  }
+
+  public void setDialect(String dialect) {
+    errorContext.setActivity("setting dialect");
+    if (dialect != null) {
+      if ("auto".equalsIgnoreCase(dialect)) {
+        client.getDelegate().setAutoDialect(true);
+      } else {
+        String type = typeHandlerFactory.resolveAlias(dialect);
+        try {
+          client.getDelegate().setDialect((Dialect) Resources.instantiate(type));
+        } catch (Exception e) {
+          throw new SqlMapException("Error instantiating dialect '" + dialect + "'.  Cause: " + e, e);
+        }
+      }
+    }
+  }
+
   public void setDefaultStatementTimeout(Integer defaultTimeout) {
     errorContext.setActivity("setting default timeout");
     if (defaultTimeout != null) {
@@ -179,6 +275,7 @@ public class SqlMapConfiguration {
   public void finalizeSqlMapConfig() {
     wireUpCacheModels();
     bindResultMapDiscriminators();
+    compileRowMappers();
   }
 
   TypeHandler resolveTypeHandler(TypeHandlerFactory typeHandlerFactory, Class clazz, String propertyName,
@@ -242,6 +339,16 @@ public class SqlMapConfiguration {
     // use a string for OSCache to avoid unnecessary loading of properties upon init
     typeHandlerFactory.putTypeAlias("OSCACHE", "com.ibatis.sqlmap.engine.cache.oscache.OSCacheController");
 
+    // DIALECT ALIASES
+    typeHandlerFactory.putTypeAlias("HSQLDB", LimitOffsetDialect.class.getName());
+    typeHandlerFactory.putTypeAlias("H2", LimitOffsetDialect.class.getName());
+    typeHandlerFactory.putTypeAlias("MYSQL", LimitOffsetDialect.class.getName());
+    typeHandlerFactory.putTypeAlias("POSTGRESQL", LimitOffsetDialect.class.getName());
+    typeHandlerFactory.putTypeAlias("DERBY", OffsetFetchDialect.class.getName());
+    typeHandlerFactory.putTypeAlias("DB2", OffsetFetchDialect.class.getName());
+    typeHandlerFactory.putTypeAlias("SQLSERVER", SqlServerDialect.class.getName());
+    typeHandlerFactory.putTypeAlias("ORACLE", OracleDialect.class.getName());
+
     // TYPE ALIASEs
     typeHandlerFactory.putTypeAlias("dom", DomTypeMarker.class.getName());
     typeHandlerFactory.putTypeAlias("domCollection", DomCollectionTypeMarker.class.getName());
@@ -282,4 +389,12 @@ public class SqlMapConfiguration {
     }
   }
 
+  private void compileRowMappers() {
+    Iterator names = delegate.getResultMapNames();
+    while (names.hasNext()) {
+      String name = (String) names.next();
+      delegate.getResultMap(name).compileRowMapper();
+    }
+  }
+
 }
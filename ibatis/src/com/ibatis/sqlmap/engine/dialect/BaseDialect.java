@@ -0,0 +1,76 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.dialect;
+
+import com.ibatis.sqlmap.engine.execution.SqlExecutor;
+
+/**
+ * Base class for the dialects that ship with iBATIS.
+ * <p>
+ * The check for statements that must not be rewritten is deliberately coarse: a statement that already limits its
+ * rows, locks them, or ends with a terminator is left alone and paged by the driver as before.
+ */
+public abstract class BaseDialect implements Dialect {
+
+  private static final String[] UNSAFE_KEYWORDS = { "limit", "offset", "fetch", "rownum", "top", "for update" };
+
+  public String getLimitSql(String sql, int skipResults, int maxResults) {
+    String trimmed = sql.trim();
+    if (!isLimitable(trimmed)) {
+      return null;
+    }
+    return getLimitSql(trimmed, skipResults > 0, hasLimit(maxResults));
+  }
+
+  /**
+   * Rewrites a statement that has passed the safety checks.
+   *
+   * @param sql
+   *          - the trimmed statement
+   * @param hasOffset
+   *          - true if rows must be skipped
+   * @param hasLimit
+   *          - true if the number of rows must be limited
+   * @return - the rewritten statement, or null if it cannot be rewritten
+   */
+  protected abstract String getLimitSql(String sql, boolean hasOffset, boolean hasLimit);
+
+  public int getAddedColumnCount(int skipResults, int maxResults) {
+    return 0;
+  }
+
+  protected boolean isLimitable(String sql) {
+    if (sql.endsWith(";")) {
+      return false;
+    }
+    String lower = sql.toLowerCase();
+    if (!lower.startsWith("select") && !lower.startsWith("with")) {
+      return false;
+    }
+    String normalized = " " + lower.replace('\n', ' ').replace('\r', ' ').replace('\t', ' ') + " ";
+    for (int i = 0; i < UNSAFE_KEYWORDS.length; i++) {
+      if (normalized.indexOf(" " + UNSAFE_KEYWORDS[i] + " ") > -1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  protected static boolean hasLimit(int maxResults) {
+    return maxResults != SqlExecutor.NO_MAXIMUM_RESULTS && maxResults >= 0;
+  }
+
+}
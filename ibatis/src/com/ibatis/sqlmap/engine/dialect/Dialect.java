@@ -0,0 +1,63 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.dialect;
+
+/**
+ * Rewrites a SELECT statement so that the database, rather than the driver, skips and limits the rows returned by
+ * queryForList(id, param, skip, max) and the paginated lists built on it.
+ * <p>
+ * The placeholders a dialect adds are always bound after the parameters of the original statement, in the order
+ * given by getLimitParameters().
+ */
+public interface Dialect {
+
+  /**
+   * Rewrites a statement to return at most maxResults rows after skipping skipResults rows.
+   *
+   * @param sql
+   *          - the statement as it would be executed
+   * @param skipResults
+   *          - the number of rows to skip, 0 to skip none
+   * @param maxResults
+   *          - the maximum number of rows, SqlExecutor.NO_MAXIMUM_RESULTS for no limit
+   * @return - the rewritten statement, or null if this statement cannot be rewritten safely
+   */
+  String getLimitSql(String sql, int skipResults, int maxResults);
+
+  /**
+   * The values of the placeholders added by getLimitSql() for the same arguments.
+   *
+   * @param skipResults
+   *          - the number of rows to skip, 0 to skip none
+   * @param maxResults
+   *          - the maximum number of rows, SqlExecutor.NO_MAXIMUM_RESULTS for no limit
+   * @return - the values to bind, in order
+   */
+  int[] getLimitParameters(int skipResults, int maxResults);
+
+  /**
+   * The number of columns getLimitSql() adds after the columns of the statement for the same arguments. They are not
+   * part of the results, and implicit result maps leave them out so that every page has the same columns.
+   *
+   * @param skipResults
+   *          - the number of rows to skip, 0 to skip none
+   * @param maxResults
+   *          - the maximum number of rows, SqlExecutor.NO_MAXIMUM_RESULTS for no limit
+   * @return - the number of added columns, 0 if the rewritten statement has the columns of the original one
+   */
+  int getAddedColumnCount(int skipResults, int maxResults);
+
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.dialect;
+
+/**
+ * LIMIT n OFFSET m, as understood by HSQLDB, H2, MySQL, PostgreSQL and SQLite.
+ * <p>
+ * An offset without a limit is written with a limit of Integer.MAX_VALUE, as MySQL and older HSQLDB versions do not
+ * accept OFFSET on its own.
+ */
+public class LimitOffsetDialect extends BaseDialect {
+
+  protected String getLimitSql(String sql, boolean hasOffset, boolean hasLimit) {
+    if (hasOffset) {
+      return sql + " LIMIT ? OFFSET ?";
+    } else if (hasLimit) {
+      return sql + " LIMIT ?";
+    } else {
+      return null;
+    }
+  }
+
+  public int[] getLimitParameters(int skipResults, int maxResults) {
+    int limit = hasLimit(maxResults) ? maxResults : Integer.MAX_VALUE;
+    if (skipResults > 0) {
+      return new int[] { limit, skipResults };
+    } else {
+      return new int[] { limit };
+    }
+  }
+
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.dialect;
+
+/**
+ * The SQL:2008 OFFSET m ROWS FETCH NEXT n ROWS ONLY clause, as understood by Derby, DB2 and Oracle 12c.
+ */
+public class OffsetFetchDialect extends BaseDialect {
+
+  protected String getLimitSql(String sql, boolean hasOffset, boolean hasLimit) {
+    if (!hasOffset && !hasLimit) {
+      return null;
+    }
+    StringBuffer buffer = new StringBuffer(sql.length() + 40);
+    buffer.append(sql);
+    buffer.append(" OFFSET ? ROWS");
+    if (hasLimit) {
+      buffer.append(" FETCH NEXT ? ROWS ONLY");
+    }
+    return buffer.toString();
+  }
+
+  public int[] getLimitParameters(int skipResults, int maxResults) {
+    if (hasLimit(maxResults)) {
+      return new int[] { skipResults, maxResults };
+    } else {
+      return new int[] { skipResults };
+    }
+  }
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.dialect;
+
+/**
+ * Nested queries filtered on ROWNUM, for Oracle versions before 12c.
+ * <p>
+ * When rows are skipped the result has an extra ROWNUM_ column after the columns of the statement. Explicit result
+ * maps ignore it, and implicit ones leave it out, so every page has the same columns.
+ */
+public class OracleDialect extends BaseDialect {
+
+  protected String getLimitSql(String sql, boolean hasOffset, boolean hasLimit) {
+    StringBuffer buffer = new StringBuffer(sql.length() + 100);
+    if (hasOffset) {
+      buffer.append("select * from ( select row_.*, rownum rownum_ from ( ");
+      buffer.append(sql);
+      buffer.append(" ) row_");
+      if (hasLimit) {
+        buffer.append(" where rownum <= ?");
+      }
+      buffer.append(" ) where rownum_ > ?");
+    } else if (hasLimit) {
+      buffer.append("select * from ( ");
+      buffer.append(sql);
+      buffer.append(" ) where rownum <= ?");
+    } else {
+      return null;
+    }
+    return buffer.toString();
+  }
+
+  @Override
+  public int getAddedColumnCount(int skipResults, int maxResults) {
+    return skipResults > 0 ? 1 : 0;
+  }
+
+  public int[] getLimitParameters(int skipResults, int maxResults) {
+    if (skipResults > 0) {
+      if (hasLimit(maxResults)) {
+        long last = (long) skipResults + maxResults;
+        return new int[] { last > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) last, skipResults };
+      } else {
+        return new int[] { skipResults };
+      }
+    } else {
+      return new int[] { maxResults };
+    }
+  }
+
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.dialect;
+
+/**
+ * OFFSET / FETCH for SQL Server 2012 and later. SQL Server only accepts the clause after an ORDER BY, so statements
+ * without one are left to the driver.
+ */
+public class SqlServerDialect extends OffsetFetchDialect {
+
+  protected String getLimitSql(String sql, boolean hasOffset, boolean hasLimit) {
+    String lower = sql.toLowerCase().replace('\n', ' ').replace('\r', ' ').replace('\t', ' ');
+    if (lower.indexOf("order by") == -1) {
+      return null;
+    }
+    return super.getLimitSql(sql, hasOffset, hasLimit);
+  }
+
+}
@@ -17,6 +17,7 @@ package com.ibatis.sqlmap.engine.exchange;
 
 import com.ibatis.sqlmap.engine.accessplan.AccessPlan;
 import com.ibatis.sqlmap.engine.accessplan.AccessPlanFactory;
+import com.ibatis.sqlmap.engine.accessplan.BytecodeAccessPlan;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMapping;
 import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
@@ -102,7 +103,12 @@ public class JavaBeanDataExchange extends BaseDataExchange implements DataExchan
       if (object == null) {
         errorContext.setMoreInfo("The error occured while instantiating the result object");
         try {
-          object = ResultObjectFactoryUtil.createObjectThroughFactory(resultMap.getResultClass());
+          if (resultPlan instanceof BytecodeAccessPlan && !ResultObjectFactoryUtil.hasResultObjectFactory()) {
+            object = ((BytecodeAccessPlan) resultPlan).newInstance();
+          }
+          if (object == null) {
+            object = ResultObjectFactoryUtil.createObjectThroughFactory(resultMap.getResultClass());
+          }
         } catch (Exception e) {
           throw new RuntimeException("JavaBeansDataExchange could not instantiate result class.  Cause: " + e, e);
         }
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.execution;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.sql.Connection;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.ibatis.common.logging.Log;
+import com.ibatis.common.logging.LogFactory;
+import com.ibatis.sqlmap.engine.transaction.Transaction;
+import com.ibatis.sqlmap.engine.transaction.TransactionException;
+
+/**
+ * Enforces the deadline of a call: statements still running when it expires are cancelled from a single shared
+ * timer thread, so that the caller gets its thread and connection back instead of waiting on the database.
+ * <p>
+ * Cancellations of statements that complete in time are cancelled in turn, and are purged from the queue of the timer
+ * once per purge interval, so that neither they nor their statements stay reachable until their deadline.
+ * <p>
+ * A deadline is a System.currentTimeMillis() value; 0 means no deadline.
+ */
+public class DeadlineTimer {
+
+  /**
+   * No deadline
+   */
+  public static final long NO_DEADLINE = 0;
+
+  /**
+   * The SQL state of the SQLTimeoutException thrown when a deadline expires
+   */
+  public static final String DEADLINE_EXPIRED_SQL_STATE = "57014";
+
+  /**
+   * The interval between two purges of the cancelled cancellations, in milliseconds
+   */
+  public static final long PURGE_INTERVAL = 1000;
+
+  private static final Log log = LogFactory.getLog(DeadlineTimer.class);
+
+  private ScheduledThreadPoolExecutor scheduler;
+
+  public DeadlineTimer() {
+    this(PURGE_INTERVAL);
+  }
+
+  DeadlineTimer(long purgeInterval) {
+    scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "ibatis-deadline");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        scheduler.purge();
+      }
+    }, purgeInterval, purgeInterval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Schedules the cancellation of a statement at a deadline. The returned Future must be cancelled as soon as the
+   * statement has completed.
+   *
+   * @param statement
+   *          - the statement to cancel
+   * @param deadline
+   *          - the deadline
+   * @return - the scheduled cancellation, or null if there is no deadline
+   */
+  public Future cancelAt(final Statement statement, long deadline) {
+    if (deadline == NO_DEADLINE) {
+      return null;
+    }
+    return scheduler.schedule(new Runnable() {
+      public void run() {
+        try {
+          statement.cancel();
+        } catch (Throwable e) {
+          log.debug("Could not cancel statement after its deadline expired: " + e.getMessage());
+        }
+      }
+    }, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * The number of tasks waiting in the queue of the timer, including the periodic purge.
+   *
+   * @return - the size of the queue
+   */
+  int getQueueSize() {
+    return scheduler.getQueue().size();
+  }
+
+  /**
+   * Gets the connection of a transaction within a deadline. The wait for a pooled connection is bounded by the pool
+   * itself, as a DataSource has no way to limit a single call; once it returns, the deadline is checked so that a
+   * connection obtained too late is not used, and a pool failure after the deadline is reported as a timeout.
+   *
+   * @param trans
+   *          - the transaction
+   * @param deadline
+   *          - the deadline
+   * @return - the connection
+   * @throws SQLException
+   *           if the connection cannot be obtained or the deadline has expired
+   * @throws TransactionException
+   *           if the transaction cannot provide a connection
+   */
+  public static Connection getConnection(Transaction trans, long deadline) throws SQLException, TransactionException {
+    Connection conn;
+    try {
+      conn = trans.getConnection();
+    } catch (SQLException e) {
+      throw translate(e, deadline);
+    }
+    check(deadline);
+    return conn;
+  }
+
+  /**
+   * Throws if a deadline has expired.
+   *
+   * @param deadline
+   *          - the deadline
+   * @throws SQLTimeoutException
+   *           if the deadline has expired
+   */
+  public static void check(long deadline) throws SQLTimeoutException {
+    if (isExpired(deadline)) {
+      throw new SQLTimeoutException("The deadline of the call has expired.", DEADLINE_EXPIRED_SQL_STATE);
+    }
+  }
+
+  public static boolean isExpired(long deadline) {
+    return deadline != NO_DEADLINE && System.currentTimeMillis() >= deadline;
+  }
+
+  /**
+   * Reports an error caused by the cancellation of a statement at its deadline as a SQLTimeoutException.
+   *
+   * @param e
+   *          - the error thrown by the driver
+   * @param deadline
+   *          - the deadline
+   * @return - a SQLTimeoutException if the deadline has expired, the error itself otherwise
+   */
+  public static SQLException translate(SQLException e, long deadline) {
+    if (isExpired(deadline) && !(e instanceof SQLTimeoutException)) {
+      return new SQLTimeoutException("The deadline of the call has expired.  Cause: " + e,
+          DEADLINE_EXPIRED_SQL_STATE, e.getErrorCode(), e);
+    }
+    return e;
+  }
+
+  /**
+   * The query timeout to set on a statement: the smaller of its own timeout and the time left before the deadline,
+   * rounded up to whole seconds.
+   *
+   * @param timeout
+   *          - the timeout of the mapped statement in seconds, or null
+   * @param deadline
+   *          - the deadline
+   * @return - the query timeout in seconds, or 0 for no timeout
+   */
+  public static int getQueryTimeout(Integer timeout, long deadline) {
+    int seconds = timeout == null ? 0 : timeout.intValue();
+    if (deadline != NO_DEADLINE) {
+      long left = (deadline - System.currentTimeMillis() + 999) / 1000;
+      int deadlineSeconds = (int) Math.max(1, Math.min(left, Integer.MAX_VALUE));
+      if (seconds == 0 || deadlineSeconds < seconds) {
+        seconds = deadlineSeconds;
+      }
+    }
+    return seconds;
+  }
+
+}
@@ -24,22 +24,33 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Future;
 
+import com.ibatis.sqlmap.client.Cursor;
 import com.ibatis.sqlmap.engine.config.SqlMapConfiguration;
+import com.ibatis.sqlmap.engine.dialect.Dialect;
 import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
 import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMapping;
 import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
 import com.ibatis.sqlmap.engine.mapping.result.ResultObjectFactoryUtil;
+import com.ibatis.sqlmap.engine.mapping.sql.stat.StaticSql;
 import com.ibatis.sqlmap.engine.mapping.statement.DefaultRowHandler;
+import com.ibatis.sqlmap.engine.mapping.statement.InsertStatement;
 import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
+import com.ibatis.sqlmap.engine.mapping.statement.PipelinedQuery;
 import com.ibatis.sqlmap.engine.mapping.statement.RowHandlerCallback;
 import com.ibatis.sqlmap.engine.scope.ErrorContext;
 import com.ibatis.sqlmap.engine.scope.SessionScope;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
+import com.ibatis.sqlmap.engine.type.TypeHandler;
 
 /**
  * Class responsible for executing the SQL
@@ -70,19 +81,39 @@ public class DefaultSqlExecutor implements SqlExecutor {
     ErrorContext errorContext = statementScope.getErrorContext();
     errorContext.setActivity("executing update");
     errorContext.setObjectId(sql);
+    long deadline = statementScope.getSession().getDeadline();
+    DeadlineTimer.check(deadline);
     PreparedStatement ps = null;
+    Future cancel = null;
     setupResultObjectFactory(statementScope);
     int rows = 0;
     try {
       errorContext.setMoreInfo("Check the SQL Statement (preparation failed).");
-      ps = prepareStatement(statementScope.getSession(), conn, sql);
-      setStatementTimeout(statementScope.getStatement(), ps);
+      InsertStatement keyedInsert = getGeneratedKeysInsert(statementScope, conn);
+      if (keyedInsert != null) {
+        ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+      } else {
+        ps = prepareStatement(statementScope.getSession(), conn, sql);
+      }
+      setStatementTimeout(statementScope, ps);
+      cancel = scheduleCancel(statementScope.getSession(), ps, deadline);
       errorContext.setMoreInfo("Check the parameters (set parameters failed).");
       statementScope.getParameterMap().setParameters(statementScope, ps, parameters);
       errorContext.setMoreInfo("Check the statement (update failed).");
       ps.execute();
       rows = ps.getUpdateCount();
+      if (keyedInsert != null) {
+        errorContext.setMoreInfo("Check the generated keys.");
+        List parameterObjects = new ArrayList(1);
+        parameterObjects.add(statementScope.getParameterObject());
+        setGeneratedKeys(keyedInsert, ps, parameterObjects);
+      }
+    } catch (SQLException e) {
+      throw DeadlineTimer.translate(e, deadline);
     } finally {
+      if (cancel != null) {
+        cancel.cancel(false);
+      }
       closeStatement(statementScope.getSession(), ps);
       cleanupResultObjectFactory();
     }
@@ -107,7 +138,9 @@ public class DefaultSqlExecutor implements SqlExecutor {
       throws SQLException {
     Batch batch = (Batch) statementScope.getSession().getBatch();
     if (batch == null) {
-      batch = new Batch();
+      SqlMapClientImpl client = (SqlMapClientImpl) statementScope.getSession().getSqlMapClient();
+      SqlMapExecutorDelegate delegate = client.getDelegate();
+      batch = new Batch(delegate.isBatchGroupingEnabled(), delegate.getMaxBatchRows(), delegate.getMaxBatchBytes());
       statementScope.getSession().setBatch(batch);
     }
     batch.addBatch(statementScope, conn, sql, parameters);
@@ -184,9 +217,35 @@ public class DefaultSqlExecutor implements SqlExecutor {
       int skipResults, int maxResults, RowHandlerCallback callback) throws SQLException {
     ErrorContext errorContext = statementScope.getErrorContext();
     errorContext.setActivity("executing query");
+    long deadline = statementScope.getSession().getDeadline();
+    DeadlineTimer.check(deadline);
+    SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) statementScope.getSession().getSqlMapClient())
+        .getDelegate();
+    Object keysetValue = null;
+    if (statementScope.isKeysetQuery()) {
+      keysetValue = statementScope.getKeysetValue();
+      sql = getKeysetSql(sql, statementScope.getStatement().getKeysetColumn(), keysetValue != null);
+    }
+    int[] limitParameters = null;
+    int maxRows = 0;
+    if (skipResults > NO_SKIPPED_RESULTS || maxResults != NO_MAXIMUM_RESULTS) {
+      Dialect dialect = delegate.getDialect(statementScope, conn);
+      String limitSql = dialect == null ? null : dialect.getLimitSql(sql, skipResults, maxResults);
+      if (limitSql != null) {
+        // the database skips the rows, maxResults is kept as a guard
+        limitParameters = dialect.getLimitParameters(skipResults, maxResults);
+        statementScope.setAddedColumnCount(dialect.getAddedColumnCount(skipResults, maxResults));
+        sql = limitSql;
+        skipResults = NO_SKIPPED_RESULTS;
+      } else if (maxResults > 0 && skipResults < Integer.MAX_VALUE - maxResults) {
+        // without a dialect the driver is told to stop after the rows the page needs
+        maxRows = skipResults + maxResults;
+      }
+    }
     errorContext.setObjectId(sql);
     PreparedStatement ps = null;
     ResultSet rs = null;
+    Future cancel = null;
     setupResultObjectFactory(statementScope);
     try {
       errorContext.setMoreInfo("Check the SQL Statement (preparation failed).");
@@ -196,21 +255,54 @@ public class DefaultSqlExecutor implements SqlExecutor {
       } else {
         ps = prepareStatement(statementScope.getSession(), conn, sql);
       }
-      setStatementTimeout(statementScope.getStatement(), ps);
+      setStatementTimeout(statementScope, ps);
+      setMaxRows(statementScope, ps, maxRows);
+      cancel = scheduleCancel(statementScope.getSession(), ps, deadline);
+      StatementStatistics statistics = null;
+      if (delegate.isAdaptiveFetchSizeEnabled()) {
+        statistics = delegate.getStatementStatistics(statementScope.getStatement().getId());
+      }
       Integer fetchSize = statementScope.getStatement().getFetchSize();
       if (fetchSize != null) {
         ps.setFetchSize(fetchSize.intValue());
+      } else if (statistics != null && statistics.getFetchSize() > 0) {
+        int adaptiveFetchSize = statistics.getFetchSize();
+        if (maxResults != NO_MAXIMUM_RESULTS && maxResults >= 0) {
+          adaptiveFetchSize = Math.max(1, Math.min(adaptiveFetchSize, skipResults + maxResults));
+        }
+        ps.setFetchSize(adaptiveFetchSize);
+      } else if (delegate.getDefaultFetchSize() > 0) {
+        ps.setFetchSize(delegate.getDefaultFetchSize());
       }
       errorContext.setMoreInfo("Check the parameters (set parameters failed).");
       statementScope.getParameterMap().setParameters(statementScope, ps, parameters);
+      int index = parameters == null ? 0 : parameters.length;
+      if (keysetValue != null) {
+        TypeHandler handler = delegate.getTypeHandlerFactory().getTypeHandler(keysetValue.getClass());
+        if (handler == null) {
+          ps.setObject(++index, keysetValue);
+        } else {
+          handler.setParameter(ps, ++index, keysetValue, null);
+        }
+      }
+      if (limitParameters != null) {
+        for (int k = 0; k < limitParameters.length; k++) {
+          ps.setInt(++index, limitParameters[k]);
+        }
+      }
       errorContext.setMoreInfo("Check the statement (query failed).");
       ps.execute();
       errorContext.setMoreInfo("Check the results (failed to retrieve results).");
 
       // Begin ResultSet Handling
-      rs = handleMultipleResults(ps, statementScope, skipResults, maxResults, callback);
+      rs = handleMultipleResults(ps, statementScope, skipResults, maxResults, callback, statistics);
       // End ResultSet Handling
+    } catch (SQLException e) {
+      throw DeadlineTimer.translate(e, deadline);
     } finally {
+      if (cancel != null) {
+        cancel.cancel(false);
+      }
       try {
         closeResultSet(rs);
       } finally {
@@ -221,6 +313,85 @@ public class DefaultSqlExecutor implements SqlExecutor {
 
   }
 
+  /**
+   * Execute a query and return a cursor over its first result set
+   *
+   * @param statementScope
+   *          - the request scope
+   * @param conn
+   *          - the database connection
+   * @param sql
+   *          - the SQL statement to execute
+   * @param parameters
+   *          - the parameters for the statement
+   * @param fetchSize
+   *          - the JDBC fetch size, or null to use the fetch size of the mapped statement
+   * @return - an open cursor
+   * @throws SQLException
+   *           - if the query fails
+   */
+  public Cursor executeQueryForCursor(StatementScope statementScope, Connection conn, String sql, Object[] parameters,
+      Integer fetchSize) throws SQLException {
+    ErrorContext errorContext = statementScope.getErrorContext();
+    errorContext.setActivity("executing query for cursor");
+    errorContext.setObjectId(sql);
+    long deadline = statementScope.getSession().getDeadline();
+    DeadlineTimer.check(deadline);
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+    Cursor cursor = null;
+    Future cancel = null;
+    setupResultObjectFactory(statementScope);
+    try {
+      errorContext.setMoreInfo("Check the SQL Statement (preparation failed).");
+      // The statement is owned by the cursor, so it must not be shared through the session's statement cache
+      Integer rsType = statementScope.getStatement().getResultSetType();
+      if (rsType != null) {
+        ps = conn.prepareStatement(sql, rsType.intValue(), ResultSet.CONCUR_READ_ONLY);
+      } else {
+        ps = conn.prepareStatement(sql);
+      }
+      setStatementTimeout(statementScope, ps);
+      cancel = scheduleCancel(statementScope.getSession(), ps, deadline);
+      if (fetchSize == null) {
+        fetchSize = statementScope.getStatement().getFetchSize();
+      }
+      if (fetchSize == null) {
+        SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) statementScope.getSession().getSqlMapClient())
+            .getDelegate();
+        if (delegate.getDefaultFetchSize() > 0) {
+          fetchSize = new Integer(delegate.getDefaultFetchSize());
+        }
+      }
+      if (fetchSize != null) {
+        ps.setFetchSize(fetchSize.intValue());
+      }
+      errorContext.setMoreInfo("Check the parameters (set parameters failed).");
+      statementScope.getParameterMap().setParameters(statementScope, ps, parameters);
+      errorContext.setMoreInfo("Check the statement (query failed).");
+      ps.execute();
+      errorContext.setMoreInfo("Check the results (failed to retrieve results).");
+      rs = getFirstResultSet(statementScope, ps);
+      // the cursor keeps the deadline of the call that opened it and cancels the scheduled cancellation when closed
+      cursor = new ResultSetCursor(statementScope, ps, rs, deadline, cancel);
+    } catch (SQLException e) {
+      throw DeadlineTimer.translate(e, deadline);
+    } finally {
+      if (cursor == null) {
+        if (cancel != null) {
+          cancel.cancel(false);
+        }
+        try {
+          closeResultSet(rs);
+        } finally {
+          closeStatement(statementScope.getSession(), ps);
+        }
+      }
+      cleanupResultObjectFactory();
+    }
+    return cursor;
+  }
+
   /**
    * Execute a stored procedure that updates data
    *
@@ -241,13 +412,17 @@ public class DefaultSqlExecutor implements SqlExecutor {
     ErrorContext errorContext = statementScope.getErrorContext();
     errorContext.setActivity("executing update procedure");
     errorContext.setObjectId(sql);
+    long deadline = statementScope.getSession().getDeadline();
+    DeadlineTimer.check(deadline);
     CallableStatement cs = null;
+    Future cancel = null;
     setupResultObjectFactory(statementScope);
     int rows = 0;
     try {
       errorContext.setMoreInfo("Check the SQL Statement (preparation failed).");
       cs = prepareCall(statementScope.getSession(), conn, sql);
-      setStatementTimeout(statementScope.getStatement(), cs);
+      setStatementTimeout(statementScope, cs);
+      cancel = scheduleCancel(statementScope.getSession(), cs, deadline);
       ParameterMap parameterMap = statementScope.getParameterMap();
       ParameterMapping[] mappings = parameterMap.getParameterMappings();
       errorContext.setMoreInfo("Check the output parameters (register output parameters failed).");
@@ -259,13 +434,102 @@ public class DefaultSqlExecutor implements SqlExecutor {
       rows = cs.getUpdateCount();
       errorContext.setMoreInfo("Check the output parameters (retrieval of output parameters failed).");
       retrieveOutputParameters(statementScope, cs, mappings, parameters, null);
+    } catch (SQLException e) {
+      throw DeadlineTimer.translate(e, deadline);
     } finally {
+      if (cancel != null) {
+        cancel.cancel(false);
+      }
       closeStatement(statementScope.getSession(), cs);
       cleanupResultObjectFactory();
     }
     return rows;
   }
 
+  /**
+   * Execute several queries in one round trip, as a single statement that returns one result set per query
+   *
+   * @param conn
+   *          - the database connection
+   * @param queries
+   *          - the queries to run, in order, each with its own request scope, parameters and row handler
+   * @throws SQLException
+   *           - if the statement fails or a query does not return a result set
+   */
+  public void executeQueryPipeline(Connection conn, PipelinedQuery[] queries) throws SQLException {
+    StatementScope firstScope = queries[0].getStatementScope();
+    ErrorContext errorContext = firstScope.getErrorContext();
+    errorContext.setActivity("executing pipelined queries");
+    StringBuffer buffer = new StringBuffer();
+    for (int i = 0; i < queries.length; i++) {
+      String sql = queries[i].getSql().trim();
+      if (sql.endsWith(";")) {
+        sql = sql.substring(0, sql.length() - 1);
+      }
+      if (i > 0) {
+        buffer.append(";\n");
+      }
+      buffer.append(sql);
+    }
+    String sql = buffer.toString();
+    errorContext.setObjectId(sql);
+    long deadline = firstScope.getSession().getDeadline();
+    DeadlineTimer.check(deadline);
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+    Future cancel = null;
+    try {
+      errorContext.setMoreInfo("Check the SQL Statement (preparation failed).");
+      ps = prepareStatement(firstScope.getSession(), conn, sql);
+      setStatementTimeout(firstScope, ps);
+      cancel = scheduleCancel(firstScope.getSession(), ps, deadline);
+      errorContext.setMoreInfo("Check the parameters (set parameters failed).");
+      int offset = 0;
+      for (int i = 0; i < queries.length; i++) {
+        StatementScope statementScope = queries[i].getStatementScope();
+        Object[] parameters = queries[i].getParameters();
+        statementScope.getParameterMap().setParameters(statementScope, ps, parameters, offset);
+        offset += parameters == null ? 0 : parameters.length;
+      }
+      errorContext.setMoreInfo("Check the statement (query failed).");
+      ps.execute();
+      errorContext.setMoreInfo("Check the results (failed to retrieve results).");
+      for (int i = 0; i < queries.length; i++) {
+        StatementScope statementScope = queries[i].getStatementScope();
+        if (i == 0) {
+          rs = getFirstResultSet(statementScope, ps);
+        } else {
+          // getMoreResults() closes the previous result set
+          rs = null;
+          if (moveToNextResultsIfPresent(statementScope, ps)) {
+            rs = getFirstResultSet(statementScope, ps);
+          }
+        }
+        if (rs == null) {
+          throw new SQLException("The pipelined statement " + queries[i].getStatement().getId()
+              + " did not return a result set.");
+        }
+        setupResultObjectFactory(statementScope);
+        try {
+          handleResults(statementScope, rs, NO_SKIPPED_RESULTS, NO_MAXIMUM_RESULTS, queries[i].getCallback());
+        } finally {
+          cleanupResultObjectFactory();
+        }
+      }
+    } catch (SQLException e) {
+      throw DeadlineTimer.translate(e, deadline);
+    } finally {
+      if (cancel != null) {
+        cancel.cancel(false);
+      }
+      try {
+        closeResultSet(rs);
+      } finally {
+        closeStatement(firstScope.getSession(), ps);
+      }
+    }
+  }
+
   /**
    * Execute a stored procedure
    *
@@ -291,8 +555,11 @@ public class DefaultSqlExecutor implements SqlExecutor {
     ErrorContext errorContext = statementScope.getErrorContext();
     errorContext.setActivity("executing query procedure");
     errorContext.setObjectId(sql);
+    long deadline = statementScope.getSession().getDeadline();
+    DeadlineTimer.check(deadline);
     CallableStatement cs = null;
     ResultSet rs = null;
+    Future cancel = null;
     setupResultObjectFactory(statementScope);
     try {
       errorContext.setMoreInfo("Check the SQL Statement (preparation failed).");
@@ -302,7 +569,8 @@ public class DefaultSqlExecutor implements SqlExecutor {
       } else {
         cs = prepareCall(statementScope.getSession(), conn, sql);
       }
-      setStatementTimeout(statementScope.getStatement(), cs);
+      setStatementTimeout(statementScope, cs);
+      cancel = scheduleCancel(statementScope.getSession(), cs, deadline);
       Integer fetchSize = statementScope.getStatement().getFetchSize();
       if (fetchSize != null) {
         cs.setFetchSize(fetchSize.intValue());
@@ -318,12 +586,17 @@ public class DefaultSqlExecutor implements SqlExecutor {
       errorContext.setMoreInfo("Check the results (failed to retrieve results).");
 
       // Begin ResultSet Handling
-      rs = handleMultipleResults(cs, statementScope, skipResults, maxResults, callback);
+      rs = handleMultipleResults(cs, statementScope, skipResults, maxResults, callback, null);
       // End ResultSet Handling
       errorContext.setMoreInfo("Check the output parameters (retrieval of output parameters failed).");
       retrieveOutputParameters(statementScope, cs, mappings, parameters, callback);
 
+    } catch (SQLException e) {
+      throw DeadlineTimer.translate(e, deadline);
     } finally {
+      if (cancel != null) {
+        cancel.cancel(false);
+      }
       try {
         closeResultSet(rs);
       } finally {
@@ -333,16 +606,43 @@ public class DefaultSqlExecutor implements SqlExecutor {
     }
   }
 
+  /**
+   * Wraps a query to read the rows after a key, in key order.
+   *
+   * @param sql
+   *          - the query
+   * @param column
+   *          - the keyset column
+   * @param afterKey
+   *          - true to add the filter on the key of the previous page
+   * @return - the wrapped query
+   */
+  private static String getKeysetSql(String sql, String column, boolean afterKey) {
+    StringBuffer buffer = new StringBuffer(sql.length() + column.length() * 2 + 60);
+    buffer.append("select * from ( ").append(sql.trim()).append(" ) keyset_");
+    if (afterKey) {
+      buffer.append(" where keyset_.").append(column).append(" > ?");
+    }
+    buffer.append(" order by keyset_.").append(column);
+    return buffer.toString();
+  }
+
   public void init(SqlMapConfiguration config, Properties globalProps) {
     // No implementation is required in DefaultSqlExecutor.
   }
 
   private ResultSet handleMultipleResults(PreparedStatement ps, StatementScope statementScope, int skipResults,
-      int maxResults, RowHandlerCallback callback) throws SQLException {
+      int maxResults, RowHandlerCallback callback, StatementStatistics statistics) throws SQLException {
     ResultSet rs;
     rs = getFirstResultSet(statementScope, ps);
     if (rs != null) {
-      handleResults(statementScope, rs, skipResults, maxResults, callback);
+      if (statistics != null && !statistics.isRowWidthKnown()) {
+        statistics.recordRowWidth(rs.getMetaData());
+      }
+      int rows = handleResults(statementScope, rs, skipResults, maxResults, callback);
+      if (statistics != null) {
+        statistics.recordExecution(rows);
+      }
     }
 
     // Multiple ResultSet handling
@@ -417,19 +717,20 @@ public class DefaultSqlExecutor implements SqlExecutor {
    * forcing it
    */
   private boolean isMultipleResultSetSupportPresent(StatementScope scope, Statement stmt) throws SQLException {
-    return forceMultipleResultSetSupport(scope) || stmt.getConnection().getMetaData().supportsMultipleResultSets();
+    SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) scope.getSession().getSqlMapClient()).getDelegate();
+    return delegate.isForceMultipleResultSetSupport()
+        || delegate.getDriverProfile(scope, stmt.getConnection()).isMultipleResultSetsSupported();
   }
 
-  private boolean forceMultipleResultSetSupport(StatementScope scope) {
-    return ((SqlMapClientImpl) scope.getSession().getSqlMapClient()).getDelegate().isForceMultipleResultSetSupport();
-  }
-
-  private void handleResults(StatementScope statementScope, ResultSet rs, int skipResults, int maxResults,
+  private int handleResults(StatementScope statementScope, ResultSet rs, int skipResults, int maxResults,
       RowHandlerCallback callback) throws SQLException {
+    int rowsRead = 0;
     try {
       statementScope.setResultSet(rs);
       ResultMap resultMap = statementScope.getResultMap();
       if (resultMap != null) {
+        callback.handleResultSet(statementScope, rs);
+
         // Skip Results
         if (rs.getType() != ResultSet.TYPE_FORWARD_ONLY) {
           if (skipResults > 0) {
@@ -438,22 +739,27 @@ public class DefaultSqlExecutor implements SqlExecutor {
         } else {
           for (int i = 0; i < skipResults; i++) {
             if (!rs.next()) {
-              return;
+              return rowsRead;
             }
+            rowsRead++;
           }
         }
 
         // Get Results
+        long deadline = statementScope.getSession().getDeadline();
         int resultsFetched = 0;
         while ((maxResults == NO_MAXIMUM_RESULTS || resultsFetched < maxResults) && rs.next()) {
-          Object[] columnValues = resultMap.resolveSubMap(statementScope, rs).getResults(statementScope, rs);
-          callback.handleResultObject(statementScope, columnValues, rs);
+          // the caller has given up, stop mapping rows
+          DeadlineTimer.check(deadline);
+          callback.handleResultObject(statementScope, rs);
           resultsFetched++;
         }
+        rowsRead += resultsFetched;
       }
     } finally {
       statementScope.setResultSet(null);
     }
+    return rowsRead;
   }
 
   private void retrieveOutputParameters(StatementScope statementScope, CallableStatement cs,
@@ -508,11 +814,11 @@ public class DefaultSqlExecutor implements SqlExecutor {
       statementScope.setResultSet(rs);
       if (resultMap != null) {
         statementScope.setResultMap(resultMap);
+        callback.handleResultSet(statementScope, rs);
 
         // Get Results
         while (rs.next()) {
-          Object[] columnValues = resultMap.resolveSubMap(statementScope, rs).getResults(statementScope, rs);
-          callback.handleResultObject(statementScope, columnValues, rs);
+          callback.handleResultObject(statementScope, rs);
         }
       }
     } finally {
@@ -538,11 +844,11 @@ public class DefaultSqlExecutor implements SqlExecutor {
   private PreparedStatement prepareStatement(SessionScope sessionScope, Connection conn, String sql, Integer rsType)
       throws SQLException {
     SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) sessionScope.getSqlMapExecutor()).getDelegate();
-    if (sessionScope.hasPreparedStatementFor(sql)) {
+    if (sessionScope.hasPreparedStatementFor(conn, sql)) {
       return sessionScope.getPreparedStatement((sql));
     } else {
       PreparedStatement ps = conn.prepareStatement(sql, rsType.intValue(), ResultSet.CONCUR_READ_ONLY);
-      sessionScope.putPreparedStatement(delegate, sql, ps);
+      sessionScope.putPreparedStatement(delegate, conn, sql, ps);
       return ps;
     }
   }
@@ -550,11 +856,11 @@ public class DefaultSqlExecutor implements SqlExecutor {
   private CallableStatement prepareCall(SessionScope sessionScope, Connection conn, String sql, Integer rsType)
       throws SQLException {
     SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) sessionScope.getSqlMapExecutor()).getDelegate();
-    if (sessionScope.hasPreparedStatementFor(sql)) {
+    if (sessionScope.hasPreparedStatementFor(conn, sql)) {
       return (CallableStatement) sessionScope.getPreparedStatement((sql));
     } else {
       CallableStatement cs = conn.prepareCall(sql, rsType.intValue(), ResultSet.CONCUR_READ_ONLY);
-      sessionScope.putPreparedStatement(delegate, sql, cs);
+      sessionScope.putPreparedStatement(delegate, conn, sql, cs);
       return cs;
     }
   }
@@ -562,22 +868,22 @@ public class DefaultSqlExecutor implements SqlExecutor {
   private static PreparedStatement prepareStatement(SessionScope sessionScope, Connection conn, String sql)
       throws SQLException {
     SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) sessionScope.getSqlMapExecutor()).getDelegate();
-    if (sessionScope.hasPreparedStatementFor(sql)) {
+    if (sessionScope.hasPreparedStatementFor(conn, sql)) {
       return sessionScope.getPreparedStatement((sql));
     } else {
       PreparedStatement ps = conn.prepareStatement(sql);
-      sessionScope.putPreparedStatement(delegate, sql, ps);
+      sessionScope.putPreparedStatement(delegate, conn, sql, ps);
       return ps;
     }
   }
 
   private CallableStatement prepareCall(SessionScope sessionScope, Connection conn, String sql) throws SQLException {
     SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) sessionScope.getSqlMapExecutor()).getDelegate();
-    if (sessionScope.hasPreparedStatementFor(sql)) {
+    if (sessionScope.hasPreparedStatementFor(conn, sql)) {
       return (CallableStatement) sessionScope.getPreparedStatement((sql));
     } else {
       CallableStatement cs = conn.prepareCall(sql);
-      sessionScope.putPreparedStatement(delegate, sql, cs);
+      sessionScope.putPreparedStatement(delegate, conn, sql, cs);
       return cs;
     }
   }
@@ -607,6 +913,73 @@ public class DefaultSqlExecutor implements SqlExecutor {
     }
   }
 
+  /**
+   * Returns the statement of the request if it is an insert that reads the keys generated by the database
+   */
+  private static InsertStatement getGeneratedKeysInsert(StatementScope statementScope, Connection conn)
+      throws SQLException {
+    MappedStatement statement = statementScope.getStatement();
+    if (statement instanceof InsertStatement && ((InsertStatement) statement).isUseGeneratedKeys()) {
+      if (!getDriverProfile(statementScope, conn).isGetGeneratedKeysSupported()) {
+        throw new SQLException("The driver does not support getGeneratedKeys(), which the insert "
+            + statement.getId() + " needs for useGeneratedKeys.  Use a <selectKey> instead.");
+      }
+      return (InsertStatement) statement;
+    }
+    return null;
+  }
+
+  private static DriverProfile getDriverProfile(StatementScope statementScope, Connection conn) {
+    SqlMapClientImpl client = (SqlMapClientImpl) statementScope.getSession().getSqlMapClient();
+    return client.getDelegate().getDriverProfile(statementScope, conn);
+  }
+
+  /**
+   * Sets the keys generated by the last execution of a statement on the parameter objects of its rows, in order
+   */
+  private static void setGeneratedKeys(InsertStatement insert, Statement statement, List parameterObjects)
+      throws SQLException {
+    ResultSet rs = statement.getGeneratedKeys();
+    if (rs == null) {
+      return;
+    }
+    try {
+      for (int i = 0, n = parameterObjects.size(); i < n && rs.next(); i++) {
+        insert.setGeneratedKey(parameterObjects.get(i), rs);
+      }
+    } finally {
+      closeResultSet(rs);
+    }
+  }
+
+  private static void setMaxRows(StatementScope statementScope, PreparedStatement ps, int maxRows) throws SQLException {
+    if (maxRows > 0) {
+      ps.setMaxRows(maxRows);
+    } else if (statementScope.getSession().hasPreparedStatement(ps)) {
+      // statements are cached per session, so a row limit left by an earlier page must be cleared
+      ps.setMaxRows(0);
+    }
+  }
+
+  private static void setStatementTimeout(StatementScope statementScope, Statement statement) throws SQLException {
+    SessionScope sessionScope = statementScope.getSession();
+    if (sessionScope.isDeadlineUsed()) {
+      // statements are cached per session, so a timeout left by an earlier deadline must be replaced
+      statement.setQueryTimeout(DeadlineTimer.getQueryTimeout(statementScope.getStatement().getTimeout(), sessionScope
+          .getDeadline()));
+    } else {
+      setStatementTimeout(statementScope.getStatement(), statement);
+    }
+  }
+
+  private static Future scheduleCancel(SessionScope sessionScope, Statement statement, long deadline) {
+    if (deadline == DeadlineTimer.NO_DEADLINE) {
+      return null;
+    }
+    SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) sessionScope.getSqlMapClient()).getDelegate();
+    return delegate.getDeadlineTimer().cancelAt(statement, deadline);
+  }
+
   private static void setStatementTimeout(MappedStatement mappedStatement, Statement statement) throws SQLException {
     if (mappedStatement.getTimeout() != null) {
       statement.setQueryTimeout(mappedStatement.getTimeout().intValue());
@@ -619,15 +992,45 @@ public class DefaultSqlExecutor implements SqlExecutor {
 
   private static class Batch {
     private String currentSql;
+    private Connection currentConnection;
+    // a PreparedStatement, a MultiRowInsertBatch for inserts that are rewritten to multi-row statements, or a
+    // RowByRowBatch on drivers without batch updates
     private List statementList = new ArrayList();
     private List batchResultList = new ArrayList();
+    // the update counts of each execution of each statement, joined once the batch is executed
+    private List updateCountsList = new ArrayList();
+    // GeneratedKeyTargets of each statement, or null if the statement does not read generated keys
+    private List generatedKeyTargetsList = new ArrayList();
+    // indexes into statementList by SQL, for each connection the batch runs on (shards use connections of their own)
+    private Map statementsBySql;
+    // the session of the last row added, whose deadline applies when the pending rows are executed
+    private SessionScope sessionScope;
     private int size;
+    private int maxRows;
+    private long maxBytes;
+    private int pendingRows;
+    private long pendingBytes;
 
     /**
      * Create a new batch
+     *
+     * @param groupBySql
+     *          - if true, rows for a SQL statement seen earlier in the batch are added to its existing statement even
+     *          when other statements were added in between. Sub batches are executed in the order their SQL was
+     *          first seen.
+     * @param maxRows
+     *          - the number of rows after which the pending rows are sent to the database, or 0 for no limit
+     * @param maxBytes
+     *          - the estimated size of the bound parameters after which the pending rows are sent to the database, or
+     *          0 for no limit
      */
-    public Batch() {
+    public Batch(boolean groupBySql, int maxRows, long maxBytes) {
       this.size = 0;
+      if (groupBySql) {
+        this.statementsBySql = new IdentityHashMap();
+      }
+      this.maxRows = maxRows;
+      this.maxBytes = maxBytes;
     }
 
     /**
@@ -640,7 +1043,8 @@ public class DefaultSqlExecutor implements SqlExecutor {
     }
 
     /**
-     * Add a prepared statement to the batch
+     * Add a prepared statement to the batch. If the batch has reached its row or size limit, the pending rows are
+     * executed, but the batch stays open and their update counts are reported when the batch is executed.
      *
      * @param statementScope
      *          - the request scope
@@ -651,24 +1055,91 @@ public class DefaultSqlExecutor implements SqlExecutor {
      * @param parameters
      *          - the parameters for the SQL
      * @throws SQLException
-     *           - if the prepare for the SQL fails
+     *           - if the prepare for the SQL fails, or if executing the pending rows fails
      */
     public void addBatch(StatementScope statementScope, Connection conn, String sql, Object[] parameters)
         throws SQLException {
-      PreparedStatement ps = null;
-      if (currentSql != null && currentSql.equals(sql)) {
-        int last = statementList.size() - 1;
-        ps = (PreparedStatement) statementList.get(last);
-      } else {
-        ps = prepareStatement(statementScope.getSession(), conn, sql);
-        setStatementTimeout(statementScope.getStatement(), ps);
+      sessionScope = statementScope.getSession();
+      InsertStatement keyedInsert = getGeneratedKeysInsert(statementScope, conn);
+      Object statement = null;
+      int index = -1;
+      Map connectionStatements = null;
+      if (statementsBySql != null) {
+        connectionStatements = (Map) statementsBySql.get(conn);
+        if (connectionStatements == null) {
+          connectionStatements = new HashMap();
+          statementsBySql.put(conn, connectionStatements);
+        }
+        Integer knownIndex = (Integer) connectionStatements.get(sql);
+        if (knownIndex != null) {
+          index = knownIndex.intValue();
+          statement = statementList.get(index);
+        }
+      } else if (currentSql != null && currentSql.equals(sql) && currentConnection == conn) {
+        index = statementList.size() - 1;
+        statement = statementList.get(index);
+      }
+      if (statement == null) {
+        index = statementList.size();
+        DriverProfile profile = getDriverProfile(statementScope, conn);
+        boolean batchUpdatesSupported = profile.isBatchUpdatesSupported();
+        MultiRowInsertSql multiRowSql = null;
+        if (batchUpdatesSupported) {
+          multiRowSql = getMultiRowInsertSql(statementScope, sql, parameters);
+        }
+        if (multiRowSql != null) {
+          int rows = ((InsertStatement) statementScope.getStatement()).getMultiRowBatchSize();
+          statement = new MultiRowInsertBatch(conn, multiRowSql, getRowsPerStatement(profile, multiRowSql, rows));
+        } else {
+          PreparedStatement ps;
+          if (keyedInsert != null) {
+            ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+          } else {
+            ps = prepareStatement(statementScope.getSession(), conn, sql);
+          }
+          setStatementTimeout(statementScope, ps);
+          if (batchUpdatesSupported) {
+            statement = ps;
+          } else {
+            statement = new RowByRowBatch(statementScope.getSession(), ps, keyedInsert);
+          }
+        }
         currentSql = sql;
-        statementList.add(ps);
+        currentConnection = conn;
+        statementList.add(statement);
         batchResultList.add(new BatchResult(statementScope.getStatement().getId(), sql));
+        updateCountsList.add(new ArrayList());
+        generatedKeyTargetsList.add(keyedInsert == null ? null : new GeneratedKeyTargets(keyedInsert));
+        if (connectionStatements != null) {
+          connectionStatements.put(sql, Integer.valueOf(index));
+        }
+      }
+      if (statement instanceof MultiRowInsertBatch) {
+        ((MultiRowInsertBatch) statement).addRow(statementScope, parameters);
+      } else if (statement instanceof RowByRowBatch) {
+        ((RowByRowBatch) statement).addRow(statementScope, parameters);
+      } else {
+        PreparedStatement ps = (PreparedStatement) statement;
+        statementScope.getParameterMap().setParameters(statementScope, ps, parameters);
+        ps.addBatch();
+        GeneratedKeyTargets targets = (GeneratedKeyTargets) generatedKeyTargetsList.get(index);
+        if (targets != null) {
+          targets.parameterObjects.add(statementScope.getParameterObject());
+        }
       }
-      statementScope.getParameterMap().setParameters(statementScope, ps, parameters);
-      ps.addBatch();
       size++;
+
+      pendingRows++;
+      if (maxBytes > 0) {
+        pendingBytes += estimateSize(parameters);
+      }
+      if ((maxRows > 0 && pendingRows >= maxRows) || (maxBytes > 0 && pendingBytes >= maxBytes)) {
+        try {
+          flush();
+        } catch (BatchException e) {
+          throw e.getBatchUpdateException();
+        }
+      }
     }
 
     /**
@@ -682,10 +1153,15 @@ public class DefaultSqlExecutor implements SqlExecutor {
      *           - if the batch fails
      */
     public int executeBatch() throws SQLException {
+      try {
+        flush();
+      } catch (BatchException e) {
+        throw e.getBatchUpdateException();
+      }
+      joinUpdateCounts();
       int totalRowCount = 0;
-      for (int i = 0, n = statementList.size(); i < n; i++) {
-        PreparedStatement ps = (PreparedStatement) statementList.get(i);
-        int[] rowCounts = ps.executeBatch();
+      for (int i = 0, n = batchResultList.size(); i < n; i++) {
+        int[] rowCounts = ((BatchResult) batchResultList.get(i)).getUpdateCounts();
         for (int j = 0; j < rowCounts.length; j++) {
           if (rowCounts[j] == Statement.SUCCESS_NO_INFO) {
             // do nothing
@@ -711,13 +1187,43 @@ public class DefaultSqlExecutor implements SqlExecutor {
      *           if the driver throws BatchUpdateException
      */
     public List executeBatchDetailed() throws SQLException, BatchException {
-      List answer = new ArrayList();
+      flush();
+      joinUpdateCounts();
+      return new ArrayList(batchResultList);
+    }
+
+    /**
+     * Executes the rows pending in every statement of the batch, keeping their update counts with the counts of earlier
+     * executions.
+     */
+    private void flush() throws SQLException, BatchException {
+      long deadline = sessionScope == null ? DeadlineTimer.NO_DEADLINE : sessionScope.getDeadline();
+      if (pendingRows > 0) {
+        DeadlineTimer.check(deadline);
+      }
       for (int i = 0, n = statementList.size(); i < n; i++) {
         BatchResult br = (BatchResult) batchResultList.get(i);
-        PreparedStatement ps = (PreparedStatement) statementList.get(i);
+        List updateCounts = (List) updateCountsList.get(i);
+        Object statement = statementList.get(i);
+        Future cancel = null;
         try {
-          br.setUpdateCounts(ps.executeBatch());
+          if (statement instanceof MultiRowInsertBatch) {
+            updateCounts.add(((MultiRowInsertBatch) statement).executeBatch(sessionScope, deadline));
+          } else if (statement instanceof RowByRowBatch) {
+            updateCounts.add(((RowByRowBatch) statement).executeBatch());
+          } else {
+            cancel = scheduleCancel(sessionScope, (PreparedStatement) statement, deadline);
+            updateCounts.add(((PreparedStatement) statement).executeBatch());
+            GeneratedKeyTargets targets = (GeneratedKeyTargets) generatedKeyTargetsList.get(i);
+            if (targets != null) {
+              setGeneratedKeys(targets.insert, (PreparedStatement) statement, targets.parameterObjects);
+              targets.parameterObjects.clear();
+            }
+          }
         } catch (BatchUpdateException e) {
+          if (DeadlineTimer.isExpired(deadline)) {
+            throw DeadlineTimer.translate(e, deadline);
+          }
           StringBuffer message = new StringBuffer();
           message.append("Sub batch number ");
           message.append(i + 1);
@@ -727,11 +1233,105 @@ public class DefaultSqlExecutor implements SqlExecutor {
             message.append(i);
             message.append(" prior sub batch(s) completed successfully, but will be rolled back.");
           }
+          joinUpdateCounts();
+          List answer = new ArrayList();
+          for (int j = 0; j < n; j++) {
+            BatchResult executed = (BatchResult) batchResultList.get(j);
+            if (j != i && executed.getUpdateCounts() != null) {
+              answer.add(executed);
+            }
+          }
           throw new BatchException(message.toString(), e, answer, br.getStatementId(), br.getSql());
+        } catch (SQLException e) {
+          throw DeadlineTimer.translate(e, deadline);
+        } finally {
+          if (cancel != null) {
+            cancel.cancel(false);
+          }
+        }
+      }
+      pendingRows = 0;
+      pendingBytes = 0;
+    }
+
+    /**
+     * Returns the multi-row form of an insert whose statement asks for it, if its SQL can be rewritten safely
+     */
+    private static MultiRowInsertSql getMultiRowInsertSql(StatementScope statementScope, String sql,
+        Object[] parameters) {
+      MappedStatement statement = statementScope.getStatement();
+      if (statement instanceof InsertStatement && ((InsertStatement) statement).getMultiRowBatchSize() > 1
+          && !((InsertStatement) statement).isUseGeneratedKeys() && statement.getSql() instanceof StaticSql && parameters != null
+          && statementScope.getParameterMap().getParameterCount() == parameters.length) {
+        return MultiRowInsertSql.parse(sql, parameters.length);
+      }
+      return null;
+    }
+
+    /**
+     * The number of rows to send in one multi-row insert: the multiRowBatchSize of the statement, reduced so that the
+     * statement does not hold more bind parameters than the database accepts
+     */
+    private static int getRowsPerStatement(DriverProfile profile, MultiRowInsertSql multiRowSql, int multiRowBatchSize) {
+      int maxParameters = profile.getMaxParameters();
+      int parameterCount = multiRowSql.getParameterCount();
+      if (maxParameters == DriverProfile.NO_MAX_PARAMETERS || parameterCount == 0) {
+        return multiRowBatchSize;
+      }
+      return Math.max(1, Math.min(multiRowBatchSize, maxParameters / parameterCount));
+    }
+
+    /**
+     * Sets the update counts of all the executions of each statement on its BatchResult, in one array
+     */
+    private void joinUpdateCounts() {
+      for (int i = 0, n = batchResultList.size(); i < n; i++) {
+        List chunks = (List) updateCountsList.get(i);
+        if (chunks.isEmpty()) {
+          continue;
+        }
+        int[] all;
+        if (chunks.size() == 1) {
+          all = (int[]) chunks.get(0);
+        } else {
+          int length = 0;
+          for (int j = 0, m = chunks.size(); j < m; j++) {
+            length += ((int[]) chunks.get(j)).length;
+          }
+          all = new int[length];
+          int offset = 0;
+          for (int j = 0, m = chunks.size(); j < m; j++) {
+            int[] chunk = (int[]) chunks.get(j);
+            System.arraycopy(chunk, 0, all, offset, chunk.length);
+            offset += chunk.length;
+          }
+          chunks.clear();
+          chunks.add(all);
+        }
+        ((BatchResult) batchResultList.get(i)).setUpdateCounts(all);
+      }
+    }
+
+    /**
+     * Rough estimate of the memory a driver needs to hold the bound parameters of one row
+     */
+    private static long estimateSize(Object[] parameters) {
+      long bytes = 0;
+      for (int i = 0; parameters != null && i < parameters.length; i++) {
+        Object value = parameters[i];
+        if (value == null) {
+          bytes += 1;
+        } else if (value instanceof String) {
+          bytes += 2 * ((String) value).length();
+        } else if (value instanceof byte[]) {
+          bytes += ((byte[]) value).length;
+        } else if (value instanceof char[]) {
+          bytes += 2 * ((char[]) value).length;
+        } else {
+          bytes += 8;
         }
-        answer.add(br);
       }
-      return answer;
+      return bytes;
     }
 
     /**
@@ -741,13 +1341,195 @@ public class DefaultSqlExecutor implements SqlExecutor {
      */
     public void cleanupBatch(SessionScope sessionScope) {
       for (int i = 0, n = statementList.size(); i < n; i++) {
-        PreparedStatement ps = (PreparedStatement) statementList.get(i);
-        closeStatement(sessionScope, ps);
+        Object statement = statementList.get(i);
+        if (statement instanceof MultiRowInsertBatch) {
+          ((MultiRowInsertBatch) statement).close();
+        } else if (statement instanceof RowByRowBatch) {
+          ((RowByRowBatch) statement).close();
+        } else {
+          closeStatement(sessionScope, (PreparedStatement) statement);
+        }
       }
       currentSql = null;
+      currentConnection = null;
       statementList.clear();
       batchResultList.clear();
+      updateCountsList.clear();
+      generatedKeyTargetsList.clear();
+      if (statementsBySql != null) {
+        statementsBySql.clear();
+      }
       size = 0;
+      pendingRows = 0;
+      pendingBytes = 0;
+    }
+  }
+
+  /**
+   * The parameter objects of the rows of a batched insert that have not received their generated keys yet
+   */
+  private static class GeneratedKeyTargets {
+    private InsertStatement insert;
+    private List parameterObjects = new ArrayList();
+
+    public GeneratedKeyTargets(InsertStatement insert) {
+      this.insert = insert;
+    }
+  }
+
+  /**
+   * Rows of a batched insert that are sent as multi-row INSERT statements. Rows are bound when a statement is full, so
+   * the parameters of the last, partial statement are held until the batch is executed.
+   */
+  private static class MultiRowInsertBatch {
+    private Connection conn;
+    private MultiRowInsertSql multiRowSql;
+    private int rowsPerStatement;
+    private PreparedStatement ps;
+    private StatementScope statementScope;
+    private List rows = new ArrayList();
+
+    public MultiRowInsertBatch(Connection conn, MultiRowInsertSql multiRowSql, int rowsPerStatement) {
+      this.conn = conn;
+      this.multiRowSql = multiRowSql;
+      this.rowsPerStatement = rowsPerStatement;
+    }
+
+    public void addRow(StatementScope statementScope, Object[] parameters) throws SQLException {
+      this.statementScope = statementScope;
+      rows.add(parameters);
+      if (rows.size() >= rowsPerStatement) {
+        if (ps == null) {
+          ps = conn.prepareStatement(multiRowSql.getSql(rowsPerStatement));
+          setStatementTimeout(statementScope.getStatement(), ps);
+        }
+        setRows(ps);
+        ps.addBatch();
+      }
+    }
+
+    /**
+     * Executes the full statements as a JDBC batch, then the remaining rows as one smaller statement
+     *
+     * @param sessionScope
+     *          - the session, for the cancellation of the statements at the deadline
+     * @param deadline
+     *          - the deadline of the call that executes the batch
+     * @return - the update count of each statement executed
+     */
+    public int[] executeBatch(SessionScope sessionScope, long deadline) throws SQLException {
+      int[] updateCounts = new int[0];
+      if (ps != null) {
+        Future cancel = scheduleCancel(sessionScope, ps, deadline);
+        try {
+          updateCounts = ps.executeBatch();
+        } finally {
+          if (cancel != null) {
+            cancel.cancel(false);
+          }
+        }
+      }
+      if (!rows.isEmpty()) {
+        PreparedStatement remainder = conn.prepareStatement(multiRowSql.getSql(rows.size()));
+        Future cancel = null;
+        try {
+          setStatementTimeout(statementScope.getStatement(), remainder);
+          cancel = scheduleCancel(sessionScope, remainder, deadline);
+          setRows(remainder);
+          int[] all = new int[updateCounts.length + 1];
+          System.arraycopy(updateCounts, 0, all, 0, updateCounts.length);
+          all[updateCounts.length] = remainder.executeUpdate();
+          updateCounts = all;
+        } finally {
+          if (cancel != null) {
+            cancel.cancel(false);
+          }
+          remainder.close();
+        }
+      }
+      return updateCounts;
+    }
+
+    public void close() {
+      rows.clear();
+      if (ps != null) {
+        try {
+          ps.close();
+        } catch (SQLException e) {
+          // ignore
+        }
+        ps = null;
+      }
+    }
+
+    private void setRows(PreparedStatement statement) throws SQLException {
+      ParameterMap parameterMap = statementScope.getParameterMap();
+      for (int i = 0, n = rows.size(); i < n; i++) {
+        parameterMap.setParameters(statementScope, statement, (Object[]) rows.get(i), i
+            * multiRowSql.getParameterCount());
+      }
+      rows.clear();
+    }
+  }
+
+  /**
+   * Rows of a batch for a driver that does not support batch updates. Each row is executed as soon as it is added, and
+   * its update count is held until the batch is executed.
+   */
+  private static class RowByRowBatch {
+    private SessionScope sessionScope;
+    private PreparedStatement ps;
+    private InsertStatement keyedInsert;
+    private int[] updateCounts = new int[16];
+    private int rowCount;
+
+    public RowByRowBatch(SessionScope sessionScope, PreparedStatement ps, InsertStatement keyedInsert) {
+      this.sessionScope = sessionScope;
+      this.ps = ps;
+      this.keyedInsert = keyedInsert;
+    }
+
+    public void addRow(StatementScope statementScope, Object[] parameters) throws SQLException {
+      statementScope.getParameterMap().setParameters(statementScope, ps, parameters);
+      long deadline = sessionScope.getDeadline();
+      DeadlineTimer.check(deadline);
+      Future cancel = scheduleCancel(sessionScope, ps, deadline);
+      int updateCount;
+      try {
+        updateCount = ps.executeUpdate();
+      } catch (SQLException e) {
+        throw DeadlineTimer.translate(e, deadline);
+      } finally {
+        if (cancel != null) {
+          cancel.cancel(false);
+        }
+      }
+      if (keyedInsert != null) {
+        setGeneratedKeys(keyedInsert, ps, Collections.singletonList(statementScope.getParameterObject()));
+      }
+      if (rowCount == updateCounts.length) {
+        int[] grown = new int[rowCount * 2];
+        System.arraycopy(updateCounts, 0, grown, 0, rowCount);
+        updateCounts = grown;
+      }
+      updateCounts[rowCount++] = updateCount;
+    }
+
+    /**
+     * Returns the update counts of the rows added since the last call
+     *
+     * @return - the update count of each row
+     */
+    public int[] executeBatch() {
+      int[] executed = new int[rowCount];
+      System.arraycopy(updateCounts, 0, executed, 0, rowCount);
+      rowCount = 0;
+      return executed;
+    }
+
+    public void close() {
+      rowCount = 0;
+      closeStatement(sessionScope, ps);
     }
   }
 
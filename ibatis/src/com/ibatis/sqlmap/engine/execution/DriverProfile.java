@@ -0,0 +1,240 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.execution;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Types;
+
+import com.ibatis.common.logging.Log;
+import com.ibatis.common.logging.LogFactory;
+import com.ibatis.sqlmap.engine.dialect.Dialect;
+import com.ibatis.sqlmap.engine.dialect.LimitOffsetDialect;
+import com.ibatis.sqlmap.engine.dialect.OffsetFetchDialect;
+import com.ibatis.sqlmap.engine.dialect.OracleDialect;
+import com.ibatis.sqlmap.engine.dialect.SqlServerDialect;
+
+/**
+ * What a JDBC driver can do, read once from the DatabaseMetaData of the first connection and then shared by every
+ * statement run against the same DataSource. Some drivers answer DatabaseMetaData calls with a round trip to the
+ * server, which is too expensive to repeat on every query.
+ */
+public class DriverProfile {
+
+  private static final Log log = LogFactory.getLog(DriverProfile.class);
+
+  /**
+   * No limit on the number of values in an IN list
+   */
+  public static final int NO_MAX_IN_LIST_SIZE = 0;
+
+  /**
+   * No known limit on the number of bind parameters of a statement
+   */
+  public static final int NO_MAX_PARAMETERS = 0;
+
+  private String databaseProductName = "";
+  private String driverName = "";
+  private boolean multipleResultSetsSupported;
+  private boolean multipleStatementsSupported;
+  private String url = "";
+  private boolean batchUpdatesSupported = true;
+  private boolean getGeneratedKeysSupported;
+  private boolean useSetObjectForNullValue;
+  private int sqlTypeToUseForNullValue = Types.NULL;
+  private int maxInListSize = NO_MAX_IN_LIST_SIZE;
+  private int maxParameters = NO_MAX_PARAMETERS;
+  private Dialect dialect;
+
+  /**
+   * Reads the capabilities of the driver behind a connection. Metadata the driver cannot provide is replaced by safe
+   * defaults, so this never fails.
+   *
+   * @param conn
+   *          - an open connection
+   * @return - the profile of the driver
+   */
+  public static DriverProfile probe(Connection conn) {
+    DriverProfile profile = new DriverProfile();
+    DatabaseMetaData dbmd;
+    try {
+      dbmd = conn.getMetaData();
+      profile.databaseProductName = dbmd.getDatabaseProductName();
+      profile.driverName = dbmd.getDriverName();
+    } catch (Throwable e) {
+      log.debug("Could not check database or driver name: " + e.getMessage());
+      return profile;
+    }
+    try {
+      profile.multipleResultSetsSupported = dbmd.supportsMultipleResultSets();
+    } catch (Throwable e) {
+      log.debug("Could not check support for multiple result sets: " + e.getMessage());
+    }
+    try {
+      profile.url = dbmd.getURL();
+    } catch (Throwable e) {
+      log.debug("Could not check connection URL: " + e.getMessage());
+    }
+    try {
+      profile.batchUpdatesSupported = dbmd.supportsBatchUpdates();
+    } catch (Throwable e) {
+      log.debug("Could not check support for batch updates: " + e.getMessage());
+    }
+    try {
+      profile.getGeneratedKeysSupported = dbmd.supportsGetGeneratedKeys();
+    } catch (Throwable e) {
+      // JDBC 2 drivers throw AbstractMethodError here
+      log.debug("Could not check support for generated keys: " + e.getMessage());
+    }
+    profile.applyProductDefaults();
+    if (log.isDebugEnabled()) {
+      log.debug("Driver profile for " + profile.databaseProductName + " (" + profile.driverName + "): " + profile);
+    }
+    return profile;
+  }
+
+  private void applyProductDefaults() {
+    String product = databaseProductName == null ? "" : databaseProductName;
+    String driver = driverName == null ? "" : driverName;
+
+    // Cloned from Spring StatementCreatorUtils.java (IBATIS-536)
+    if (product.startsWith("Informix") || driver.startsWith("Microsoft SQL Server")) {
+      useSetObjectForNullValue = true;
+    } else if (product.startsWith("DB2") || driver.startsWith("jConnect") || driver.startsWith("SQLServer")
+        || driver.startsWith("Apache Derby Embedded")) {
+      sqlTypeToUseForNullValue = Types.VARCHAR;
+    }
+
+    if (product.startsWith("Oracle")) {
+      maxInListSize = 1000;
+      maxParameters = 65535;
+    } else if (product.startsWith("Microsoft SQL Server")) {
+      // 2100 bind parameters per statement, leave some for the rest of the query
+      maxInListSize = 2000;
+      maxParameters = 2100;
+    } else if (product.startsWith("PostgreSQL")) {
+      maxParameters = 32767;
+    } else if (product.startsWith("MySQL")) {
+      maxParameters = 65535;
+    } else if (product.startsWith("SQLite")) {
+      maxParameters = 999;
+    }
+
+    if (multipleResultSetsSupported) {
+      // MySQL only accepts several statements per execution when the connection allows it
+      multipleStatementsSupported = product.startsWith("Microsoft SQL Server") || product.startsWith("PostgreSQL")
+          || product.startsWith("Sybase") || (product.startsWith("MySQL") && url != null
+          && url.indexOf("allowMultiQueries=true") > -1);
+    }
+
+    if (product.startsWith("MySQL") || product.startsWith("PostgreSQL") || product.startsWith("HSQL")
+        || product.startsWith("H2") || product.startsWith("SQLite")) {
+      dialect = new LimitOffsetDialect();
+    } else if (product.startsWith("Apache Derby") || product.startsWith("DB2")) {
+      dialect = new OffsetFetchDialect();
+    } else if (product.startsWith("Microsoft SQL Server")) {
+      dialect = new SqlServerDialect();
+    } else if (product.startsWith("Oracle")) {
+      dialect = new OracleDialect();
+    }
+  }
+
+  public String getDatabaseProductName() {
+    return databaseProductName;
+  }
+
+  public String getDriverName() {
+    return driverName;
+  }
+
+  public boolean isMultipleResultSetsSupported() {
+    return multipleResultSetsSupported;
+  }
+
+  /**
+   * Tells if the driver runs several statements separated by semicolons in one execution and returns their result
+   * sets in turn.
+   *
+   * @return true if queries can be pipelined
+   */
+  public boolean isMultipleStatementsSupported() {
+    return multipleStatementsSupported;
+  }
+
+  public boolean isBatchUpdatesSupported() {
+    return batchUpdatesSupported;
+  }
+
+  public boolean isGetGeneratedKeysSupported() {
+    return getGeneratedKeysSupported;
+  }
+
+  /**
+   * Tells if a null parameter of unknown JDBC type should be bound with setObject(i, null) rather than setNull().
+   *
+   * @return true if setObject() should be used
+   */
+  public boolean isUseSetObjectForNullValue() {
+    return useSetObjectForNullValue;
+  }
+
+  /**
+   * The type to pass to setNull() for a null parameter of unknown JDBC type.
+   *
+   * @return - a java.sql.Types constant
+   */
+  public int getSqlTypeToUseForNullValue() {
+    return sqlTypeToUseForNullValue;
+  }
+
+  /**
+   * The largest number of values the database accepts in one IN list.
+   *
+   * @return - the size, or NO_MAX_IN_LIST_SIZE
+   */
+  public int getMaxInListSize() {
+    return maxInListSize;
+  }
+
+  /**
+   * The largest number of bind parameters the database accepts in one statement.
+   *
+   * @return - the number of parameters, or NO_MAX_PARAMETERS
+   */
+  public int getMaxParameters() {
+    return maxParameters;
+  }
+
+  /**
+   * The row limiting dialect of the database, used when the dialect setting is "auto".
+   *
+   * @return - the dialect, or null if the database is not known
+   */
+  public Dialect getDialect() {
+    return dialect;
+  }
+
+  @Override
+  public String toString() {
+    return "multipleResultSets=" + multipleResultSetsSupported + ", multipleStatements="
+        + multipleStatementsSupported + ", batchUpdates=" + batchUpdatesSupported
+        + ", getGeneratedKeys=" + getGeneratedKeysSupported + ", useSetObjectForNullValue=" + useSetObjectForNullValue
+        + ", sqlTypeToUseForNullValue=" + sqlTypeToUseForNullValue + ", maxInListSize=" + maxInListSize
+        + ", maxParameters=" + maxParameters
+        + ", dialect=" + (dialect == null ? null : dialect.getClass().getName());
+  }
+
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.execution;
+
+/**
+ * An INSERT ... VALUES (?, ?, ...) statement split around its row of values, so that the row can be repeated to
+ * insert several rows with one statement:
+ *
+ * <pre>
+ * insert into ACCOUNT (ACC_ID, ACC_FIRST_NAME) values (?, ?), (?, ?), (?, ?)
+ * </pre>
+ *
+ * Only SQL that can be rewritten safely is accepted: a single INSERT with one VALUES row that holds every parameter,
+ * nothing after that row, no sub query and no comments.
+ */
+public class MultiRowInsertSql {
+
+  private String prefix;
+  private String row;
+  private String suffix;
+  private int parameterCount;
+
+  private MultiRowInsertSql(String prefix, String row, String suffix, int parameterCount) {
+    this.prefix = prefix;
+    this.row = row;
+    this.suffix = suffix;
+    this.parameterCount = parameterCount;
+  }
+
+  /**
+   * Splits an INSERT statement around its row of values.
+   *
+   * @param sql
+   *          - the SQL of the insert
+   * @param parameterCount
+   *          - the number of parameters of one row
+   * @return - the split statement, or null if the SQL cannot be rewritten safely
+   */
+  public static MultiRowInsertSql parse(String sql, int parameterCount) {
+    if (sql == null || parameterCount < 1) {
+      return null;
+    }
+    int n = sql.length();
+    boolean firstWord = true;
+    int valuesEnd = -1;
+    int placeholders = 0;
+    int firstPlaceholder = -1;
+    int i = 0;
+    while (i < n) {
+      char c = sql.charAt(i);
+      if (c == '\'' || c == '"' || c == '`') {
+        i = skipQuoted(sql, i);
+        if (i < 0) {
+          return null;
+        }
+      } else if ((c == '-' && i + 1 < n && sql.charAt(i + 1) == '-')
+          || (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') || c == ';') {
+        return null;
+      } else if (c == '?') {
+        if (firstPlaceholder < 0) {
+          firstPlaceholder = i;
+        }
+        placeholders++;
+        i++;
+      } else if (Character.isLetter(c) || c == '_') {
+        int start = i;
+        while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_' || sql.charAt(i) == '$')) {
+          i++;
+        }
+        String word = sql.substring(start, i);
+        if (firstWord && !"insert".equalsIgnoreCase(word)) {
+          return null;
+        }
+        firstWord = false;
+        if ("values".equalsIgnoreCase(word)) {
+          if (valuesEnd >= 0) {
+            return null;
+          }
+          valuesEnd = i;
+        } else if ("select".equalsIgnoreCase(word)) {
+          return null;
+        }
+      } else {
+        i++;
+      }
+    }
+    if (valuesEnd < 0 || placeholders != parameterCount) {
+      return null;
+    }
+
+    int rowStart = valuesEnd;
+    while (rowStart < n && Character.isWhitespace(sql.charAt(rowStart))) {
+      rowStart++;
+    }
+    if (rowStart >= n || sql.charAt(rowStart) != '(' || firstPlaceholder < rowStart) {
+      return null;
+    }
+    int rowEnd = findClosingParenthesis(sql, rowStart);
+    if (rowEnd < 0 || sql.substring(rowEnd + 1).trim().length() > 0) {
+      return null;
+    }
+    return new MultiRowInsertSql(sql.substring(0, rowStart), sql.substring(rowStart, rowEnd + 1),
+        sql.substring(rowEnd + 1), parameterCount);
+  }
+
+  /**
+   * Builds the SQL to insert several rows at once.
+   *
+   * @param rows
+   *          - the number of rows
+   * @return - the SQL
+   */
+  public String getSql(int rows) {
+    StringBuffer buffer = new StringBuffer(prefix.length() + rows * (row.length() + 2) + suffix.length());
+    buffer.append(prefix);
+    for (int i = 0; i < rows; i++) {
+      if (i > 0) {
+        buffer.append(", ");
+      }
+      buffer.append(row);
+    }
+    buffer.append(suffix);
+    return buffer.toString();
+  }
+
+  /**
+   * The number of parameters of one row.
+   *
+   * @return - the parameter count
+   */
+  public int getParameterCount() {
+    return parameterCount;
+  }
+
+  private static int skipQuoted(String sql, int start) {
+    char quote = sql.charAt(start);
+    int i = start + 1;
+    while (i < sql.length()) {
+      if (sql.charAt(i) == quote) {
+        if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+          i += 2;
+        } else {
+          return i + 1;
+        }
+      } else {
+        i++;
+      }
+    }
+    return -1;
+  }
+
+  private static int findClosingParenthesis(String sql, int open) {
+    int depth = 0;
+    int i = open;
+    while (i < sql.length()) {
+      char c = sql.charAt(i);
+      if (c == '\'' || c == '"' || c == '`') {
+        i = skipQuoted(sql, i);
+        if (i < 0) {
+          return -1;
+        }
+        continue;
+      }
+      if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+        if (depth == 0) {
+          return i;
+        }
+      }
+      i++;
+    }
+    return -1;
+  }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.execution;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Future;
+
+import com.ibatis.sqlmap.client.Cursor;
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.client.event.RowHandler;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.mapping.result.ResultObjectFactoryUtil;
+import com.ibatis.sqlmap.engine.mapping.statement.RowHandlerCallback;
+import com.ibatis.sqlmap.engine.scope.ErrorContext;
+import com.ibatis.sqlmap.engine.scope.SessionScope;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+
+/**
+ * Cursor over an open ResultSet. Rows are mapped one at a time, when they are asked for.
+ */
+public class ResultSetCursor implements Cursor {
+
+  private StatementScope statementScope;
+  private Statement statement;
+  private ResultSet resultSet;
+  private RowHandlerCallback callback;
+  private long deadline;
+  private Future cancel;
+
+  private Object nextObject;
+  private boolean nextFetched;
+  private boolean closed;
+  private int rowCount;
+
+  /**
+   * Constructor for a cursor
+   *
+   * @param statementScope
+   *          - the scope of the statement that opened the cursor
+   * @param statement
+   *          - the statement, which the cursor now owns
+   * @param resultSet
+   *          - the results to iterate over (may be null)
+   * @param deadline
+   *          - the deadline of the call that opened the cursor, checked before each row is read
+   * @param cancel
+   *          - the scheduled cancellation of the statement at the deadline, cancelled when the cursor is closed (may
+   *          be null)
+   */
+  public ResultSetCursor(StatementScope statementScope, Statement statement, ResultSet resultSet, long deadline,
+      Future cancel) {
+    this.statementScope = statementScope;
+    this.statement = statement;
+    this.resultSet = resultSet;
+    this.deadline = deadline;
+    this.cancel = cancel;
+    this.callback = new RowHandlerCallback(statementScope.getResultMap(), null, new RowHandler() {
+      public void handleRow(Object valueObject) {
+        nextObject = valueObject;
+        nextFetched = true;
+      }
+    });
+  }
+
+  public boolean hasNext() {
+    if (!nextFetched && !closed) {
+      fetchNext();
+    }
+    return nextFetched;
+  }
+
+  public Object next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException("There are no more results in the cursor.");
+    }
+    Object object = nextObject;
+    nextObject = null;
+    nextFetched = false;
+    rowCount++;
+    return object;
+  }
+
+  public void remove() {
+    throw new UnsupportedOperationException("Results cannot be removed from a cursor.");
+  }
+
+  public void close() throws SQLException {
+    if (!closed) {
+      closed = true;
+      nextObject = null;
+      nextFetched = false;
+      if (cancel != null) {
+        cancel.cancel(false);
+        cancel = null;
+      }
+      try {
+        if (resultSet != null) {
+          resultSet.close();
+        }
+      } finally {
+        resultSet = null;
+        try {
+          statement.close();
+        } finally {
+          statement = null;
+        }
+      }
+    }
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  private void fetchNext() {
+    SessionScope sessionScope = statementScope.getSession();
+    SqlMapClientImpl client = (SqlMapClientImpl) sessionScope.getSqlMapClient();
+    ErrorContext errorContext = statementScope.getErrorContext();
+    ResultObjectFactoryUtil.setupResultObjectFactory(client.getResultObjectFactory(), statementScope.getStatement()
+        .getId());
+    sessionScope.incrementRequestStackDepth();
+    try {
+      statementScope.setResultSet(resultSet);
+      // a row mapped to null or NO_VALUE is not handed to the row handler, so keep reading
+      while (!nextFetched && resultSet != null) {
+        DeadlineTimer.check(deadline);
+        if (!resultSet.next()) {
+          break;
+        }
+        callback.handleResultObject(statementScope, resultSet);
+      }
+    } catch (SQLException e) {
+      e = DeadlineTimer.translate(e, deadline);
+      errorContext.setCause(e);
+      closeQuietly();
+      throw new SqlMapException(errorContext.toString(), e);
+    } finally {
+      statementScope.setResultSet(null);
+      sessionScope.decrementRequestStackDepth();
+      ResultObjectFactoryUtil.cleanupResultObjectFactory();
+    }
+    if (!nextFetched) {
+      try {
+        close();
+      } catch (SQLException e) {
+        throw new SqlMapException("Error closing cursor.  Cause: " + e, e);
+      }
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch (SQLException e) {
+      // ignore
+    }
+  }
+
+}
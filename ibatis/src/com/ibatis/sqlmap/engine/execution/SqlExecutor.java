@@ -15,7 +15,9 @@
  */
 package com.ibatis.sqlmap.engine.execution;
 
+import com.ibatis.sqlmap.client.Cursor;
 import com.ibatis.sqlmap.engine.config.SqlMapConfiguration;
+import com.ibatis.sqlmap.engine.mapping.statement.PipelinedQuery;
 import com.ibatis.sqlmap.engine.mapping.statement.RowHandlerCallback;
 import com.ibatis.sqlmap.engine.scope.SessionScope;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
@@ -124,6 +126,40 @@ public interface SqlExecutor {
   public void executeQuery(StatementScope statementScope, Connection conn, String sql, Object[] parameters,
       int skipResults, int maxResults, RowHandlerCallback callback) throws SQLException;
 
+  /**
+   * Execute a query and return a cursor over its first result set. The statement is not taken from the session's
+   * statement cache; it belongs to the cursor and is closed when the cursor is closed.
+   *
+   * @param statementScope
+   *          - the request scope
+   * @param conn
+   *          - the database connection
+   * @param sql
+   *          - the SQL statement to execute
+   * @param parameters
+   *          - the parameters for the statement
+   * @param fetchSize
+   *          - the JDBC fetch size, or null to use the fetch size of the mapped statement
+   * @return - an open cursor
+   * @throws SQLException
+   *           - if the query fails
+   */
+  public Cursor executeQueryForCursor(StatementScope statementScope, Connection conn, String sql, Object[] parameters,
+      Integer fetchSize) throws SQLException;
+
+  /**
+   * Execute several queries as one JDBC statement and map each result set with the result map of its query. The
+   * driver must support multiple statements per execution.
+   *
+   * @param conn
+   *          - the database connection
+   * @param queries
+   *          - the queries, in the order of their result sets
+   * @throws SQLException
+   *           - if the queries fail
+   */
+  public void executeQueryPipeline(Connection conn, PipelinedQuery[] queries) throws SQLException;
+
   /**
    * Execute a stored procedure that updates data
    *
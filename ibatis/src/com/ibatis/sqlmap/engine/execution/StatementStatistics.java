@@ -0,0 +1,163 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.execution;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Row counts observed for one mapped statement, and the fetch size chosen from them.
+ * <p>
+ * The fetch size is large enough to read a typical result in one round trip, but never so large that one fetch
+ * buffers more than the memory budget, using a row width estimated from the ResultSetMetaData of the first execution.
+ * Updates are not synchronized; a statistic read while another thread records an execution may be slightly off,
+ * which only affects the next fetch size hint.
+ */
+public class StatementStatistics {
+
+  /**
+   * The smallest fetch size chosen
+   */
+  public static final int MIN_FETCH_SIZE = 10;
+  /**
+   * The largest fetch size chosen, whatever the budget
+   */
+  public static final int MAX_FETCH_SIZE = 10000;
+
+  private static final int DEFAULT_COLUMN_WIDTH = 64;
+  private static final int MAX_COLUMN_WIDTH = 4000;
+  private static final int COLUMN_OVERHEAD = 16;
+
+  private String statementId;
+  private long memoryBudget;
+
+  private AtomicLong executions = new AtomicLong();
+  private AtomicLong totalRows = new AtomicLong();
+  private volatile int maxRows;
+  private volatile int rowWidth;
+  private volatile int fetchSize;
+
+  /**
+   * @param statementId
+   *          - the mapped statement id
+   * @param memoryBudget
+   *          - the number of bytes one fetch may buffer
+   */
+  public StatementStatistics(String statementId, long memoryBudget) {
+    this.statementId = statementId;
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Records one execution of the statement and chooses the fetch size for the next one.
+   *
+   * @param rows
+   *          - the number of rows read from the ResultSet
+   */
+  public void recordExecution(int rows) {
+    long count = executions.incrementAndGet();
+    long total = totalRows.addAndGet(rows);
+    if (rows > maxRows) {
+      maxRows = rows;
+    }
+    // twice the average covers most executions in one round trip without following a single large one
+    long expected = Math.min(maxRows, 2 * total / count) + 1;
+    long size = Math.max(MIN_FETCH_SIZE, Math.min(expected, MAX_FETCH_SIZE));
+    if (rowWidth > 0) {
+      size = Math.max(MIN_FETCH_SIZE, Math.min(size, memoryBudget / rowWidth));
+    }
+    fetchSize = (int) size;
+  }
+
+  /**
+   * Estimates the width of a row from the metadata of the first ResultSet read.
+   *
+   * @param metaData
+   *          - the metadata of the ResultSet
+   * @throws SQLException
+   *           if the metadata cannot be read
+   */
+  public void recordRowWidth(ResultSetMetaData metaData) throws SQLException {
+    if (rowWidth == 0) {
+      int width = 0;
+      int columns = metaData.getColumnCount();
+      for (int i = 1; i <= columns; i++) {
+        int size = metaData.getColumnDisplaySize(i);
+        if (size <= 0) {
+          size = DEFAULT_COLUMN_WIDTH;
+        }
+        width += Math.min(size, MAX_COLUMN_WIDTH) + COLUMN_OVERHEAD;
+      }
+      rowWidth = Math.max(width, 1);
+    }
+  }
+
+  public boolean isRowWidthKnown() {
+    return rowWidth > 0;
+  }
+
+  public String getStatementId() {
+    return statementId;
+  }
+
+  public long getExecutions() {
+    return executions.get();
+  }
+
+  public long getTotalRows() {
+    return totalRows.get();
+  }
+
+  public int getMaxRows() {
+    return maxRows;
+  }
+
+  /**
+   * The average number of rows read per execution
+   *
+   * @return - the average, 0 before the first execution
+   */
+  public double getAverageRows() {
+    long count = executions.get();
+    return count == 0 ? 0 : (double) totalRows.get() / count;
+  }
+
+  /**
+   * The estimated width of a row in bytes
+   *
+   * @return - the width, 0 before the first execution
+   */
+  public int getRowWidth() {
+    return rowWidth;
+  }
+
+  /**
+   * The fetch size chosen for the next execution
+   *
+   * @return - the fetch size, 0 before the first execution
+   */
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  @Override
+  public String toString() {
+    return statementId + ": executions=" + getExecutions() + ", averageRows=" + getAverageRows() + ", maxRows="
+        + maxRows + ", rowWidth=" + rowWidth + ", fetchSize=" + fetchSize;
+  }
+
+}
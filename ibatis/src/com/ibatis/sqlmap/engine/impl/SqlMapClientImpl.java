@@ -30,6 +30,8 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * Implementation of ExtendedSqlMapClient
@@ -121,6 +123,27 @@ public class SqlMapClientImpl implements SqlMapClient, ExtendedSqlMapClient {
         return getLocalSqlMapSession().queryForPaginatedList(id, pageSize);
     }
 
+    public List queryForKeysetPage(String id, Object paramObject, Object lastKey, int pageSize) throws SQLException {
+        return getLocalSqlMapSession().queryForKeysetPage(id, paramObject, lastKey, pageSize);
+    }
+
+    public PaginatedList queryForKeysetPaginatedList(String id, Object paramObject, int pageSize)
+            throws SQLException {
+        return getLocalSqlMapSession().queryForKeysetPaginatedList(id, paramObject, pageSize);
+    }
+
+    public void setDeadline(long deadline) {
+        getLocalSqlMapSession().setDeadline(deadline);
+    }
+
+    public long getDeadline() {
+        return getLocalSqlMapSession().getDeadline();
+    }
+
+    public List queryMulti(String[] ids, Object[] paramObjects) throws SQLException {
+        return getLocalSqlMapSession().queryMulti(ids, paramObjects);
+    }
+
     public Map queryForMap(String id, Object paramObject, String keyProp) throws SQLException {
         return getLocalSqlMapSession().queryForMap(id, paramObject, keyProp);
     }
@@ -137,6 +160,18 @@ public class SqlMapClientImpl implements SqlMapClient, ExtendedSqlMapClient {
         getLocalSqlMapSession().queryWithRowHandler(id, rowHandler);
     }
 
+    public Cursor queryForCursor(String id, Object paramObject) throws SQLException {
+        return getLocalSqlMapSession().queryForCursor(id, paramObject);
+    }
+
+    public Cursor queryForCursor(String id, Object paramObject, int fetchSize) throws SQLException {
+        return getLocalSqlMapSession().queryForCursor(id, paramObject, fetchSize);
+    }
+
+    public ColumnarResult queryForColumns(String id, Object paramObject) throws SQLException {
+        return getLocalSqlMapSession().queryForColumns(id, paramObject);
+    }
+
     public void startTransaction() throws SQLException {
         getLocalSqlMapSession().startTransaction();
     }
@@ -254,6 +289,30 @@ public class SqlMapClientImpl implements SqlMapClient, ExtendedSqlMapClient {
         delegate.flushDataCache(cacheId);
     }
 
+    public Future queryForObjectAsync(final String id, final Object paramObject) {
+        return delegate.getAsyncExecutor().submit(new SessionCallable() {
+            protected Object call(SqlMapSession session) throws SQLException {
+                return session.queryForObject(id, paramObject);
+            }
+        });
+    }
+
+    public Future queryForListAsync(final String id, final Object paramObject) {
+        return delegate.getAsyncExecutor().submit(new SessionCallable() {
+            protected Object call(SqlMapSession session) throws SQLException {
+                return session.queryForList(id, paramObject);
+            }
+        });
+    }
+
+    public Future updateAsync(final String id, final Object param) {
+        return delegate.getAsyncExecutor().submit(new SessionCallable() {
+            protected Object call(SqlMapSession session) throws SQLException {
+                return new Integer(session.update(id, param));
+            }
+        });
+    }
+
     protected SqlMapSessionImpl getLocalSqlMapSession() {
         SqlMapSessionImpl sqlMapSession = localSqlMapSession.get();
         if (sqlMapSession == null || sqlMapSession.isClosed()) {
@@ -266,4 +325,20 @@ public class SqlMapClientImpl implements SqlMapClient, ExtendedSqlMapClient {
     public ResultObjectFactory getResultObjectFactory() {
         return delegate.getResultObjectFactory();
     }
+
+    /**
+     * Runs a call in a new session, so that concurrent calls never share a connection
+     */
+    private abstract class SessionCallable implements Callable {
+        public Object call() throws Exception {
+            SqlMapSession session = openSession();
+            try {
+                return call(session);
+            } finally {
+                session.close();
+            }
+        }
+
+        protected abstract Object call(SqlMapSession session) throws SQLException;
+    }
 }
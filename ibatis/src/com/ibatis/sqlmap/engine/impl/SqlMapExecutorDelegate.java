@@ -17,39 +17,71 @@ package com.ibatis.sqlmap.engine.impl;
 
 import com.ibatis.common.beans.Probe;
 import com.ibatis.common.beans.ProbeFactory;
+import com.ibatis.common.beans.PropertyPath;
 import com.ibatis.common.jdbc.exception.NestedSQLException;
 import com.ibatis.common.util.PaginatedList;
+import com.ibatis.sqlmap.client.ColumnarResult;
+import com.ibatis.sqlmap.client.Cursor;
+import com.ibatis.sqlmap.client.SqlMapClient;
 import com.ibatis.sqlmap.client.SqlMapException;
 import com.ibatis.sqlmap.client.event.RowHandler;
 import com.ibatis.sqlmap.engine.cache.CacheKey;
 import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.dialect.Dialect;
 import com.ibatis.sqlmap.engine.exchange.DataExchangeFactory;
 import com.ibatis.sqlmap.engine.execution.BatchException;
+import com.ibatis.sqlmap.engine.execution.DeadlineTimer;
 import com.ibatis.sqlmap.engine.execution.DefaultSqlExecutor;
+import com.ibatis.sqlmap.engine.execution.DriverProfile;
 import com.ibatis.sqlmap.engine.execution.SqlExecutor;
+import com.ibatis.sqlmap.engine.execution.StatementStatistics;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
 import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
 import com.ibatis.sqlmap.engine.mapping.result.ResultObjectFactory;
+import com.ibatis.sqlmap.engine.mapping.statement.CachingStatement;
+import com.ibatis.sqlmap.engine.mapping.statement.ColumnarResultHandler;
 import com.ibatis.sqlmap.engine.mapping.statement.InsertStatement;
+import com.ibatis.sqlmap.engine.mapping.statement.KeysetPaginatedDataList;
 import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
 import com.ibatis.sqlmap.engine.mapping.statement.PaginatedDataList;
+import com.ibatis.sqlmap.engine.mapping.statement.PipelinedQuery;
 import com.ibatis.sqlmap.engine.mapping.statement.SelectKeyStatement;
+import com.ibatis.sqlmap.engine.mapping.statement.StatementType;
+import com.ibatis.sqlmap.engine.scope.ErrorContext;
 import com.ibatis.sqlmap.engine.scope.SessionScope;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
+import com.ibatis.sqlmap.engine.transaction.IsolationLevel;
 import com.ibatis.sqlmap.engine.transaction.Transaction;
 import com.ibatis.sqlmap.engine.transaction.TransactionException;
 import com.ibatis.sqlmap.engine.transaction.TransactionManager;
 import com.ibatis.sqlmap.engine.transaction.TransactionState;
+import com.ibatis.sqlmap.engine.transaction.external.ExternalTransaction;
+import com.ibatis.sqlmap.engine.transaction.jdbc.JdbcTransaction;
+import com.ibatis.sqlmap.engine.transaction.jta.JtaTransaction;
 import com.ibatis.sqlmap.engine.transaction.user.UserProvidedTransaction;
 import com.ibatis.sqlmap.engine.type.TypeHandlerFactory;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The workhorse that really runs the SQL
@@ -58,11 +90,45 @@ public class SqlMapExecutorDelegate {
 
     private static final Probe PROBE = ProbeFactory.getProbe();
 
+    /**
+     * The default number of threads that run asynchronous statements
+     */
+    public static final int DEFAULT_ASYNC_POOL_SIZE = 10;
+
+    /**
+     * The default number of asynchronous statements that may wait for a thread
+     */
+    public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+
+    /**
+     * The default number of bytes an adaptive fetch size may buffer
+     */
+    public static final long DEFAULT_FETCH_SIZE_MEMORY_BUDGET = 1024 * 1024;
+
+    /**
+     * The default number of rows a spillable result keeps on the heap
+     */
+    public static final int DEFAULT_SPILL_THRESHOLD = 10000;
+
     private boolean lazyLoadingEnabled = true;
     private boolean cacheModelsEnabled = true;
     private boolean enhancementEnabled = false;
     private boolean useColumnLabel = true;
     private boolean forceMultipleResultSetSupport;
+    private boolean batchGroupingEnabled;
+    private int maxBatchRows;
+    private long maxBatchBytes;
+    private int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+    private Dialect dialect;
+    private boolean autoDialect;
+    private int defaultFetchSize;
+    private boolean adaptiveFetchSizeEnabled;
+    private long fetchSizeMemoryBudget = DEFAULT_FETCH_SIZE_MEMORY_BUDGET;
+
+    private int asyncPoolSize = DEFAULT_ASYNC_POOL_SIZE;
+    private int asyncQueueSize = DEFAULT_ASYNC_QUEUE_SIZE;
+    private ExecutorService asyncExecutor;
+    private DeadlineTimer deadlineTimer;
 
     private TransactionManager txManager;
 
@@ -78,6 +144,10 @@ public class SqlMapExecutorDelegate {
     private ResultObjectFactory resultObjectFactory;
     private boolean statementCacheEnabled = true;
 
+    private Map driverProfiles = new ConcurrentHashMap();
+    private ConcurrentHashMap statementStatistics = new ConcurrentHashMap();
+    private volatile DriverProfile userConnectionDriverProfile;
+
     /**
      * Default constructor
      */
@@ -379,11 +449,15 @@ public class SqlMapExecutorDelegate {
         Object generatedKey = null;
 
         MappedStatement ms = getMappedStatement(id);
+        if (isScatter(sessionScope, ms, param)) {
+            throw new SqlMapException("The insert " + id + " has no value for its shard key " + ms.getShardKey() + ".");
+        }
         Transaction trans = getTransaction(sessionScope);
         boolean autoStart = trans == null;
 
         try {
             trans = autoStartTransaction(sessionScope, autoStart, trans);
+            trans = getShardTransaction(sessionScope, ms, param, trans);
 
             SelectKeyStatement selectKeyStatement = null;
             if (ms instanceof InsertStatement) {
@@ -422,6 +496,12 @@ public class SqlMapExecutorDelegate {
                 generatedKey = executeSelectKey(sessionScope, trans, ms, param);
             }
 
+            // in a batch the key is only set once the batch has been executed
+            if (ms instanceof InsertStatement && ((InsertStatement) ms).isUseGeneratedKeys() && param != null
+                    && ((InsertStatement) ms).getKeyProperty() != null && !sessionScope.isInBatch()) {
+                generatedKey = PROBE.getObject(param, ((InsertStatement) ms).getKeyProperty());
+            }
+
             autoCommitTransaction(sessionScope, autoStart);
         } finally {
             autoEndTransaction(sessionScope, autoStart);
@@ -464,17 +544,34 @@ public class SqlMapExecutorDelegate {
         int rows = 0;
 
         MappedStatement ms = getMappedStatement(id);
+        if (isScatter(sessionScope, ms, param) && ms.getStatementType() == StatementType.INSERT) {
+            throw new SqlMapException("The insert " + id + " has no value for its shard key " + ms.getShardKey() + ".");
+        }
         Transaction trans = getTransaction(sessionScope);
         boolean autoStart = trans == null;
 
         try {
             trans = autoStartTransaction(sessionScope, autoStart, trans);
 
-            StatementScope statementScope = beginStatementScope(sessionScope, ms);
-            try {
-                rows = ms.executeUpdate(statementScope, trans, param);
-            } finally {
-                endStatementScope(statementScope);
+            if (isScatter(sessionScope, ms, param)) {
+                // no shard key, the statement runs on each shard in turn
+                for (int i = 0; i < txManager.getShards().size(); i++) {
+                    StatementScope statementScope = beginStatementScope(sessionScope, ms);
+                    try {
+                        statementScope.setShard(i);
+                        rows += ms.executeUpdate(statementScope, getShardTransaction(sessionScope, i), param);
+                    } finally {
+                        endStatementScope(statementScope);
+                    }
+                }
+            } else {
+                trans = getShardTransaction(sessionScope, ms, param, trans);
+                StatementScope statementScope = beginStatementScope(sessionScope, ms);
+                try {
+                    rows = ms.executeUpdate(statementScope, trans, param);
+                } finally {
+                    endStatementScope(statementScope);
+                }
             }
 
             autoCommitTransaction(sessionScope, autoStart);
@@ -526,11 +623,28 @@ public class SqlMapExecutorDelegate {
         Object object = null;
 
         MappedStatement ms = getMappedStatement(id);
+        if (isScatter(sessionScope, ms, paramObject)) {
+            if (resultObject != null) {
+                throw new SqlMapException("The statement " + id
+                        + " cannot fill a result object without a value for its shard key " + ms.getShardKey() + ".");
+            }
+            List objects = scatterQuery(sessionScope, ms, paramObject, SqlExecutor.NO_MAXIMUM_RESULTS, true);
+            for (int i = 0; i < objects.size(); i++) {
+                if (objects.get(i) != null) {
+                    if (object != null) {
+                        throw new SQLException("Error: executeQueryForObject returned too many results.");
+                    }
+                    object = objects.get(i);
+                }
+            }
+            return object;
+        }
         Transaction trans = getTransaction(sessionScope);
         boolean autoStart = trans == null;
 
         try {
-            trans = autoStartTransaction(sessionScope, autoStart, trans);
+            trans = autoStartTransaction(sessionScope, autoStart, trans, isReadReplica(ms));
+            trans = getShardTransaction(sessionScope, ms, paramObject, trans);
 
             StatementScope statementScope = beginStatementScope(sessionScope, ms);
             try {
@@ -573,14 +687,54 @@ public class SqlMapExecutorDelegate {
      */
     public List queryForList(SessionScope sessionScope, String id, Object paramObject, int skip, int max)
             throws SQLException {
+        return queryForList(sessionScope, getMappedStatement(id), paramObject, skip, max);
+    }
+
+    /**
+     * Execute a query for a list with a statement that need not be registered, in the session of the calling thread,
+     * as SqlMapClient.queryForList() would. Used by lazy loaders, which run after the statement that created them.
+     *
+     * @param client      - the client whose thread-local session runs the query
+     * @param ms          - the statement
+     * @param paramObject - the parameter object
+     * @return - the data list
+     * @throws SQLException - if the query fails
+     */
+    public List queryForList(SqlMapClientImpl client, MappedStatement ms, Object paramObject) throws SQLException {
+        return queryForList(client.getLocalSqlMapSession().sessionScope, ms, paramObject,
+                SqlExecutor.NO_SKIPPED_RESULTS, SqlExecutor.NO_MAXIMUM_RESULTS);
+    }
+
+    /**
+     * Execute a query for a list with a statement that need not be registered, such as one built at run time
+     *
+     * @param sessionScope - the session scope
+     * @param ms           - the statement
+     * @param paramObject  - the parameter object
+     * @param skip         - the number of rows to skip
+     * @param max          - the maximum number of rows to return
+     * @return - the data list
+     * @throws SQLException - if the query fails
+     */
+    public List queryForList(SessionScope sessionScope, MappedStatement ms, Object paramObject, int skip, int max)
+            throws SQLException {
         List list = null;
 
-        MappedStatement ms = getMappedStatement(id);
+        if (isScatter(sessionScope, ms, paramObject)) {
+            // each shard returns up to skip + max rows, the rows to skip are only known after the merge
+            int shardMax = max;
+            if (max != SqlExecutor.NO_MAXIMUM_RESULTS && skip > 0) {
+                shardMax = max > Integer.MAX_VALUE - skip ? SqlExecutor.NO_MAXIMUM_RESULTS : skip + max;
+            }
+            List shardLists = scatterQuery(sessionScope, ms, paramObject, shardMax, false);
+            return mergeShardLists(ms, shardLists, skip, max);
+        }
         Transaction trans = getTransaction(sessionScope);
         boolean autoStart = trans == null;
 
         try {
-            trans = autoStartTransaction(sessionScope, autoStart, trans);
+            trans = autoStartTransaction(sessionScope, autoStart, trans, isReadReplica(ms));
+            trans = getShardTransaction(sessionScope, ms, paramObject, trans);
 
             StatementScope statementScope = beginStatementScope(sessionScope, ms);
             try {
@@ -597,6 +751,317 @@ public class SqlMapExecutorDelegate {
         return list;
     }
 
+    /**
+     * Execute several queries and return the results of each. Queries that can be pipelined are sent to the
+     * database as one statement when the driver supports it; the others are run one at a time.
+     *
+     * @param sessionScope - the session scope
+     * @param ids          - the statement IDs
+     * @param paramObjects - the parameter objects, one per statement ID, or null
+     * @return - a List holding the result List of each statement, in order
+     * @throws SQLException - if a query fails
+     */
+    public List queryMulti(SessionScope sessionScope, String[] ids, Object[] paramObjects) throws SQLException {
+        if (paramObjects != null && paramObjects.length != ids.length) {
+            throw new SqlMapException("queryMulti needs one parameter object per statement id.");
+        }
+        List results;
+
+        Transaction trans = getTransaction(sessionScope);
+        boolean autoStart = trans == null;
+
+        try {
+            trans = autoStartTransaction(sessionScope, autoStart, trans, isReadReplica(ids));
+            results = executeQueryMulti(sessionScope, trans, ids, paramObjects);
+            autoCommitTransaction(sessionScope, autoStart);
+        } finally {
+            autoEndTransaction(sessionScope, autoStart);
+        }
+
+        return results;
+    }
+
+    private List executeQueryMulti(SessionScope sessionScope, Transaction trans, String[] ids, Object[] paramObjects)
+            throws SQLException {
+        Object[] results = new Object[ids.length];
+        boolean[] done = new boolean[ids.length];
+
+        List pipelined = new ArrayList();
+        for (int i = 0; i < ids.length; i++) {
+            MappedStatement ms = getMappedStatement(ids[i]);
+            if (isPipelinable(ms)) {
+                pipelined.add(new Integer(i));
+            }
+        }
+
+        if (pipelined.size() > 1) {
+            Connection conn;
+            try {
+                conn = DeadlineTimer.getConnection(trans, sessionScope.getDeadline());
+            } catch (TransactionException e) {
+                throw new NestedSQLException("Error getting Connection from Transaction.  Cause: " + e, e);
+            }
+            DriverProfile profile = getDriverProfile(trans, conn);
+            if (profile.isMultipleStatementsSupported()) {
+                PipelinedQuery[] queries = new PipelinedQuery[pipelined.size()];
+                StatementScope[] scopes = new StatementScope[pipelined.size()];
+                try {
+                    for (int j = 0; j < queries.length; j++) {
+                        int i = ((Integer) pipelined.get(j)).intValue();
+                        MappedStatement ms = getMappedStatement(ids[i]);
+                        scopes[j] = beginStatementScope(sessionScope, ms);
+                        scopes[j].setDriverProfile(profile);
+                        queries[j] = ms.prepareQuery(scopes[j], paramObjects == null ? null : paramObjects[i]);
+                    }
+                    try {
+                        sqlExecutor.executeQueryPipeline(conn, queries);
+                    } catch (SQLException e) {
+                        ErrorContext errorContext = scopes[0].getErrorContext();
+                        errorContext.setCause(e);
+                        throw new NestedSQLException(errorContext.toString(), e.getSQLState(), e.getErrorCode(), e);
+                    }
+                    for (int j = 0; j < queries.length; j++) {
+                        int i = ((Integer) pipelined.get(j)).intValue();
+                        results[i] = queries[j].getStatement().completeQuery(queries[j]);
+                        done[i] = true;
+                    }
+                } finally {
+                    for (int j = 0; j < scopes.length; j++) {
+                        if (scopes[j] != null) {
+                            endStatementScope(scopes[j]);
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < ids.length; i++) {
+            if (!done[i]) {
+                results[i] = queryForList(sessionScope, ids[i], paramObjects == null ? null : paramObjects[i]);
+            }
+        }
+        return new ArrayList(Arrays.asList(results));
+    }
+
+    private boolean isReadReplica(String[] ids) {
+        for (int i = 0; i < ids.length; i++) {
+            if (!isReadReplica(getMappedStatement(ids[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cached statements, procedures and statements with several result maps are not pipelined
+     */
+    private boolean isPipelinable(MappedStatement ms) {
+        StatementType type = ms.getStatementType();
+        return !(ms instanceof CachingStatement) && (type == StatementType.SELECT || type == StatementType.UNKNOWN)
+                && !ms.hasMultipleResultMaps() && !isSharded(ms);
+    }
+
+    private boolean isReadReplica(MappedStatement ms) {
+        return ms.isReadReplica() && !isSharded(ms);
+    }
+
+    private boolean isSharded(MappedStatement ms) {
+        return ms.getShardKey() != null && txManager.getShards() != null;
+    }
+
+    /**
+     * Tells if a statement has to run on all shards, because its parameter has no shard key value
+     */
+    private boolean isScatter(SessionScope sessionScope, MappedStatement ms, Object paramObject) {
+        return isSharded(ms) && sessionScope.getTransactionState() != TransactionState.STATE_USER_PROVIDED
+                && ms.getShardKeyValue(paramObject) == null;
+    }
+
+    /**
+     * Gets the transaction a statement runs in: the session transaction on the shard of its shard key value, if it
+     * has one, and the given transaction otherwise.
+     */
+    private Transaction getShardTransaction(SessionScope sessionScope, MappedStatement ms, Object paramObject,
+            Transaction trans) throws SQLException {
+        if (!isSharded(ms) || sessionScope.getTransactionState() == TransactionState.STATE_USER_PROVIDED) {
+            return trans;
+        }
+        Object shardKey = ms.getShardKeyValue(paramObject);
+        if (shardKey == null) {
+            return trans;
+        }
+        return getShardTransaction(sessionScope, txManager.getShards().getShard(shardKey));
+    }
+
+    private Transaction getShardTransaction(SessionScope sessionScope, int shard) throws SQLException {
+        try {
+            return txManager.getShardTransaction(sessionScope, shard);
+        } catch (TransactionException e) {
+            throw new NestedSQLException("Could not start the transaction on shard " + shard + ".  Cause: " + e, e);
+        }
+    }
+
+    /**
+     * Runs a query on all shards in parallel, each on the session transaction of the shard.
+     *
+     * @return - the result of each shard, by shard
+     */
+    private List scatterQuery(SessionScope sessionScope, MappedStatement ms, Object paramObject, int max,
+            boolean forObject) throws SQLException {
+        List results;
+
+        Transaction trans = getTransaction(sessionScope);
+        boolean autoStart = trans == null;
+
+        try {
+            autoStartTransaction(sessionScope, autoStart, trans);
+
+            ShardQuery[] queries = new ShardQuery[txManager.getShards().size()];
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = new ShardQuery(sessionScope, ms, i, getShardTransaction(sessionScope, i), paramObject,
+                        max, forObject);
+            }
+            results = runShardQueries(queries);
+
+            autoCommitTransaction(sessionScope, autoStart);
+        } finally {
+            autoEndTransaction(sessionScope, autoStart);
+        }
+
+        return results;
+    }
+
+    private List runShardQueries(ShardQuery[] queries) throws SQLException {
+        FutureTask[] tasks = new FutureTask[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            tasks[i] = new FutureTask(queries[i]);
+            if (i > 0) {
+                try {
+                    getAsyncExecutor().execute(tasks[i]);
+                } catch (RejectedExecutionException e) {
+                    // the pool is saturated, the shard is run on this thread below
+                }
+            }
+        }
+        List results = new ArrayList(queries.length);
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (int i = 0; i < tasks.length; i++) {
+            // runs the shards the executor has not started yet on this thread, so that a query from an executor thread
+            // cannot wait on queries queued behind it
+            tasks[i].run();
+            try {
+                while (true) {
+                    try {
+                        results.add(tasks[i].get());
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new NestedSQLException("Error querying the shards.  Cause: " + failure, failure);
+        }
+        return results;
+    }
+
+    /**
+     * Merges the lists of all shards, in shard order or on the shard order property of the statement, and applies
+     * skip and max to the merged rows.
+     */
+    private List mergeShardLists(MappedStatement ms, List shardLists, int skip, int max) {
+        List merged = new ArrayList();
+        int limit = max == SqlExecutor.NO_MAXIMUM_RESULTS ? Integer.MAX_VALUE : max;
+        int skipped = 0;
+        String orderBy = ms.getShardOrderBy();
+        if (orderBy == null) {
+            for (int i = 0; i < shardLists.size() && merged.size() < limit; i++) {
+                List list = (List) shardLists.get(i);
+                for (int j = 0; j < list.size() && merged.size() < limit; j++) {
+                    if (skipped < skip) {
+                        skipped++;
+                    } else {
+                        merged.add(list.get(j));
+                    }
+                }
+            }
+            return merged;
+        }
+
+        boolean descending = false;
+        String property = orderBy.trim();
+        int space = property.indexOf(' ');
+        if (space > 0) {
+            descending = "DESC".equalsIgnoreCase(property.substring(space + 1).trim());
+            property = property.substring(0, space);
+        }
+        int[] positions = new int[shardLists.size()];
+        Object[] keys = new Object[shardLists.size()];
+        for (int i = 0; i < positions.length; i++) {
+            List list = (List) shardLists.get(i);
+            if (!list.isEmpty()) {
+                keys[i] = getShardOrderValue(list.get(0), property);
+            }
+        }
+        while (merged.size() < limit) {
+            int next = -1;
+            for (int i = 0; i < positions.length; i++) {
+                if (positions[i] < ((List) shardLists.get(i)).size()
+                        && (next == -1 || compareShardOrderValues(keys[i], keys[next], descending) < 0)) {
+                    next = i;
+                }
+            }
+            if (next == -1) {
+                break;
+            }
+            List list = (List) shardLists.get(next);
+            if (skipped < skip) {
+                skipped++;
+            } else {
+                merged.add(list.get(positions[next]));
+            }
+            positions[next]++;
+            if (positions[next] < list.size()) {
+                keys[next] = getShardOrderValue(list.get(positions[next]), property);
+            }
+        }
+        return merged;
+    }
+
+    private Object getShardOrderValue(Object row, String property) {
+        if (row == null || typeHandlerFactory.hasTypeHandler(row.getClass())) {
+            return row;
+        }
+        return PROBE.getObject(row, property);
+    }
+
+    private static int compareShardOrderValues(Object a, Object b, boolean descending) {
+        int result;
+        if (a == null) {
+            result = b == null ? 0 : -1;
+        } else if (b == null) {
+            result = 1;
+        } else {
+            result = ((Comparable) a).compareTo(b);
+        }
+        return descending ? -result : result;
+    }
+
     /**
      * Execute a query with a row handler. The row handler is called once per row in the query results.
      *
@@ -614,20 +1079,132 @@ public class SqlMapExecutorDelegate {
         boolean autoStart = trans == null;
 
         try {
-            trans = autoStartTransaction(sessionScope, autoStart, trans);
+            trans = autoStartTransaction(sessionScope, autoStart, trans, isReadReplica(ms));
+
+            if (isScatter(sessionScope, ms, paramObject)) {
+                // the shards are read one after the other, so that the row handler is only called by this thread
+                for (int i = 0; i < txManager.getShards().size(); i++) {
+                    StatementScope statementScope = beginStatementScope(sessionScope, ms);
+                    try {
+                        statementScope.setShard(i);
+                        ms.executeQueryWithRowHandler(statementScope, getShardTransaction(sessionScope, i),
+                                paramObject, rowHandler);
+                    } finally {
+                        endStatementScope(statementScope);
+                    }
+                }
+            } else {
+                trans = getShardTransaction(sessionScope, ms, paramObject, trans);
+                StatementScope statementScope = beginStatementScope(sessionScope, ms);
+                try {
+                    ms.executeQueryWithRowHandler(statementScope, trans, paramObject, rowHandler);
+                } finally {
+                    endStatementScope(statementScope);
+                }
+            }
+
+            autoCommitTransaction(sessionScope, autoStart);
+        } finally {
+            autoEndTransaction(sessionScope, autoStart);
+        }
+
+    }
+
+    /**
+     * Execute a query and return a cursor over the results. If no transaction was started on the session, one is
+     * started here and ended when the cursor is closed.
+     *
+     * @param sessionScope - the session scope
+     * @param id           - the statement ID
+     * @param paramObject  - the parameter object
+     * @param fetchSize    - the fetch size to use (or null to use the statement's fetch size)
+     * @return - an open cursor
+     * @throws SQLException - if the query fails
+     */
+    public Cursor queryForCursor(SessionScope sessionScope, String id, Object paramObject, Integer fetchSize)
+            throws SQLException {
+        Cursor cursor = null;
+
+        MappedStatement ms = getMappedStatement(id);
+        if (isScatter(sessionScope, ms, paramObject)) {
+            throw new SqlMapException("The statement " + id + " needs a value for its shard key " + ms.getShardKey()
+                    + " to be read with a cursor.");
+        }
+        Transaction trans = getTransaction(sessionScope);
+        boolean autoStart = trans == null;
+
+        try {
+            trans = autoStartTransaction(sessionScope, autoStart, trans, isReadReplica(ms));
+            trans = getShardTransaction(sessionScope, ms, paramObject, trans);
 
             StatementScope statementScope = beginStatementScope(sessionScope, ms);
             try {
-                ms.executeQueryWithRowHandler(statementScope, trans, paramObject, rowHandler);
+                cursor = ms.executeQueryForCursor(statementScope, trans, paramObject, fetchSize);
             } finally {
                 endStatementScope(statementScope);
             }
 
+            if (autoStart) {
+                cursor = new AutoTransactionCursor(cursor, sessionScope);
+            }
+        } finally {
+            // the transaction now belongs to the cursor, unless opening it failed
+            if (cursor == null) {
+                autoEndTransaction(sessionScope, autoStart);
+            }
+        }
+
+        return cursor;
+    }
+
+    /**
+     * Execute a query and return its rows column by column. The shards of a scatter query are read one after the
+     * other into the same columns.
+     *
+     * @param sessionScope - the session scope
+     * @param id           - the statement ID
+     * @param paramObject  - the parameter object
+     * @return - the columns
+     * @throws SQLException - if the query fails
+     */
+    public ColumnarResult queryForColumns(SessionScope sessionScope, String id, Object paramObject)
+            throws SQLException {
+        ColumnarResultHandler handler = new ColumnarResultHandler();
+
+        MappedStatement ms = getMappedStatement(id);
+        Transaction trans = getTransaction(sessionScope);
+        boolean autoStart = trans == null;
+
+        try {
+            trans = autoStartTransaction(sessionScope, autoStart, trans, isReadReplica(ms));
+
+            if (isScatter(sessionScope, ms, paramObject)) {
+                for (int i = 0; i < txManager.getShards().size(); i++) {
+                    StatementScope statementScope = beginStatementScope(sessionScope, ms);
+                    try {
+                        statementScope.setShard(i);
+                        ms.executeQueryForColumns(statementScope, getShardTransaction(sessionScope, i), paramObject,
+                                handler);
+                    } finally {
+                        endStatementScope(statementScope);
+                    }
+                }
+            } else {
+                trans = getShardTransaction(sessionScope, ms, paramObject, trans);
+                StatementScope statementScope = beginStatementScope(sessionScope, ms);
+                try {
+                    ms.executeQueryForColumns(statementScope, trans, paramObject, handler);
+                } finally {
+                    endStatementScope(statementScope);
+                }
+            }
+
             autoCommitTransaction(sessionScope, autoStart);
         } finally {
             autoEndTransaction(sessionScope, autoStart);
         }
 
+        return handler.getResult();
     }
 
     /**
@@ -646,6 +1223,79 @@ public class SqlMapExecutorDelegate {
         return new PaginatedDataList(sessionScope.getSqlMapExecutor(), id, paramObject, pageSize);
     }
 
+    /**
+     * Execute a query for one page of a keyset paginated list
+     *
+     * @param sessionScope - the session scope
+     * @param id           - the statement ID
+     * @param paramObject  - the parameter object
+     * @param lastKey      - the key of the last row of the previous page, null for the first page
+     * @param pageSize     - the maximum number of rows to return
+     * @return - the rows following lastKey, in key order
+     * @throws SQLException - if the query fails
+     */
+    public List queryForKeysetPage(SessionScope sessionScope, String id, Object paramObject, Object lastKey,
+            int pageSize) throws SQLException {
+        List list = null;
+
+        MappedStatement ms = getMappedStatement(id);
+        if (ms.getKeysetColumn() == null) {
+            throw new SqlMapException("The statement " + id + " has no keysetColumn and cannot be paged by key.");
+        }
+        if (isScatter(sessionScope, ms, paramObject)) {
+            throw new SqlMapException("The statement " + id + " needs a value for its shard key " + ms.getShardKey()
+                    + " to be paged by key.");
+        }
+        Transaction trans = getTransaction(sessionScope);
+        boolean autoStart = trans == null;
+
+        try {
+            trans = autoStartTransaction(sessionScope, autoStart, trans, isReadReplica(ms));
+            trans = getShardTransaction(sessionScope, ms, paramObject, trans);
+
+            StatementScope statementScope = beginStatementScope(sessionScope, ms);
+            try {
+                statementScope.setKeysetQuery(true);
+                statementScope.setKeysetValue(lastKey);
+                list = ms.executeQueryForList(statementScope, trans, paramObject, SqlExecutor.NO_SKIPPED_RESULTS,
+                        pageSize);
+            } finally {
+                endStatementScope(statementScope);
+            }
+
+            autoCommitTransaction(sessionScope, autoStart);
+        } finally {
+            autoEndTransaction(sessionScope, autoStart);
+        }
+
+        return list;
+    }
+
+    /**
+     * Execute a query and return a keyset paginated list. Outside of a transaction the next page is read ahead on the
+     * asynchronous executor.
+     *
+     * @param sessionScope - the session scope
+     * @param id           - the statement ID
+     * @param paramObject  - the parameter object
+     * @param pageSize     - the page size
+     * @return - the data list
+     * @throws SQLException - if the query fails
+     */
+    public PaginatedList queryForKeysetPaginatedList(SessionScope sessionScope, String id, Object paramObject,
+            int pageSize) throws SQLException {
+        MappedStatement ms = getMappedStatement(id);
+        if (ms.getKeysetColumn() == null) {
+            throw new SqlMapException("The statement " + id + " has no keysetColumn and cannot be paged by key.");
+        }
+        ExecutorService prefetchExecutor = null;
+        if (sessionScope.getSqlMapExecutor() instanceof SqlMapClient && getTransaction(sessionScope) == null) {
+            prefetchExecutor = getAsyncExecutor();
+        }
+        return new KeysetPaginatedDataList(sessionScope.getSqlMapExecutor(), ms, paramObject, pageSize,
+                prefetchExecutor);
+    }
+
     /**
      * Execute a query for a map. The map has the table key as the key, and the results as the map data
      *
@@ -677,14 +1327,16 @@ public class SqlMapExecutorDelegate {
 
         List list = queryForList(sessionScope, id, paramObject);
 
+        PropertyPath keyPath = PropertyPath.compile(keyProp);
+        PropertyPath valuePath = valueProp == null ? null : PropertyPath.compile(valueProp);
         for (int i = 0, n = list.size(); i < n; i++) {
             Object object = list.get(i);
-            Object key = PROBE.getObject(object, keyProp);
+            Object key = keyPath.getValue(object);
             Object value = null;
-            if (valueProp == null) {
+            if (valuePath == null) {
                 value = object;
             } else {
-                value = PROBE.getObject(object, valueProp);
+                value = valuePath.getValue(object);
             }
             map.put(key, value);
         }
@@ -830,6 +1482,178 @@ public class SqlMapExecutorDelegate {
         return ds;
     }
 
+    /**
+     * Get the capabilities of the JDBC driver behind the connection of a transaction. The driver is probed with the
+     * first connection obtained from each DataSource, be it the primary, a replica or a shard, and the result is reused
+     * for every later connection from that DataSource. Connections provided by the user are assumed to come from the
+     * same database, and share a profile of their own.
+     *
+     * @param trans - the transaction the connection belongs to
+     * @param conn - the connection of the transaction
+     * @return - the driver profile
+     */
+    public DriverProfile getDriverProfile(Transaction trans, Connection conn) {
+        if (trans instanceof UserProvidedTransaction) {
+            return getDriverProfile((DataSource) null, conn);
+        }
+        return getDriverProfile(getDataSource(trans), conn);
+    }
+
+    /**
+     * Get the capabilities of the JDBC driver a statement runs on, as found when the statement obtained its connection
+     * from its transaction.
+     *
+     * @param statementScope - the scope of the statement
+     * @param conn - the connection of the statement, used if the statement did not obtain it from its transaction, or
+     *            null
+     * @return - the driver profile, or null if it is not known and there is no connection to probe
+     */
+    public DriverProfile getDriverProfile(StatementScope statementScope, Connection conn) {
+        DriverProfile profile = statementScope.getDriverProfile();
+        if (profile == null && conn != null) {
+            profile = getDriverProfile(conn);
+        }
+        return profile;
+    }
+
+    /**
+     * Get the capabilities of the JDBC driver behind a connection of the DataSource of this SqlMap, or, if it has
+     * none, behind a connection provided by the user.
+     *
+     * @param conn - a connection from the DataSource of this SqlMap, or one provided by the user
+     * @return - the driver profile
+     */
+    public DriverProfile getDriverProfile(Connection conn) {
+        return getDriverProfile(getDataSource(), conn);
+    }
+
+    private DriverProfile getDriverProfile(DataSource dataSource, Connection conn) {
+        DriverProfile profile;
+        if (dataSource == null) {
+            profile = userConnectionDriverProfile;
+            if (profile == null) {
+                profile = DriverProfile.probe(conn);
+                userConnectionDriverProfile = profile;
+            }
+        } else {
+            profile = (DriverProfile) driverProfiles.get(dataSource);
+            if (profile == null) {
+                profile = DriverProfile.probe(conn);
+                driverProfiles.put(dataSource, profile);
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * The DataSource a transaction gets its connection from. Transactions of other types are assumed to use the
+     * DataSource of this SqlMap.
+     */
+    private DataSource getDataSource(Transaction trans) {
+        if (trans instanceof JdbcTransaction) {
+            return ((JdbcTransaction) trans).getDataSource();
+        } else if (trans instanceof ExternalTransaction) {
+            return ((ExternalTransaction) trans).getDataSource();
+        } else if (trans instanceof JtaTransaction) {
+            return ((JtaTransaction) trans).getDataSource();
+        }
+        return getDataSource();
+    }
+
+    /**
+     * Get the dialect used to push skip and max results down to the database. With the "auto" setting the dialect is
+     * chosen from the driver profile of the statement.
+     *
+     * @param statementScope - the scope of the statement
+     * @param conn - the connection the query runs on
+     * @return - the dialect, or null if skipping and limiting are left to the driver
+     */
+    public Dialect getDialect(StatementScope statementScope, Connection conn) {
+        if (dialect == null && autoDialect) {
+            return getDriverProfile(statementScope, conn).getDialect();
+        }
+        return dialect;
+    }
+
+    public void setDialect(Dialect dialect) {
+        this.dialect = dialect;
+    }
+
+    public boolean isAutoDialect() {
+        return autoDialect;
+    }
+
+    public void setAutoDialect(boolean autoDialect) {
+        this.autoDialect = autoDialect;
+    }
+
+    /**
+     * The fetch size used for statements that do not set one, 0 to leave it to the driver.
+     *
+     * @return - the default fetch size
+     */
+    public int getDefaultFetchSize() {
+        return defaultFetchSize;
+    }
+
+    public void setDefaultFetchSize(int defaultFetchSize) {
+        this.defaultFetchSize = defaultFetchSize;
+    }
+
+    /**
+     * Getter to tell if the fetch size of statements that do not set one is chosen from the rows they returned before
+     *
+     * @return - the status
+     */
+    public boolean isAdaptiveFetchSizeEnabled() {
+        return adaptiveFetchSizeEnabled;
+    }
+
+    public void setAdaptiveFetchSizeEnabled(boolean adaptiveFetchSizeEnabled) {
+        this.adaptiveFetchSizeEnabled = adaptiveFetchSizeEnabled;
+    }
+
+    /**
+     * The number of bytes one fetch may buffer when the fetch size is adaptive
+     *
+     * @return - the memory budget
+     */
+    public long getFetchSizeMemoryBudget() {
+        return fetchSizeMemoryBudget;
+    }
+
+    public void setFetchSizeMemoryBudget(long fetchSizeMemoryBudget) {
+        this.fetchSizeMemoryBudget = fetchSizeMemoryBudget;
+    }
+
+    /**
+     * Get the statistics of a statement, creating them on first use. Statistics are only recorded while the adaptive
+     * fetch size is enabled.
+     *
+     * @param id - the statement id
+     * @return - the statistics
+     */
+    public StatementStatistics getStatementStatistics(String id) {
+        StatementStatistics statistics = (StatementStatistics) statementStatistics.get(id);
+        if (statistics == null) {
+            statistics = new StatementStatistics(id, fetchSizeMemoryBudget);
+            StatementStatistics existing = (StatementStatistics) statementStatistics.putIfAbsent(id, statistics);
+            if (existing != null) {
+                statistics = existing;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Get the statistics of all statements executed so far
+     *
+     * @return - the statistics, keyed by statement id
+     */
+    public Map getStatementStatistics() {
+        return new HashMap(statementStatistics);
+    }
+
     /**
      * Getter for the SqlExecutor
      *
@@ -865,9 +1689,24 @@ public class SqlMapExecutorDelegate {
 
     protected Transaction autoStartTransaction(SessionScope sessionScope, boolean autoStart, Transaction trans)
             throws SQLException {
+        return autoStartTransaction(sessionScope, autoStart, trans, false);
+    }
+
+    protected Transaction autoStartTransaction(SessionScope sessionScope, boolean autoStart, Transaction trans,
+            boolean readOnly) throws SQLException {
         Transaction transaction = trans;
         if (autoStart) {
-            sessionScope.getSqlMapTxMgr().startTransaction();
+            // fail fast rather than wait for a connection the caller can no longer use
+            DeadlineTimer.check(sessionScope.getDeadline());
+            if (readOnly && txManager.getReplicas() != null) {
+                try {
+                    txManager.begin(sessionScope, IsolationLevel.UNSET_ISOLATION_LEVEL, true);
+                } catch (TransactionException e) {
+                    throw new NestedSQLException("Could not start transaction.  Cause: " + e, e);
+                }
+            } else {
+                sessionScope.getSqlMapTxMgr().startTransaction();
+            }
             transaction = getTransaction(sessionScope);
         }
         return transaction;
@@ -933,4 +1772,248 @@ public class SqlMapExecutorDelegate {
     public void setForceMultipleResultSetSupport(boolean forceMultipleResultSetSupport) {
         this.forceMultipleResultSetSupport = forceMultipleResultSetSupport;
     }
+
+    /**
+     * Tells if batches keep one statement per distinct SQL, so that interleaved statements are still sent as one
+     * JDBC batch each.
+     *
+     * @return true if batches are grouped by SQL
+     */
+    public boolean isBatchGroupingEnabled() {
+        return batchGroupingEnabled;
+    }
+
+    public void setBatchGroupingEnabled(boolean batchGroupingEnabled) {
+        this.batchGroupingEnabled = batchGroupingEnabled;
+    }
+
+    /**
+     * The number of rows a batch holds before they are sent to the database, 0 if there is no limit.
+     *
+     * @return - the maximum number of pending rows
+     */
+    public int getMaxBatchRows() {
+        return maxBatchRows;
+    }
+
+    public void setMaxBatchRows(int maxBatchRows) {
+        this.maxBatchRows = maxBatchRows;
+    }
+
+    /**
+     * The estimated size of the bound parameters a batch holds before they are sent to the database, 0 if there is
+     * no limit.
+     *
+     * @return - the maximum number of pending bytes
+     */
+    public long getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public void setMaxBatchBytes(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * The number of rows the result list of a spillable statement keeps on the heap before it writes the following
+     * rows to a temporary file.
+     *
+     * @return - the number of rows kept on the heap
+     */
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    public int getAsyncPoolSize() {
+        return asyncPoolSize;
+    }
+
+    /**
+     * Setter for the number of threads that run asynchronous statements. It has no effect once the first asynchronous
+     * statement has been submitted.
+     *
+     * @param asyncPoolSize - the number of threads
+     */
+    public void setAsyncPoolSize(int asyncPoolSize) {
+        this.asyncPoolSize = asyncPoolSize;
+    }
+
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    /**
+     * Setter for the number of asynchronous statements that may wait for a thread. Statements submitted while the
+     * queue is full are rejected with a RejectedExecutionException. It has no effect once the first asynchronous
+     * statement has been submitted.
+     *
+     * @param asyncQueueSize - the number of waiting statements
+     */
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        this.asyncQueueSize = asyncQueueSize;
+    }
+
+    /**
+     * Get the timer that cancels statements when the deadline of their call expires. It is created on first use.
+     *
+     * @return - the timer
+     */
+    public synchronized DeadlineTimer getDeadlineTimer() {
+        if (deadlineTimer == null) {
+            deadlineTimer = new DeadlineTimer();
+        }
+        return deadlineTimer;
+    }
+
+    /**
+     * Get the executor that runs asynchronous statements. Unless one has been set, a fixed pool of asyncPoolSize
+     * daemon threads is created on first use. At most asyncQueueSize statements wait for a thread; further
+     * statements are rejected with a RejectedExecutionException rather than queued without bound.
+     *
+     * @return - the executor
+     */
+    public synchronized ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            asyncExecutor = new ThreadPoolExecutor(asyncPoolSize, asyncPoolSize, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue(asyncQueueSize), new ThreadFactory() {
+                        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "ibatis-async-" + threadNumber.getAndIncrement());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new ThreadPoolExecutor.AbortPolicy());
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Setter for the executor that runs asynchronous statements, for applications that manage their own threads. The
+     * executor should be bounded by the size of the connection pool.
+     *
+     * @param asyncExecutor - the executor
+     */
+    public synchronized void setAsyncExecutor(ExecutorService asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Query of one shard, run with a session scope of its own so that the shards can be queried in parallel.
+     */
+    private class ShardQuery implements Callable {
+        private SessionScope sessionScope;
+        private MappedStatement ms;
+        private int shard;
+        private Transaction trans;
+        private Object paramObject;
+        private int max;
+        private boolean forObject;
+
+        public ShardQuery(SessionScope sessionScope, MappedStatement ms, int shard, Transaction trans,
+                Object paramObject, int max, boolean forObject) {
+            this.sessionScope = sessionScope;
+            this.ms = ms;
+            this.shard = shard;
+            this.trans = trans;
+            this.paramObject = paramObject;
+            this.max = max;
+            this.forObject = forObject;
+        }
+
+        public Object call() throws SQLException {
+            SessionScope shardSession = beginSessionScope();
+            try {
+                shardSession.setSqlMapClient(sessionScope.getSqlMapClient());
+                shardSession.setSqlMapExecutor(sessionScope.getSqlMapExecutor());
+                shardSession.setSqlMapTxMgr(sessionScope.getSqlMapTxMgr());
+                shardSession.setDeadline(sessionScope.getDeadline());
+                StatementScope statementScope = beginStatementScope(shardSession, ms);
+                try {
+                    statementScope.setShard(shard);
+                    if (forObject) {
+                        return ms.executeQueryForObject(statementScope, trans, paramObject, null);
+                    }
+                    return ms.executeQueryForList(statementScope, trans, paramObject, SqlExecutor.NO_SKIPPED_RESULTS,
+                            max);
+                } finally {
+                    endStatementScope(statementScope);
+                }
+            } finally {
+                endSessionScope(shardSession);
+            }
+        }
+    }
+
+    /**
+     * Cursor that owns the transaction started for it, and commits and ends it on close.
+     */
+    private class AutoTransactionCursor implements Cursor {
+        private Cursor cursor;
+        private SessionScope sessionScope;
+        private boolean closed;
+
+        public AutoTransactionCursor(Cursor cursor, SessionScope sessionScope) {
+            this.cursor = cursor;
+            this.sessionScope = sessionScope;
+        }
+
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            boolean hasNext = false;
+            try {
+                hasNext = cursor.hasNext();
+            } finally {
+                if (!hasNext) {
+                    closeQuietly();
+                }
+            }
+            return hasNext;
+        }
+
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("The cursor has no more results.");
+            }
+            return cursor.next();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Cursors are read only.");
+        }
+
+        public void close() throws SQLException {
+            if (!closed) {
+                closed = true;
+                try {
+                    cursor.close();
+                    autoCommitTransaction(sessionScope, true);
+                } finally {
+                    autoEndTransaction(sessionScope, true);
+                }
+            }
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        public int getRowCount() {
+            return cursor.getRowCount();
+        }
+
+        private void closeQuietly() {
+            try {
+                close();
+            } catch (SQLException e) {
+                throw new SqlMapException("Error closing cursor.  Cause: " + e, e);
+            }
+        }
+    }
 }
@@ -17,6 +17,8 @@ package com.ibatis.sqlmap.engine.impl;
 
 import com.ibatis.common.jdbc.exception.NestedSQLException;
 import com.ibatis.common.util.PaginatedList;
+import com.ibatis.sqlmap.client.ColumnarResult;
+import com.ibatis.sqlmap.client.Cursor;
 import com.ibatis.sqlmap.client.SqlMapSession;
 import com.ibatis.sqlmap.client.event.RowHandler;
 import com.ibatis.sqlmap.engine.execution.BatchException;
@@ -149,6 +151,26 @@ public class SqlMapSessionImpl implements SqlMapSession {
     return queryForPaginatedList(id, null, pageSize);
   }
 
+  public List queryForKeysetPage(String id, Object paramObject, Object lastKey, int pageSize) throws SQLException {
+    return delegate.queryForKeysetPage(sessionScope, id, paramObject, lastKey, pageSize);
+  }
+
+  public PaginatedList queryForKeysetPaginatedList(String id, Object paramObject, int pageSize) throws SQLException {
+    return delegate.queryForKeysetPaginatedList(sessionScope, id, paramObject, pageSize);
+  }
+
+  public void setDeadline(long deadline) {
+    sessionScope.setDeadline(deadline);
+  }
+
+  public long getDeadline() {
+    return sessionScope.getDeadline();
+  }
+
+  public List queryMulti(String[] ids, Object[] paramObjects) throws SQLException {
+    return delegate.queryMulti(sessionScope, ids, paramObjects);
+  }
+
   public Map queryForMap(String id, Object paramObject, String keyProp) throws SQLException {
     return delegate.queryForMap(sessionScope, id, paramObject, keyProp);
   }
@@ -165,6 +187,18 @@ public class SqlMapSessionImpl implements SqlMapSession {
     queryWithRowHandler(id, null, rowHandler);
   }
 
+  public Cursor queryForCursor(String id, Object paramObject) throws SQLException {
+    return delegate.queryForCursor(sessionScope, id, paramObject, null);
+  }
+
+  public Cursor queryForCursor(String id, Object paramObject, int fetchSize) throws SQLException {
+    return delegate.queryForCursor(sessionScope, id, paramObject, new Integer(fetchSize));
+  }
+
+  public ColumnarResult queryForColumns(String id, Object paramObject) throws SQLException {
+    return delegate.queryForColumns(sessionScope, id, paramObject);
+  }
+
   public void startTransaction() throws SQLException {
     delegate.startTransaction(sessionScope);
   }
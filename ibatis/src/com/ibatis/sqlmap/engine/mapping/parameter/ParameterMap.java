@@ -15,35 +15,29 @@
  */
 package com.ibatis.sqlmap.engine.mapping.parameter;
 
-import com.ibatis.common.logging.Log;
-import com.ibatis.common.logging.LogFactory;
 import com.ibatis.sqlmap.engine.cache.CacheKey;
 import com.ibatis.sqlmap.engine.exchange.DataExchange;
+import com.ibatis.sqlmap.engine.execution.DriverProfile;
 import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
 import com.ibatis.sqlmap.engine.scope.ErrorContext;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
 import com.ibatis.sqlmap.engine.type.CustomTypeHandler;
 import com.ibatis.sqlmap.engine.type.JdbcTypeRegistry;
+import com.ibatis.sqlmap.engine.type.PrimitiveTypeHandler;
 import com.ibatis.sqlmap.engine.type.TypeHandler;
 
-import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.Types;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class ParameterMap {
 
-    private static final Log log = LogFactory.getLog(ParameterMap.class);
-
     private String id;
     private Class parameterClass;
 
     private ParameterMapping[] parameterMappings;
-    private Boolean useSetObjectForNullValue;
-    private int sqlTypeToUseForNullValue;
     private DataExchange dataExchange;
 
     private String resource;
@@ -122,6 +116,20 @@ public class ParameterMap {
      */
     public void setParameters(StatementScope statementScope, PreparedStatement ps, Object[] parameters)
             throws SQLException {
+        setParameters(statementScope, ps, parameters, 0);
+    }
+
+    /**
+     * Set the parameters of one row of a statement that holds several rows
+     *
+     * @param statementScope statementScope
+     * @param ps             ps
+     * @param parameters     parameters
+     * @param offset         the number of placeholders before the first parameter of the row
+     * @throws SQLException SQLException
+     */
+    public void setParameters(StatementScope statementScope, PreparedStatement ps, Object[] parameters, int offset)
+            throws SQLException {
 
         ErrorContext errorContext = statementScope.getErrorContext();
         errorContext.setActivity("applying a parameter map");
@@ -134,7 +142,7 @@ public class ParameterMap {
                 ParameterMapping mapping = parameterMappings[i];
                 errorContext.setMoreInfo(mapping.getErrorString());
                 if (mapping.isInputAllowed()) {
-                    setParameter(ps, mapping, parameters, i);
+                    setParameter(statementScope, ps, mapping, parameters, i, offset + i + 1);
                 }
             }
         }
@@ -162,6 +170,11 @@ public class ParameterMap {
 
     protected void setParameter(PreparedStatement ps, ParameterMapping mapping, Object[] parameters, int i)
             throws SQLException {
+        setParameter(null, ps, mapping, parameters, i, i + 1);
+    }
+
+    protected void setParameter(StatementScope statementScope, PreparedStatement ps, ParameterMapping mapping,
+            Object[] parameters, int i, int parameterIndex) throws SQLException {
         Object value = parameters[i];
         // Apply Null Value
         String nullValueString = mapping.getNullValue();
@@ -175,40 +188,55 @@ public class ParameterMap {
         // Set Parameter
         TypeHandler typeHandler = mapping.getTypeHandler();
         if (value != null) {
-            typeHandler.setParameter(ps, i + 1, value, mapping.getJdbcTypeName());
+            PrimitiveTypeHandler primitiveHandler = mapping.getPrimitiveTypeHandler();
+            if (primitiveHandler == null || !setPrimitiveParameter(primitiveHandler, ps, parameterIndex, value)) {
+                typeHandler.setParameter(ps, parameterIndex, value, mapping.getJdbcTypeName());
+            }
         } else if (typeHandler instanceof CustomTypeHandler) {
-            typeHandler.setParameter(ps, i + 1, value, mapping.getJdbcTypeName());
+            typeHandler.setParameter(ps, parameterIndex, value, mapping.getJdbcTypeName());
         } else {
             int jdbcType = mapping.getJdbcType();
             if (jdbcType != JdbcTypeRegistry.UNKNOWN_TYPE) {
-                ps.setNull(i + 1, jdbcType);
+                ps.setNull(parameterIndex, jdbcType);
             } else {
-                // Cloned from Spring StatementCreatorUtils.java (IBATIS-536)
-                if (useSetObjectForNullValue == null) {
-                    // Keep current JDBC connection preferences for limiting introspections
-                    useSetObjectForNullValue = Boolean.FALSE;
-                    sqlTypeToUseForNullValue = Types.NULL;
-                    try {
-                        DatabaseMetaData dbmd = ps.getConnection().getMetaData();
-                        String databaseProductName = dbmd.getDatabaseProductName();
-                        String jdbcDriverName = dbmd.getDriverName();
-                        if (databaseProductName.startsWith("Informix") || jdbcDriverName.startsWith("Microsoft SQL Server")) {
-                            useSetObjectForNullValue = Boolean.TRUE;
-                        } else if (databaseProductName.startsWith("DB2") || jdbcDriverName.startsWith("jConnect")
-                                || jdbcDriverName.startsWith("SQLServer") || jdbcDriverName.startsWith("Apache Derby Embedded")) {
-                            sqlTypeToUseForNullValue = Types.VARCHAR;
-                        }
-                    } catch (Throwable ex) {
-                        log.debug("Could not check database or driver name: " + ex.getMessage());
-                    }
-                }
-                if (useSetObjectForNullValue.booleanValue()) {
-                    ps.setObject(i + 1, null);
+                // IBATIS-536: drivers disagree on how an untyped null must be bound
+                DriverProfile profile = statementScope == null ? delegate.getDriverProfile(ps.getConnection())
+                        : delegate.getDriverProfile(statementScope, ps.getConnection());
+                if (profile.isUseSetObjectForNullValue()) {
+                    ps.setObject(parameterIndex, null);
                 } else {
-                    ps.setNull(i + 1, sqlTypeToUseForNullValue);
+                    ps.setNull(parameterIndex, profile.getSqlTypeToUseForNullValue());
                 }
             }
         }
     }
 
+    /**
+     * Binds a boxed value with the setter of its primitive type, which goes straight to the JDBC setter.
+     *
+     * @return false if the value is not a wrapper of the primitive type of the handler
+     */
+    private static boolean setPrimitiveParameter(PrimitiveTypeHandler handler, PreparedStatement ps, int parameterIndex,
+            Object value) throws SQLException {
+        Class type = handler.getPrimitiveType();
+        if (type == Integer.TYPE && value instanceof Integer) {
+            handler.setInt(ps, parameterIndex, ((Integer) value).intValue());
+        } else if (type == Long.TYPE && value instanceof Long) {
+            handler.setLong(ps, parameterIndex, ((Long) value).longValue());
+        } else if (type == Short.TYPE && value instanceof Short) {
+            handler.setShort(ps, parameterIndex, ((Short) value).shortValue());
+        } else if (type == Byte.TYPE && value instanceof Byte) {
+            handler.setByte(ps, parameterIndex, ((Byte) value).byteValue());
+        } else if (type == Float.TYPE && value instanceof Float) {
+            handler.setFloat(ps, parameterIndex, ((Float) value).floatValue());
+        } else if (type == Double.TYPE && value instanceof Double) {
+            handler.setDouble(ps, parameterIndex, ((Double) value).doubleValue());
+        } else if (type == Boolean.TYPE && value instanceof Boolean) {
+            handler.setBoolean(ps, parameterIndex, ((Boolean) value).booleanValue());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
 }
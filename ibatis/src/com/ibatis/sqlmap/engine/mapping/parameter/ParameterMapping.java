@@ -18,7 +18,9 @@ package com.ibatis.sqlmap.engine.mapping.parameter;
 import com.ibatis.common.resources.Resources;
 import com.ibatis.sqlmap.client.SqlMapException;
 import com.ibatis.sqlmap.engine.type.JdbcTypeRegistry;
+import com.ibatis.sqlmap.engine.type.PrimitiveTypeHandler;
 import com.ibatis.sqlmap.engine.type.TypeHandler;
+import com.ibatis.sqlmap.engine.type.TypeHandlerFactory;
 
 public class ParameterMapping {
 
@@ -28,6 +30,8 @@ public class ParameterMapping {
 
   private String propertyName;
   private TypeHandler typeHandler;
+  private PrimitiveTypeHandler primitiveTypeHandler;
+  private boolean primitiveTypeHandlerResolved;
   private String typeName;            // this is used for REF types or user-defined types
   private int jdbcType;
   private String jdbcTypeName;
@@ -76,6 +80,22 @@ public class ParameterMapping {
 
   public void setTypeHandler(TypeHandler typeHandler) {
     this.typeHandler = typeHandler;
+    this.primitiveTypeHandlerResolved = false;
+  }
+
+  /**
+   * Gets the type handler as a PrimitiveTypeHandler whose setter can bind a value of its primitive type without going
+   * through setParameter.
+   *
+   * @return the handler, or null if the value must be bound with setParameter
+   */
+  public PrimitiveTypeHandler getPrimitiveTypeHandler() {
+    if (!primitiveTypeHandlerResolved) {
+      primitiveTypeHandler = typeHandler instanceof PrimitiveTypeHandler ? TypeHandlerFactory
+          .getPrimitiveParameterHandler(typeHandler, ((PrimitiveTypeHandler) typeHandler).getPrimitiveType()) : null;
+      primitiveTypeHandlerResolved = true;
+    }
+    return primitiveTypeHandler;
   }
 
   public Class getJavaType() {
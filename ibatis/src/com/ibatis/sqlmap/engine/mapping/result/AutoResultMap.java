@@ -23,12 +23,25 @@ import com.ibatis.sqlmap.engine.type.DomTypeMarker;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * An automatic result map for simple stuff
+ * An automatic result map for simple stuff. The mappings are worked out from the metadata of the result set into an
+ * immutable plain result map, which is what maps the rows: once for the statement, or once for each shape of result
+ * set when remapping is allowed.
  */
 public class AutoResultMap extends ResultMap {
 
+    private static final String KEY_SEPARATOR = "\002";
+    private static final int MAX_PLANS = 64;
+
+    private final boolean allowRemapping;
+
+    // the plan of a statement that is not remapped
+    private volatile ResultMap plan;
+    // plans for remapped result sets, keyed by their column identifiers
+    private final Map plans = new ConcurrentHashMap();
+
     /**
      * Constructor to pass in the SqlMapExecutorDelegate
      *
@@ -41,41 +54,93 @@ public class AutoResultMap extends ResultMap {
         this.allowRemapping = allowRemapping;
     }
 
+    /**
+     * Gets the mappings of the statement's plan. A remapped statement has a plan for each result set, which only
+     * {@link #resolveSubMap} can tell, so it has no mappings of its own.
+     *
+     * @return - the mappings, or null before the first result set or if remapping is allowed
+     */
+    @Override
+    public ResultMapping[] getResultMappings() {
+        ResultMap current = plan;
+        return allowRemapping || current == null ? null : current.getResultMappings();
+    }
+
     @Override
-    public synchronized Object[] getResults(StatementScope statementScope, ResultSet rs) throws SQLException {
-        if (allowRemapping || getResultMappings() == null) {
-            initialize(rs);
+    public ResultMap resolveSubMap(StatementScope statementScope, ResultSet rs) throws SQLException {
+        ResultMap current = plan;
+        if (!allowRemapping) {
+            if (current == null) {
+                current = newPlan(statementScope, rs);
+                plan = current;
+            }
+            return current;
+        }
+        current = (ResultMap) statementScope.getResultSetPlan(this, rs);
+        if (current == null) {
+            ResultSetMetaData rsmd = rs.getMetaData();
+            StringBuilder signature = new StringBuilder();
+            for (int i = 0, n = getColumnCount(statementScope, rsmd); i < n; i++) {
+                signature.append(getColumnIdentifier(rsmd, i + 1)).append(KEY_SEPARATOR);
+            }
+            String key = signature.toString();
+            current = (ResultMap) plans.get(key);
+            if (current == null) {
+                current = newPlan(statementScope, rs);
+                if (plans.size() >= MAX_PLANS) {
+                    plans.clear();
+                }
+                plans.put(key, current);
+            }
+            statementScope.setResultSetPlan(this, rs, current);
         }
-        return super.getResults(statementScope, rs);
+        return current;
+    }
+
+    @Override
+    public Object[] getResults(StatementScope statementScope, ResultSet rs) throws SQLException {
+        return resolveSubMap(statementScope, rs).getResults(statementScope, rs);
+    }
+
+    @Override
+    public Object mapRow(StatementScope statementScope, ResultSet rs, Object resultObject) throws SQLException {
+        return resolveSubMap(statementScope, rs).mapRow(statementScope, rs, resultObject);
     }
 
     @Override
     public Object setResultObjectValues(StatementScope statementScope, Object resultObject, Object[] values) {
-        // synchronization is only needed when remapping is enabled
-        if (allowRemapping) {
-            synchronized (this) {
-                return super.setResultObjectValues(statementScope, resultObject, values);
-            }
+        try {
+            return resolveSubMap(statementScope, statementScope.getResultSet()).setResultObjectValues(statementScope,
+                    resultObject, values);
+        } catch (SQLException e) {
+            throw new SqlMapException("Error automapping columns. Cause: " + e, e);
         }
-        return super.setResultObjectValues(statementScope, resultObject, values);
     }
 
-    private void initialize(ResultSet rs) {
+    private ResultMap newPlan(StatementScope statementScope, ResultSet rs) {
+        List resultMappingList;
         if (getResultClass() == null) {
             throw new SqlMapException("The automatic ResultMap named " + this.getId()
                     + " had a null result class (not allowed).");
         } else if (Map.class.isAssignableFrom(getResultClass())) {
-            initializeMapResults(rs);
+            resultMappingList = initializeMapResults(statementScope, rs);
         } else if (getDelegate().getTypeHandlerFactory().getTypeHandler(getResultClass()) != null) {
-            initializePrimitiveResults(rs);
+            resultMappingList = initializePrimitiveResults(rs);
         } else if (DomTypeMarker.class.isAssignableFrom(getResultClass())) {
-            initializeXmlResults(rs);
+            resultMappingList = initializeXmlResults(statementScope, rs);
         } else {
-            initializeBeanResults(rs);
+            resultMappingList = initializeBeanResults(statementScope, rs);
         }
+        ResultMap resultMap = new ResultMap(getDelegate());
+        resultMap.setId(getId());
+        resultMap.setResultClass(getResultClass());
+        resultMap.setXmlName(getXmlName());
+        resultMap.setResource(getResource());
+        resultMap.setResultMappingList(resultMappingList);
+        return resultMap;
     }
 
-    private void initializeBeanResults(ResultSet rs) {
+    private List initializeBeanResults(StatementScope statementScope, ResultSet rs) {
         try {
             ClassInfo classInfo = ClassInfo.getInstance(getResultClass());
             String[] propertyNames = classInfo.getWriteablePropertyNames();
@@ -87,7 +152,7 @@ public class AutoResultMap extends ResultMap {
 
             List resultMappingList = new ArrayList();
             ResultSetMetaData rsmd = rs.getMetaData();
-            for (int i = 0, n = rsmd.getColumnCount(); i < n; i++) {
+            for (int i = 0, n = getColumnCount(statementScope, rsmd); i < n; i++) {
                 String columnName = getColumnIdentifier(rsmd, i + 1);
                 String upperColumnName = columnName.toUpperCase(java.util.Locale.ENGLISH);
                 String matchedProp = (String) propertyMap.get(upperColumnName);
@@ -115,7 +180,7 @@ public class AutoResultMap extends ResultMap {
                     resultMappingList.add(resultMapping);
                 }
             }
-            setResultMappingList(resultMappingList);
+            return resultMappingList;
 
         } catch (SQLException e) {
             throw new RuntimeException("Error automapping columns. Cause: " + e);
@@ -123,11 +188,11 @@ public class AutoResultMap extends ResultMap {
 
     }
 
-    private void initializeXmlResults(ResultSet rs) {
+    private List initializeXmlResults(StatementScope statementScope, ResultSet rs) {
         try {
             List resultMappingList = new ArrayList();
             ResultSetMetaData rsmd = rs.getMetaData();
-            for (int i = 0, n = rsmd.getColumnCount(); i < n; i++) {
+            for (int i = 0, n = getColumnCount(statementScope, rsmd); i < n; i++) {
                 String columnName = getColumnIdentifier(rsmd, i + 1);
                 ResultMapping resultMapping = new ResultMapping();
                 resultMapping.setPropertyName(columnName);
@@ -136,17 +201,17 @@ public class AutoResultMap extends ResultMap {
                 resultMapping.setTypeHandler(getDelegate().getTypeHandlerFactory().getTypeHandler(String.class));
                 resultMappingList.add(resultMapping);
             }
-            setResultMappingList(resultMappingList);
+            return resultMappingList;
         } catch (SQLException e) {
             throw new RuntimeException("Error automapping columns. Cause: " + e);
         }
     }
 
-    private void initializeMapResults(ResultSet rs) {
+    private List initializeMapResults(StatementScope statementScope, ResultSet rs) {
         try {
             List resultMappingList = new ArrayList();
             ResultSetMetaData rsmd = rs.getMetaData();
-            for (int i = 0, n = rsmd.getColumnCount(); i < n; i++) {
+            for (int i = 0, n = getColumnCount(statementScope, rsmd); i < n; i++) {
                 String columnName = getColumnIdentifier(rsmd, i + 1);
                 ResultMapping resultMapping = new ResultMapping();
                 resultMapping.setPropertyName(columnName);
@@ -156,14 +221,14 @@ public class AutoResultMap extends ResultMap {
                 resultMappingList.add(resultMapping);
             }
 
-            setResultMappingList(resultMappingList);
+            return resultMappingList;
 
         } catch (SQLException e) {
             throw new RuntimeException("Error automapping columns. Cause: " + e);
         }
     }
 
-    private void initializePrimitiveResults(ResultSet rs) {
+    private List initializePrimitiveResults(ResultSet rs) {
         try {
             ResultSetMetaData rsmd = rs.getMetaData();
             String columnName = getColumnIdentifier(rsmd, 1);
@@ -176,13 +241,20 @@ public class AutoResultMap extends ResultMap {
             List resultMappingList = new ArrayList();
             resultMappingList.add(resultMapping);
 
-            setResultMappingList(resultMappingList);
+            return resultMappingList;
 
         } catch (SQLException e) {
             throw new RuntimeException("Error automapping columns. Cause: " + e);
         }
     }
 
+    /**
+     * The number of columns of the statement, without those the dialect added to skip rows.
+     */
+    private static int getColumnCount(StatementScope statementScope, ResultSetMetaData rsmd) throws SQLException {
+        return rsmd.getColumnCount() - statementScope.getAddedColumnCount();
+    }
+
     private String getColumnIdentifier(ResultSetMetaData rsmd, int i) throws SQLException {
         if (delegate.isUseColumnLabel()) {
             return rsmd.getColumnLabel(i);
@@ -15,14 +15,19 @@
  */
 package com.ibatis.sqlmap.engine.mapping.result;
 
+import com.ibatis.common.beans.ClassInfo;
 import com.ibatis.common.beans.Probe;
 import com.ibatis.common.beans.ProbeFactory;
 import com.ibatis.common.jdbc.exception.NestedSQLException;
 
 import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.engine.accessplan.AccessPlanFactory;
 import com.ibatis.sqlmap.engine.exchange.DataExchange;
+import com.ibatis.sqlmap.engine.exchange.JavaBeanDataExchange;
 import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
 import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.mapping.result.loader.LazyLoadGroup;
+import com.ibatis.sqlmap.engine.mapping.result.loader.NestedSelectBatch;
 import com.ibatis.sqlmap.engine.mapping.result.loader.ResultLoader;
 import com.ibatis.sqlmap.engine.mapping.sql.Sql;
 import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
@@ -30,6 +35,7 @@ import com.ibatis.sqlmap.engine.scope.ErrorContext;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
 import com.ibatis.sqlmap.engine.type.DomCollectionTypeMarker;
 import com.ibatis.sqlmap.engine.type.DomTypeMarker;
+import com.ibatis.sqlmap.engine.type.PrimitiveTypeHandler;
 import com.ibatis.sqlmap.engine.type.TypeHandler;
 import com.ibatis.sqlmap.engine.type.TypeHandlerFactory;
 import org.w3c.dom.Document;
@@ -37,7 +43,9 @@ import org.w3c.dom.Document;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -47,6 +55,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Basic implementation of ResultMap interface
@@ -55,16 +64,26 @@ public class ResultMap {
 
   private static final Probe PROBE = ProbeFactory.getProbe();
   private static final String KEY_SEPARATOR = "\002";
+  private static final int MAX_COLUMN_INDEX_PLANS = 64;
 
   private String id;
   private Class resultClass;
 
-  // DO NOT ACCESS EITHER OF THESE OUTSIDE OF THEIR BEAN GETTER/SETTER
   private ResultMapping[] resultMappings;
-  private ThreadLocal remappableResultMappings = new ThreadLocal();
+
+  // column indexes of the result mappings, keyed by the column labels of the result sets they were resolved for. Plans
+  // that fell back to the column names are not kept, as the labels do not tell which columns are behind them.
+  private Map columnIndexPlans = new ConcurrentHashMap();
 
   private DataExchange dataExchange;
 
+  // the handlers whose primitive getters read the columns of primitive bean properties, null for the other mappings
+  private PrimitiveTypeHandler[] primitiveTypeHandlers;
+
+  // generated when bytecode enhancement is enabled and the map is flat, see RowMapperGenerator
+  private volatile RowMapper rowMapper;
+  private volatile boolean rowMapperCompiled;
+
   private List nestedResultMappings;
 
   private Discriminator discriminator;
@@ -77,7 +96,6 @@ public class ResultMap {
 
   protected SqlMapExecutorDelegate delegate;
 
-  protected boolean allowRemapping = false;
   public static final Object NO_VALUE = new Object();
 
   /**
@@ -241,11 +259,7 @@ public class ResultMap {
   }
 
   public ResultMapping[] getResultMappings() {
-    if (allowRemapping) {
-      return (ResultMapping[]) remappableResultMappings.get();
-    } else {
-      return resultMappings;
-    }
+    return resultMappings;
   }
 
   public void setDiscriminator(Discriminator discriminator) {
@@ -284,17 +298,120 @@ public class ResultMap {
    *          - the list
    */
   public void setResultMappingList(List resultMappingList) {
-    if (allowRemapping) {
-      this.remappableResultMappings.set((ResultMapping[]) resultMappingList.toArray(new ResultMapping[resultMappingList
-          .size()]));
-    } else {
-      this.resultMappings = (ResultMapping[]) resultMappingList.toArray(new ResultMapping[resultMappingList.size()]);
-    }
+    this.resultMappings = (ResultMapping[]) resultMappingList.toArray(new ResultMapping[resultMappingList.size()]);
 
     Map props = new HashMap();
     props.put("map", this);
     dataExchange = getDelegate().getDataExchangeFactory().getDataExchangeForClass(resultClass);
     dataExchange.initialize(props);
+    primitiveTypeHandlers = getPrimitiveTypeHandlers();
+    rowMapperCompiled = false;
+  }
+
+  /**
+   * Finds the mappings of primitive bean properties whose type handler can read the column with its primitive getter
+   * instead of getResult.
+   */
+  private PrimitiveTypeHandler[] getPrimitiveTypeHandlers() {
+    if (resultClass == null || !(dataExchange instanceof JavaBeanDataExchange)) {
+      return null;
+    }
+    ClassInfo info = ClassInfo.getInstance(resultClass);
+    PrimitiveTypeHandler[] handlers = new PrimitiveTypeHandler[resultMappings.length];
+    boolean found = false;
+    for (int i = 0; i < resultMappings.length; i++) {
+      ResultMapping mapping = resultMappings[i];
+      String property = mapping.getPropertyName();
+      if (mapping.getStatementName() == null && mapping.getNestedResultMapName() == null && property != null
+          && property.indexOf('.') == -1 && property.indexOf('[') == -1 && info.hasWritableProperty(property)) {
+        Class type = info.getSetterType(property);
+        handlers[i] = TypeHandlerFactory.getPrimitiveTypeHandler(mapping.getTypeHandler(), type);
+        found = found || handlers[i] != null;
+      }
+    }
+    return found ? handlers : null;
+  }
+
+  /**
+   * Generates the row mapper of this result map, unless bytecode enhancement is disabled or the map cannot be mapped
+   * without the interpreted path.
+   */
+  public void compileRowMapper() {
+    if (!rowMapperCompiled) {
+      rowMapper = AccessPlanFactory.isBytecodeEnhancementEnabled() ? RowMapperGenerator.generate(this) : null;
+      rowMapperCompiled = true;
+    }
+  }
+
+  /**
+   * Maps the current row of a result set to a result object, through the generated row mapper when there is one and
+   * otherwise with {@link #getResults} and {@link #setResultObjectValues}.
+   * <p>
+   * The row mapper sets each property as it reads its column, so a row it fails on may be partly mapped. It is only
+   * given the objects created here: such a row is mapped again into a new object by the interpreted path, which
+   * reports the failing property or converts the value, and the partly mapped object is dropped. The setters it had
+   * called are called again on the new object. An object passed in by the caller is always mapped by the interpreted
+   * path, so that none of its setters run twice.
+   *
+   * @param statementScope
+   *          scope of the request
+   * @param rs
+   *          ResultSet to read from
+   * @param resultObject
+   *          the object to map the row into, or null to create one
+   *
+   * @return the result object, or NO_VALUE if the row added to an earlier one
+   *
+   * @throws SQLException
+   *           if a column cannot be read
+   */
+  public Object mapRow(StatementScope statementScope, ResultSet rs, Object resultObject) throws SQLException {
+    compileRowMapper();
+    RowMapper mapper = rowMapper;
+    if (mapper != null && resultObject == null) {
+      int[] columnIndexes = getColumnIndexes(statementScope, rs, resultMappings);
+      if (isResolved(columnIndexes)) {
+        ErrorContext errorContext = statementScope.getErrorContext();
+        errorContext.setActivity("applying a result map");
+        errorContext.setObjectId(this.getId());
+        errorContext.setResource(this.getResource());
+        errorContext.setMoreInfo("Check the result map.");
+        try {
+          Object object = null;
+          if (!ResultObjectFactoryUtil.hasResultObjectFactory()) {
+            object = mapper.newInstance();
+          }
+          if (object == null) {
+            object = ResultObjectFactoryUtil.createObjectThroughFactory(resultClass);
+          }
+          mapper.mapRow(rs, columnIndexes, object);
+          return object;
+        } catch (SQLException e) {
+          throw e;
+        } catch (Exception e) {
+          // mapped again into a new object by the interpreted path, which reports the failing property or converts the
+          // value
+          Object object = setResultObjectValues(statementScope, null, getResults(statementScope, rs));
+          // the row was valid, so the generated mapper cannot be trusted with this map
+          rowMapper = null;
+          return object;
+        }
+      }
+    }
+    return setResultObjectValues(statementScope, resultObject, getResults(statementScope, rs));
+  }
+
+  RowMapper getRowMapper() {
+    return rowMapper;
+  }
+
+  private static boolean isResolved(int[] columnIndexes) {
+    for (int i = 0; i < columnIndexes.length; i++) {
+      if (columnIndexes[i] <= 0) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -327,6 +444,7 @@ public class ResultMap {
 
     boolean foundData = false;
     Object[] columnValues = new Object[getResultMappings().length];
+    int[] columnIndexes = getColumnIndexes(statementScope, rs, getResultMappings());
     for (int i = 0; i < getResultMappings().length; i++) {
       ResultMapping mapping = (ResultMapping) getResultMappings()[i];
       errorContext.setMoreInfo(mapping.getErrorString());
@@ -353,7 +471,11 @@ public class ResultMap {
         }
         foundData = foundData || columnValues[i] != null;
       } else if (mapping.getNestedResultMapName() == null) {
-        columnValues[i] = getPrimitiveResultMappingValue(rs, mapping);
+        if (primitiveTypeHandlers != null && primitiveTypeHandlers[i] != null && columnIndexes[i] > 0) {
+          columnValues[i] = getPrimitiveValue(rs, primitiveTypeHandlers[i], columnIndexes[i]);
+        } else {
+          columnValues[i] = getPrimitiveResultMappingValue(rs, mapping, columnIndexes[i]);
+        }
         if (columnValues[i] == null) {
           columnValues[i] = doNullMapping(columnValues[i], mapping);
         } else {
@@ -369,6 +491,8 @@ public class ResultMap {
 
   public Object setResultObjectValues(StatementScope statementScope, Object resultObject, Object[] values) {
     final String previousNestedKey = statementScope.getCurrentNestedKey();
+    NestedSelectBatch batch = statementScope.getNestedSelectBatch();
+    List rowLoads = batch == null ? null : batch.takeRowLoads();
     String ukey = (String) getUniqueKey(statementScope.getCurrentNestedKey(), values);
     Map uniqueKeys = statementScope.getUniqueKeys(this);
     statementScope.setCurrentNestedKey(ukey);
@@ -382,6 +506,9 @@ public class ResultMap {
       // Unique key is NOT known, so create a new result object and then process additional
       // results.
       resultObject = dataExchange.setData(statementScope, this, resultObject, values);
+      if (rowLoads != null && resultObject != null) {
+        batch.bind(resultObject, rowLoads);
+      }
       // Lazy init key set, only if we're grouped by something (i.e. ukey != null)
       if (ukey != null) {
         if (uniqueKeys == null) {
@@ -524,7 +651,28 @@ public class ResultMap {
           }
         }
 
-        result = ResultLoader.loadResult(client, statementName, parameterObject, targetType);
+        LazyLoadGroup group = null;
+        if (mapping.isBatch() && typeHandlerFactory.hasTypeHandler(parameterObject.getClass())
+            && !DomTypeMarker.class.isAssignableFrom(targetType)
+            && !DomCollectionTypeMarker.class.isAssignableFrom(targetType)) {
+          NestedSelectBatch batch = statementScope.getNestedSelectBatch();
+          if (ResultLoader.isLazy(client, targetType)) {
+            // the first lazy loader touched loads its siblings from this result set as well
+            group = statementScope.getLazyLoadGroup(mapping);
+            if (group == null) {
+              Statement statement = rs.getStatement();
+              group = new LazyLoadGroup(client, mapping, NestedSelectBatch.getMaxKeys(client, statementScope,
+                  statement == null ? null : statement.getConnection()));
+              statementScope.setLazyLoadGroup(mapping, group);
+            }
+          } else if (batch != null) {
+            // loaded for all rows at once when the result set has been read
+            batch.add(mapping, parameterObject, targetType);
+            return null;
+          }
+        }
+
+        result = ResultLoader.loadResult(client, statementName, parameterObject, targetType, group);
 
         String nullValue = mapping.getNullValue();
         if (result == null && nullValue != null) {
@@ -623,13 +771,97 @@ public class ResultMap {
     return parameterObject;
   }
 
+  /**
+   * Resolves the column names of the result mappings to their index in the result set once per result set, so that the
+   * rows are read by index instead of having the driver look each column up by name. The indexes are kept for each
+   * shape of result set seen, keyed by its column labels, unless a column was only found by its column name.
+   *
+   * @param statementScope
+   *          scope of the request
+   * @param rs
+   *          the result set being read
+   * @param mappings
+   *          the result mappings
+   *
+   * @return the index of the column of each mapping, or 0 for a mapping read by name or column index
+   */
+  protected int[] getColumnIndexes(StatementScope statementScope, ResultSet rs, ResultMapping[] mappings) {
+    int[] indexes = (int[]) statementScope.getResultSetPlan(this, rs);
+    if (indexes != null && indexes.length == mappings.length) {
+      return indexes;
+    }
+    try {
+      ResultSetMetaData metaData = rs.getMetaData();
+      int columnCount = metaData.getColumnCount();
+      String[] labels = new String[columnCount];
+      StringBuilder signature = new StringBuilder();
+      for (int i = 0; i < columnCount; i++) {
+        labels[i] = metaData.getColumnLabel(i + 1);
+        signature.append(labels[i]).append(KEY_SEPARATOR);
+      }
+      String key = signature.toString();
+      indexes = (int[]) columnIndexPlans.get(key);
+      if (indexes == null || indexes.length != mappings.length) {
+        indexes = new int[mappings.length];
+        boolean foundByName = false;
+        for (int i = 0; i < mappings.length; i++) {
+          String columnName = mappings[i].getColumnName();
+          if (columnName != null) {
+            indexes[i] = findColumnLabel(labels, columnName);
+            if (indexes[i] == 0) {
+              indexes[i] = findColumnName(metaData, columnName);
+              foundByName = foundByName || indexes[i] > 0;
+            }
+          }
+        }
+        if (!foundByName) {
+          if (columnIndexPlans.size() >= MAX_COLUMN_INDEX_PLANS) {
+            columnIndexPlans.clear();
+          }
+          columnIndexPlans.put(key, indexes);
+        }
+      }
+    } catch (SQLException e) {
+      // no usable metadata, read the columns by name
+      indexes = new int[mappings.length];
+    }
+    statementScope.setResultSetPlan(this, rs, indexes);
+    return indexes;
+  }
+
+  private static int findColumnLabel(String[] labels, String columnName) {
+    for (int i = 0; i < labels.length; i++) {
+      if (columnName.equalsIgnoreCase(labels[i])) {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  private static int findColumnName(ResultSetMetaData metaData, String columnName) throws SQLException {
+    for (int i = 0, n = metaData.getColumnCount(); i < n; i++) {
+      if (columnName.equalsIgnoreCase(metaData.getColumnName(i + 1))) {
+        return i + 1;
+      }
+    }
+    // left to the driver, which may know other names for the column
+    return 0;
+  }
+
   protected Object getPrimitiveResultMappingValue(ResultSet rs, ResultMapping mapping) throws SQLException {
+    return getPrimitiveResultMappingValue(rs, mapping, 0);
+  }
+
+  protected Object getPrimitiveResultMappingValue(ResultSet rs, ResultMapping mapping, int resolvedColumnIndex)
+      throws SQLException {
     Object value = null;
     TypeHandler typeHandler = mapping.getTypeHandler();
     if (typeHandler != null) {
       String columnName = mapping.getColumnName();
       int columnIndex = mapping.getColumnIndex();
-      if (columnName == null) {
+      if (resolvedColumnIndex > 0) {
+        value = typeHandler.getResult(rs, resolvedColumnIndex);
+      } else if (columnName == null) {
         value = typeHandler.getResult(rs, columnIndex);
       } else {
         value = typeHandler.getResult(rs, columnName);
@@ -642,6 +874,32 @@ public class ResultMap {
     return value;
   }
 
+  /**
+   * Reads a column with the getter of the primitive type of its handler. Both access plans unbox the value again to
+   * pass it to the setter, so it is boxed with valueOf, which reuses the cached wrappers of small values.
+   */
+  private static Object getPrimitiveValue(ResultSet rs, PrimitiveTypeHandler typeHandler, int columnIndex)
+      throws SQLException {
+    Class type = typeHandler.getPrimitiveType();
+    Object value;
+    if (type == Integer.TYPE) {
+      value = Integer.valueOf(typeHandler.getInt(rs, columnIndex));
+    } else if (type == Long.TYPE) {
+      value = Long.valueOf(typeHandler.getLong(rs, columnIndex));
+    } else if (type == Short.TYPE) {
+      value = Short.valueOf(typeHandler.getShort(rs, columnIndex));
+    } else if (type == Byte.TYPE) {
+      value = Byte.valueOf(typeHandler.getByte(rs, columnIndex));
+    } else if (type == Float.TYPE) {
+      value = Float.valueOf(typeHandler.getFloat(rs, columnIndex));
+    } else if (type == Double.TYPE) {
+      value = Double.valueOf(typeHandler.getDouble(rs, columnIndex));
+    } else {
+      value = Boolean.valueOf(typeHandler.getBoolean(rs, columnIndex));
+    }
+    return rs.wasNull() ? null : value;
+  }
+
   protected Object doNullMapping(Object value, ResultMapping mapping) throws SqlMapException {
     if (value == null) {
       TypeHandler typeHandler = mapping.getTypeHandler();
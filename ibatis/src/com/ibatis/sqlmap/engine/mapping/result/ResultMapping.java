@@ -35,6 +35,9 @@ public class ResultMapping {
   private Class javaType;
 
   private String nestedResultMapName;
+  private boolean batch;
+  private String batchStatementName;
+  private String batchKey;
 
   private String errorString;
 
@@ -224,6 +227,64 @@ public class ResultMapping {
     this.statementName = statementName;
   }
 
+  /**
+   * Getter for the batch flag; when set, the nested select is run once for all rows of the result set instead of once
+   * per row
+   *
+   * @return - true if the nested select is batch loaded
+   */
+  public boolean isBatch() {
+    return batch;
+  }
+
+  /**
+   * Setter for the batch flag
+   *
+   * @param batch
+   *          - true to batch load the nested select
+   */
+  public void setBatch(boolean batch) {
+    this.batch = batch;
+  }
+
+  /**
+   * Getter for the name of the statement that loads the nested values for a list of keys at once
+   *
+   * @return - the name, or null to rewrite the nested select into an IN-list query
+   */
+  public String getBatchStatementName() {
+    return batchStatementName;
+  }
+
+  /**
+   * Setter for the name of the statement that loads the nested values for a list of keys at once
+   *
+   * @param batchStatementName
+   *          - the name
+   */
+  public void setBatchStatementName(String batchStatementName) {
+    this.batchStatementName = batchStatementName;
+  }
+
+  /**
+   * Getter for the property of the nested results that holds the key they were selected by
+   *
+   * @return - the property name
+   */
+  public String getBatchKey() {
+    return batchKey;
+  }
+
+  /**
+   * Setter for the property of the nested results that holds the key they were selected by
+   *
+   * @param batchKey
+   *          - the property name
+   */
+  public void setBatchKey(String batchKey) {
+    this.batchKey = batchKey;
+  }
+
   public String getNestedResultMapName() {
     return nestedResultMapName;
   }
@@ -86,6 +86,16 @@ public class ResultObjectFactoryUtil {
     return obj;
   }
 
+  /**
+   * Tells if a ResultObjectFactory is configured for the statement being executed, in which case result objects must
+   * be created through createObjectThroughFactory.
+   *
+   * @return true if there is a factory
+   */
+  public static boolean hasResultObjectFactory() {
+    return getCurrentFactorySettings().getResultObjectFactory() != null;
+  }
+
   /**
    * This method creates object using iBATIS' normal mechanism. We translate List and Collection to ArrayList, and Set
    * to HashSet because these interfaces may be requested in nested resultMaps and we want to supply default
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.result;
+
+import com.ibatis.common.beans.ClassInfo;
+import com.ibatis.common.beans.Invoker;
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.engine.type.TypeHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Base class of the row mappers generated for result maps. A row mapper reads each column of the current row with the
+ * JDBC getter of its type and passes the value straight to the setter of the result object, instead of collecting the
+ * row in an array of values and handing it to the data exchange.
+ *
+ * @see RowMapperGenerator
+ */
+public abstract class RowMapper {
+
+  protected TypeHandler[] typeHandlers;
+
+  private String[] nullValues;
+  private Invoker[] setters;
+
+  protected RowMapper() {
+  }
+
+  void initialize(TypeHandler[] typeHandlers, String[] nullValues, Invoker[] setters) {
+    this.typeHandlers = typeHandlers;
+    this.nullValues = nullValues;
+    this.setters = setters;
+  }
+
+  /**
+   * Creates a result object with the no argument constructor of the result class
+   *
+   * @return the new object, or null if the result class has no public no argument constructor
+   */
+  public abstract Object newInstance();
+
+  /**
+   * Sets the properties of a result object from the current row
+   *
+   * @param rs
+   *          the result set, positioned on the row
+   * @param columnIndexes
+   *          the index of the column of each result mapping
+   * @param object
+   *          the result object
+   *
+   * @throws SQLException
+   *           if a column cannot be read
+   */
+  public abstract void mapRow(ResultSet rs, int[] columnIndexes, Object object) throws SQLException;
+
+  /**
+   * Sets a property whose column was null to the null value of its mapping, if it has one.
+   *
+   * @param object
+   *          the result object
+   * @param mapping
+   *          the index of the result mapping
+   */
+  protected final void setNull(Object object, int mapping) {
+    Object value = nullValues[mapping] == null ? null : typeHandlers[mapping].valueOf(nullValues[mapping]);
+    try {
+      setters[mapping].invoke(object, new Object[] { value });
+    } catch (Throwable t) {
+      throw new SqlMapException("Could not set a null column to '" + value + "'.  Cause: "
+          + ClassInfo.unwrapThrowable(t), t);
+    }
+  }
+
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.result;
+
+import com.ibatis.common.beans.ClassInfo;
+import com.ibatis.common.beans.Invoker;
+import com.ibatis.common.beans.MethodInvoker;
+import com.ibatis.sqlmap.engine.accessplan.ClassFileWriter;
+import com.ibatis.sqlmap.engine.accessplan.ClassFileWriter.Code;
+import com.ibatis.sqlmap.engine.exchange.JavaBeanDataExchange;
+import com.ibatis.sqlmap.engine.type.BigDecimalTypeHandler;
+import com.ibatis.sqlmap.engine.type.BooleanTypeHandler;
+import com.ibatis.sqlmap.engine.type.ByteTypeHandler;
+import com.ibatis.sqlmap.engine.type.DoubleTypeHandler;
+import com.ibatis.sqlmap.engine.type.FloatTypeHandler;
+import com.ibatis.sqlmap.engine.type.IntegerTypeHandler;
+import com.ibatis.sqlmap.engine.type.LongTypeHandler;
+import com.ibatis.sqlmap.engine.type.PrimitiveTypeHandler;
+import com.ibatis.sqlmap.engine.type.ShortTypeHandler;
+import com.ibatis.sqlmap.engine.type.StringTypeHandler;
+import com.ibatis.sqlmap.engine.type.TypeHandler;
+import com.ibatis.sqlmap.engine.type.TypeHandlerFactory;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the class file of a {@link RowMapper} for a result map. A primitive property is read with the accessor of its
+ * {@link PrimitiveTypeHandler} (<code>getInt</code>, <code>getLong</code>, ...) and passed to the setter without
+ * boxing. Other columns handled by one of the standard type handlers are read with the JDBC getter that handler uses,
+ * and any other column through its own type handler.
+ * <p>
+ * Only flat result maps into public beans are supported: a result map with a discriminator, nested selects, nested
+ * result maps or groupBy, one that maps into a Map, a DOM or a simple type, or one whose properties cannot all be set
+ * directly, makes {@link #generate} return null and is mapped by the interpreted path.
+ */
+class RowMapperGenerator {
+
+  private static final String ROW_MAPPER = "com/ibatis/sqlmap/engine/mapping/result/RowMapper";
+  private static final String TYPE_HANDLER = "com/ibatis/sqlmap/engine/type/TypeHandler";
+  private static final String PRIMITIVE_TYPE_HANDLER = "com/ibatis/sqlmap/engine/type/PrimitiveTypeHandler";
+  private static final String RESULT_SET = "java/sql/ResultSet";
+  private static final String GENERATED_PREFIX = "com.ibatis.sqlmap.engine.mapping.result.generated.RowMapper";
+
+  private static final int MAX_CODE_LENGTH = Short.MAX_VALUE;
+
+  private static int generatedCount;
+
+  // opcodes
+  private static final int ACONST_NULL = 0x01;
+  private static final int ALOAD = 0x19;
+  private static final int ALOAD_0 = 0x2a;
+  private static final int ALOAD_1 = 0x2b;
+  private static final int ALOAD_2 = 0x2c;
+  private static final int ALOAD_3 = 0x2d;
+  private static final int IALOAD = 0x2e;
+  private static final int AALOAD = 0x32;
+  private static final int ASTORE = 0x3a;
+  private static final int POP = 0x57;
+  private static final int POP2 = 0x58;
+  private static final int DUP = 0x59;
+  private static final int IFNE = 0x9a;
+  private static final int GOTO = 0xa7;
+  private static final int ARETURN = 0xb0;
+  private static final int RETURN = 0xb1;
+  private static final int GETFIELD = 0xb4;
+  private static final int INVOKEVIRTUAL = 0xb6;
+  private static final int INVOKESPECIAL = 0xb7;
+  private static final int INVOKESTATIC = 0xb8;
+  private static final int INVOKEINTERFACE = 0xb9;
+  private static final int NEW = 0xbb;
+  private static final int CHECKCAST = 0xc0;
+  private static final int IFNULL = 0xc6;
+
+  // local variable holding the result object cast to the result class
+  private static final int BEAN = 4;
+
+  private static final Map JDBC_GETTERS = new HashMap();
+  private static final Map JDBC_TYPES = new HashMap();
+
+  static {
+    addJdbcGetter(IntegerTypeHandler.class, "getInt", Integer.TYPE);
+    addJdbcGetter(LongTypeHandler.class, "getLong", Long.TYPE);
+    addJdbcGetter(ShortTypeHandler.class, "getShort", Short.TYPE);
+    addJdbcGetter(ByteTypeHandler.class, "getByte", Byte.TYPE);
+    addJdbcGetter(FloatTypeHandler.class, "getFloat", Float.TYPE);
+    addJdbcGetter(DoubleTypeHandler.class, "getDouble", Double.TYPE);
+    addJdbcGetter(BooleanTypeHandler.class, "getBoolean", Boolean.TYPE);
+    addJdbcGetter(StringTypeHandler.class, "getString", String.class);
+    addJdbcGetter(BigDecimalTypeHandler.class, "getBigDecimal", BigDecimal.class);
+  }
+
+  private static void addJdbcGetter(Class typeHandlerClass, String getter, Class type) {
+    JDBC_GETTERS.put(typeHandlerClass, getter);
+    JDBC_TYPES.put(typeHandlerClass, type);
+  }
+
+  private ClassFileWriter writer = new ClassFileWriter();
+
+  private RowMapperGenerator() {
+  }
+
+  /**
+   * Generates and loads a row mapper.
+   *
+   * @param resultMap
+   *          the result map
+   *
+   * @return the row mapper, or null if the result map has to be mapped by the interpreted path
+   */
+  static RowMapper generate(ResultMap resultMap) {
+    Class resultClass = resultMap.getResultClass();
+    ResultMapping[] mappings = resultMap.getResultMappings();
+    if (resultClass == null || !Modifier.isPublic(resultClass.getModifiers()) || resultClass.isInterface()
+        || resultMap.getDiscriminator() != null || resultMap.getNestedResultMappings() != null
+        || resultMap.hasGroupBy() || !(resultMap.getDataExchange() instanceof JavaBeanDataExchange)
+        || mappings == null || mappings.length == 0) {
+      return null;
+    }
+
+    ClassInfo info = ClassInfo.getInstance(resultClass);
+    Method[] setters = new Method[mappings.length];
+    Invoker[] setInvokers = new Invoker[mappings.length];
+    TypeHandler[] typeHandlers = new TypeHandler[mappings.length];
+    String[] nullValues = new String[mappings.length];
+    for (int i = 0; i < mappings.length; i++) {
+      ResultMapping mapping = mappings[i];
+      String property = mapping.getPropertyName();
+      if (mapping.getStatementName() != null || mapping.getNestedResultMapName() != null
+          || mapping.getColumnName() == null || mapping.getTypeHandler() == null || property == null
+          || property.indexOf('.') > -1 || property.indexOf('[') > -1 || !info.hasWritableProperty(property)) {
+        return null;
+      }
+      setInvokers[i] = info.getSetInvoker(property);
+      setters[i] = getSetter(setInvokers[i]);
+      typeHandlers[i] = mapping.getTypeHandler();
+      nullValues[i] = mapping.getNullValue();
+      if (setters[i] == null || !canRead(typeHandlers[i], setters[i].getParameterTypes()[0])) {
+        return null;
+      }
+    }
+    Constructor constructor = null;
+    if (!Modifier.isAbstract(resultClass.getModifiers())) {
+      try {
+        constructor = resultClass.getConstructor(new Class[0]);
+      } catch (NoSuchMethodException e) {
+        // instances are left to the ResultObjectFactoryUtil
+      }
+    }
+
+    String name;
+    synchronized (RowMapperGenerator.class) {
+      name = GENERATED_PREFIX + (++generatedCount);
+    }
+    byte[] classFile = new RowMapperGenerator().writeClass(name.replace('.', '/'), resultClass, setters,
+        typeHandlers, nullValues, constructor != null);
+    if (classFile == null) {
+      return null;
+    }
+    Class mapperClass = ClassFileWriter.defineClass(name, classFile, resultClass.getClassLoader(), new Class[] {
+        RowMapper.class, TypeHandler.class, PrimitiveTypeHandler.class });
+    try {
+      RowMapper rowMapper = (RowMapper) mapperClass.newInstance();
+      rowMapper.initialize(typeHandlers, nullValues, setInvokers);
+      return rowMapper;
+    } catch (Exception e) {
+      return null;
+    } catch (LinkageError e) {
+      return null;
+    }
+  }
+
+  private static Method getSetter(Invoker invoker) {
+    if (!(invoker instanceof MethodInvoker)) {
+      return null;
+    }
+    Method method = ((MethodInvoker) invoker).getMethod();
+    if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(method.getDeclaringClass().getModifiers())
+        || !isAccessible(method.getParameterTypes()[0]) || !isAccessible(method.getReturnType())) {
+      return null;
+    }
+    return method;
+  }
+
+  private static boolean isAccessible(Class type) {
+    while (type.isArray()) {
+      type = type.getComponentType();
+    }
+    return type.isPrimitive() || Modifier.isPublic(type.getModifiers());
+  }
+
+  /**
+   * Whether the value of a column can be passed to a setter exactly as the interpreted path would pass it. Primitive
+   * properties need a primitive type handler of their own type, as the access plan would otherwise convert the value.
+   */
+  private static boolean canRead(TypeHandler typeHandler, Class propertyType) {
+    Class jdbcType = (Class) JDBC_TYPES.get(typeHandler.getClass());
+    if (propertyType.isPrimitive()) {
+      return TypeHandlerFactory.getPrimitiveTypeHandler(typeHandler, propertyType) != null;
+    } else if (jdbcType != null && jdbcType.isPrimitive()) {
+      return propertyType.isAssignableFrom(ClassFileWriter.getWrapperType(jdbcType));
+    } else if (jdbcType != null) {
+      return propertyType.isAssignableFrom(jdbcType);
+    } else {
+      return true;
+    }
+  }
+
+  private byte[] writeClass(String name, Class resultClass, Method[] setters, TypeHandler[] typeHandlers,
+      String[] nullValues, boolean instantiable) {
+    String bean = ClassFileWriter.internalName(resultClass);
+
+    // <init>: super()
+    Code code = new Code();
+    code.op(ALOAD_0);
+    code.op(INVOKESPECIAL, writer.methodRef(ROW_MAPPER, "<init>", "()V"));
+    code.op(RETURN);
+    writer.addMethod("<init>", "()V", 1, 1, code);
+
+    // mapRow: read each column and call its setter
+    code = new Code();
+    code.op(ALOAD_3);
+    code.op(CHECKCAST, writer.classRef(bean));
+    code.op(ASTORE);
+    code.u1(BEAN);
+    for (int i = 0; i < setters.length; i++) {
+      Class propertyType = setters[i].getParameterTypes()[0];
+      String jdbcGetter = (String) JDBC_GETTERS.get(typeHandlers[i].getClass());
+      Class jdbcType = (Class) JDBC_TYPES.get(typeHandlers[i].getClass());
+
+      code.op(ALOAD);
+      code.u1(BEAN);
+      int ifNull;
+      if (propertyType.isPrimitive()) {
+        // value = ((PrimitiveTypeHandler) typeHandlers[i]).getX(rs, columnIndexes[i]); if (rs.wasNull()) ...
+        jdbcType = propertyType;
+        String typeName = propertyType.getName();
+        String getter = "get" + Character.toUpperCase(typeName.charAt(0)) + typeName.substring(1);
+        code.op(ALOAD_0);
+        code.op(GETFIELD, writer.fieldRef(ROW_MAPPER, "typeHandlers", "[L" + TYPE_HANDLER + ";"));
+        code.pushInt(i);
+        code.op(AALOAD);
+        code.op(CHECKCAST, writer.classRef(PRIMITIVE_TYPE_HANDLER));
+        code.op(ALOAD_1);
+        code.op(ALOAD_2);
+        code.pushInt(i);
+        code.op(IALOAD);
+        code.op(INVOKEINTERFACE, writer.interfaceMethodRef(PRIMITIVE_TYPE_HANDLER, getter, "(L" + RESULT_SET + ";I)"
+            + ClassFileWriter.descriptor(propertyType)));
+        code.u1(3);
+        code.u1(0);
+        code.op(ALOAD_1);
+        code.op(INVOKEINTERFACE, writer.interfaceMethodRef(RESULT_SET, "wasNull", "()Z"));
+        code.u1(1);
+        code.u1(0);
+        ifNull = code.jump(IFNE);
+      } else if (jdbcGetter != null) {
+        // value = rs.getX(columnIndexes[i]); if (rs.wasNull()) ...
+        code.op(ALOAD_1);
+        code.op(ALOAD_2);
+        code.pushInt(i);
+        code.op(IALOAD);
+        String descriptor = "(I)" + ClassFileWriter.descriptor(jdbcType);
+        code.op(INVOKEINTERFACE, writer.interfaceMethodRef(RESULT_SET, jdbcGetter, descriptor));
+        code.u1(2);
+        code.u1(0);
+        code.op(ALOAD_1);
+        code.op(INVOKEINTERFACE, writer.interfaceMethodRef(RESULT_SET, "wasNull", "()Z"));
+        code.u1(1);
+        code.u1(0);
+        ifNull = code.jump(IFNE);
+        if (jdbcType.isPrimitive()) {
+          String wrapper = ClassFileWriter.internalName(ClassFileWriter.getWrapperType(jdbcType));
+          code.op(INVOKESTATIC, writer.methodRef(wrapper, "valueOf", "(" + ClassFileWriter.descriptor(jdbcType) + ")L"
+              + wrapper + ";"));
+        }
+      } else {
+        // value = typeHandlers[i].getResult(rs, columnIndexes[i]); if (value == null) ...
+        code.op(ALOAD_0);
+        code.op(GETFIELD, writer.fieldRef(ROW_MAPPER, "typeHandlers", "[L" + TYPE_HANDLER + ";"));
+        code.pushInt(i);
+        code.op(AALOAD);
+        code.op(ALOAD_1);
+        code.op(ALOAD_2);
+        code.pushInt(i);
+        code.op(IALOAD);
+        code.op(INVOKEINTERFACE, writer.interfaceMethodRef(TYPE_HANDLER, "getResult", "(L" + RESULT_SET
+            + ";I)Ljava/lang/Object;"));
+        code.u1(3);
+        code.u1(0);
+        code.op(DUP);
+        ifNull = code.jump(IFNULL);
+        if (propertyType != Object.class) {
+          code.op(CHECKCAST, writer.classRef(ClassFileWriter.internalName(propertyType)));
+        }
+      }
+      writeSetterCall(code, bean, setters[i]);
+      int end = code.jump(GOTO);
+
+      // the column was null: drop the value, then set null or the null value of the mapping
+      code.jumpHere(ifNull);
+      code.op(jdbcType == Long.TYPE || jdbcType == Double.TYPE ? POP2 : POP);
+      if (!propertyType.isPrimitive() && nullValues[i] == null) {
+        code.op(ACONST_NULL);
+        writeSetterCall(code, bean, setters[i]);
+      } else {
+        code.op(POP);
+        code.op(ALOAD_0);
+        code.op(ALOAD);
+        code.u1(BEAN);
+        code.pushInt(i);
+        code.op(INVOKEVIRTUAL, writer.methodRef(ROW_MAPPER, "setNull", "(Ljava/lang/Object;I)V"));
+      }
+      code.jumpHere(end);
+
+      if (code.length() > MAX_CODE_LENGTH) {
+        // too long for the 16 bit jump offsets
+        return null;
+      }
+    }
+    code.op(RETURN);
+    writer.addMethod("mapRow", "(L" + RESULT_SET + ";[ILjava/lang/Object;)V", 6, 5, code);
+
+    // newInstance: new Bean(), or null
+    code = new Code();
+    if (instantiable) {
+      code.op(NEW, writer.classRef(bean));
+      code.op(DUP);
+      code.op(INVOKESPECIAL, writer.methodRef(bean, "<init>", "()V"));
+    } else {
+      code.op(ACONST_NULL);
+    }
+    code.op(ARETURN);
+    writer.addMethod("newInstance", "()Ljava/lang/Object;", 2, 1, code);
+
+    return writer.toByteArray(name, ROW_MAPPER);
+  }
+
+  private void writeSetterCall(Code code, String bean, Method setter) {
+    code.op(INVOKEVIRTUAL, writer.methodRef(bean, setter.getName(), ClassFileWriter.methodDescriptor(setter)));
+    code.popResult(setter.getReturnType());
+  }
+
+}
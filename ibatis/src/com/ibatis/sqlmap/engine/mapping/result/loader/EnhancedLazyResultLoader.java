@@ -51,7 +51,26 @@ public class EnhancedLazyResultLoader {
    */
   public EnhancedLazyResultLoader(SqlMapClientImpl client, String statementName, Object parameterObject,
       Class targetType) {
-    loader = new EnhancedLazyResultLoaderImpl(client, statementName, parameterObject, targetType);
+    this(client, statementName, parameterObject, targetType, null);
+  }
+
+  /**
+   * Constructor for an enhanced lazy list loader that loads with the other loaders of its group
+   *
+   * @param client
+   *          - the client that is creating the lazy list
+   * @param statementName
+   *          - the statement to be used to build the list
+   * @param parameterObject
+   *          - the parameter object to be used to build the list
+   * @param targetType
+   *          - the type we are putting data into
+   * @param group
+   *          - the load group, or null to load on its own
+   */
+  public EnhancedLazyResultLoader(SqlMapClientImpl client, String statementName, Object parameterObject,
+      Class targetType, LazyLoadGroup group) {
+    loader = new EnhancedLazyResultLoaderImpl(client, statementName, parameterObject, targetType, group);
   }
 
   /**
@@ -72,6 +91,7 @@ public class EnhancedLazyResultLoader {
     protected String statementName;
     protected Object parameterObject;
     protected Class targetType;
+    protected LazyLoadGroup group;
 
     protected boolean loaded;
     protected Object resultObject;
@@ -87,13 +107,16 @@ public class EnhancedLazyResultLoader {
      *          - the parameter object to be used to build the list
      * @param targetType
      *          - the type we are putting data into
+     * @param group
+     *          - the load group, or null to load on its own
      */
     public EnhancedLazyResultLoaderImpl(SqlMapClientImpl client, String statementName, Object parameterObject,
-        Class targetType) {
+        Class targetType, LazyLoadGroup group) {
       this.client = client;
       this.statementName = statementName;
       this.parameterObject = parameterObject;
       this.targetType = targetType;
+      this.group = group;
     }
 
     /**
@@ -108,6 +131,7 @@ public class EnhancedLazyResultLoader {
       if (DomTypeMarker.class.isAssignableFrom(targetType)) {
         return ResultLoader.getResult(client, statementName, parameterObject, targetType);
       } else if (Collection.class.isAssignableFrom(targetType)) {
+        addToGroup();
         if (Set.class.isAssignableFrom(targetType)) {
           return Enhancer.create(Object.class, SET_INTERFACES, this);
         } else {
@@ -116,13 +140,25 @@ public class EnhancedLazyResultLoader {
       } else if (targetType.isArray() || ClassInfo.isKnownType(targetType)) {
         return ResultLoader.getResult(client, statementName, parameterObject, targetType);
       } else {
+        addToGroup();
         return Enhancer.create(targetType, this);
       }
     }
 
+    private void addToGroup() {
+      if (group != null) {
+        group.add(parameterObject);
+      }
+    }
+
     public Object loadObject() throws Exception {
       try {
-        Object result = ResultLoader.getResult(client, statementName, parameterObject, targetType);
+        Object result;
+        if (group != null) {
+          result = group.getResult(parameterObject, targetType);
+        } else {
+          result = ResultLoader.getResult(client, statementName, parameterObject, targetType);
+        }
         if (result == null) {
           // if no result is available return a proxy with a default object is returned
           // because the loadObject() method must not return null
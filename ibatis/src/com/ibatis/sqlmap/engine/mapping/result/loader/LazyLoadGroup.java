@@ -0,0 +1,97 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.result.loader;
+
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMapping;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lazy loaders of one batch result mapping created while reading one result set. The first loader that is touched
+ * loads the values of all the loaders of the group that are still pending with one query.
+ */
+public class LazyLoadGroup {
+
+  private SqlMapClientImpl client;
+  private ResultMapping mapping;
+  private int maxKeys;
+
+  private List pendingKeys = new ArrayList();
+  private Map children = new HashMap();
+
+  /**
+   * Constructor for a load group
+   *
+   * @param client
+   *          - the client creating the lazy loaders
+   * @param mapping
+   *          - the result mapping of the lazy loaders
+   * @param maxKeys
+   *          - the largest number of keys to send in one query
+   */
+  public LazyLoadGroup(SqlMapClientImpl client, ResultMapping mapping, int maxKeys) {
+    this.client = client;
+    this.mapping = mapping;
+    this.maxKeys = maxKeys;
+  }
+
+  /**
+   * Registers the key of a lazy loader of the group
+   *
+   * @param key
+   *          - the parameter of the nested select
+   */
+  public synchronized void add(Object key) {
+    pendingKeys.add(key);
+  }
+
+  /**
+   * Gets the value of a lazy loader, loading the values of every pending loader of the group if it is not loaded yet
+   *
+   * @param key
+   *          - the parameter of the nested select
+   * @param targetType
+   *          - the type of the value
+   *
+   * @return - the value
+   *
+   * @throws SQLException
+   *           if the query fails
+   */
+  public synchronized Object getResult(Object key, Class targetType) throws SQLException {
+    Object normalized = NestedSelectBatch.normalizeKey(key);
+    if (!children.containsKey(normalized)) {
+      pendingKeys.add(key);
+      Map loaded = NestedSelectBatch.loadNested(client, null, null, mapping, pendingKeys, maxKeys);
+      for (int i = 0, n = pendingKeys.size(); i < n; i++) {
+        Object pending = NestedSelectBatch.normalizeKey(pendingKeys.get(i));
+        if (!loaded.containsKey(pending)) {
+          // loaded, but no results
+          loaded.put(pending, null);
+        }
+      }
+      children.putAll(loaded);
+      pendingKeys.clear();
+    }
+    return NestedSelectBatch.getNestedValue(client, mapping, children, key, targetType);
+  }
+
+}
@@ -38,6 +38,7 @@ public class LazyResultLoader implements InvocationHandler {
   protected String statementName;
   protected Object parameterObject;
   protected Class targetType;
+  protected LazyLoadGroup group;
 
   protected boolean loaded;
   protected Object resultObject;
@@ -55,10 +56,30 @@ public class LazyResultLoader implements InvocationHandler {
    *          - the type we are putting data into
    */
   public LazyResultLoader(SqlMapClientImpl client, String statementName, Object parameterObject, Class targetType) {
+    this(client, statementName, parameterObject, targetType, null);
+  }
+
+  /**
+   * Constructor for a lazy list loader that loads with the other loaders of its group
+   *
+   * @param client
+   *          - the client that is creating the lazy list
+   * @param statementName
+   *          - the statement to be used to build the list
+   * @param parameterObject
+   *          - the parameter object to be used to build the list
+   * @param targetType
+   *          - the type we are putting data into
+   * @param group
+   *          - the load group, or null to load on its own
+   */
+  public LazyResultLoader(SqlMapClientImpl client, String statementName, Object parameterObject, Class targetType,
+      LazyLoadGroup group) {
     this.client = client;
     this.statementName = statementName;
     this.parameterObject = parameterObject;
     this.targetType = targetType;
+    this.group = group;
   }
 
   /**
@@ -71,7 +92,10 @@ public class LazyResultLoader implements InvocationHandler {
    */
   public Object loadResult() throws SQLException {
     if (Collection.class.isAssignableFrom(targetType)) {
-      InvocationHandler handler = new LazyResultLoader(client, statementName, parameterObject, targetType);
+      InvocationHandler handler = new LazyResultLoader(client, statementName, parameterObject, targetType, group);
+      if (group != null) {
+        group.add(parameterObject);
+      }
       ClassLoader cl = targetType.getClassLoader();
       if (Set.class.isAssignableFrom(targetType)) {
         return Proxy.newProxyInstance(cl, SET_INTERFACES, handler);
@@ -104,7 +128,11 @@ public class LazyResultLoader implements InvocationHandler {
     if (!loaded) {
       try {
         loaded = true;
-        resultObject = ResultLoader.getResult(client, statementName, parameterObject, targetType);
+        if (group != null) {
+          resultObject = group.getResult(parameterObject, targetType);
+        } else {
+          resultObject = ResultLoader.getResult(client, statementName, parameterObject, targetType);
+        }
       } catch (SQLException e) {
         throw new RuntimeException("Error lazy loading result. Cause: " + e, e);
       }
@@ -0,0 +1,467 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.result.loader;
+
+import com.ibatis.common.beans.Probe;
+import com.ibatis.common.beans.ProbeFactory;
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.engine.execution.DriverProfile;
+import com.ibatis.sqlmap.engine.execution.SqlExecutor;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
+import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMapping;
+import com.ibatis.sqlmap.engine.mapping.result.AutoResultMap;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMapping;
+import com.ibatis.sqlmap.engine.mapping.sql.Sql;
+import com.ibatis.sqlmap.engine.mapping.sql.stat.StaticSql;
+import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
+import com.ibatis.sqlmap.engine.mapping.statement.SelectStatement;
+import com.ibatis.sqlmap.engine.scope.SessionScope;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+import com.ibatis.sqlmap.engine.transaction.Transaction;
+import com.ibatis.sqlmap.engine.transaction.TransactionException;
+import com.ibatis.sqlmap.engine.type.TypeHandler;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the nested selects of batch result mappings while a result set is read, then loads them with one query per
+ * mapping (per chunk of keys) and sets the results on the row objects.
+ */
+public class NestedSelectBatch {
+
+  private static final Probe PROBE = ProbeFactory.getProbe();
+
+  /** The largest number of keys sent in one IN-list when the driver profile does not know the limit of the database. */
+  public static final int MAX_KEYS = 500;
+
+  /** IN-lists are padded to one of these sizes so that few distinct statements get prepared. */
+  private static final int[] IN_LIST_SIZES = { 1, 10, 50, 100, MAX_KEYS };
+
+  private static final Pattern KEY_CONDITION = Pattern.compile("([\\w.$]+)\\s*=\\s*\\?");
+
+  private List rowLoads = new ArrayList();
+  private Map loads = new LinkedHashMap();
+
+  /**
+   * The number of keys to send in one IN-list to the database a statement runs on.
+   *
+   * @param client
+   *          the client
+   * @param statementScope
+   *          the scope of the statement
+   * @param conn
+   *          the connection of the statement, or null if none is at hand
+   *
+   * @return the IN-list size limit of the database, or MAX_KEYS if it has none or it is not known
+   */
+  public static int getMaxKeys(SqlMapClientImpl client, StatementScope statementScope, Connection conn) {
+    DriverProfile profile = client.getDelegate().getDriverProfile(statementScope, conn);
+    if (profile == null) {
+      return MAX_KEYS;
+    }
+    int maxKeys = profile.getMaxInListSize();
+    return maxKeys == DriverProfile.NO_MAX_IN_LIST_SIZE ? MAX_KEYS : maxKeys;
+  }
+
+  /**
+   * Records a nested select of the row being read.
+   *
+   * @param mapping
+   *          the result mapping
+   * @param key
+   *          the parameter of the nested select
+   * @param targetType
+   *          the type of the property being loaded
+   */
+  public void add(ResultMapping mapping, Object key, Class targetType) {
+    rowLoads.add(new Load(mapping, key, targetType));
+  }
+
+  /**
+   * Takes the nested selects recorded for the row being read, before the row object is built.
+   *
+   * @return the nested selects of the row
+   */
+  public List takeRowLoads() {
+    if (rowLoads.isEmpty()) {
+      return Collections.EMPTY_LIST;
+    }
+    List list = rowLoads;
+    rowLoads = new ArrayList();
+    return list;
+  }
+
+  /**
+   * Attaches the nested selects of a row to the object that was built for it.
+   *
+   * @param resultObject
+   *          the row object
+   * @param rowLoads
+   *          the nested selects taken for the row
+   */
+  public void bind(Object resultObject, List rowLoads) {
+    for (int i = 0, n = rowLoads.size(); i < n; i++) {
+      Load load = (Load) rowLoads.get(i);
+      load.resultObject = resultObject;
+      List list = (List) loads.get(load.mapping);
+      if (list == null) {
+        list = new ArrayList();
+        loads.put(load.mapping, list);
+      }
+      list.add(load);
+    }
+  }
+
+  /**
+   * Runs the collected nested selects and sets their results on the row objects.
+   *
+   * @param statementScope
+   *          the scope of the statement that read the rows
+   * @param trans
+   *          the transaction to run the nested selects in
+   *
+   * @throws SQLException
+   *           if a nested select fails
+   * @throws TransactionException
+   *           if the connection of the transaction cannot be obtained
+   */
+  public void load(StatementScope statementScope, Transaction trans) throws SQLException, TransactionException {
+    rowLoads.clear();
+    if (loads.isEmpty()) {
+      return;
+    }
+    SqlMapClientImpl client = (SqlMapClientImpl) statementScope.getSession().getSqlMapClient();
+    int maxKeys = getMaxKeys(client, statementScope, trans.getConnection());
+    Iterator iter = loads.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry entry = (Map.Entry) iter.next();
+      loadMapping(client, statementScope.getSession(), trans, (ResultMapping) entry.getKey(),
+          (List) entry.getValue(), maxKeys);
+    }
+    loads.clear();
+  }
+
+  private void loadMapping(SqlMapClientImpl client, SessionScope sessionScope, Transaction trans,
+      ResultMapping mapping, List mappingLoads, int maxKeys) throws SQLException {
+    List keys = new ArrayList(mappingLoads.size());
+    for (int i = 0, n = mappingLoads.size(); i < n; i++) {
+      keys.add(((Load) mappingLoads.get(i)).key);
+    }
+    Map children = loadNested(client, sessionScope, trans, mapping, keys, maxKeys);
+
+    for (int i = 0, n = mappingLoads.size(); i < n; i++) {
+      Load load = (Load) mappingLoads.get(i);
+      Object value = getNestedValue(client, mapping, children, load.key, load.targetType);
+      if (value != null) {
+        PROBE.setObject(load.resultObject, mapping.getPropertyName(), value);
+      }
+    }
+  }
+
+  /**
+   * Runs the nested select of a batch mapping for a list of keys.
+   *
+   * @param client
+   *          the client
+   * @param sessionScope
+   *          the session to run the query in, or null to run it in the calling thread's session
+   * @param trans
+   *          the transaction to run the query in, or null to run it in the calling thread's session
+   * @param mapping
+   *          the result mapping
+   * @param keys
+   *          the parameters of the nested select, duplicates allowed
+   * @param maxKeys
+   *          the largest number of keys to send in one query
+   *
+   * @return the nested results, in lists keyed by their normalized key
+   *
+   * @throws SQLException
+   *           if the query fails
+   */
+  static Map loadNested(SqlMapClientImpl client, SessionScope sessionScope, Transaction trans,
+      ResultMapping mapping, Collection keys, int maxKeys) throws SQLException {
+    Map distinctKeys = new LinkedHashMap();
+    for (Iterator iter = keys.iterator(); iter.hasNext();) {
+      Object key = iter.next();
+      Object normalized = normalizeKey(key);
+      if (!distinctKeys.containsKey(normalized)) {
+        distinctKeys.put(normalized, key);
+      }
+    }
+    List keyList = new ArrayList(distinctKeys.values());
+
+    SqlMapExecutorDelegate delegate = client.getDelegate();
+    MappedStatement select = delegate.getMappedStatement(mapping.getStatementName());
+    String keyProperty = mapping.getBatchKey();
+    Map children = new HashMap();
+    for (int start = 0; start < keyList.size(); start += maxKeys) {
+      List chunk = keyList.subList(start, Math.min(start + maxKeys, keyList.size()));
+      MappedStatement statement;
+      Object parameterObject;
+      if (mapping.getBatchStatementName() != null) {
+        statement = delegate.getMappedStatement(mapping.getBatchStatementName());
+        parameterObject = new ArrayList(chunk);
+      } else {
+        int size = inListSize(chunk.size(), maxKeys);
+        statement = getInListStatement(select, size);
+        Map keyMap = new HashMap();
+        for (int i = 0; i < size; i++) {
+          keyMap.put("k" + i, chunk.get(Math.min(i, chunk.size() - 1)));
+        }
+        parameterObject = keyMap;
+      }
+      if (statement.getShardKey() != null) {
+        throw new SqlMapException("The nested select " + statement.getId() + " of the " + mapping.getPropertyName()
+            + " mapping runs on shards and cannot be batch loaded.");
+      }
+      List results;
+      if (trans == null) {
+        results = client.getDelegate().queryForList(client, statement, parameterObject);
+      } else {
+        results = run(sessionScope, trans, statement, parameterObject);
+      }
+      if (keyProperty == null) {
+        keyProperty = findKeyProperty(select, statement.getResultMap());
+        if (keyProperty == null) {
+          throw new SqlMapException("Could not find the property that holds the key of the nested select "
+              + select.getId() + ".  Set batchKey on the " + mapping.getPropertyName() + " mapping.");
+        }
+      }
+      for (int i = 0, n = results.size(); i < n; i++) {
+        Object child = results.get(i);
+        Object key = normalizeKey(PROBE.getObject(child, keyProperty));
+        List list = (List) children.get(key);
+        if (list == null) {
+          list = new ArrayList();
+          children.put(key, list);
+        }
+        list.add(child);
+      }
+    }
+    return children;
+  }
+
+  /**
+   * Builds the value of a nested property from the results loaded by {@link #loadNested}.
+   *
+   * @param client
+   *          the client
+   * @param mapping
+   *          the result mapping
+   * @param children
+   *          the loaded results
+   * @param key
+   *          the parameter of the nested select for the row
+   * @param targetType
+   *          the type of the property
+   *
+   * @return the value, or null if there is none
+   *
+   * @throws SQLException
+   *           if a single value was expected and there are several
+   */
+  static Object getNestedValue(SqlMapClientImpl client, ResultMapping mapping, Map children, Object key,
+      Class targetType) throws SQLException {
+    List list = (List) children.get(normalizeKey(key));
+    Object value = toTargetType(list == null ? Collections.EMPTY_LIST : list, targetType);
+    if (value == null && mapping.getNullValue() != null) {
+      TypeHandler typeHandler = client.getDelegate().getTypeHandlerFactory().getTypeHandler(targetType);
+      if (typeHandler != null) {
+        value = typeHandler.valueOf(mapping.getNullValue());
+      }
+    }
+    return value;
+  }
+
+  private static List run(SessionScope sessionScope, Transaction trans, MappedStatement statement,
+      Object parameterObject) throws SQLException {
+    StatementScope statementScope = new StatementScope(sessionScope);
+    sessionScope.incrementRequestStackDepth();
+    try {
+      statement.initRequest(statementScope);
+      return statement.executeQueryForList(statementScope, trans, parameterObject, SqlExecutor.NO_SKIPPED_RESULTS,
+          SqlExecutor.NO_MAXIMUM_RESULTS);
+    } finally {
+      sessionScope.decrementRequestStackDepth();
+    }
+  }
+
+  private static Object toTargetType(List list, Class targetType) throws SQLException {
+    if (Set.class.isAssignableFrom(targetType)) {
+      return new HashSet(list);
+    } else if (Collection.class.isAssignableFrom(targetType)) {
+      return new ArrayList(list);
+    } else if (targetType.isArray()) {
+      return ResultLoader.listToArray(list, targetType.getComponentType());
+    } else if (list.size() > 1) {
+      throw new SQLException("Error: executeQueryForObject returned too many results.");
+    } else {
+      return list.isEmpty() ? null : list.get(0);
+    }
+  }
+
+  private static int inListSize(int keyCount, int maxKeys) {
+    for (int i = 0; i < IN_LIST_SIZES.length; i++) {
+      if (keyCount <= IN_LIST_SIZES[i]) {
+        return Math.min(IN_LIST_SIZES[i], maxKeys);
+      }
+    }
+    return maxKeys;
+  }
+
+  /**
+   * Builds a copy of a nested select that takes a list of keys: its "column = ?" condition becomes
+   * "column IN (?, ...)" with one placeholder for each key, named k0, k1, ... in a Map parameter.
+   */
+  private static MappedStatement getInListStatement(MappedStatement select, int size) {
+    Map statements = select.getInListStatements();
+    synchronized (statements) {
+      Integer sizeKey = new Integer(size);
+      MappedStatement statement = (MappedStatement) statements.get(sizeKey);
+      if (statement == null) {
+        statement = newInListStatement(select, size);
+        statements.put(sizeKey, statement);
+      }
+      return statement;
+    }
+  }
+
+  private static MappedStatement newInListStatement(MappedStatement select, int size) {
+    Sql sql = select.getSql();
+    ParameterMap parameterMap = select.getParameterMap();
+    Matcher matcher = null;
+    String sqlText = null;
+    if (sql instanceof StaticSql && parameterMap != null && parameterMap.getParameterCount() == 1) {
+      sqlText = sql.getSql(null, null);
+      matcher = KEY_CONDITION.matcher(sqlText);
+    }
+    if (matcher == null || !matcher.find()) {
+      throw new SqlMapException("The nested select " + select.getId()
+          + " cannot be rewritten into an IN-list query.  It must be static SQL with a single \"column = ?\" "
+          + "condition, otherwise name a batchSelect statement.");
+    }
+    StringBuilder inSql = new StringBuilder(sqlText.substring(0, matcher.start()));
+    inSql.append(matcher.group(1)).append(" IN (");
+    for (int i = 0; i < size; i++) {
+      inSql.append(i == 0 ? "?" : ", ?");
+    }
+    inSql.append(')').append(sqlText.substring(matcher.end()));
+
+    String id = select.getId() + "-InList" + size;
+    ParameterMapping keyMapping = parameterMap.getParameterMappings()[0];
+    List mappings = new ArrayList(size);
+    for (int i = 0; i < size; i++) {
+      ParameterMapping mapping = new ParameterMapping();
+      mapping.setPropertyName("k" + i);
+      mapping.setTypeHandler(keyMapping.getTypeHandler());
+      mapping.setJavaType(keyMapping.getJavaType());
+      mapping.setJdbcTypeName(keyMapping.getJdbcTypeName());
+      mapping.setNullValue(keyMapping.getNullValue());
+      mappings.add(mapping);
+    }
+    ParameterMap inParameterMap = new ParameterMap(parameterMap.getDelegate());
+    inParameterMap.setId(id + "-InlineParameterMap");
+    inParameterMap.setParameterClass(HashMap.class);
+    inParameterMap.setResource(select.getResource());
+    inParameterMap.setParameterMappingList(mappings);
+
+    SelectStatement statement = new SelectStatement();
+    statement.setId(id);
+    statement.setResource(select.getResource());
+    statement.setSqlMapClient(select.getSqlMapClient());
+    statement.setParameterMap(inParameterMap);
+    statement.setResultMap(select.getResultMap());
+    statement.setSql(new StaticSql(inSql.toString()));
+    statement.setTimeout(select.getTimeout());
+    statement.setFetchSize(select.getFetchSize());
+    statement.setResultSetType(select.getResultSetType());
+    return statement;
+  }
+
+  /**
+   * Finds the result property mapped to the column of the nested select's "column = ?" condition. A remapped automatic
+   * result map has no mappings of its own, and maps the column to a property of the same name.
+   */
+  private static String findKeyProperty(MappedStatement select, ResultMap resultMap) {
+    Sql sql = select.getSql();
+    if (!(sql instanceof StaticSql) || resultMap == null) {
+      return null;
+    }
+    ResultMapping[] mappings = resultMap.getResultMappings();
+    if (mappings == null && !(resultMap instanceof AutoResultMap)) {
+      return null;
+    }
+    Matcher matcher = KEY_CONDITION.matcher(sql.getSql(null, null));
+    if (!matcher.find()) {
+      return null;
+    }
+    String column = matcher.group(1);
+    column = column.substring(column.lastIndexOf('.') + 1);
+    if (mappings == null) {
+      return column;
+    }
+    for (int i = 0; i < mappings.length; i++) {
+      if (column.equalsIgnoreCase(mappings[i].getColumnName())) {
+        return mappings[i].getPropertyName();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Makes keys read from different columns compare equal when they hold the same number (e.g. an Integer foreign key
+   * and a Long primary key).
+   */
+  static Object normalizeKey(Object key) {
+    if (key instanceof Number) {
+      try {
+        BigDecimal number = key instanceof BigDecimal ? (BigDecimal) key : new BigDecimal(key.toString());
+        number = number.stripTrailingZeros();
+        try {
+          return Long.valueOf(number.longValueExact());
+        } catch (ArithmeticException e) {
+          return number;
+        }
+      } catch (NumberFormatException e) {
+        return key;
+      }
+    }
+    return key;
+  }
+
+  private static class Load {
+    private ResultMapping mapping;
+    private Object key;
+    private Class targetType;
+    private Object resultObject;
+
+    private Load(ResultMapping mapping, Object key, Class targetType) {
+      this.mapping = mapping;
+      this.key = key;
+      this.targetType = targetType;
+    }
+  }
+
+}
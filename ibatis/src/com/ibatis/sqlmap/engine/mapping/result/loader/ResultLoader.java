@@ -15,8 +15,10 @@
  */
 package com.ibatis.sqlmap.engine.mapping.result.loader;
 
+import com.ibatis.common.beans.ClassInfo;
 import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
 import com.ibatis.sqlmap.engine.type.DomCollectionTypeMarker;
+import com.ibatis.sqlmap.engine.type.DomTypeMarker;
 
 import java.sql.SQLException;
 import java.util.*;
@@ -46,14 +48,36 @@ public class ResultLoader {
    */
   public static Object loadResult(SqlMapClientImpl client, String statementName, Object parameterObject,
       Class targetType) throws SQLException {
+    return loadResult(client, statementName, parameterObject, targetType, null);
+  }
+
+  /**
+   * Loads a result lazily, with the other lazy loaders of a load group
+   *
+   * @param client
+   *          - the client creating the object
+   * @param statementName
+   *          - the name of the statement to be used
+   * @param parameterObject
+   *          - the parameters for the statement
+   * @param targetType
+   *          - the target type of the result
+   * @param group
+   *          - the load group, or null to load on its own
+   * @return the loaded result
+   * @throws SQLException SQLException
+   */
+  public static Object loadResult(SqlMapClientImpl client, String statementName, Object parameterObject,
+      Class targetType, LazyLoadGroup group) throws SQLException {
     Object value = null;
 
     if (client.isLazyLoadingEnabled()) {
       if (client.isEnhancementEnabled()) {
-        EnhancedLazyResultLoader lazy = new EnhancedLazyResultLoader(client, statementName, parameterObject, targetType);
+        EnhancedLazyResultLoader lazy = new EnhancedLazyResultLoader(client, statementName, parameterObject, targetType,
+            group);
         value = lazy.loadResult();
       } else {
-        LazyResultLoader lazy = new LazyResultLoader(client, statementName, parameterObject, targetType);
+        LazyResultLoader lazy = new LazyResultLoader(client, statementName, parameterObject, targetType, group);
         value = lazy.loadResult();
       }
     } else {
@@ -63,6 +87,26 @@ public class ResultLoader {
     return value;
   }
 
+  /**
+   * Tells if a result of the given type is loaded lazily, behind a proxy, rather than when it is mapped
+   *
+   * @param client
+   *          - the client creating the object
+   * @param targetType
+   *          - the target type of the result
+   * @return true if the result is loaded lazily
+   */
+  public static boolean isLazy(SqlMapClientImpl client, Class targetType) {
+    if (!client.isLazyLoadingEnabled()) {
+      return false;
+    } else if (Collection.class.isAssignableFrom(targetType)) {
+      return true;
+    } else {
+      return client.isEnhancementEnabled() && !DomTypeMarker.class.isAssignableFrom(targetType)
+          && !targetType.isArray() && !ClassInfo.isKnownType(targetType);
+    }
+  }
+
   protected static Object getResult(SqlMapClientImpl client, String statementName, Object parameterObject,
       Class targetType) throws SQLException {
     Object value = null;
@@ -81,7 +125,7 @@ public class ResultLoader {
     return value;
   }
 
-  private static Object listToArray(List list, Class type) {
+  static Object listToArray(List list, Class type) {
     Object array = java.lang.reflect.Array.newInstance(type, list.size());
     if (type.isPrimitive()) {
       Iterator iter = list.iterator();
@@ -17,6 +17,7 @@ package com.ibatis.sqlmap.engine.mapping.sql.dynamic.elements;
 
 import com.ibatis.common.beans.Probe;
 import com.ibatis.common.beans.ProbeFactory;
+import com.ibatis.common.beans.PropertyPath;
 import com.ibatis.sqlmap.engine.type.SimpleDateFormatter;
 
 import java.math.BigDecimal;
@@ -73,7 +74,7 @@ public abstract class ConditionalTagHandler extends BaseTagHandler {
     Class type;
 
     if (prop != null) {
-      value1 = PROBE.getObject(parameterObject, prop);
+      value1 = PropertyPath.compile(prop).getValue(parameterObject);
       type = PROBE.getPropertyTypeForGetter(parameterObject, prop);
     } else {
       value1 = parameterObject;
@@ -84,7 +85,7 @@ public abstract class ConditionalTagHandler extends BaseTagHandler {
       }
     }
     if (comparePropertyName != null) {
-      Object value2 = PROBE.getObject(parameterObject, comparePropertyName);
+      Object value2 = PropertyPath.compile(comparePropertyName).getValue(parameterObject);
       return compareValues(type, value1, value2);
     } else if (compareValue != null) {
       return compareValues(type, value1, compareValue);
@@ -15,16 +15,13 @@
  */
 package com.ibatis.sqlmap.engine.mapping.sql.dynamic.elements;
 
-import com.ibatis.common.beans.Probe;
-import com.ibatis.common.beans.ProbeFactory;
+import com.ibatis.common.beans.PropertyPath;
 
 import java.lang.reflect.Array;
 import java.util.Collection;
 
 public class IsEmptyTagHandler extends ConditionalTagHandler {
 
-  private static final Probe PROBE = ProbeFactory.getProbe();
-
   @Override
   public boolean isCondition(SqlTagContext ctx, SqlTag tag, Object parameterObject) {
     if (parameterObject == null) {
@@ -33,7 +30,7 @@ public class IsEmptyTagHandler extends ConditionalTagHandler {
       String prop = getResolvedProperty(ctx, tag);
       Object value;
       if (prop != null) {
-        value = PROBE.getObject(parameterObject, prop);
+        value = PropertyPath.compile(prop).getValue(parameterObject);
       } else {
         value = parameterObject;
       }
@@ -15,13 +15,10 @@
  */
 package com.ibatis.sqlmap.engine.mapping.sql.dynamic.elements;
 
-import com.ibatis.common.beans.Probe;
-import com.ibatis.common.beans.ProbeFactory;
+import com.ibatis.common.beans.PropertyPath;
 
 public class IterateTagHandler extends BaseTagHandler {
 
-  private static final Probe PROBE = ProbeFactory.getProbe();
-
   @Override
   public int doStartFragment(SqlTagContext ctx, SqlTag tag, Object parameterObject) {
     IterateContext iterate = (IterateContext) ctx.getAttribute(tag);
@@ -45,7 +42,7 @@ public class IterateTagHandler extends BaseTagHandler {
           prop = parentIterate.addIndexToTagProperty(prop);
         }
 
-        collection = PROBE.getObject(parameterObject, prop);
+        collection = PropertyPath.compile(prop).getValue(parameterObject);
       } else {
         collection = parameterObject;
       }
@@ -15,8 +15,7 @@
  */
 package com.ibatis.sqlmap.engine.mapping.sql.simple;
 
-import com.ibatis.common.beans.Probe;
-import com.ibatis.common.beans.ProbeFactory;
+import com.ibatis.common.beans.PropertyPath;
 import com.ibatis.sqlmap.client.SqlMapException;
 import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
@@ -28,8 +27,6 @@ import java.util.StringTokenizer;
 
 public class SimpleDynamicSql implements Sql {
 
-  private static final Probe PROBE = ProbeFactory.getProbe();
-
   private static final String ELEMENT_TOKEN = "$";
 
   private String sqlStatement;
@@ -80,7 +77,7 @@ public class SimpleDynamicSql implements Sql {
             if (delegate.getTypeHandlerFactory().hasTypeHandler(parameterObject.getClass())) {
               value = parameterObject;
             } else {
-              value = PROBE.getObject(parameterObject, token);
+              value = PropertyPath.compile(token).getValue(parameterObject);
             }
           }
           if (value != null) {
@@ -15,6 +15,7 @@
  */
 package com.ibatis.sqlmap.engine.mapping.statement;
 
+import com.ibatis.sqlmap.client.Cursor;
 import com.ibatis.sqlmap.client.event.RowHandler;
 import com.ibatis.sqlmap.engine.cache.CacheKey;
 import com.ibatis.sqlmap.engine.cache.CacheModel;
@@ -57,6 +58,50 @@ public class CachingStatement extends MappedStatement {
     return statement.getFetchSize();
   }
 
+  @Override
+  public String getKeysetColumn() {
+    return statement.getKeysetColumn();
+  }
+
+  @Override
+  public Object getKeysetValue(Object resultObject) {
+    return statement.getKeysetValue(resultObject);
+  }
+
+  @Override
+  public boolean isCoalesce() {
+    return statement.isCoalesce();
+  }
+
+  @Override
+  public boolean isSpillable() {
+    return statement.isSpillable();
+  }
+
+  public CacheModel getCacheModel() {
+    return cacheModel;
+  }
+
+  @Override
+  public boolean isReadReplica() {
+    return statement.isReadReplica();
+  }
+
+  @Override
+  public String getShardKey() {
+    return statement.getShardKey();
+  }
+
+  @Override
+  public String getShardOrderBy() {
+    return statement.getShardOrderBy();
+  }
+
+  @Override
+  public Object getShardKeyValue(Object parameterObject) {
+    return statement.getShardKeyValue(parameterObject);
+  }
+
   @Override
   public ParameterMap getParameterMap() {
     return statement.getParameterMap();
@@ -97,6 +142,9 @@ public class CachingStatement extends MappedStatement {
     cacheKey.update("executeQueryForList");
     cacheKey.update(skipResults);
     cacheKey.update(maxResults);
+    if (statementScope.isKeysetQuery()) {
+      cacheKey.update(String.valueOf(statementScope.getKeysetValue()));
+    }
     Object listAsObject = cacheModel.getObject(cacheKey);
     List list;
     if (listAsObject == CacheModel.NULL_OBJECT) {
@@ -117,6 +165,18 @@ public class CachingStatement extends MappedStatement {
     statement.executeQueryWithRowHandler(statementScope, trans, parameterObject, rowHandler);
   }
 
+  @Override
+  public void executeQueryForColumns(StatementScope statementScope, Transaction trans, Object parameterObject,
+      ColumnarResultHandler handler) throws SQLException {
+    statement.executeQueryForColumns(statementScope, trans, parameterObject, handler);
+  }
+
+  @Override
+  public Cursor executeQueryForCursor(StatementScope statementScope, Transaction trans, Object parameterObject,
+      Integer fetchSize) throws SQLException {
+    return statement.executeQueryForCursor(statementScope, trans, parameterObject, fetchSize);
+  }
+
   @Override
   public CacheKey getCacheKey(StatementScope statementScope, Object parameterObject) {
     CacheKey key = statement.getCacheKey(statementScope, parameterObject);
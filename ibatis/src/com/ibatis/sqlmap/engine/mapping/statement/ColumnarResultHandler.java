@@ -0,0 +1,504 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.statement;
+
+import com.ibatis.sqlmap.client.ColumnarResult;
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.engine.mapping.result.AutoResultMap;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMapping;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+import com.ibatis.sqlmap.engine.type.ObjectTypeHandler;
+import com.ibatis.sqlmap.engine.type.PrimitiveTypeHandler;
+import com.ibatis.sqlmap.engine.type.TypeHandler;
+import com.ibatis.sqlmap.engine.type.TypeHandlerFactory;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Reads the rows of a query into one array per column, for queryForColumns().
+ * <p>
+ * The columns are set up when the first result set is opened, so that a query without rows still has its typed,
+ * empty columns: from the result mappings of an explicit result map, or from the ResultSetMetaData when the statement
+ * has a result class. A column whose type handler is a {@link PrimitiveTypeHandler}
+ * of a numeric type is read with its primitive accessor into an int[], long[] or double[]; any other column is read
+ * with getResult into an Object[]. The arrays double in size as rows are added, and are trimmed to the row count by
+ * {@link #getResult()}. Several result sets with the same columns, such as those of the shards of a scatter query, can
+ * be read into one handler.
+ */
+public class ColumnarResultHandler extends RowHandlerCallback {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private Column[] columns;
+  private ResultSet resultSet;
+  private int rowCount;
+  private int capacity;
+
+  public ColumnarResultHandler() {
+    super(null, null, null);
+  }
+
+  @Override
+  public void handleResultObject(StatementScope statementScope, Object[] results, ResultSet rs) throws SQLException {
+    handleResultObject(statementScope, rs);
+  }
+
+  @Override
+  public void handleResultSet(StatementScope statementScope, ResultSet rs) throws SQLException {
+    if (columns == null) {
+      columns = createColumns(statementScope.getResultMap(), rs);
+    } else if (rs != resultSet) {
+      // a new result set, whose columns may be in another order
+      for (int i = 0; i < columns.length; i++) {
+        columns[i].resolve(rs);
+      }
+    }
+    resultSet = rs;
+  }
+
+  @Override
+  public void handleResultObject(StatementScope statementScope, ResultSet rs) throws SQLException {
+    if (columns == null || rs != resultSet) {
+      handleResultSet(statementScope, rs);
+    }
+    if (rowCount == capacity) {
+      capacity = capacity == 0 ? INITIAL_CAPACITY : capacity * 2;
+      for (int i = 0; i < columns.length; i++) {
+        columns[i].grow(capacity);
+      }
+    }
+    for (int i = 0; i < columns.length; i++) {
+      columns[i].read(rs, rowCount);
+    }
+    rowCount++;
+  }
+
+  /**
+   * Trims the columns to the rows read and returns them.
+   *
+   * @return the columns
+   */
+  public ColumnarResult getResult() {
+    Column[] result = columns == null ? new Column[0] : columns;
+    for (int i = 0; i < result.length; i++) {
+      result[i].trim(rowCount);
+    }
+    capacity = rowCount;
+    resultSet = null;
+    return new Result(result, rowCount);
+  }
+
+  private static Column[] createColumns(ResultMap resultMap, ResultSet rs) throws SQLException {
+    if (resultMap instanceof AutoResultMap || resultMap.getResultMappings() == null
+        || resultMap.getResultMappings().length == 0) {
+      return createColumns(resultMap.getDelegate().getTypeHandlerFactory(), rs.getMetaData());
+    }
+    if (resultMap.getDiscriminator() != null || resultMap.getNestedResultMappings() != null
+        || resultMap.hasGroupBy()) {
+      throw new SQLException("The result map " + resultMap.getId()
+          + " uses a discriminator, nested result maps or groupBy, and cannot be read as columns.");
+    }
+    ResultMapping[] mappings = resultMap.getResultMappings();
+    Column[] columns = new Column[mappings.length];
+    for (int i = 0; i < mappings.length; i++) {
+      ResultMapping mapping = mappings[i];
+      if (mapping.getStatementName() != null || mapping.getNestedResultMapName() != null) {
+        throw new SQLException("The property " + mapping.getPropertyName() + " of the result map " + resultMap.getId()
+            + " is loaded by another statement, and cannot be read as a column.");
+      }
+      String name = mapping.getPropertyName() != null ? mapping.getPropertyName() : mapping.getColumnName();
+      Object nullValue = mapping.getNullValue() == null ? null : mapping.getTypeHandler().valueOf(
+          mapping.getNullValue());
+      columns[i] = createColumn(name, mapping.getColumnName(), mapping.getColumnIndex(), mapping.getTypeHandler(),
+          nullValue);
+      columns[i].resolve(rs);
+    }
+    return columns;
+  }
+
+  private static Column[] createColumns(TypeHandlerFactory typeHandlerFactory, ResultSetMetaData metaData)
+      throws SQLException {
+    Column[] columns = new Column[metaData.getColumnCount()];
+    for (int i = 0; i < columns.length; i++) {
+      String label = metaData.getColumnLabel(i + 1);
+      Class type = getColumnType(metaData, i + 1);
+      TypeHandler typeHandler = typeHandlerFactory.getTypeHandler(type);
+      if (typeHandler == null) {
+        typeHandler = new ObjectTypeHandler();
+      }
+      columns[i] = createColumn(label, label, i + 1, typeHandler, null);
+    }
+    return columns;
+  }
+
+  /**
+   * The Java type of a column in the result set: a wrapper of a primitive type for integral and floating point columns
+   * that fit one, Object otherwise.
+   */
+  private static Class getColumnType(ResultSetMetaData metaData, int column) throws SQLException {
+    switch (metaData.getColumnType(column)) {
+    case Types.TINYINT:
+    case Types.SMALLINT:
+    case Types.INTEGER:
+      return Integer.class;
+    case Types.BIGINT:
+      return Long.class;
+    case Types.REAL:
+      return Float.class;
+    case Types.FLOAT:
+    case Types.DOUBLE:
+      return Double.class;
+    case Types.NUMERIC:
+    case Types.DECIMAL:
+      // exact numbers without a fraction that fit an int or a long, such as Oracle NUMBER(10)
+      int precision = metaData.getPrecision(column);
+      if (metaData.getScale(column) == 0 && precision > 0 && precision <= 18) {
+        return precision <= 9 ? Integer.class : Long.class;
+      }
+      return Object.class;
+    default:
+      return Object.class;
+    }
+  }
+
+  private static Column createColumn(String name, String columnName, int columnIndex, TypeHandler typeHandler,
+      Object nullValue) {
+    if (typeHandler instanceof PrimitiveTypeHandler) {
+      Class type = ((PrimitiveTypeHandler) typeHandler).getPrimitiveType();
+      PrimitiveTypeHandler primitiveHandler = TypeHandlerFactory.getPrimitiveTypeHandler(typeHandler, type);
+      if (primitiveHandler != null) {
+        if (type == Integer.TYPE || type == Short.TYPE || type == Byte.TYPE) {
+          return new IntColumn(name, columnName, columnIndex, primitiveHandler, type, (Number) nullValue);
+        } else if (type == Long.TYPE) {
+          return new LongColumn(name, columnName, columnIndex, primitiveHandler, (Number) nullValue);
+        } else if (type == Double.TYPE || type == Float.TYPE) {
+          return new DoubleColumn(name, columnName, columnIndex, primitiveHandler, type, (Number) nullValue);
+        }
+      }
+    }
+    return new ObjectColumn(name, columnName, columnIndex, typeHandler, nullValue);
+  }
+
+  /**
+   * The values of one column, in an array of its own type
+   */
+  private abstract static class Column {
+
+    final String name;
+    final String columnName;
+    int columnIndex;
+    long[] nulls;
+
+    Column(String name, String columnName, int columnIndex) {
+      this.name = name;
+      this.columnName = columnName;
+      this.columnIndex = columnIndex;
+    }
+
+    void resolve(ResultSet rs) throws SQLException {
+      if (columnName != null) {
+        columnIndex = rs.findColumn(columnName);
+      }
+    }
+
+    abstract Class getType();
+
+    abstract void read(ResultSet rs, int row) throws SQLException;
+
+    abstract Object getValue(int row);
+
+    void grow(int capacity) {
+      if (nulls != null) {
+        nulls = Arrays.copyOf(nulls, (capacity + 63) >>> 6);
+      }
+    }
+
+    void trim(int rows) {
+      grow(rows);
+    }
+
+    void setNull(int row, int capacity) {
+      if (nulls == null) {
+        nulls = new long[(capacity + 63) >>> 6];
+      }
+      nulls[row >>> 6] |= 1L << row;
+    }
+
+    boolean isNull(int row) {
+      return nulls != null && (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+  }
+
+  private static class IntColumn extends Column {
+
+    private final PrimitiveTypeHandler typeHandler;
+    private final Class type;
+    private final Number nullValue;
+    int[] values = new int[0];
+
+    IntColumn(String name, String columnName, int columnIndex, PrimitiveTypeHandler typeHandler, Class type,
+        Number nullValue) {
+      super(name, columnName, columnIndex);
+      this.typeHandler = typeHandler;
+      this.type = type;
+      this.nullValue = nullValue;
+    }
+
+    Class getType() {
+      return Integer.TYPE;
+    }
+
+    void read(ResultSet rs, int row) throws SQLException {
+      int value;
+      if (type == Integer.TYPE) {
+        value = typeHandler.getInt(rs, columnIndex);
+      } else if (type == Short.TYPE) {
+        value = typeHandler.getShort(rs, columnIndex);
+      } else {
+        value = typeHandler.getByte(rs, columnIndex);
+      }
+      if (rs.wasNull()) {
+        if (nullValue == null) {
+          setNull(row, values.length);
+        } else {
+          value = nullValue.intValue();
+        }
+      }
+      values[row] = value;
+    }
+
+    Object getValue(int row) {
+      return Integer.valueOf(values[row]);
+    }
+
+    void grow(int capacity) {
+      super.grow(capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+
+  }
+
+  private static class LongColumn extends Column {
+
+    private final PrimitiveTypeHandler typeHandler;
+    private final Number nullValue;
+    long[] values = new long[0];
+
+    LongColumn(String name, String columnName, int columnIndex, PrimitiveTypeHandler typeHandler, Number nullValue) {
+      super(name, columnName, columnIndex);
+      this.typeHandler = typeHandler;
+      this.nullValue = nullValue;
+    }
+
+    Class getType() {
+      return Long.TYPE;
+    }
+
+    void read(ResultSet rs, int row) throws SQLException {
+      long value = typeHandler.getLong(rs, columnIndex);
+      if (rs.wasNull()) {
+        if (nullValue == null) {
+          setNull(row, values.length);
+        } else {
+          value = nullValue.longValue();
+        }
+      }
+      values[row] = value;
+    }
+
+    Object getValue(int row) {
+      return Long.valueOf(values[row]);
+    }
+
+    void grow(int capacity) {
+      super.grow(capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+
+  }
+
+  private static class DoubleColumn extends Column {
+
+    private final PrimitiveTypeHandler typeHandler;
+    private final Class type;
+    private final Number nullValue;
+    double[] values = new double[0];
+
+    DoubleColumn(String name, String columnName, int columnIndex, PrimitiveTypeHandler typeHandler, Class type,
+        Number nullValue) {
+      super(name, columnName, columnIndex);
+      this.typeHandler = typeHandler;
+      this.type = type;
+      this.nullValue = nullValue;
+    }
+
+    Class getType() {
+      return Double.TYPE;
+    }
+
+    void read(ResultSet rs, int row) throws SQLException {
+      double value;
+      if (type == Double.TYPE) {
+        value = typeHandler.getDouble(rs, columnIndex);
+      } else {
+        value = typeHandler.getFloat(rs, columnIndex);
+      }
+      if (rs.wasNull()) {
+        if (nullValue == null) {
+          setNull(row, values.length);
+        } else {
+          value = nullValue.doubleValue();
+        }
+      }
+      values[row] = value;
+    }
+
+    Object getValue(int row) {
+      return Double.valueOf(values[row]);
+    }
+
+    void grow(int capacity) {
+      super.grow(capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+
+  }
+
+  private static class ObjectColumn extends Column {
+
+    private final TypeHandler typeHandler;
+    private final Object nullValue;
+    Object[] values = new Object[0];
+
+    ObjectColumn(String name, String columnName, int columnIndex, TypeHandler typeHandler, Object nullValue) {
+      super(name, columnName, columnIndex);
+      this.typeHandler = typeHandler;
+      this.nullValue = nullValue;
+    }
+
+    Class getType() {
+      return Object.class;
+    }
+
+    void read(ResultSet rs, int row) throws SQLException {
+      Object value = typeHandler.getResult(rs, columnIndex);
+      if (value == null) {
+        if (nullValue == null) {
+          setNull(row, values.length);
+        } else {
+          value = nullValue;
+        }
+      }
+      values[row] = value;
+    }
+
+    Object getValue(int row) {
+      return values[row];
+    }
+
+    void grow(int capacity) {
+      super.grow(capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+
+  }
+
+  private static class Result implements ColumnarResult {
+
+    private final Column[] columns;
+    private final int rowCount;
+
+    Result(Column[] columns, int rowCount) {
+      this.columns = columns;
+      this.rowCount = rowCount;
+    }
+
+    public int getRowCount() {
+      return rowCount;
+    }
+
+    public int getColumnCount() {
+      return columns.length;
+    }
+
+    public String getColumnName(int column) {
+      return columns[column].name;
+    }
+
+    public int findColumn(String name) {
+      for (int i = 0; i < columns.length; i++) {
+        if (columns[i].name != null && columns[i].name.equalsIgnoreCase(name)) {
+          return i;
+        }
+      }
+      throw new SqlMapException("There is no column named '" + name + "' in the result.");
+    }
+
+    public Class getColumnType(int column) {
+      return columns[column].getType();
+    }
+
+    public int[] getIntColumn(int column) {
+      return ((IntColumn) getColumn(column, Integer.TYPE)).values;
+    }
+
+    public long[] getLongColumn(int column) {
+      return ((LongColumn) getColumn(column, Long.TYPE)).values;
+    }
+
+    public double[] getDoubleColumn(int column) {
+      return ((DoubleColumn) getColumn(column, Double.TYPE)).values;
+    }
+
+    public Object[] getObjectColumn(int column) {
+      return ((ObjectColumn) getColumn(column, Object.class)).values;
+    }
+
+    public boolean isNull(int column, int row) {
+      checkRow(row);
+      return columns[column].isNull(row);
+    }
+
+    public Object getValue(int column, int row) {
+      checkRow(row);
+      Column c = columns[column];
+      return c.isNull(row) ? null : c.getValue(row);
+    }
+
+    private Column getColumn(int column, Class type) {
+      Column c = columns[column];
+      if (c.getType() != type) {
+        throw new SqlMapException("The column '" + c.name + "' holds " + c.getType().getName() + " values, not "
+            + type.getName() + " values.");
+      }
+      return c;
+    }
+
+    private void checkRow(int row) {
+      if (row < 0 || row >= rowCount) {
+        throw new IndexOutOfBoundsException("Row " + row + " is not between 0 and " + rowCount + ".");
+      }
+    }
+
+  }
+
+}
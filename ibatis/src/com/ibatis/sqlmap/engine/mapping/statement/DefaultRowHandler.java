@@ -22,7 +22,21 @@ import java.util.List;
 
 public class DefaultRowHandler implements RowHandler {
 
-  private List list = new ArrayList();
+  private List list;
+
+  public DefaultRowHandler() {
+    this(new ArrayList());
+  }
+
+  /**
+   * Creates a row handler that adds the rows to the given list
+   *
+   * @param list
+   *          - the list, such as a SpillableList
+   */
+  public DefaultRowHandler(List list) {
+    this.list = list;
+  }
 
   public void handleRow(Object valueObject) {
     list.add(valueObject);
@@ -15,16 +15,31 @@
  */
 package com.ibatis.sqlmap.engine.mapping.statement;
 
+import com.ibatis.common.beans.Probe;
+import com.ibatis.common.beans.ProbeFactory;
+import com.ibatis.sqlmap.client.Cursor;
 import com.ibatis.sqlmap.client.event.RowHandler;
+import com.ibatis.sqlmap.engine.accessplan.AccessPlan;
+import com.ibatis.sqlmap.engine.accessplan.AccessPlanFactory;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
 import com.ibatis.sqlmap.engine.transaction.Transaction;
+import com.ibatis.sqlmap.engine.type.TypeHandler;
+import com.ibatis.sqlmap.engine.type.TypeHandlerFactory;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 
 public class InsertStatement extends MappedStatement {
 
+  private static final Probe PROBE = ProbeFactory.getProbe();
+
   private SelectKeyStatement selectKeyStatement;
+  private int multiRowBatchSize;
+  private boolean useGeneratedKeys;
+  private String keyProperty;
+  private volatile GeneratedKeyWriter generatedKeyWriter;
 
   @Override
   public StatementType getStatementType() {
@@ -49,6 +64,18 @@ public class InsertStatement extends MappedStatement {
     throw new SQLException("Update statements cannot be executed as a query.");
   }
 
+  @Override
+  public void executeQueryForColumns(StatementScope statementScope, Transaction trans, Object parameterObject,
+      ColumnarResultHandler handler) throws SQLException {
+    throw new SQLException("Insert statements cannot be executed as a query.");
+  }
+
+  @Override
+  public Cursor executeQueryForCursor(StatementScope statementScope, Transaction trans, Object parameterObject,
+      Integer fetchSize) throws SQLException {
+    throw new SQLException("Insert statements cannot be executed as a query.");
+  }
+
   public SelectKeyStatement getSelectKeyStatement() {
     return selectKeyStatement;
   }
@@ -56,4 +83,85 @@ public class InsertStatement extends MappedStatement {
   public void setSelectKeyStatement(SelectKeyStatement selectKeyStatement) {
     this.selectKeyStatement = selectKeyStatement;
   }
+
+  /**
+   * The number of batched rows sent as one multi-row INSERT, or 0 if batched rows are sent one by one.
+   *
+   * @return - the number of rows per statement
+   */
+  public int getMultiRowBatchSize() {
+    return multiRowBatchSize;
+  }
+
+  public void setMultiRowBatchSize(int multiRowBatchSize) {
+    this.multiRowBatchSize = multiRowBatchSize;
+  }
+
+  /**
+   * Tells if the key generated by the database is read with Statement.getGeneratedKeys() after the insert.
+   *
+   * @return true if generated keys are used
+   */
+  public boolean isUseGeneratedKeys() {
+    return useGeneratedKeys;
+  }
+
+  public void setUseGeneratedKeys(boolean useGeneratedKeys) {
+    this.useGeneratedKeys = useGeneratedKeys;
+  }
+
+  /**
+   * The property of the parameter object that receives the generated key.
+   *
+   * @return - the key property
+   */
+  public String getKeyProperty() {
+    return keyProperty;
+  }
+
+  public void setKeyProperty(String keyProperty) {
+    this.keyProperty = keyProperty;
+  }
+
+  /**
+   * Sets the key in the current row of a generated keys ResultSet on the parameter object of the insert.
+   *
+   * @param parameterObject
+   *          - the parameter object of the insert
+   * @param keys
+   *          - the result of Statement.getGeneratedKeys(), positioned on the row of the key
+   * @throws SQLException
+   *           - if the key cannot be read
+   */
+  public void setGeneratedKey(Object parameterObject, ResultSet keys) throws SQLException {
+    if (parameterObject == null || keyProperty == null) {
+      return;
+    }
+    GeneratedKeyWriter writer = generatedKeyWriter;
+    if (writer == null || writer.parameterClass != parameterObject.getClass()) {
+      writer = new GeneratedKeyWriter(parameterObject);
+      generatedKeyWriter = writer;
+    }
+    writer.accessPlan.setProperties(parameterObject, new Object[] { writer.typeHandler.getResult(keys, 1) });
+  }
+
+  /**
+   * The access plan and type handler for the key property of one parameter class
+   */
+  private class GeneratedKeyWriter {
+    private Class parameterClass;
+    private AccessPlan accessPlan;
+    private TypeHandler typeHandler;
+
+    public GeneratedKeyWriter(Object parameterObject) {
+      parameterClass = parameterObject.getClass();
+      accessPlan = AccessPlanFactory.getAccessPlan(parameterClass, new String[] { keyProperty });
+      TypeHandlerFactory typeHandlerFactory = ((SqlMapClientImpl) getSqlMapClient()).getDelegate()
+          .getTypeHandlerFactory();
+      typeHandler = typeHandlerFactory.getTypeHandler(PROBE.getPropertyTypeForSetter(parameterObject, keyProperty));
+      if (typeHandler == null) {
+        typeHandler = typeHandlerFactory.getUnkownTypeHandler();
+      }
+    }
+  }
 }
@@ -0,0 +1,320 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.statement;
+
+import com.ibatis.common.util.PaginatedList;
+import com.ibatis.sqlmap.client.SqlMapClient;
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.client.SqlMapExecutor;
+import com.ibatis.sqlmap.client.SqlMapFutures;
+import com.ibatis.sqlmap.client.SqlMapSession;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A paginated list that reads each page after the key of the last row of the previous page, rather than after an
+ * offset. The key of the last row of every page visited is remembered, so moving back and forth takes the same time on
+ * every page. When an executor is given, the next page is read ahead on it in a session of its own.
+ */
+public class KeysetPaginatedDataList implements PaginatedList {
+
+  private SqlMapExecutor sqlMapExecutor;
+  private MappedStatement statement;
+  private Object parameterObject;
+  private ExecutorService prefetchExecutor;
+
+  private int pageSize;
+  private int index;
+
+  // the key of the last row of each page visited so far
+  private List pageKeys = new ArrayList();
+  private List currentPageList;
+  private boolean nextPageAvailable;
+
+  private Future nextPageFuture;
+  private int nextPageFutureIndex = -1;
+
+  public KeysetPaginatedDataList(SqlMapExecutor sqlMapExecutor, MappedStatement statement, Object parameterObject,
+      int pageSize, ExecutorService prefetchExecutor) throws SQLException {
+    this.sqlMapExecutor = sqlMapExecutor;
+    this.statement = statement;
+    this.parameterObject = parameterObject;
+    this.pageSize = pageSize;
+    this.prefetchExecutor = prefetchExecutor;
+    this.index = 0;
+    pageTo(0);
+  }
+
+  /**
+   * Moves to a page. Pages that have not been visited yet are reached by reading the pages before them, and a page
+   * past the end of the results moves to the last page.
+   *
+   * @param idx
+   *          - the page index
+   * @throws SQLException
+   *           if a page could not be read
+   */
+  public void pageTo(int idx) throws SQLException {
+    cancelPrefetch();
+    int page = Math.max(0, Math.min(idx, pageKeys.size()));
+    List list = getList(page);
+    while (page < idx && list.size() > pageSize) {
+      setKey(page, list.get(pageSize - 1));
+      page++;
+      list = getList(page);
+    }
+    index = page;
+    setCurrentPage(list);
+  }
+
+  private void safePageTo(int idx) {
+    try {
+      pageTo(idx);
+    } catch (SQLException e) {
+      throw new RuntimeException("Unexpected error while repaginating paged list.  Cause: " + e, e);
+    }
+  }
+
+  private List getList(int idx) throws SQLException {
+    return sqlMapExecutor.queryForKeysetPage(statement.getId(), parameterObject, getStartKey(idx), pageSize + 1);
+  }
+
+  private Object getStartKey(int idx) {
+    return idx == 0 ? null : pageKeys.get(idx - 1);
+  }
+
+  private void setKey(int idx, Object row) {
+    Object key = statement.getKeysetValue(row);
+    if (key == null) {
+      throw new SqlMapException("The keyset column " + statement.getKeysetColumn() + " of statement "
+          + statement.getId() + " is null or is not mapped to a result property.");
+    }
+    if (idx < pageKeys.size()) {
+      if (!key.equals(pageKeys.get(idx))) {
+        // the data has changed, the keys of the following pages are stale
+        pageKeys.set(idx, key);
+        pageKeys.subList(idx + 1, pageKeys.size()).clear();
+      }
+    } else {
+      pageKeys.add(key);
+    }
+  }
+
+  private void setCurrentPage(List list) {
+    nextPageAvailable = list.size() > pageSize;
+    if (nextPageAvailable) {
+      currentPageList = new ArrayList(list.subList(0, pageSize));
+      setKey(index, currentPageList.get(pageSize - 1));
+      prefetch(index + 1);
+    } else {
+      currentPageList = list;
+    }
+  }
+
+  private void prefetch(int idx) {
+    if (prefetchExecutor != null) {
+      final Object startKey = getStartKey(idx);
+      final SqlMapClient client = (SqlMapClient) sqlMapExecutor;
+      try {
+        nextPageFuture = prefetchExecutor.submit(new Callable() {
+          public Object call() throws Exception {
+            SqlMapSession session = client.openSession();
+            try {
+              return session.queryForKeysetPage(statement.getId(), parameterObject, startKey, pageSize + 1);
+            } finally {
+              session.close();
+            }
+          }
+        });
+        nextPageFutureIndex = idx;
+      } catch (RejectedExecutionException e) {
+        // the pool is saturated, the page is read when it is asked for
+        nextPageFuture = null;
+        nextPageFutureIndex = -1;
+      }
+    }
+  }
+
+  private void cancelPrefetch() {
+    if (nextPageFuture != null) {
+      nextPageFuture.cancel(false);
+      nextPageFuture = null;
+      nextPageFutureIndex = -1;
+    }
+  }
+
+  public boolean nextPage() {
+    if (isNextPageAvailable()) {
+      try {
+        List list;
+        if (nextPageFutureIndex == index + 1) {
+          list = (List) SqlMapFutures.get(nextPageFuture);
+          nextPageFuture = null;
+          nextPageFutureIndex = -1;
+        } else {
+          cancelPrefetch();
+          list = getList(index + 1);
+        }
+        index++;
+        setCurrentPage(list);
+      } catch (SQLException e) {
+        throw new RuntimeException("Unexpected error while repaginating paged list.  Cause: " + e, e);
+      }
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  public boolean previousPage() {
+    if (isPreviousPageAvailable()) {
+      safePageTo(index - 1);
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  public void gotoPage(int pageNumber) {
+    safePageTo(pageNumber);
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public boolean isFirstPage() {
+    return index == 0;
+  }
+
+  public boolean isMiddlePage() {
+    return !(isFirstPage() || isLastPage());
+  }
+
+  public boolean isLastPage() {
+    return !nextPageAvailable;
+  }
+
+  public boolean isNextPageAvailable() {
+    return nextPageAvailable;
+  }
+
+  public boolean isPreviousPageAvailable() {
+    return index > 0;
+  }
+
+  public int size() {
+    return currentPageList.size();
+  }
+
+  public boolean isEmpty() {
+    return currentPageList.isEmpty();
+  }
+
+  public boolean contains(Object o) {
+    return currentPageList.contains(o);
+  }
+
+  public Iterator iterator() {
+    return currentPageList.iterator();
+  }
+
+  public Object[] toArray() {
+    return currentPageList.toArray();
+  }
+
+  public Object[] toArray(Object a[]) {
+    return currentPageList.toArray(a);
+  }
+
+  public boolean containsAll(Collection c) {
+    return currentPageList.containsAll(c);
+  }
+
+  public Object get(int index) {
+    return currentPageList.get(index);
+  }
+
+  public int indexOf(Object o) {
+    return currentPageList.indexOf(o);
+  }
+
+  public int lastIndexOf(Object o) {
+    return currentPageList.lastIndexOf(o);
+  }
+
+  public ListIterator listIterator() {
+    return currentPageList.listIterator();
+  }
+
+  public ListIterator listIterator(int index) {
+    return currentPageList.listIterator(index);
+  }
+
+  public List subList(int fromIndex, int toIndex) {
+    return currentPageList.subList(fromIndex, toIndex);
+  }
+
+  public boolean add(Object o) {
+    return currentPageList.add(o);
+  }
+
+  public boolean remove(Object o) {
+    return currentPageList.remove(o);
+  }
+
+  public boolean addAll(Collection c) {
+    return currentPageList.addAll(c);
+  }
+
+  public boolean addAll(int index, Collection c) {
+    return currentPageList.addAll(index, c);
+  }
+
+  public boolean removeAll(Collection c) {
+    return currentPageList.removeAll(c);
+  }
+
+  public boolean retainAll(Collection c) {
+    return currentPageList.retainAll(c);
+  }
+
+  public void clear() {
+    currentPageList.clear();
+  }
+
+  public Object set(int index, Object element) {
+    return currentPageList.set(index, element);
+  }
+
+  public void add(int index, Object element) {
+    currentPageList.add(index, element);
+  }
+
+  public Object remove(int index) {
+    return currentPageList.remove(index);
+  }
+
+  public int getPageIndex() {
+    return index;
+  }
+
+}
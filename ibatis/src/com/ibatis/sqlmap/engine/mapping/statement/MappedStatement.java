@@ -15,14 +15,19 @@
  */
 package com.ibatis.sqlmap.engine.mapping.statement;
 
+import com.ibatis.common.beans.Probe;
+import com.ibatis.common.beans.ProbeFactory;
 import com.ibatis.common.jdbc.exception.NestedSQLException;
 import com.ibatis.common.io.ReaderInputStream;
 
 import com.ibatis.sqlmap.client.event.RowHandler;
 import com.ibatis.sqlmap.client.*;
+import com.ibatis.sqlmap.engine.execution.DeadlineTimer;
 import com.ibatis.sqlmap.engine.execution.SqlExecutor;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
 import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMapping;
+import com.ibatis.sqlmap.engine.mapping.result.loader.NestedSelectBatch;
 import com.ibatis.sqlmap.engine.mapping.sql.Sql;
 import com.ibatis.sqlmap.engine.scope.ErrorContext;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
@@ -40,6 +45,9 @@ import java.util.*;
 import java.io.*;
 
 public class MappedStatement {
+
+  private static final Probe PROBE = ProbeFactory.getProbe();
+
   private String id;
   private Integer resultSetType;
   private Integer fetchSize;
@@ -53,6 +61,14 @@ public class MappedStatement {
   private ResultMap[] additionalResultMaps = new ResultMap[0];
   private List executeListeners = new ArrayList();
   private String resource;
+  private String keysetColumn;
+  private Boolean readReplica;
+  private String shardKey;
+  private String shardOrderBy;
+  private QueryCoalescer coalescer;
+  private boolean coalesceReadOnly;
+  private boolean spillable;
+  private Map inListStatements = new HashMap();
 
   public StatementType getStatementType() {
     return StatementType.UNKNOWN;
@@ -80,6 +96,7 @@ public class MappedStatement {
 
       statementScope.setResultMap(resultMap);
       statementScope.setParameterMap(parameterMap);
+      statementScope.setParameterObject(parameterObject);
 
       int rows = 0;
 
@@ -91,7 +108,7 @@ public class MappedStatement {
 
       errorContext.setActivity("executing mapped statement");
       errorContext.setMoreInfo("Check the statement or the result map.");
-      rows = sqlExecuteUpdate(statementScope, trans.getConnection(), sqlString, parameters);
+      rows = sqlExecuteUpdate(statementScope, getConnection(statementScope, trans), sqlString, parameters);
 
       errorContext.setMoreInfo("Check the output parameters.");
       if (parameterObject != null) {
@@ -111,14 +128,32 @@ public class MappedStatement {
     }
   }
 
-  public Object executeQueryForObject(StatementScope statementScope, Transaction trans, Object parameterObject,
+  public Object executeQueryForObject(final StatementScope statementScope, final Transaction trans,
+      final Object parameterObject, Object resultObject) throws SQLException {
+    if (resultObject == null && isCoalescing(statementScope)) {
+      CacheKey key = getCacheKey(statementScope, parameterObject);
+      key.update("executeQueryForObject");
+      return coalescer.execute(key, coalesceReadOnly, statementScope.getSession().getDeadline(),
+          new QueryCoalescer.Query() {
+            public Object run() throws SQLException {
+              return queryForObject(statementScope, trans, parameterObject, null);
+            }
+          });
+    }
+    return queryForObject(statementScope, trans, parameterObject, resultObject);
+  }
+
+  private Object queryForObject(StatementScope statementScope, Transaction trans, Object parameterObject,
       Object resultObject) throws SQLException {
     try {
       Object object = null;
 
       DefaultRowHandler rowHandler = new DefaultRowHandler();
-      executeQueryWithCallback(statementScope, trans.getConnection(), parameterObject, resultObject, rowHandler,
-          SqlExecutor.NO_SKIPPED_RESULTS, SqlExecutor.NO_MAXIMUM_RESULTS);
+      NestedSelectBatch batch = new NestedSelectBatch();
+      statementScope.setNestedSelectBatch(batch);
+      executeQueryWithCallback(statementScope, getConnection(statementScope, trans), parameterObject, resultObject,
+          rowHandler, SqlExecutor.NO_SKIPPED_RESULTS, SqlExecutor.NO_MAXIMUM_RESULTS);
+      batch.load(statementScope, trans);
       List list = rowHandler.getList();
 
       if (list.size() > 1) {
@@ -133,12 +168,41 @@ public class MappedStatement {
     }
   }
 
-  public List executeQueryForList(StatementScope statementScope, Transaction trans, Object parameterObject,
+  public List executeQueryForList(final StatementScope statementScope, final Transaction trans,
+      final Object parameterObject, final int skipResults, final int maxResults) throws SQLException {
+    if (isCoalescing(statementScope)) {
+      CacheKey key = getCacheKey(statementScope, parameterObject);
+      key.update("executeQueryForList");
+      key.update(skipResults);
+      key.update(maxResults);
+      if (statementScope.isKeysetQuery()) {
+        key.update(String.valueOf(statementScope.getKeysetValue()));
+      }
+      return (List) coalescer.execute(key, coalesceReadOnly, statementScope.getSession().getDeadline(),
+          new QueryCoalescer.Query() {
+            public Object run() throws SQLException {
+              return queryForList(statementScope, trans, parameterObject, skipResults, maxResults);
+            }
+          });
+    }
+    return queryForList(statementScope, trans, parameterObject, skipResults, maxResults);
+  }
+
+  private List queryForList(StatementScope statementScope, Transaction trans, Object parameterObject,
       int skipResults, int maxResults) throws SQLException {
     try {
-      DefaultRowHandler rowHandler = new DefaultRowHandler();
-      executeQueryWithCallback(statementScope, trans.getConnection(), parameterObject, null, rowHandler, skipResults,
-          maxResults);
+      DefaultRowHandler rowHandler;
+      if (isSpillable()) {
+        int threshold = sqlMapClient.getDelegate().getSpillThreshold();
+        rowHandler = new DefaultRowHandler(new SpillableList(threshold));
+      } else {
+        rowHandler = new DefaultRowHandler();
+      }
+      NestedSelectBatch batch = new NestedSelectBatch();
+      statementScope.setNestedSelectBatch(batch);
+      executeQueryWithCallback(statementScope, getConnection(statementScope, trans), parameterObject, null, rowHandler,
+          skipResults, maxResults);
+      batch.load(statementScope, trans);
       return rowHandler.getList();
     } catch (TransactionException e) {
       throw new NestedSQLException("Error getting Connection from Transaction.  Cause: " + e, e);
@@ -148,19 +212,108 @@ public class MappedStatement {
   public void executeQueryWithRowHandler(StatementScope statementScope, Transaction trans, Object parameterObject,
       RowHandler rowHandler) throws SQLException {
     try {
-      executeQueryWithCallback(statementScope, trans.getConnection(), parameterObject, null, rowHandler,
+      executeQueryWithCallback(statementScope, getConnection(statementScope, trans), parameterObject, null, rowHandler,
           SqlExecutor.NO_SKIPPED_RESULTS, SqlExecutor.NO_MAXIMUM_RESULTS);
     } catch (TransactionException e) {
       throw new NestedSQLException("Error getting Connection from Transaction.  Cause: " + e, e);
     }
   }
 
+  /**
+   * Reads the results of this statement column by column into a handler.
+   *
+   * @param statementScope
+   *          - the scope of this statement
+   * @param trans
+   *          - the transaction
+   * @param parameterObject
+   *          - the parameter object
+   * @param handler
+   *          - the handler collecting the columns
+   * @throws SQLException
+   *           if the query fails or its result map cannot be read as columns
+   */
+  public void executeQueryForColumns(StatementScope statementScope, Transaction trans, Object parameterObject,
+      ColumnarResultHandler handler) throws SQLException {
+    try {
+      executeQueryWithCallback(statementScope, getConnection(statementScope, trans), parameterObject, null, null,
+          handler, SqlExecutor.NO_SKIPPED_RESULTS, SqlExecutor.NO_MAXIMUM_RESULTS);
+    } catch (TransactionException e) {
+      throw new NestedSQLException("Error getting Connection from Transaction.  Cause: " + e, e);
+    }
+  }
+
+  public Cursor executeQueryForCursor(StatementScope statementScope, Transaction trans, Object parameterObject,
+      Integer fetchSize) throws SQLException {
+    ErrorContext errorContext = statementScope.getErrorContext();
+    errorContext.setActivity("preparing the mapped statement for execution");
+    errorContext.setObjectId(this.getId());
+    errorContext.setResource(this.getResource());
+
+    try {
+      parameterObject = validateParameter(parameterObject);
+
+      Sql sql = getSql();
+
+      errorContext.setMoreInfo("Check the parameter map.");
+      ParameterMap parameterMap = sql.getParameterMap(statementScope, parameterObject);
+
+      errorContext.setMoreInfo("Check the result map.");
+      ResultMap resultMap = sql.getResultMap(statementScope, parameterObject);
+      if (resultMap == null) {
+        throw new SQLException("The statement " + getId() + " has no result map or result class to map a cursor with.");
+      }
+      if (resultMap.hasGroupBy()) {
+        throw new SQLException("The result map " + resultMap.getId()
+            + " uses groupBy, which needs the whole result set and cannot be read through a cursor.");
+      }
+
+      statementScope.setResultMap(resultMap);
+      statementScope.setParameterMap(parameterMap);
+
+      errorContext.setMoreInfo("Check the parameter map.");
+      Object[] parameters = parameterMap.getParameterObjectValues(statementScope, parameterObject);
+
+      errorContext.setMoreInfo("Check the SQL statement.");
+      String sqlString = sql.getSql(statementScope, parameterObject);
+
+      errorContext.setActivity("executing mapped statement");
+      errorContext.setMoreInfo("Check the SQL statement or the result map.");
+      Cursor cursor = getSqlExecutor().executeQueryForCursor(statementScope, getConnection(statementScope, trans),
+          sqlString, parameters, fetchSize);
+
+      errorContext.reset();
+      sql.cleanup(statementScope);
+      notifyListeners();
+      return cursor;
+    } catch (TransactionException e) {
+      throw new NestedSQLException("Error getting Connection from Transaction.  Cause: " + e, e);
+    } catch (SQLException e) {
+      errorContext.setCause(e);
+      throw new NestedSQLException(errorContext.toString(), e.getSQLState(), e.getErrorCode(), e);
+    } catch (Exception e) {
+      errorContext.setCause(e);
+      throw new NestedSQLException(errorContext.toString(), e);
+    }
+  }
+
   //
   // PROTECTED METHODS
   //
 
   protected void executeQueryWithCallback(StatementScope statementScope, Connection conn, Object parameterObject,
       Object resultObject, RowHandler rowHandler, int skipResults, int maxResults) throws SQLException {
+    executeQueryWithCallback(statementScope, conn, parameterObject, resultObject, rowHandler, null, skipResults,
+        maxResults);
+  }
+
+  /**
+   * Executes the query, passing each row to the given callback, or to a RowHandlerCallback for the row handler if the
+   * callback is null.
+   */
+  private void executeQueryWithCallback(StatementScope statementScope, Connection conn, Object parameterObject,
+      Object resultObject, RowHandler rowHandler, RowHandlerCallback callback, int skipResults, int maxResults)
+      throws SQLException {
     ErrorContext errorContext = statementScope.getErrorContext();
     errorContext.setActivity("preparing the mapped statement for execution");
     errorContext.setObjectId(this.getId());
@@ -177,6 +330,12 @@ public class MappedStatement {
       errorContext.setMoreInfo("Check the result map.");
       ResultMap resultMap = sql.getResultMap(statementScope, parameterObject);
 
+      if (callback == null) {
+        callback = new RowHandlerCallback(resultMap, resultObject, rowHandler);
+      } else if (resultMap == null) {
+        throw new SQLException("The statement " + getId() + " has no result map or result class to read columns with.");
+      }
+
       statementScope.setResultMap(resultMap);
       statementScope.setParameterMap(parameterMap);
 
@@ -188,7 +347,6 @@ public class MappedStatement {
 
       errorContext.setActivity("executing mapped statement");
       errorContext.setMoreInfo("Check the SQL statement or the result map.");
-      RowHandlerCallback callback = new RowHandlerCallback(resultMap, resultObject, rowHandler);
       sqlExecuteQuery(statementScope, conn, sqlString, parameters, skipResults, maxResults, callback);
 
       errorContext.setMoreInfo("Check the output parameters.");
@@ -208,6 +366,82 @@ public class MappedStatement {
     }
   }
 
+  /**
+   * Prepares this statement to be executed with others in one round trip by queryMulti().
+   *
+   * @param statementScope
+   *          - the scope of this statement
+   * @param parameterObject
+   *          - the parameter object
+   * @return - the prepared query
+   * @throws SQLException
+   *           if the parameters or the SQL cannot be built
+   */
+  public PipelinedQuery prepareQuery(StatementScope statementScope, Object parameterObject) throws SQLException {
+    ErrorContext errorContext = statementScope.getErrorContext();
+    errorContext.setActivity("preparing the mapped statement for pipelined execution");
+    errorContext.setObjectId(this.getId());
+    errorContext.setResource(this.getResource());
+
+    try {
+      parameterObject = validateParameter(parameterObject);
+
+      Sql sql = getSql();
+
+      errorContext.setMoreInfo("Check the parameter map.");
+      ParameterMap parameterMap = sql.getParameterMap(statementScope, parameterObject);
+
+      errorContext.setMoreInfo("Check the result map.");
+      ResultMap resultMap = sql.getResultMap(statementScope, parameterObject);
+
+      statementScope.setResultMap(resultMap);
+      statementScope.setParameterMap(parameterMap);
+
+      errorContext.setMoreInfo("Check the parameter map.");
+      Object[] parameters = parameterMap.getParameterObjectValues(statementScope, parameterObject);
+
+      errorContext.setMoreInfo("Check the SQL statement.");
+      String sqlString = sql.getSql(statementScope, parameterObject);
+
+      errorContext.setActivity("executing mapped statement");
+      errorContext.setMoreInfo("Check the SQL statement or the result map.");
+      return new PipelinedQuery(this, statementScope, parameterObject, sqlString, parameters);
+    } catch (SQLException e) {
+      errorContext.setCause(e);
+      throw new NestedSQLException(errorContext.toString(), e.getSQLState(), e.getErrorCode(), e);
+    } catch (Exception e) {
+      errorContext.setCause(e);
+      throw new NestedSQLException(errorContext.toString(), e);
+    }
+  }
+
+  /**
+   * Completes a query prepared by prepareQuery() once its results have been read.
+   *
+   * @param query
+   *          - the query
+   * @return - the result objects
+   */
+  public List completeQuery(PipelinedQuery query) {
+    StatementScope statementScope = query.getStatementScope();
+    ErrorContext errorContext = statementScope.getErrorContext();
+    errorContext.setMoreInfo("Check the output parameters.");
+    if (query.getParameterObject() != null) {
+      postProcessParameterObject(statementScope, query.getParameterObject(), query.getParameters());
+    }
+    errorContext.reset();
+    getSql().cleanup(statementScope);
+    notifyListeners();
+    return query.getList();
+  }
+
+  protected Connection getConnection(StatementScope statementScope, Transaction trans) throws SQLException,
+      TransactionException {
+    Connection conn = DeadlineTimer.getConnection(trans, statementScope.getSession().getDeadline());
+    statementScope.setDriverProfile(sqlMapClient.getDelegate().getDriverProfile(trans, conn));
+    return conn;
+  }
+
   protected void postProcessParameterObject(StatementScope statementScope, Object parameterObject, Object[] parameters) {
   }
 
@@ -285,6 +519,165 @@ public class MappedStatement {
     this.fetchSize = fetchSize;
   }
 
+  /**
+   * The column that keyset paginated lists of this statement are sorted and paged on.
+   *
+   * @return - the column name, or null if the statement cannot be paged by key
+   */
+  public String getKeysetColumn() {
+    return keysetColumn;
+  }
+
+  public void setKeysetColumn(String keysetColumn) {
+    this.keysetColumn = keysetColumn;
+  }
+
+  /**
+   * Tells if the statement may run on a read replica when it is not part of an explicit transaction. By default
+   * only select statements do.
+   *
+   * @return - true if the statement can be routed to a replica
+   */
+  public boolean isReadReplica() {
+    return readReplica == null ? getStatementType() == StatementType.SELECT : readReplica.booleanValue();
+  }
+
+  public void setReadReplica(Boolean readReplica) {
+    this.readReplica = readReplica;
+  }
+
+  /**
+   * The parameter property that selects the shard the statement runs on.
+   *
+   * @return - the property name, or null if the statement does not run on shards
+   */
+  public String getShardKey() {
+    return shardKey;
+  }
+
+  public void setShardKey(String shardKey) {
+    this.shardKey = shardKey;
+  }
+
+  /**
+   * The result property the rows of all shards are merged on when the statement runs without a shard key, optionally
+   * followed by DESC. Each shard must return its rows ordered the same way.
+   *
+   * @return - the order property, or null to concatenate the results of the shards
+   */
+  public String getShardOrderBy() {
+    return shardOrderBy;
+  }
+
+  public void setShardOrderBy(String shardOrderBy) {
+    this.shardOrderBy = shardOrderBy;
+  }
+
+  /**
+   * Tells if identical concurrent queries of this statement are run once, the other callers waiting for the result of
+   * the first one.
+   *
+   * @return - true if queries are coalesced
+   */
+  public boolean isCoalesce() {
+    return coalescer != null;
+  }
+
+  /**
+   * Turns query coalescing on or off.
+   *
+   * @param coalesce
+   *          - true to coalesce identical concurrent queries
+   * @param readOnly
+   *          - true if the callers can share the result, false to give each waiting caller a copy
+   */
+  public void setCoalesce(boolean coalesce, boolean readOnly) {
+    this.coalescer = coalesce ? new QueryCoalescer() : null;
+    this.coalesceReadOnly = readOnly;
+  }
+
+  /**
+   * The IN-list variants of this statement that load the nested selects of a batch, by number of keys. They live as
+   * long as the statement itself; the map must be read and updated while holding its lock.
+   *
+   * @return - a map of Integer sizes to statements
+   */
+  public Map getInListStatements() {
+    return inListStatements;
+  }
+
+  /**
+   * Tells if the result lists of this statement keep only a bounded number of rows on the heap and write the others to
+   * a temporary file.
+   *
+   * @return - true if results spill to disk
+   */
+  public boolean isSpillable() {
+    return spillable;
+  }
+
+  public void setSpillable(boolean spillable) {
+    this.spillable = spillable;
+  }
+
+  /**
+   * A session does not share the queries it runs after writing in its transaction, as other sessions cannot see its
+   * writes.
+   */
+  private boolean isCoalescing(StatementScope statementScope) {
+    return coalescer != null && !statementScope.getSession().isCommitRequired();
+  }
+
+  /**
+   * Reads the shard key value from a parameter object. A simple parameter is its own shard key.
+   *
+   * @param parameterObject
+   *          - a parameter object of this statement
+   * @return - the shard key, or null if the statement has none or the parameter does not set it
+   */
+  public Object getShardKeyValue(Object parameterObject) {
+    String property = getShardKey();
+    if (parameterObject == null || property == null) {
+      return null;
+    }
+    if (sqlMapClient.getDelegate().getTypeHandlerFactory().hasTypeHandler(parameterObject.getClass())) {
+      return parameterObject;
+    }
+    return PROBE.getObject(parameterObject, property);
+  }
+
+  /**
+   * Reads the keyset column value back from a result object. The property is the one the result map maps the keyset
+   * column to, or the column name itself if the result map does not map it (as a remapped automatic result map, whose
+   * mappings change with each result set).
+   *
+   * @param resultObject
+   *          - a result object of this statement
+   * @return - the key of the row
+   */
+  public Object getKeysetValue(Object resultObject) {
+    String column = getKeysetColumn();
+    if (resultObject == null || column == null) {
+      return null;
+    }
+    if (sqlMapClient.getDelegate().getTypeHandlerFactory().hasTypeHandler(resultObject.getClass())) {
+      // a simple result, the row is the key
+      return resultObject;
+    }
+    String property = column;
+    ResultMap resultMap = getResultMap();
+    if (resultMap != null && resultMap.getResultMappings() != null) {
+      ResultMapping[] mappings = resultMap.getResultMappings();
+      for (int i = 0; i < mappings.length; i++) {
+        if (column.equalsIgnoreCase(mappings[i].getColumnName())) {
+          property = mappings[i].getPropertyName();
+          break;
+        }
+      }
+    }
+    return PROBE.getObject(resultObject, property);
+  }
+
   public void setId(String id) {
     this.id = id;
   }
@@ -334,6 +727,10 @@ public class MappedStatement {
     ParameterMap pmap = sql.getParameterMap(statementScope, parameterObject);
     CacheKey cacheKey = pmap.getCacheKey(statementScope, parameterObject);
     cacheKey.update(id);
+    if (statementScope.getShard() != StatementScope.NO_SHARD) {
+      // the same parameters give different rows on each shard
+      cacheKey.update(statementScope.getShard());
+    }
 
     // I am not sure how any clustered cache solution would ever have had any cache hits against
     // replicated objects. I could not make it happen
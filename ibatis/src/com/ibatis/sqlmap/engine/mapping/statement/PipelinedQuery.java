@@ -0,0 +1,79 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.statement;
+
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+
+import java.util.List;
+
+/**
+ * One mapped statement of a queryMulti() call, prepared to be sent to the database together with the others.
+ */
+public class PipelinedQuery {
+
+  private MappedStatement statement;
+  private StatementScope statementScope;
+  private Object parameterObject;
+  private String sql;
+  private Object[] parameters;
+  private DefaultRowHandler rowHandler;
+  private RowHandlerCallback callback;
+
+  PipelinedQuery(MappedStatement statement, StatementScope statementScope, Object parameterObject, String sql,
+      Object[] parameters) {
+    this.statement = statement;
+    this.statementScope = statementScope;
+    this.parameterObject = parameterObject;
+    this.sql = sql;
+    this.parameters = parameters;
+    this.rowHandler = new DefaultRowHandler();
+    this.callback = new RowHandlerCallback(statementScope.getResultMap(), null, rowHandler);
+  }
+
+  public MappedStatement getStatement() {
+    return statement;
+  }
+
+  public StatementScope getStatementScope() {
+    return statementScope;
+  }
+
+  public Object getParameterObject() {
+    return parameterObject;
+  }
+
+  public String getSql() {
+    return sql;
+  }
+
+  public Object[] getParameters() {
+    return parameters;
+  }
+
+  public RowHandlerCallback getCallback() {
+    return callback;
+  }
+
+  /**
+   * The result objects mapped from the result set of this statement
+   *
+   * @return - the results
+   */
+  public List getList() {
+    return rowHandler.getList();
+  }
+
+}
@@ -15,7 +15,9 @@
  */
 package com.ibatis.sqlmap.engine.mapping.statement;
 
+import com.ibatis.sqlmap.client.Cursor;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
+import com.ibatis.sqlmap.engine.transaction.Transaction;
 
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -45,6 +47,12 @@ public class ProcedureStatement extends MappedStatement {
         callback);
   }
 
+  @Override
+  public Cursor executeQueryForCursor(StatementScope statementScope, Transaction trans, Object parameterObject,
+      Integer fetchSize) throws SQLException {
+    throw new SQLException("Procedure statements cannot be executed as a cursor.");
+  }
+
   @Override
   public StatementType getStatementType() {
     return StatementType.PROCEDURE;
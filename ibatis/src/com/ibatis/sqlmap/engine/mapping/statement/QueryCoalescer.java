@@ -0,0 +1,182 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.statement;
+
+import com.ibatis.sqlmap.engine.cache.CacheKey;
+import com.ibatis.sqlmap.engine.execution.DeadlineTimer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs identical concurrent queries once. The first caller for a key runs the query, and the callers that arrive
+ * while it is running wait for its result instead of running the query themselves.
+ * <p>
+ * Unless the results are read only, each waiting caller gets a copy of the result made by serialization, so a result
+ * that is not serializable makes the waiting callers run the query themselves. They also do so when the query of the
+ * first caller fails, as the failure may be its own (a deadline, a broken connection).
+ */
+class QueryCoalescer {
+
+  interface Query {
+    Object run() throws SQLException;
+  }
+
+  private final ConcurrentHashMap inFlight = new ConcurrentHashMap();
+
+  /**
+   * Runs the query, or waits for the identical query already running.
+   *
+   * @param key
+   *          - the cache key of the query
+   * @param readOnly
+   *          - if the result can be shared by the callers
+   * @param deadline
+   *          - the deadline of the caller, or DeadlineTimer.NO_DEADLINE
+   * @param query
+   *          - the query
+   * @return - the result, or a copy of it
+   */
+  public Object execute(CacheKey key, boolean readOnly, long deadline, Query query) throws SQLException {
+    Flight flight = new Flight(readOnly);
+    Flight leader = (Flight) inFlight.putIfAbsent(key, flight);
+    if (leader == null) {
+      return lead(key, flight, query);
+    }
+    if (!leader.join()) {
+      // it just finished, and no longer waits for followers
+      return query.run();
+    }
+    if (!leader.await(deadline)) {
+      return query.run();
+    }
+    return leader.getResult(query);
+  }
+
+  private Object lead(CacheKey key, Flight flight, Query query) throws SQLException {
+    boolean succeeded = false;
+    Object result = null;
+    try {
+      result = query.run();
+      succeeded = true;
+      return result;
+    } finally {
+      inFlight.remove(key, flight);
+      flight.complete(succeeded, result);
+    }
+  }
+
+  int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  private static class Flight {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final boolean readOnly;
+    private int followers;
+    private boolean closed;
+    private boolean succeeded;
+    private Object result;
+    private byte[] serializedResult;
+
+    public Flight(boolean readOnly) {
+      this.readOnly = readOnly;
+    }
+
+    public synchronized boolean join() {
+      if (closed) {
+        return false;
+      }
+      followers++;
+      return true;
+    }
+
+    public void complete(boolean succeeded, Object result) {
+      int waiting;
+      synchronized (this) {
+        closed = true;
+        waiting = followers;
+      }
+      this.succeeded = succeeded;
+      this.result = result;
+      try {
+        // copied before the first caller gets the result back and can change it
+        if (succeeded && waiting > 0 && !readOnly && result != null) {
+          serializedResult = serialize(result);
+        }
+      } finally {
+        // the followers must never be left waiting, whatever the copy throws
+        done.countDown();
+      }
+    }
+
+    public boolean await(long deadline) throws SQLException {
+      try {
+        if (deadline == DeadlineTimer.NO_DEADLINE) {
+          done.await();
+        } else if (!done.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+          DeadlineTimer.check(deadline);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+      return succeeded;
+    }
+
+    public Object getResult(Query query) throws SQLException {
+      if (readOnly || result == null) {
+        return result;
+      }
+      if (serializedResult == null) {
+        return query.run();
+      }
+      try {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serializedResult));
+        Object copy = ois.readObject();
+        ois.close();
+        return copy;
+      } catch (Exception e) {
+        return query.run();
+      }
+    }
+
+    private static byte[] serialize(Object result) {
+      try {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(result);
+        oos.flush();
+        oos.close();
+        return bos.toByteArray();
+      } catch (IOException e) {
+        // not serializable, the followers run the query themselves
+        return null;
+      } catch (RuntimeException e) {
+        // a writeObject() that fails is treated the same way
+        return null;
+      }
+    }
+  }
+
+}
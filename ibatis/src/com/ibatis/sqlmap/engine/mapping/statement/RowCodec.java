@@ -0,0 +1,485 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.statement;
+
+import com.ibatis.common.beans.ClassInfo;
+import com.ibatis.common.beans.Invoker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary form of the rows a {@link SpillableList} writes to disk.
+ * <p>
+ * Each value starts with a one byte tag. Strings, numbers, dates and byte arrays are written as their raw values,
+ * integers as variable length. A bean is written as the values of its properties, a Map or Collection as its entries,
+ * after the index of its class in a dictionary kept by the codec; the class name and property names are therefore
+ * only held once per list instead of once per row. Other Serializable values are written with Java serialization.
+ * A row holding any other value cannot be encoded and is kept on the heap.
+ * <p>
+ * A decoded row is a copy of the row that was encoded: it has the same class and property values, but shared
+ * references between rows and values that are not properties of a bean are not kept.
+ */
+class RowCodec {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  // nested beans and collections deeper than this are taken as a cycle
+  private static final int MAX_DEPTH = 32;
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte INTEGER = 2;
+  private static final byte LONG = 3;
+  private static final byte DOUBLE = 4;
+  private static final byte BOOLEAN_TRUE = 5;
+  private static final byte BOOLEAN_FALSE = 6;
+  private static final byte BIG_DECIMAL = 7;
+  private static final byte DATE = 8;
+  private static final byte TIMESTAMP = 9;
+  private static final byte SQL_DATE = 10;
+  private static final byte TIME = 11;
+  private static final byte SHORT = 12;
+  private static final byte BYTE = 13;
+  private static final byte FLOAT = 14;
+  private static final byte BYTES = 15;
+  private static final byte BEAN = 16;
+  private static final byte MAP = 17;
+  private static final byte COLLECTION = 18;
+  private static final byte SERIALIZED = 19;
+
+  private final List classes = new ArrayList();
+  private final Map classIndexes = new HashMap();
+
+  /**
+   * Encodes a row.
+   *
+   * @param row
+   *          the row
+   * @param out
+   *          the buffer to append the row to
+   * @throws IOException
+   *           if the row holds a value that cannot be encoded
+   */
+  void encode(Object row, Output out) throws IOException {
+    writeValue(row, out, 0);
+  }
+
+  /**
+   * Decodes a row.
+   *
+   * @param in
+   *          the buffer, positioned at the start of the row
+   * @return the row
+   * @throws IOException
+   *           if the row cannot be decoded
+   */
+  Object decode(ByteBuffer in) throws IOException {
+    return readValue(in);
+  }
+
+  private void writeValue(Object value, Output out, int depth) throws IOException {
+    if (depth > MAX_DEPTH) {
+      throw new IOException("The row is nested more than " + MAX_DEPTH + " levels deep.");
+    }
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      out.writeBytes(((String) value).getBytes(UTF8));
+    } else if (value instanceof Integer) {
+      out.writeByte(INTEGER);
+      out.writeVarLong(((Integer) value).intValue());
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeVarLong(((Long) value).longValue());
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeLong(Double.doubleToRawLongBits(((Double) value).doubleValue()));
+    } else if (value instanceof Boolean) {
+      out.writeByte(((Boolean) value).booleanValue() ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+    } else if (value instanceof BigDecimal) {
+      BigDecimal decimal = (BigDecimal) value;
+      out.writeByte(BIG_DECIMAL);
+      out.writeVarLong(decimal.scale());
+      out.writeBytes(decimal.unscaledValue().toByteArray());
+    } else if (value instanceof Date) {
+      writeDate((Date) value, out);
+    } else if (value instanceof Short) {
+      out.writeByte(SHORT);
+      out.writeVarLong(((Short) value).shortValue());
+    } else if (value instanceof Byte) {
+      out.writeByte(BYTE);
+      out.writeByte(((Byte) value).byteValue());
+    } else if (value instanceof Float) {
+      out.writeByte(FLOAT);
+      out.writeInt(Float.floatToRawIntBits(((Float) value).floatValue()));
+    } else if (value instanceof byte[]) {
+      out.writeByte(BYTES);
+      out.writeBytes((byte[]) value);
+    } else {
+      ClassEntry entry = getClassEntry(value.getClass());
+      if (entry == null) {
+        writeSerialized(value, out);
+      } else if (entry.properties != null) {
+        out.writeByte(BEAN);
+        out.writeVarLong(entry.index);
+        for (int i = 0; i < entry.getters.length; i++) {
+          Object property;
+          try {
+            property = entry.getters[i].invoke(value, null);
+          } catch (Throwable t) {
+            throw new IOException("Could not read the property '" + entry.properties[i] + "' of "
+                + value.getClass().getName() + ".  Cause: " + ClassInfo.unwrapThrowable(t));
+          }
+          writeValue(property, out, depth + 1);
+        }
+      } else if (value instanceof Map) {
+        Map map = (Map) value;
+        out.writeByte(MAP);
+        out.writeVarLong(entry.index);
+        out.writeVarLong(map.size());
+        for (Iterator i = map.entrySet().iterator(); i.hasNext();) {
+          Map.Entry mapEntry = (Map.Entry) i.next();
+          writeValue(mapEntry.getKey(), out, depth + 1);
+          writeValue(mapEntry.getValue(), out, depth + 1);
+        }
+      } else {
+        Collection collection = (Collection) value;
+        out.writeByte(COLLECTION);
+        out.writeVarLong(entry.index);
+        out.writeVarLong(collection.size());
+        for (Iterator i = collection.iterator(); i.hasNext();) {
+          writeValue(i.next(), out, depth + 1);
+        }
+      }
+    }
+  }
+
+  private void writeDate(Date date, Output out) {
+    if (date instanceof Timestamp) {
+      out.writeByte(TIMESTAMP);
+      out.writeVarLong(date.getTime());
+      out.writeVarLong(((Timestamp) date).getNanos());
+    } else if (date instanceof java.sql.Date) {
+      out.writeByte(SQL_DATE);
+      out.writeVarLong(date.getTime());
+    } else if (date instanceof Time) {
+      out.writeByte(TIME);
+      out.writeVarLong(date.getTime());
+    } else {
+      out.writeByte(DATE);
+      out.writeVarLong(date.getTime());
+    }
+  }
+
+  private void writeSerialized(Object value, Output out) throws IOException {
+    if (!(value instanceof Serializable)) {
+      throw new IOException("Rows holding a " + value.getClass().getName() + " cannot be written to disk.");
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream objects = new ObjectOutputStream(bytes);
+    objects.writeObject(value);
+    objects.close();
+    out.writeByte(SERIALIZED);
+    out.writeBytes(bytes.toByteArray());
+  }
+
+  private Object readValue(ByteBuffer in) throws IOException {
+    byte tag = in.get();
+    switch (tag) {
+    case NULL:
+      return null;
+    case STRING:
+      return new String(readBytes(in), UTF8);
+    case INTEGER:
+      return Integer.valueOf((int) readVarLong(in));
+    case LONG:
+      return Long.valueOf(readVarLong(in));
+    case DOUBLE:
+      return Double.valueOf(Double.longBitsToDouble(in.getLong()));
+    case BOOLEAN_TRUE:
+      return Boolean.TRUE;
+    case BOOLEAN_FALSE:
+      return Boolean.FALSE;
+    case BIG_DECIMAL:
+      int scale = (int) readVarLong(in);
+      return new BigDecimal(new BigInteger(readBytes(in)), scale);
+    case DATE:
+      return new Date(readVarLong(in));
+    case TIMESTAMP:
+      Timestamp timestamp = new Timestamp(readVarLong(in));
+      timestamp.setNanos((int) readVarLong(in));
+      return timestamp;
+    case SQL_DATE:
+      return new java.sql.Date(readVarLong(in));
+    case TIME:
+      return new Time(readVarLong(in));
+    case SHORT:
+      return Short.valueOf((short) readVarLong(in));
+    case BYTE:
+      return Byte.valueOf(in.get());
+    case FLOAT:
+      return Float.valueOf(Float.intBitsToFloat(in.getInt()));
+    case BYTES:
+      return readBytes(in);
+    case BEAN:
+      return readBean(in);
+    case MAP:
+      Map map = (Map) newInstance((ClassEntry) classes.get((int) readVarLong(in)));
+      for (int i = (int) readVarLong(in); i > 0; i--) {
+        Object key = readValue(in);
+        map.put(key, readValue(in));
+      }
+      return map;
+    case COLLECTION:
+      Collection collection = (Collection) newInstance((ClassEntry) classes.get((int) readVarLong(in)));
+      for (int i = (int) readVarLong(in); i > 0; i--) {
+        collection.add(readValue(in));
+      }
+      return collection;
+    case SERIALIZED:
+      try {
+        ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)));
+        return objects.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new IOException("Could not read a serialized value.  Cause: " + e);
+      }
+    default:
+      throw new IOException("Unknown value tag " + tag + ".");
+    }
+  }
+
+  private Object readBean(ByteBuffer in) throws IOException {
+    ClassEntry entry = (ClassEntry) classes.get((int) readVarLong(in));
+    Object bean = newInstance(entry);
+    for (int i = 0; i < entry.setters.length; i++) {
+      Object value = readValue(in);
+      if (value != null || !entry.primitive[i]) {
+        try {
+          entry.setters[i].invoke(bean, new Object[] { value });
+        } catch (Throwable t) {
+          throw new IOException("Could not set the property '" + entry.properties[i] + "' of "
+              + entry.type.getName() + ".  Cause: " + ClassInfo.unwrapThrowable(t));
+        }
+      }
+    }
+    return bean;
+  }
+
+  private static Object newInstance(ClassEntry entry) throws IOException {
+    try {
+      return entry.classInfo.instantiateClass();
+    } catch (RuntimeException e) {
+      throw new IOException("Could not create a " + entry.type.getName() + ".  Cause: " + e);
+    }
+  }
+
+  private static byte[] readBytes(ByteBuffer in) {
+    byte[] bytes = new byte[(int) readVarLong(in)];
+    in.get(bytes);
+    return bytes;
+  }
+
+  private static long readVarLong(ByteBuffer in) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = in.get();
+      value |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    // zigzag decoding
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Gets the dictionary entry of a class written as a bean, a Map or a Collection, adding it on first use.
+   *
+   * @return the entry, or null if values of the class are serialized
+   */
+  private ClassEntry getClassEntry(Class type) {
+    ClassEntry entry = (ClassEntry) classIndexes.get(type);
+    if (entry == null && !classIndexes.containsKey(type)) {
+      entry = createClassEntry(type);
+      if (entry != null) {
+        entry.index = classes.size();
+        classes.add(entry);
+      }
+      classIndexes.put(type, entry);
+    }
+    return entry;
+  }
+
+  private static ClassEntry createClassEntry(Class type) {
+    if (type.isArray() || type.isEnum() || Modifier.isAbstract(type.getModifiers()) || !hasDefaultConstructor(type)) {
+      return null;
+    }
+    ClassInfo classInfo = ClassInfo.getInstance(type);
+    try {
+      classInfo.instantiateClass();
+    } catch (RuntimeException e) {
+      return null;
+    }
+    if (Map.class.isAssignableFrom(type) || Collection.class.isAssignableFrom(type)) {
+      return new ClassEntry(type, classInfo, null);
+    }
+    if (type.getName().startsWith("java.")) {
+      // JDK values keep their state in fields, not in bean properties
+      return null;
+    }
+    String[] readable = classInfo.getReadablePropertyNames();
+    List properties = new ArrayList();
+    for (int i = 0; i < readable.length; i++) {
+      if (classInfo.hasWritableProperty(readable[i])) {
+        properties.add(readable[i]);
+      }
+    }
+    String[] names = (String[]) properties.toArray(new String[properties.size()]);
+    Arrays.sort(names);
+    return new ClassEntry(type, classInfo, names);
+  }
+
+  private static boolean hasDefaultConstructor(Class type) {
+    try {
+      type.getDeclaredConstructor(new Class[0]);
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  /**
+   * A class in the dictionary, with the properties written for a bean
+   */
+  private static class ClassEntry {
+
+    final Class type;
+    final ClassInfo classInfo;
+    final String[] properties;
+    final Invoker[] getters;
+    final Invoker[] setters;
+    final boolean[] primitive;
+    int index;
+
+    ClassEntry(Class type, ClassInfo classInfo, String[] properties) {
+      this.type = type;
+      this.classInfo = classInfo;
+      this.properties = properties;
+      if (properties == null) {
+        getters = null;
+        setters = null;
+        primitive = null;
+      } else {
+        getters = new Invoker[properties.length];
+        setters = new Invoker[properties.length];
+        primitive = new boolean[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+          getters[i] = classInfo.getGetInvoker(properties[i]);
+          setters[i] = classInfo.getSetInvoker(properties[i]);
+          primitive[i] = classInfo.getSetterType(properties[i]).isPrimitive();
+        }
+      }
+    }
+
+  }
+
+  /**
+   * A growable buffer the rows are encoded into
+   */
+  static class Output {
+
+    private byte[] buffer = new byte[256];
+    private int length;
+
+    void reset() {
+      length = 0;
+    }
+
+    int length() {
+      return length;
+    }
+
+    ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buffer, 0, length);
+    }
+
+    void writeByte(int b) {
+      ensureCapacity(1);
+      buffer[length++] = (byte) b;
+    }
+
+    void writeInt(int value) {
+      ensureCapacity(4);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        buffer[length++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeLong(long value) {
+      ensureCapacity(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        buffer[length++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeVarLong(long value) {
+      ensureCapacity(10);
+      // zigzag encoding, so that small negative values are short too
+      long v = (value << 1) ^ (value >> 63);
+      while ((v & ~0x7fL) != 0) {
+        buffer[length++] = (byte) ((v & 0x7f) | 0x80);
+        v >>>= 7;
+      }
+      buffer[length++] = (byte) v;
+    }
+
+    void writeBytes(byte[] bytes) {
+      writeVarLong(bytes.length);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, length, bytes.length);
+      length += bytes.length;
+    }
+
+    private void ensureCapacity(int extra) {
+      if (length + extra > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+      }
+    }
+
+  }
+
+}
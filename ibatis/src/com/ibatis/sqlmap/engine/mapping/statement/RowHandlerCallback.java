@@ -54,6 +54,19 @@ public class RowHandlerCallback {
     this.resultObject = resultObject;
   }
 
+  /**
+   * Called when a result set has been opened, before its first row is read. The default does nothing.
+   *
+   * @param statementScope
+   *          - the request scope
+   * @param rs
+   *          - the result set
+   * @throws SQLException
+   *           if the result set cannot be read
+   */
+  public void handleResultSet(StatementScope statementScope, ResultSet rs) throws SQLException {
+  }
+
   /**
    *
    * Prepares the row object, and passes it to the row handler
@@ -73,6 +86,27 @@ public class RowHandlerCallback {
     statementScope.setCurrentNestedKey(null);
     object = resultMap.resolveSubMap(statementScope, rs).setResultObjectValues(statementScope, resultObject, results);
 
+    handleRow(statementScope, object);
+  }
+
+  /**
+   * Maps the current row of the result set, and passes it to the row handler
+   *
+   * @param statementScope
+   *          - the request scope
+   * @param rs
+   *          - the result set, positioned on the row
+   * @throws SQLException
+   *           if a column cannot be read
+   */
+  public void handleResultObject(StatementScope statementScope, ResultSet rs) throws SQLException {
+    statementScope.setCurrentNestedKey(null);
+    Object object = resultMap.resolveSubMap(statementScope, rs).mapRow(statementScope, rs, resultObject);
+
+    handleRow(statementScope, object);
+  }
+
+  private void handleRow(StatementScope statementScope, Object object) {
     if (object != ResultMap.NO_VALUE) {
       // XML Only special processing. (converts elements to string for easy insertion).
       int stackDepth = statementScope.getSession().getRequestStackDepth();
@@ -15,6 +15,7 @@
  */
 package com.ibatis.sqlmap.engine.mapping.statement;
 
+import com.ibatis.sqlmap.client.Cursor;
 import com.ibatis.sqlmap.client.event.RowHandler;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
 import com.ibatis.sqlmap.engine.transaction.Transaction;
@@ -55,4 +56,16 @@ public class SelectKeyStatement extends SelectStatement {
     throw new SQLException("Select Key statements cannot be executed with a row handler.");
   }
 
+  @Override
+  public void executeQueryForColumns(StatementScope statementScope, Transaction trans, Object parameterObject,
+      ColumnarResultHandler handler) throws SQLException {
+    throw new SQLException("Select Key statements cannot be executed as columns.");
+  }
+
+  @Override
+  public Cursor executeQueryForCursor(StatementScope statementScope, Transaction trans, Object parameterObject,
+      Integer fetchSize) throws SQLException {
+    throw new SQLException("Select Key statements cannot be executed as a cursor.");
+  }
+
 }
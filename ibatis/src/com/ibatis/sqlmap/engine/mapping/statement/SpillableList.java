@@ -0,0 +1,359 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.statement;
+
+import com.ibatis.sqlmap.client.SqlMapException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A List that keeps a bounded number of rows on the heap and writes the others to a temporary file.
+ * <p>
+ * The first rows added, up to the threshold, are held as they are. Each row added after that is encoded with a
+ * {@link RowCodec} and appended to a temporary file, and only its position is kept. get() reads a spilled row back
+ * through a memory mapping of the file and decodes it, so it returns a new copy of the row on every call: changes made
+ * to such a copy are only kept if it is put back with set(). A row that cannot be encoded, or that cannot be written
+ * because the disk is full, stays on the heap. Rows waiting in the write buffer are also kept on the heap until their
+ * bytes are in the file, and go back to the list as they are if the write fails.
+ * <p>
+ * Apart from that, the list behaves like an ArrayList, and is serialized as one. The temporary file is deleted as soon
+ * as it is opened where the platform allows it, and otherwise when the JVM exits; its space is released when the list
+ * is cleared or garbage collected.
+ */
+public class SpillableList extends AbstractList implements RandomAccess, Serializable {
+
+  private static final int SEGMENT_SHIFT = 26;
+  private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+  private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+  private final int threshold;
+  private final List entries = new ArrayList();
+  private int heapRows;
+  private int spilledRows;
+
+  private RowCodec codec;
+  private RowCodec.Output output;
+  private RandomAccessFile file;
+  private FileChannel channel;
+  private ByteBuffer writeBuffer;
+  // the rows encoded in the write buffer, which keep their objects until the buffer is written
+  private final List pendingRows = new ArrayList();
+  // the length of the file, and the length including the rows still in the write buffer
+  private long written;
+  private long end;
+  private MappedByteBuffer[] segments;
+  private boolean spillFailed;
+
+  /**
+   * Creates a list that keeps up to threshold rows on the heap.
+   *
+   * @param threshold
+   *          - the number of rows kept on the heap
+   */
+  public SpillableList(int threshold) {
+    this.threshold = threshold;
+  }
+
+  public Object get(int index) {
+    Object entry = entries.get(index);
+    if (entry instanceof SpilledRow) {
+      return read((SpilledRow) entry);
+    }
+    return entry;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public void add(int index, Object element) {
+    if (index < 0 || index > entries.size()) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + entries.size());
+    }
+    entries.add(index, store(element));
+    modCount++;
+  }
+
+  public Object set(int index, Object element) {
+    Object previous = get(index);
+    release(entries.get(index));
+    entries.set(index, store(element));
+    return previous;
+  }
+
+  public Object remove(int index) {
+    Object previous = get(index);
+    release(entries.remove(index));
+    modCount++;
+    return previous;
+  }
+
+  public void clear() {
+    entries.clear();
+    heapRows = 0;
+    spilledRows = 0;
+    modCount++;
+    close();
+  }
+
+  /**
+   * Gets the number of rows held in the temporary file.
+   *
+   * @return - the number of spilled rows
+   */
+  public int getSpilledRowCount() {
+    return spilledRows;
+  }
+
+  private Object store(Object element) {
+    if (heapRows >= threshold && !spillFailed) {
+      Object spilled = spill(element);
+      if (spilled != null) {
+        spilledRows++;
+        return spilled;
+      }
+    }
+    heapRows++;
+    return element;
+  }
+
+  private void release(Object entry) {
+    if (entry instanceof SpilledRow) {
+      spilledRows--;
+    } else {
+      heapRows--;
+    }
+  }
+
+  /**
+   * Encodes a row and appends it to the file.
+   *
+   * @return the position of the row, or null if the row is to be kept on the heap
+   */
+  private synchronized SpilledRow spill(Object row) {
+    if (codec == null) {
+      codec = new RowCodec();
+      output = new RowCodec.Output();
+    }
+    output.reset();
+    try {
+      codec.encode(row, output);
+    } catch (IOException e) {
+      return null;
+    }
+    try {
+      if (channel == null) {
+        open();
+      }
+      ByteBuffer bytes = output.toByteBuffer();
+      if (bytes.remaining() > writeBuffer.remaining()) {
+        flush();
+      }
+      SpilledRow spilled = new SpilledRow(end, output.length());
+      if (bytes.remaining() > writeBuffer.remaining()) {
+        writeFully(bytes, written);
+        written += bytes.limit();
+      } else {
+        writeBuffer.put(bytes);
+        spilled.row = row;
+        pendingRows.add(spilled);
+      }
+      end += output.length();
+      return spilled;
+    } catch (IOException e) {
+      // most likely a full disk: keep this row and the following ones on the heap
+      spillFailed();
+      return null;
+    }
+  }
+
+  private synchronized Object read(SpilledRow row) {
+    if (row.position + row.length > written) {
+      try {
+        flush();
+      } catch (IOException e) {
+        spillFailed();
+      }
+      if (row.row != null) {
+        // the row was never written, and is back on the heap
+        return row.row;
+      }
+    }
+    try {
+      return codec.decode(getBytes(row.position, row.length));
+    } catch (IOException e) {
+      throw new SqlMapException("Could not read a row of a spilled result back from its temporary file.  Cause: "
+          + e, e);
+    }
+  }
+
+  /**
+   * Stops spilling after a failed write, and puts the rows that were waiting in the write buffer back in the list.
+   */
+  private void spillFailed() {
+    spillFailed = true;
+    if (!pendingRows.isEmpty()) {
+      for (int i = 0, n = entries.size(); i < n; i++) {
+        Object entry = entries.get(i);
+        if (entry instanceof SpilledRow && ((SpilledRow) entry).row != null) {
+          entries.set(i, ((SpilledRow) entry).row);
+          spilledRows--;
+          heapRows++;
+        }
+      }
+      pendingRows.clear();
+    }
+    if (writeBuffer != null) {
+      writeBuffer.clear();
+    }
+    end = written;
+  }
+
+  /**
+   * Gets the bytes of a row from the memory mapping of its segment of the file, or reads them from the file if the
+   * row crosses the end of a segment.
+   */
+  private ByteBuffer getBytes(long position, int length) throws IOException {
+    int segment = (int) (position >>> SEGMENT_SHIFT);
+    long segmentStart = (long) segment << SEGMENT_SHIFT;
+    int offset = (int) (position - segmentStart);
+    if (position + length > segmentStart + SEGMENT_SIZE) {
+      ByteBuffer bytes = ByteBuffer.allocate(length);
+      while (bytes.hasRemaining()) {
+        if (channel.read(bytes, position + bytes.position()) < 0) {
+          throw new IOException("Unexpected end of the spill file.");
+        }
+      }
+      bytes.flip();
+      return bytes;
+    }
+    if (segments == null || segments.length <= segment) {
+      segments = segments == null ? new MappedByteBuffer[segment + 1] : (MappedByteBuffer[]) Arrays.copyOf(segments,
+          segment + 1);
+    }
+    MappedByteBuffer mapped = segments[segment];
+    if (mapped == null || mapped.capacity() < offset + length) {
+      // map what has been written of the segment, again once the rows read go past the end of the mapping
+      long size = Math.min(SEGMENT_SIZE, written - segmentStart);
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, size);
+      segments[segment] = mapped;
+    }
+    ByteBuffer bytes = mapped.duplicate();
+    bytes.position(offset);
+    bytes.limit(offset + length);
+    return bytes;
+  }
+
+  private void open() throws IOException {
+    channel = openChannel();
+    writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+  }
+
+  /**
+   * Opens the temporary file.
+   *
+   * @return the channel to write and read the rows through
+   */
+  FileChannel openChannel() throws IOException {
+    File tempFile = File.createTempFile("ibatis-spill", ".tmp");
+    try {
+      file = new RandomAccessFile(tempFile, "rw");
+    } finally {
+      // on most platforms an open file can be deleted, and its space is released once it is closed
+      if (!tempFile.delete()) {
+        tempFile.deleteOnExit();
+      }
+    }
+    return file.getChannel();
+  }
+
+  private void flush() throws IOException {
+    if (writeBuffer != null && writeBuffer.position() > 0) {
+      writeBuffer.flip();
+      int length = writeBuffer.limit();
+      writeFully(writeBuffer, written);
+      written += length;
+      writeBuffer.clear();
+      for (int i = 0, n = pendingRows.size(); i < n; i++) {
+        ((SpilledRow) pendingRows.get(i)).row = null;
+      }
+      pendingRows.clear();
+    }
+  }
+
+  private void writeFully(ByteBuffer bytes, long position) throws IOException {
+    while (bytes.hasRemaining()) {
+      position += channel.write(bytes, position);
+    }
+  }
+
+  private synchronized void close() {
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+        // the file is deleted anyway
+      }
+    }
+    codec = null;
+    output = null;
+    file = null;
+    channel = null;
+    writeBuffer = null;
+    pendingRows.clear();
+    segments = null;
+    written = 0;
+    end = 0;
+    spillFailed = false;
+  }
+
+  protected void finalize() throws Throwable {
+    close();
+  }
+
+  private Object writeReplace() {
+    return new ArrayList(this);
+  }
+
+  /**
+   * The place of a row in the temporary file
+   */
+  private static class SpilledRow {
+
+    final long position;
+    final int length;
+    // the row itself, until it has been written to the file
+    Object row;
+
+    SpilledRow(long position, int length) {
+      this.position = position;
+      this.length = length;
+    }
+
+  }
+
+}
@@ -15,6 +15,7 @@
  */
 package com.ibatis.sqlmap.engine.mapping.statement;
 
+import com.ibatis.sqlmap.client.Cursor;
 import com.ibatis.sqlmap.client.event.RowHandler;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
 import com.ibatis.sqlmap.engine.transaction.Transaction;
@@ -47,4 +48,16 @@ public class UpdateStatement extends MappedStatement {
     throw new SQLException("Update statements cannot be executed as a query.");
   }
 
+  @Override
+  public void executeQueryForColumns(StatementScope statementScope, Transaction trans, Object parameterObject,
+      ColumnarResultHandler handler) throws SQLException {
+    throw new SQLException("Update statements cannot be executed as a query.");
+  }
+
+  @Override
+  public Cursor executeQueryForCursor(StatementScope statementScope, Transaction trans, Object parameterObject,
+      Integer fetchSize) throws SQLException {
+    throw new SQLException("Update statements cannot be executed as a query.");
+  }
+
 }
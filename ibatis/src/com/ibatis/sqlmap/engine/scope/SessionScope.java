@@ -23,6 +23,7 @@ import com.ibatis.sqlmap.engine.transaction.Transaction;
 import com.ibatis.sqlmap.engine.transaction.TransactionState;
 import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.HashMap;
@@ -33,6 +34,8 @@ import java.util.Iterator;
  * A Session based implementation of the Scope interface
  */
 public class SessionScope {
+  public static final int NO_REPLICA = -1;
+
   private static long nextId;
   private long id;
   // Used by Any
@@ -51,12 +54,22 @@ public class SessionScope {
   private Object batch;
   private boolean commitRequired;
   private Map preparedStatements;
+  private Map preparedStatementConnections;
+  private long deadline;
+  private boolean deadlineUsed;
+  // Used by TransactionManager to route reads to replicas
+  private int replica = NO_REPLICA;
+  private long lastWriteTime;
+  // Used by TransactionManager to run statements on shards
+  private int transactionIsolation;
+  private Transaction[] shardTransactions;
 
   /**
    * Default constructor
    */
   public SessionScope() {
     this.preparedStatements = new HashMap();
+    this.preparedStatementConnections = new HashMap();
     this.inBatch = false;
     this.requestStackDepth = 0;
     this.id = getNextId();
@@ -245,6 +258,14 @@ public class SessionScope {
     return preparedStatements.containsValue(ps);
   }
 
+  /**
+   * Tells if a prepared statement for the SQL is cached for the given connection. Statements run on shards use other
+   * connections than the session transaction, and do not share its cached statements.
+   */
+  public boolean hasPreparedStatementFor(Connection conn, String sql) {
+    return preparedStatements.containsKey(sql) && preparedStatementConnections.get(sql) == conn;
+  }
+
   public PreparedStatement getPreparedStatement(String sql) throws SQLException {
     if (!hasPreparedStatementFor(sql))
       throw new SqlMapException("Could not get prepared statement.  This is likely a bug.");
@@ -262,6 +283,17 @@ public class SessionScope {
     }
   }
 
+  public void putPreparedStatement(SqlMapExecutorDelegate delegate, Connection conn, String sql, PreparedStatement ps) {
+    if (hasPreparedStatementFor(sql)) {
+      // cached for another connection, this one is closed after use
+      return;
+    }
+    putPreparedStatement(delegate, sql, ps);
+    if (preparedStatements.containsKey(sql)) {
+      preparedStatementConnections.put(sql, conn);
+    }
+  }
+
   public void closePreparedStatements() {
     Iterator keys = preparedStatements.keySet().iterator();
     while (keys.hasNext()) {
@@ -273,6 +305,115 @@ public class SessionScope {
       }
     }
     preparedStatements.clear();
+    preparedStatementConnections.clear();
+  }
+
+  /**
+   * Get the deadline of the statements run by this session
+   *
+   * @return - a System.currentTimeMillis() value, or 0 for no deadline
+   */
+  public long getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Set the deadline of the statements run by this session
+   *
+   * @param deadline
+   *          - a System.currentTimeMillis() value, or 0 for no deadline
+   */
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+    if (deadline != 0) {
+      deadlineUsed = true;
+    }
+  }
+
+  /**
+   * Tells if a deadline has ever been set on this session, in which case the query timeouts of its cached statements
+   * have to be set on every execution.
+   *
+   * @return - true if a deadline has been set
+   */
+  public boolean isDeadlineUsed() {
+    return deadlineUsed;
+  }
+
+  /**
+   * Get the replica the current transaction runs on
+   *
+   * @return - the replica index, or NO_REPLICA if the transaction runs on the primary
+   */
+  public int getReplica() {
+    return replica;
+  }
+
+  /**
+   * Set the replica the current transaction runs on
+   *
+   * @param replica
+   *          - the replica index, or NO_REPLICA
+   */
+  public void setReplica(int replica) {
+    this.replica = replica;
+  }
+
+  /**
+   * Get the time of the last write made by this session
+   *
+   * @return - a System.currentTimeMillis() value, or 0 if the session never wrote
+   */
+  public long getLastWriteTime() {
+    return lastWriteTime;
+  }
+
+  /**
+   * Set the time of the last write made by this session
+   *
+   * @param lastWriteTime
+   *          - a System.currentTimeMillis() value
+   */
+  public void setLastWriteTime(long lastWriteTime) {
+    this.lastWriteTime = lastWriteTime;
+  }
+
+  /**
+   * Get the isolation level the current transaction was started with
+   *
+   * @return - the isolation level
+   */
+  public int getTransactionIsolation() {
+    return transactionIsolation;
+  }
+
+  /**
+   * Set the isolation level the current transaction was started with
+   *
+   * @param transactionIsolation
+   *          - the isolation level
+   */
+  public void setTransactionIsolation(int transactionIsolation) {
+    this.transactionIsolation = transactionIsolation;
+  }
+
+  /**
+   * Get the transactions opened on the shards during the current transaction
+   *
+   * @return - the shard transactions by shard, or null if no statement ran on a shard
+   */
+  public Transaction[] getShardTransactions() {
+    return shardTransactions;
+  }
+
+  /**
+   * Set the transactions opened on the shards during the current transaction
+   *
+   * @param shardTransactions
+   *          - the shard transactions by shard
+   */
+  public void setShardTransactions(Transaction[] shardTransactions) {
+    this.shardTransactions = shardTransactions;
   }
 
   public void cleanup() {
@@ -15,8 +15,12 @@
  */
 package com.ibatis.sqlmap.engine.scope;
 
+import com.ibatis.sqlmap.engine.execution.DriverProfile;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
 import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMapping;
+import com.ibatis.sqlmap.engine.mapping.result.loader.LazyLoadGroup;
+import com.ibatis.sqlmap.engine.mapping.result.loader.NestedSelectBatch;
 import com.ibatis.sqlmap.engine.mapping.sql.Sql;
 import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
 
@@ -28,6 +32,8 @@ import java.util.HashMap;
  * Request based implementation of Scope interface
  */
 public class StatementScope {
+  public static final int NO_SHARD = -1;
+
   // Used by Any
   private SessionScope sessionScope;
   private ErrorContext errorContext;
@@ -35,6 +41,7 @@ public class StatementScope {
   private ParameterMap parameterMap;
   private ResultMap resultMap;
   private Sql sql;
+  private Object parameterObject;
   // Used by DynamicSql
   private ParameterMap dynamicParameterMap;
   private String dynamicSql;
@@ -43,6 +50,21 @@ public class StatementScope {
   private Map uniqueKeys;
   private boolean rowDataFound;
   private String currentNestedKey;
+  // Used by scatter queries on shards
+  private int shard = NO_SHARD;
+  // Used by keyset pagination
+  private boolean keysetQuery;
+  private Object keysetValue;
+  // Used by dialects that add columns to the statement
+  private int addedColumnCount;
+  // Used by driver dependent SQL and parameter binding
+  private DriverProfile driverProfile;
+
+  private NestedSelectBatch nestedSelectBatch;
+  private Map lazyLoadGroups;
+
+  private ResultSet resultSetPlanResultSet;
+  private Map resultSetPlans;
 
   public StatementScope(SessionScope sessionScope) {
     this.errorContext = new ErrorContext();
@@ -197,6 +219,25 @@ public class StatementScope {
     this.dynamicSql = dynamicSql;
   }
 
+  /**
+   * Get the parameter object of the request
+   *
+   * @return - the parameter object
+   */
+  public Object getParameterObject() {
+    return parameterObject;
+  }
+
+  /**
+   * Set the parameter object of the request
+   *
+   * @param parameterObject
+   *          - the parameter object
+   */
+  public void setParameterObject(Object parameterObject) {
+    this.parameterObject = parameterObject;
+  }
+
   public ResultSet getResultSet() {
     return resultSet;
   }
@@ -219,6 +260,44 @@ public class StatementScope {
     this.uniqueKeys.put(map, keys);
   }
 
+  /**
+   * Get what a result map worked out for the result set being read, such as the column index of each mapping
+   *
+   * @param map
+   *          - the result map
+   * @param rs
+   *          - the result set
+   * @return - the plan, or null if none was made for this result set yet
+   */
+  public Object getResultSetPlan(ResultMap map, ResultSet rs) {
+    if (resultSetPlans == null || resultSetPlanResultSet != rs) {
+      return null;
+    }
+    return resultSetPlans.get(map);
+  }
+
+  public void setResultSetPlan(ResultMap map, ResultSet rs, Object plan) {
+    if (resultSetPlans == null || resultSetPlanResultSet != rs) {
+      resultSetPlans = new HashMap();
+      resultSetPlanResultSet = rs;
+    }
+    resultSetPlans.put(map, plan);
+  }
+
+  public LazyLoadGroup getLazyLoadGroup(ResultMapping mapping) {
+    if (lazyLoadGroups == null) {
+      return null;
+    }
+    return (LazyLoadGroup) lazyLoadGroups.get(mapping);
+  }
+
+  public void setLazyLoadGroup(ResultMapping mapping, LazyLoadGroup group) {
+    if (lazyLoadGroups == null) {
+      lazyLoadGroups = new HashMap();
+    }
+    this.lazyLoadGroups.put(mapping, group);
+  }
+
   public boolean isRowDataFound() {
     return rowDataFound;
   }
@@ -227,4 +306,82 @@ public class StatementScope {
     this.rowDataFound = rowDataFound;
   }
 
+  /**
+   * Tells if the statement reads one page of rows following a key rather than all of its rows.
+   *
+   * @return - true for a keyset page query
+   */
+  public boolean isKeysetQuery() {
+    return keysetQuery;
+  }
+
+  public void setKeysetQuery(boolean keysetQuery) {
+    this.keysetQuery = keysetQuery;
+  }
+
+  /**
+   * Get the key of the last row of the previous page
+   *
+   * @return - the key, or null for the first page
+   */
+  public Object getKeysetValue() {
+    return keysetValue;
+  }
+
+  public void setKeysetValue(Object keysetValue) {
+    this.keysetValue = keysetValue;
+  }
+
+  /**
+   * Get the number of columns the dialect added after the columns of the statement, which are not part of its results
+   *
+   * @return - the number of added columns
+   */
+  public int getAddedColumnCount() {
+    return addedColumnCount;
+  }
+
+  public void setAddedColumnCount(int addedColumnCount) {
+    this.addedColumnCount = addedColumnCount;
+  }
+
+  /**
+   * Get the shard a query without a shard key is running on, as part of a query of all shards
+   *
+   * @return - the shard index, or NO_SHARD
+   */
+  public int getShard() {
+    return shard;
+  }
+
+  public void setShard(int shard) {
+    this.shard = shard;
+  }
+
+  /**
+   * Get the profile of the driver behind the connection the statement runs on
+   *
+   * @return - the profile, or null if the statement has not obtained its connection through its transaction
+   */
+  public DriverProfile getDriverProfile() {
+    return driverProfile;
+  }
+
+  public void setDriverProfile(DriverProfile driverProfile) {
+    this.driverProfile = driverProfile;
+  }
+
+  /**
+   * Get the batch that collects the nested selects of the rows read so far
+   *
+   * @return - the batch, or null if nested selects run row by row
+   */
+  public NestedSelectBatch getNestedSelectBatch() {
+    return nestedSelectBatch;
+  }
+
+  public void setNestedSelectBatch(NestedSelectBatch nestedSelectBatch) {
+    this.nestedSelectBatch = nestedSelectBatch;
+  }
+
 }
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.transaction;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The read replicas of a TransactionManager. Each replica has a TransactionConfig of its own, configured like the
+ * primary one but on the replica DataSource, and a count of the transactions currently open on it.
+ */
+public class ReplicaSet {
+
+  public static final String ROUND_ROBIN = "ROUND_ROBIN";
+  public static final String LEAST_OUTSTANDING = "LEAST_OUTSTANDING";
+
+  public static final long DEFAULT_READ_YOUR_WRITES_MILLIS = 5000;
+
+  private TransactionConfig[] configs;
+  private AtomicInteger[] outstanding;
+  private AtomicInteger next = new AtomicInteger();
+  private boolean leastOutstanding;
+  private long readYourWritesMillis = DEFAULT_READ_YOUR_WRITES_MILLIS;
+
+  public ReplicaSet(TransactionConfig[] configs, String selection) {
+    if (configs == null || configs.length == 0) {
+      throw new IllegalArgumentException("A replica set needs at least one replica.");
+    }
+    if (selection != null && !ROUND_ROBIN.equals(selection) && !LEAST_OUTSTANDING.equals(selection)) {
+      throw new IllegalArgumentException("Unknown replica selection '" + selection + "'.  Use " + ROUND_ROBIN
+          + " or " + LEAST_OUTSTANDING + ".");
+    }
+    this.configs = configs;
+    this.leastOutstanding = LEAST_OUTSTANDING.equals(selection);
+    this.outstanding = new AtomicInteger[configs.length];
+    for (int i = 0; i < configs.length; i++) {
+      outstanding[i] = new AtomicInteger();
+    }
+  }
+
+  /**
+   * Picks a replica for a new read transaction and counts it as outstanding until release() is called.
+   *
+   * @return - the index of the replica
+   */
+  public int acquire() {
+    int index;
+    if (leastOutstanding) {
+      // start from the round robin position so that idle replicas share the load
+      int start = (next.getAndIncrement() & Integer.MAX_VALUE) % configs.length;
+      index = start;
+      int least = outstanding[start].get();
+      for (int i = 1; i < configs.length && least > 0; i++) {
+        int candidate = (start + i) % configs.length;
+        int count = outstanding[candidate].get();
+        if (count < least) {
+          index = candidate;
+          least = count;
+        }
+      }
+    } else {
+      index = (next.getAndIncrement() & Integer.MAX_VALUE) % configs.length;
+    }
+    outstanding[index].incrementAndGet();
+    return index;
+  }
+
+  public void release(int index) {
+    outstanding[index].decrementAndGet();
+  }
+
+  public TransactionConfig getConfig(int index) {
+    return configs[index];
+  }
+
+  public int size() {
+    return configs.length;
+  }
+
+  public int getOutstanding(int index) {
+    return outstanding[index].get();
+  }
+
+  public boolean isLeastOutstanding() {
+    return leastOutstanding;
+  }
+
+  /**
+   * How long after a write the reads of the same session keep going to the primary, so that they see the write even
+   * if the replicas lag behind.
+   *
+   * @return - the time in milliseconds, 0 to read from the replicas right away
+   */
+  public long getReadYourWritesMillis() {
+    return readYourWritesMillis;
+  }
+
+  public void setReadYourWritesMillis(long readYourWritesMillis) {
+    this.readYourWritesMillis = readYourWritesMillis;
+  }
+
+  /**
+   * Tells if a session that last wrote at the given time must still read from the primary.
+   *
+   * @param lastWriteTime
+   *          - the System.currentTimeMillis() of the last write, 0 if the session never wrote
+   * @return - true if the reads must go to the primary
+   */
+  public boolean isReadingOwnWrites(long lastWriteTime) {
+    return lastWriteTime != 0 && System.currentTimeMillis() - lastWriteTime < readYourWritesMillis;
+  }
+
+}
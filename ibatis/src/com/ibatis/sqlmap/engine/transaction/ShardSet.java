@@ -0,0 +1,61 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.transaction;
+
+/**
+ * The shards of a TransactionManager. Each shard has a TransactionConfig of its own, configured like the primary one
+ * but on the shard DataSource. Shards are numbered in the order they are configured, and a shard key is mapped to a
+ * shard by its value modulo the number of shards for integral numbers, and by its hash code otherwise.
+ */
+public class ShardSet {
+
+  private TransactionConfig[] configs;
+
+  public ShardSet(TransactionConfig[] configs) {
+    if (configs == null || configs.length == 0) {
+      throw new IllegalArgumentException("A shard set needs at least one shard.");
+    }
+    this.configs = configs;
+  }
+
+  /**
+   * Maps a shard key to the shard that holds its rows.
+   *
+   * @param shardKey
+   *          - the shard key value, not null
+   * @return - the index of the shard
+   */
+  public int getShard(Object shardKey) {
+    long hash;
+    if (shardKey instanceof Long || shardKey instanceof Integer || shardKey instanceof Short
+        || shardKey instanceof Byte) {
+      hash = ((Number) shardKey).longValue();
+    } else {
+      hash = shardKey.hashCode();
+    }
+    int shard = (int) (hash % configs.length);
+    return shard < 0 ? shard + configs.length : shard;
+  }
+
+  public TransactionConfig getConfig(int shard) {
+    return configs[shard];
+  }
+
+  public int size() {
+    return configs.length;
+  }
+
+}
@@ -22,6 +22,8 @@ import java.sql.SQLException;
 public class TransactionManager {
 
   private TransactionConfig config;
+  private ReplicaSet replicas;
+  private ShardSet shards;
 
   public TransactionManager(TransactionConfig transactionConfig) {
     this.config = transactionConfig;
@@ -32,6 +34,15 @@ public class TransactionManager {
   }
 
   public void begin(SessionScope sessionScope, int transactionIsolation) throws SQLException, TransactionException {
+    begin(sessionScope, transactionIsolation, false);
+  }
+
+  /**
+   * Starts a transaction. A read only transaction is opened on one of the replicas, if any, unless the session wrote
+   * recently enough to have to read its own writes from the primary.
+   */
+  public void begin(SessionScope sessionScope, int transactionIsolation, boolean readOnly) throws SQLException,
+      TransactionException {
     Transaction trans = sessionScope.getTransaction();
     TransactionState state = sessionScope.getTransactionState();
     if (state == TransactionState.STATE_STARTED) {
@@ -43,8 +54,24 @@ public class TransactionManager {
           + "The calling .setUserConnection (null) will clear the user provided transaction.");
     }
 
-    trans = config.newTransaction(transactionIsolation);
+    if (readOnly && replicas != null && !replicas.isReadingOwnWrites(sessionScope.getLastWriteTime())) {
+      int replica = replicas.acquire();
+      try {
+        trans = replicas.getConfig(replica).newTransaction(transactionIsolation);
+      } catch (SQLException e) {
+        replicas.release(replica);
+        throw e;
+      } catch (RuntimeException e) {
+        replicas.release(replica);
+        throw e;
+      }
+      sessionScope.setReplica(replica);
+    } else {
+      trans = config.newTransaction(transactionIsolation);
+      sessionScope.setReplica(SessionScope.NO_REPLICA);
+    }
     sessionScope.setCommitRequired(false);
+    sessionScope.setTransactionIsolation(transactionIsolation);
 
     sessionScope.setTransaction(trans);
     sessionScope.setTransactionState(TransactionState.STATE_STARTED);
@@ -63,6 +90,17 @@ public class TransactionManager {
     }
     if (sessionScope.isCommitRequired() || config.isForceCommit()) {
       trans.commit();
+      Transaction[] shardTransactions = sessionScope.getShardTransactions();
+      if (shardTransactions != null) {
+        for (int i = 0; i < shardTransactions.length; i++) {
+          if (shardTransactions[i] != null) {
+            shardTransactions[i].commit();
+          }
+        }
+      }
+      if (sessionScope.isCommitRequired()) {
+        sessionScope.setLastWriteTime(System.currentTimeMillis());
+      }
       sessionScope.setCommitRequired(false);
     }
     sessionScope.setTransactionState(TransactionState.STATE_COMMITTED);
@@ -79,6 +117,8 @@ public class TransactionManager {
           + "The calling .setUserConnection (null) will clear the user provided transaction.");
     }
 
+    boolean rollbackRequired = state != TransactionState.STATE_COMMITTED
+        && (sessionScope.isCommitRequired() || config.isForceCommit());
     try {
       if (trans != null) {
         try {
@@ -90,17 +130,96 @@ public class TransactionManager {
           }
         } finally {
           sessionScope.closePreparedStatements();
-          trans.close();
+          try {
+            trans.close();
+          } finally {
+            endShardTransactions(sessionScope, rollbackRequired);
+          }
         }
       }
     } finally {
+      if (sessionScope.getReplica() != SessionScope.NO_REPLICA) {
+        replicas.release(sessionScope.getReplica());
+        sessionScope.setReplica(SessionScope.NO_REPLICA);
+      }
       sessionScope.setTransaction(null);
       sessionScope.setTransactionState(TransactionState.STATE_ENDED);
     }
   }
 
+  /**
+   * Gets the transaction of the session on a shard, starting it if this is the first statement of the current
+   * transaction that runs on the shard. Shard transactions are committed and ended with the session transaction, one
+   * after the other, so a failure can leave some of them committed.
+   */
+  public Transaction getShardTransaction(SessionScope sessionScope, int shard) throws SQLException,
+      TransactionException {
+    TransactionState state = sessionScope.getTransactionState();
+    if (state != TransactionState.STATE_STARTED && state != TransactionState.STATE_COMMITTED) {
+      throw new TransactionException("TransactionManager could not start a shard transaction.  "
+          + "No transaction is started.");
+    }
+    Transaction[] shardTransactions = sessionScope.getShardTransactions();
+    if (shardTransactions == null) {
+      shardTransactions = new Transaction[shards.size()];
+      sessionScope.setShardTransactions(shardTransactions);
+    }
+    if (shardTransactions[shard] == null) {
+      shardTransactions[shard] = shards.getConfig(shard).newTransaction(sessionScope.getTransactionIsolation());
+    }
+    return shardTransactions[shard];
+  }
+
+  private void endShardTransactions(SessionScope sessionScope, boolean rollback) throws SQLException,
+      TransactionException {
+    Transaction[] shardTransactions = sessionScope.getShardTransactions();
+    if (shardTransactions == null) {
+      return;
+    }
+    sessionScope.setShardTransactions(null);
+    Exception failure = null;
+    for (int i = 0; i < shardTransactions.length; i++) {
+      if (shardTransactions[i] != null) {
+        try {
+          try {
+            if (rollback) {
+              shardTransactions[i].rollback();
+            }
+          } finally {
+            shardTransactions[i].close();
+          }
+        } catch (SQLException e) {
+          failure = failure == null ? e : failure;
+        } catch (TransactionException e) {
+          failure = failure == null ? e : failure;
+        }
+      }
+    }
+    if (failure instanceof SQLException) {
+      throw (SQLException) failure;
+    } else if (failure != null) {
+      throw (TransactionException) failure;
+    }
+  }
+
   public TransactionConfig getConfig() {
     return config;
   }
 
+  public ReplicaSet getReplicas() {
+    return replicas;
+  }
+
+  public void setReplicas(ReplicaSet replicas) {
+    this.replicas = replicas;
+  }
+
+  public ShardSet getShards() {
+    return shards;
+  }
+
+  public void setShards(ShardSet shards) {
+    this.shards = shards;
+  }
+
 }
@@ -94,4 +94,13 @@ public class ExternalTransaction implements Transaction {
     return connection;
   }
 
+  /**
+   * Get the DataSource the connection of this transaction comes from
+   *
+   * @return - the DataSource
+   */
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
 }
@@ -92,4 +92,13 @@ public class JdbcTransaction implements Transaction {
     return connection;
   }
 
+  /**
+   * Get the DataSource the connection of this transaction comes from
+   *
+   * @return - the DataSource
+   */
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
 }
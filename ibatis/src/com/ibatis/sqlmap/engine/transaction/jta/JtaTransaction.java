@@ -135,4 +135,13 @@ public class JtaTransaction implements Transaction {
     return connection;
   }
 
+  /**
+   * Get the DataSource the connection of this transaction comes from
+   *
+   * @return - the DataSource
+   */
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
 }
@@ -15,6 +15,10 @@
  */
 package com.ibatis.sqlmap.engine.type;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
 /**
  * Base type handler for convenience
  */
@@ -29,4 +33,72 @@ public abstract class BaseTypeHandler implements TypeHandler {
     }
   }
 
+  /*
+   * Default primitive accessors for subclasses implementing PrimitiveTypeHandler. They go through getResult and
+   * setParameter, so a handler only overrides the pair for its own type.
+   */
+
+  public int getInt(ResultSet rs, int columnIndex) throws SQLException {
+    Object value = getResult(rs, columnIndex);
+    return value == null ? 0 : ((Number) value).intValue();
+  }
+
+  public long getLong(ResultSet rs, int columnIndex) throws SQLException {
+    Object value = getResult(rs, columnIndex);
+    return value == null ? 0L : ((Number) value).longValue();
+  }
+
+  public short getShort(ResultSet rs, int columnIndex) throws SQLException {
+    Object value = getResult(rs, columnIndex);
+    return value == null ? 0 : ((Number) value).shortValue();
+  }
+
+  public byte getByte(ResultSet rs, int columnIndex) throws SQLException {
+    Object value = getResult(rs, columnIndex);
+    return value == null ? 0 : ((Number) value).byteValue();
+  }
+
+  public float getFloat(ResultSet rs, int columnIndex) throws SQLException {
+    Object value = getResult(rs, columnIndex);
+    return value == null ? 0f : ((Number) value).floatValue();
+  }
+
+  public double getDouble(ResultSet rs, int columnIndex) throws SQLException {
+    Object value = getResult(rs, columnIndex);
+    return value == null ? 0d : ((Number) value).doubleValue();
+  }
+
+  public boolean getBoolean(ResultSet rs, int columnIndex) throws SQLException {
+    Object value = getResult(rs, columnIndex);
+    return value != null && ((Boolean) value).booleanValue();
+  }
+
+  public void setInt(PreparedStatement ps, int i, int value) throws SQLException {
+    setParameter(ps, i, Integer.valueOf(value), null);
+  }
+
+  public void setLong(PreparedStatement ps, int i, long value) throws SQLException {
+    setParameter(ps, i, Long.valueOf(value), null);
+  }
+
+  public void setShort(PreparedStatement ps, int i, short value) throws SQLException {
+    setParameter(ps, i, Short.valueOf(value), null);
+  }
+
+  public void setByte(PreparedStatement ps, int i, byte value) throws SQLException {
+    setParameter(ps, i, Byte.valueOf(value), null);
+  }
+
+  public void setFloat(PreparedStatement ps, int i, float value) throws SQLException {
+    setParameter(ps, i, Float.valueOf(value), null);
+  }
+
+  public void setDouble(PreparedStatement ps, int i, double value) throws SQLException {
+    setParameter(ps, i, Double.valueOf(value), null);
+  }
+
+  public void setBoolean(PreparedStatement ps, int i, boolean value) throws SQLException {
+    setParameter(ps, i, Boolean.valueOf(value), null);
+  }
+
 }
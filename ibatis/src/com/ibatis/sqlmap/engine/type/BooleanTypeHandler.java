@@ -23,7 +23,7 @@ import java.sql.SQLException;
 /**
  * Boolean implementation of TypeHandler
  */
-public class BooleanTypeHandler extends BaseTypeHandler implements TypeHandler {
+public class BooleanTypeHandler extends BaseTypeHandler implements PrimitiveTypeHandler {
 
   public void setParameter(PreparedStatement ps, int i, Object parameter, String jdbcType) throws SQLException {
     ps.setBoolean(i, ((Boolean) parameter).booleanValue());
@@ -60,4 +60,16 @@ public class BooleanTypeHandler extends BaseTypeHandler implements TypeHandler {
     return Boolean.valueOf(s);
   }
 
+  public Class getPrimitiveType() {
+    return boolean.class;
+  }
+
+  public boolean getBoolean(ResultSet rs, int columnIndex) throws SQLException {
+    return rs.getBoolean(columnIndex);
+  }
+
+  public void setBoolean(PreparedStatement ps, int i, boolean value) throws SQLException {
+    ps.setBoolean(i, value);
+  }
+
 }
@@ -23,7 +23,7 @@ import java.sql.SQLException;
 /**
  * Byte implementation of TypeHandler
  */
-public class ByteTypeHandler extends BaseTypeHandler implements TypeHandler {
+public class ByteTypeHandler extends BaseTypeHandler implements PrimitiveTypeHandler {
 
   public void setParameter(PreparedStatement ps, int i, Object parameter, String jdbcType) throws SQLException {
     ps.setByte(i, ((Byte) parameter).byteValue());
@@ -60,4 +60,16 @@ public class ByteTypeHandler extends BaseTypeHandler implements TypeHandler {
     return Byte.valueOf(s);
   }
 
+  public Class getPrimitiveType() {
+    return byte.class;
+  }
+
+  public byte getByte(ResultSet rs, int columnIndex) throws SQLException {
+    return rs.getByte(columnIndex);
+  }
+
+  public void setByte(PreparedStatement ps, int i, byte value) throws SQLException {
+    ps.setByte(i, value);
+  }
+
 }
@@ -23,7 +23,7 @@ import java.sql.SQLException;
 /**
  * Double implementation of TypeHandler
  */
-public class DoubleTypeHandler extends BaseTypeHandler implements TypeHandler {
+public class DoubleTypeHandler extends BaseTypeHandler implements PrimitiveTypeHandler {
 
   public void setParameter(PreparedStatement ps, int i, Object parameter, String jdbcType) throws SQLException {
     ps.setDouble(i, ((Double) parameter).doubleValue());
@@ -60,4 +60,16 @@ public class DoubleTypeHandler extends BaseTypeHandler implements TypeHandler {
     return Double.valueOf(s);
   }
 
+  public Class getPrimitiveType() {
+    return double.class;
+  }
+
+  public double getDouble(ResultSet rs, int columnIndex) throws SQLException {
+    return rs.getDouble(columnIndex);
+  }
+
+  public void setDouble(PreparedStatement ps, int i, double value) throws SQLException {
+    ps.setDouble(i, value);
+  }
+
 }
@@ -23,7 +23,7 @@ import java.sql.SQLException;
 /**
  * Float implementation of TypeHandler
  */
-public class FloatTypeHandler extends BaseTypeHandler implements TypeHandler {
+public class FloatTypeHandler extends BaseTypeHandler implements PrimitiveTypeHandler {
 
   public void setParameter(PreparedStatement ps, int i, Object parameter, String jdbcType) throws SQLException {
     ps.setFloat(i, ((Float) parameter).floatValue());
@@ -60,4 +60,16 @@ public class FloatTypeHandler extends BaseTypeHandler implements TypeHandler {
     return Float.valueOf(s);
   }
 
+  public Class getPrimitiveType() {
+    return float.class;
+  }
+
+  public float getFloat(ResultSet rs, int columnIndex) throws SQLException {
+    return rs.getFloat(columnIndex);
+  }
+
+  public void setFloat(PreparedStatement ps, int i, float value) throws SQLException {
+    ps.setFloat(i, value);
+  }
+
 }
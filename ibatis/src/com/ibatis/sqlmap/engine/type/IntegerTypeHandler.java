@@ -23,7 +23,7 @@ import java.sql.SQLException;
 /**
  * Integer Decimal implementation of TypeHandler
  */
-public class IntegerTypeHandler extends BaseTypeHandler implements TypeHandler {
+public class IntegerTypeHandler extends BaseTypeHandler implements PrimitiveTypeHandler {
 
   public void setParameter(PreparedStatement ps, int i, Object parameter, String jdbcType) throws SQLException {
     ps.setInt(i, ((Integer) parameter).intValue());
@@ -60,4 +60,16 @@ public class IntegerTypeHandler extends BaseTypeHandler implements TypeHandler {
     return Integer.valueOf(s);
   }
 
+  public Class getPrimitiveType() {
+    return int.class;
+  }
+
+  public int getInt(ResultSet rs, int columnIndex) throws SQLException {
+    return rs.getInt(columnIndex);
+  }
+
+  public void setInt(PreparedStatement ps, int i, int value) throws SQLException {
+    ps.setInt(i, value);
+  }
+
 }
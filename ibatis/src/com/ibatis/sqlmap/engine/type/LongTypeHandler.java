@@ -23,7 +23,7 @@ import java.sql.SQLException;
 /**
  * Long implementation of TypeHandler
  */
-public class LongTypeHandler extends BaseTypeHandler implements TypeHandler {
+public class LongTypeHandler extends BaseTypeHandler implements PrimitiveTypeHandler {
 
   public void setParameter(PreparedStatement ps, int i, Object parameter, String jdbcType) throws SQLException {
     ps.setLong(i, ((Long) parameter).longValue());
@@ -60,4 +60,16 @@ public class LongTypeHandler extends BaseTypeHandler implements TypeHandler {
     return Long.valueOf(s);
   }
 
+  public Class getPrimitiveType() {
+    return long.class;
+  }
+
+  public long getLong(ResultSet rs, int columnIndex) throws SQLException {
+    return rs.getLong(columnIndex);
+  }
+
+  public void setLong(PreparedStatement ps, int i, long value) throws SQLException {
+    ps.setLong(i, value);
+  }
+
 }
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2004-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.type;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Optional extension of TypeHandler for handlers of a primitive Java type. The accessors read and write the value
+ * without boxing it, so a caller that knows the value is primitive (such as a result map or a parameter map) can move
+ * it straight between JDBC and the bean. {@link TypeHandlerFactory} tells when a handler's accessors can stand in for
+ * getResult and setParameter.
+ * <p>
+ * The getters follow the JDBC convention: a SQL NULL is returned as zero (or false) and the caller must check
+ * {@link ResultSet#wasNull()}. Only the accessors matching {@link #getPrimitiveType()} are guaranteed to avoid boxing;
+ * {@link BaseTypeHandler} implements the others through getResult and setParameter.
+ */
+public interface PrimitiveTypeHandler extends TypeHandler {
+
+  /**
+   * Gets the primitive type handled, e.g. <code>int.class</code>.
+   *
+   * @return the primitive type
+   */
+  Class getPrimitiveType();
+
+  int getInt(ResultSet rs, int columnIndex) throws SQLException;
+
+  long getLong(ResultSet rs, int columnIndex) throws SQLException;
+
+  short getShort(ResultSet rs, int columnIndex) throws SQLException;
+
+  byte getByte(ResultSet rs, int columnIndex) throws SQLException;
+
+  float getFloat(ResultSet rs, int columnIndex) throws SQLException;
+
+  double getDouble(ResultSet rs, int columnIndex) throws SQLException;
+
+  boolean getBoolean(ResultSet rs, int columnIndex) throws SQLException;
+
+  void setInt(PreparedStatement ps, int i, int value) throws SQLException;
+
+  void setLong(PreparedStatement ps, int i, long value) throws SQLException;
+
+  void setShort(PreparedStatement ps, int i, short value) throws SQLException;
+
+  void setByte(PreparedStatement ps, int i, byte value) throws SQLException;
+
+  void setFloat(PreparedStatement ps, int i, float value) throws SQLException;
+
+  void setDouble(PreparedStatement ps, int i, double value) throws SQLException;
+
+  void setBoolean(PreparedStatement ps, int i, boolean value) throws SQLException;
+
+}
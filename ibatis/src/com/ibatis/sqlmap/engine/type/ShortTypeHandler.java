@@ -23,7 +23,7 @@ import java.sql.SQLException;
 /**
  * Short implementation of TypeHandler
  */
-public class ShortTypeHandler extends BaseTypeHandler implements TypeHandler {
+public class ShortTypeHandler extends BaseTypeHandler implements PrimitiveTypeHandler {
 
   public void setParameter(PreparedStatement ps, int i, Object parameter, String jdbcType) throws SQLException {
     ps.setShort(i, ((Short) parameter).shortValue());
@@ -60,4 +60,16 @@ public class ShortTypeHandler extends BaseTypeHandler implements TypeHandler {
     return Short.valueOf(s);
   }
 
+  public Class getPrimitiveType() {
+    return short.class;
+  }
+
+  public short getShort(ResultSet rs, int columnIndex) throws SQLException {
+    return rs.getShort(columnIndex);
+  }
+
+  public void setShort(PreparedStatement ps, int i, short value) throws SQLException {
+    ps.setShort(i, value);
+  }
+
 }
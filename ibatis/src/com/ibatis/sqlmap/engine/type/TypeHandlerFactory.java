@@ -17,7 +17,10 @@ package com.ibatis.sqlmap.engine.type;
 
 import com.ibatis.sqlmap.client.SqlMapException;
 
+import java.lang.reflect.Method;
 import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.util.*;
 
 /**
@@ -25,6 +28,9 @@ import java.util.*;
  */
 public class TypeHandlerFactory {
 
+  // handler class -> accessor name -> Boolean, weak so that handlers of a web application can be unloaded
+  private static final Map ACCESSORS_IN_LINE = new WeakHashMap();
+
   private final Map typeHandlerMap = new HashMap();
   private final TypeHandler unknownTypeHandler = new UnknownTypeHandler(this);
   private final HashMap typeAliases = new HashMap();
@@ -257,4 +263,86 @@ public class TypeHandlerFactory {
     typeAliases.put(key, value);
   }
 
+  /**
+   * Gets a type handler as a PrimitiveTypeHandler whose accessors can be used instead of getResult for a primitive
+   * type. A subclass that overrides getResult without overriding the accessor for the type is not accepted, as the
+   * inherited accessor would bypass its conversion.
+   * 
+   * @param handler
+   *          - the handler
+   * @param type
+   *          - the primitive type
+   * 
+   * @return - the handler, or null if its primitive accessors cannot be used for the type
+   */
+  public static PrimitiveTypeHandler getPrimitiveTypeHandler(TypeHandler handler, Class type) {
+    PrimitiveTypeHandler primitiveHandler = asPrimitiveTypeHandler(handler, type);
+    if (primitiveHandler == null
+        || !isInLine(handler.getClass(), "get", new Class[] { ResultSet.class, Integer.TYPE }, type, "getResult",
+            new Class[] { ResultSet.class, Integer.TYPE })) {
+      return null;
+    }
+    return primitiveHandler;
+  }
+
+  /**
+   * Gets a type handler as a PrimitiveTypeHandler whose setter can be used instead of setParameter for a primitive
+   * type. As with {@link #getPrimitiveTypeHandler}, a subclass that overrides setParameter without overriding the
+   * setter for the type is not accepted.
+   * 
+   * @param handler
+   *          - the handler
+   * @param type
+   *          - the primitive type
+   * 
+   * @return - the handler, or null if its primitive setter cannot be used for the type
+   */
+  public static PrimitiveTypeHandler getPrimitiveParameterHandler(TypeHandler handler, Class type) {
+    PrimitiveTypeHandler primitiveHandler = asPrimitiveTypeHandler(handler, type);
+    if (primitiveHandler == null
+        || !isInLine(handler.getClass(), "set", new Class[] { PreparedStatement.class, Integer.TYPE, type }, type,
+            "setParameter", new Class[] { PreparedStatement.class, Integer.TYPE, Object.class, String.class })) {
+      return null;
+    }
+    return primitiveHandler;
+  }
+
+  private static PrimitiveTypeHandler asPrimitiveTypeHandler(TypeHandler handler, Class type) {
+    if (!(handler instanceof PrimitiveTypeHandler) || type == null || !type.isPrimitive() || type == Character.TYPE
+        || type == Void.TYPE) {
+      return null;
+    }
+    PrimitiveTypeHandler primitiveHandler = (PrimitiveTypeHandler) handler;
+    return primitiveHandler.getPrimitiveType() == type ? primitiveHandler : null;
+  }
+
+  /**
+   * Whether the accessor of a handler class for a primitive type is declared no higher in the hierarchy than the
+   * method it stands in for, so that it cannot skip an override of that method.
+   */
+  private static boolean isInLine(Class handlerClass, String prefix, Class[] parameterTypes, Class type,
+      String method, Class[] methodParameterTypes) {
+    String name = type.getName();
+    String accessorName = prefix + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    synchronized (ACCESSORS_IN_LINE) {
+      Map accessors = (Map) ACCESSORS_IN_LINE.get(handlerClass);
+      if (accessors == null) {
+        accessors = new HashMap();
+        ACCESSORS_IN_LINE.put(handlerClass, accessors);
+      }
+      Boolean inLine = (Boolean) accessors.get(accessorName);
+      if (inLine == null) {
+        try {
+          Method accessor = handlerClass.getMethod(accessorName, parameterTypes);
+          Method replaced = handlerClass.getMethod(method, methodParameterTypes);
+          inLine = Boolean.valueOf(replaced.getDeclaringClass().isAssignableFrom(accessor.getDeclaringClass()));
+        } catch (NoSuchMethodException e) {
+          inLine = Boolean.FALSE;
+        }
+        accessors.put(accessorName, inLine);
+      }
+      return inLine.booleanValue();
+    }
+  }
+
 }